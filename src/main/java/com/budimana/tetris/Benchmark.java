@@ -0,0 +1,655 @@
+package com.budimana.tetris;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * Runs every solver over a corpus of puzzles and records, for each pair,
+ *   the wall time, the nodes explored, the bytes allocated and the peak
+ *   heap
+ *
+ * The corpus is a text file (see benchmarks/corpus.txt); each puzzle is
+ *   run a few times after warming up and the run with the median wall
+ *   time is kept
+ * Results are written as JSON and can be compared against the results of
+ *   an earlier run: a pair regresses when it got slower, explored more
+ *   nodes, allocated more or used more heap than the thresholds allow
+ * A search that times out is compared on nodes explored per second
+ *   instead, since its wall time is just the timeout
+ *
+ * Allocation is counted per thread by the JVM (ThreadMXBean), for the
+ *   benchmark thread and for every thread of the solver's executor
+ * Peak heap is the sum of the peaks of the heap memory pools, reset
+ *   after a GC before each run, so it's an upper bound on the real peak
+ */
+public class Benchmark {
+
+    public enum SolverKind {
+        TETRIS,
+        POLYOMINO,
+        BOARD,
+        COMPONENT,
+        STRIP,
+        PORTFOLIO,
+        POLYOMINO_PORTFOLIO,
+        ;
+
+        public static SolverKind forName(String name) {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        }
+
+        /**
+         * A solver of this kind for the puzzle; threads is the size of
+         *   the executor it will be given
+         */
+        public SolverEngine create(CompiledPuzzle puzzle, int threads) {
+            switch (this) {
+                case TETRIS:
+                    return new TetrisSolver(puzzle);
+                case POLYOMINO:
+                    return new PolyominoSolver(puzzle);
+                case BOARD:
+                    return new BoardSolver(puzzle);
+                case COMPONENT:
+                    return new ComponentSolver(puzzle);
+                case STRIP:
+                    return new StripSolver(puzzle);
+                case PORTFOLIO:
+                    return new PortfolioSolver(puzzle, PortfolioSolver.defaultConfigs(threads));
+                case POLYOMINO_PORTFOLIO:
+                    return new PolyominoPortfolio(puzzle, threads);
+                default:
+                    throw new IllegalArgumentException("Unknown solver: " + this);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * One line of the corpus file
+     */
+    public static class Puzzle {
+        public final String name;
+        public final int width;
+        public final int height;
+        public final String restrictionsFile;  // null if generated
+        public final double density;
+        public final long seed;
+
+        public Puzzle(String name, int width, int height, String restrictionsFile) {
+            this(name, width, height, restrictionsFile, 0, 0);
+        }
+
+        public Puzzle(String name, int width, int height, double density, long seed) {
+            this(name, width, height, null, density, seed);
+        }
+
+        private Puzzle(String name, int width, int height, String restrictionsFile,
+                       double density, long seed) {
+            this.name = name;
+            this.width = width;
+            this.height = height;
+            this.restrictionsFile = restrictionsFile;
+            this.density = density;
+            this.seed = seed;
+        }
+
+        /**
+         * Reads the restrictions, generating the puzzle first if needed
+         */
+        Map<Tetronimo, List<Tetronimo>> load(Tetronimo[][] matrix) throws IOException {
+            if (restrictionsFile != null) {
+                return TetrisSolver.parseRestrictions(restrictionsFile, matrix);
+            }
+
+            File file = File.createTempFile("puzzle-" + name, ".txt");
+            try {
+                PuzzleGenerator generator = new PuzzleGenerator(width, height,
+                                                                PieceCatalogue.tetrominoes(), seed);
+                generator.setDensity(density);
+                try (Writer out = new BufferedWriter(new FileWriter(file))) {
+                    generator.generate(out);
+                }
+                return TetrisSolver.parseRestrictions(file.getPath(), matrix);
+            } finally {
+                file.delete();
+            }
+        }
+
+        /**
+         * Loads the puzzle as a CompiledPuzzle of tetrominoes
+         */
+        CompiledPuzzle compile() throws IOException {
+            Tetronimo[][] matrix = TetrisSolver.createMatrix(width, height);
+            return CompiledPuzzle.compile(Walls.fromRestrictions(matrix, load(matrix)),
+                                          PieceCatalogue.tetrominoes());
+        }
+    }
+
+    /**
+     * The measurements of one solver on one puzzle
+     */
+    public static class Result {
+        public final String puzzle;
+        public final SolverKind solver;
+        public final SolveStatus status;
+        public final long wallMillis;
+        public final long nodes;
+        public final long allocatedBytes;
+        public final long peakHeapBytes;
+
+        public Result(String puzzle, SolverKind solver, SolveStatus status, long wallMillis,
+                      long nodes, long allocatedBytes, long peakHeapBytes) {
+            this.puzzle = puzzle;
+            this.solver = solver;
+            this.status = status;
+            this.wallMillis = wallMillis;
+            this.nodes = nodes;
+            this.allocatedBytes = allocatedBytes;
+            this.peakHeapBytes = peakHeapBytes;
+        }
+
+        public double nodesPerSecond() {
+            return nodes * 1000.0 / Math.max(1, wallMillis);
+        }
+
+        String key() {
+            return puzzle + " " + solver;
+        }
+    }
+
+    /**
+     * How much worse than the baseline a result may get, as a fraction
+     *   (0.1 is 10% worse)
+     */
+    public static class Thresholds {
+        public double time = 0.10;
+        public double nodes = 0.05;
+        public double allocation = 0.10;
+        public double heap = 0.25;
+
+        // differences below these are noise, whatever the ratio
+        public long minMillis = 20;
+        public long minBytes = 1 << 20;
+    }
+
+    private final List<Puzzle> corpus;
+    private final List<SolverKind> solvers;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int warmupRuns = 1;
+    private int runs = 3;
+    private long timeoutMillis = 30 * 1000L;
+
+    public Benchmark(List<Puzzle> corpus, List<SolverKind> solvers) {
+        this.corpus = corpus;
+        this.solvers = solvers;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public void setRuns(int warmupRuns, int runs) {
+        if (runs < 1) {
+            throw new IllegalArgumentException("At least one measured run is needed");
+        }
+        this.warmupRuns = warmupRuns;
+        this.runs = runs;
+    }
+
+    public void setTimeout(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Reads a corpus file, skipping blank lines and # comments
+     */
+    public static List<Puzzle> readCorpus(Reader reader) throws IOException {
+        List<Puzzle> corpus = new ArrayList<>();
+        BufferedReader br = new BufferedReader(reader);
+        String line;
+        while ((line = br.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] fields = line.split("\\s+");
+            String name = fields[0];
+            int width = Integer.parseInt(fields[1]);
+            int height = Integer.parseInt(fields[2]);
+            if (fields[3].equals("generate")) {
+                corpus.add(new Puzzle(name, width, height,
+                                      Double.parseDouble(fields[4]), Long.parseLong(fields[5])));
+            } else {
+                corpus.add(new Puzzle(name, width, height, fields[3]));
+            }
+        }
+        return corpus;
+    }
+
+    /**
+     * Runs every solver on every puzzle, in corpus order
+     */
+    public List<Result> run() throws IOException, InterruptedException {
+        List<Result> results = new ArrayList<>();
+        for (Puzzle puzzle : corpus) {
+            for (SolverKind solver : solvers) {
+                results.add(run(puzzle, solver));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * The puzzle is compiled once, before any run, so the runs measure
+     *   the searches and not the loading and preprocessing
+     */
+    public Result run(Puzzle puzzle, SolverKind solver) throws IOException, InterruptedException {
+        CompiledPuzzle compiled = puzzle.compile();
+        for (int i = 0; i < warmupRuns; i++) {
+            runOnce(puzzle, compiled, solver);
+        }
+
+        Result[] measured = new Result[runs];
+        for (int i = 0; i < runs; i++) {
+            measured[i] = runOnce(puzzle, compiled, solver);
+        }
+        Arrays.sort(measured, Comparator.comparingLong(r -> r.wallMillis));
+        return measured[runs / 2];
+    }
+
+    private Result runOnce(Puzzle puzzle, CompiledPuzzle compiled, SolverKind kind)
+            throws InterruptedException {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+
+        MeasuredThreads factory = new MeasuredThreads();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, factory);
+        long allocatedBefore = allocatedBytes();
+        long startTime = System.nanoTime();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        SolveStatus status;
+        long nodes;
+        try {
+            SolverEngine solver = kind.create(compiled, threads);
+            solver.setDeadline(deadline);
+            status = solver.solve(executor);
+            // let the losing searches of a race wind down and add up
+            //   their nodes
+            executor.shutdown();
+            executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+            nodes = solver.getNodesExplored();
+        } finally {
+            executor.shutdownNow();
+        }
+        long wallMillis = (System.nanoTime() - startTime) / 1000000;
+
+        long allocated = allocatedBytes() - allocatedBefore + factory.allocated(timeoutMillis);
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+        return new Result(puzzle.name, kind, status, wallMillis, nodes, allocated, peakHeap);
+    }
+
+    /**
+     * Bytes allocated so far by the current thread, -1 if the JVM can't
+     *   tell
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        return ((com.sun.management.ThreadMXBean) threads)
+                   .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Executor threads that add up what they allocated when they exit
+     */
+    private static class MeasuredThreads implements ThreadFactory {
+        private final List<Thread> threads = new ArrayList<>();
+        private final LongAdder allocated = new LongAdder();
+
+        @Override
+        public synchronized Thread newThread(Runnable r) {
+            Thread t = new Thread(() -> {
+                long before = allocatedBytes();
+                try {
+                    r.run();
+                } finally {
+                    allocated.add(allocatedBytes() - before);
+                }
+            });
+            t.setDaemon(true);
+            threads.add(t);
+            return t;
+        }
+
+        /**
+         * Waits for the threads to exit, the executor must be shut down
+         */
+        synchronized long allocated(long timeoutMillis) throws InterruptedException {
+            for (Thread t : threads) {
+                t.join(timeoutMillis);
+            }
+            return allocated.sum();
+        }
+    }
+
+    /**
+     * Writes the results as a JSON object, one result per line
+     */
+    public static void writeJson(List<Result> results, Writer out) throws IOException {
+        out.write("{\n");
+        out.write("  \"java\": \"" + System.getProperty("java.version") + "\",\n");
+        out.write("  \"processors\": " + Runtime.getRuntime().availableProcessors() + ",\n");
+        out.write("  \"results\": [\n");
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            out.write("    {\"puzzle\": \"" + r.puzzle + "\", " +
+                      "\"solver\": \"" + r.solver + "\", " +
+                      "\"status\": \"" + r.status + "\", " +
+                      "\"wallMillis\": " + r.wallMillis + ", " +
+                      "\"nodes\": " + r.nodes + ", " +
+                      "\"allocatedBytes\": " + r.allocatedBytes + ", " +
+                      "\"peakHeapBytes\": " + r.peakHeapBytes + "}" +
+                      (i + 1 < results.size() ? "," : "") + "\n");
+        }
+        out.write("  ]\n");
+        out.write("}\n");
+    }
+
+    private static final Pattern RESULT = Pattern.compile("\\{[^{}]*\\}");
+    private static final Pattern FIELD =
+        Pattern.compile("\"(\\w+)\"\\s*:\\s*(?:\"([^\"]*)\"|(-?\\d+))");
+
+    /**
+     * Reads results written by writeJson
+     * Only the flat result objects are looked at, so the file may be
+     *   reformatted
+     */
+    public static List<Result> readJson(Reader reader) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[8192];
+        int n;
+        while ((n = reader.read(buffer)) > 0) {
+            sb.append(buffer, 0, n);
+        }
+
+        List<Result> results = new ArrayList<>();
+        Matcher object = RESULT.matcher(sb);
+        while (object.find()) {
+            Map<String, String> fields = new HashMap<>();
+            Matcher field = FIELD.matcher(object.group());
+            while (field.find()) {
+                fields.put(field.group(1), field.group(2) != null ? field.group(2) : field.group(3));
+            }
+            if (!fields.containsKey("puzzle")) {
+                continue;
+            }
+            results.add(new Result(fields.get("puzzle"),
+                                   SolverKind.forName(fields.get("solver")),
+                                   SolveStatus.valueOf(fields.get("status")),
+                                   Long.parseLong(fields.get("wallMillis")),
+                                   Long.parseLong(fields.get("nodes")),
+                                   Long.parseLong(fields.get("allocatedBytes")),
+                                   Long.parseLong(fields.get("peakHeapBytes"))));
+        }
+        return results;
+    }
+
+    /**
+     * Writes a line per result comparing it to the baseline and returns
+     *   the number of regressions
+     * Results missing from the baseline are reported but never regress
+     */
+    public static int compare(List<Result> baseline,
+                              List<Result> results,
+                              Thresholds thresholds,
+                              Writer out) throws IOException {
+        Map<String, Result> before = new HashMap<>();
+        for (Result r : baseline) {
+            before.put(r.key(), r);
+        }
+
+        out.write(String.format("%-12s %-10s %-10s %18s %18s %18s %18s%n",
+                                "puzzle", "solver", "status", "time ms", "nodes",
+                                "allocated MB", "peak heap MB"));
+        int regressions = 0;
+        for (Result r : results) {
+            Result b = before.get(r.key());
+            if (b == null) {
+                out.write(String.format("%-12s %-10s %-10s %18d %18d %18.1f %18.1f  (new)%n",
+                                        r.puzzle, r.solver, r.status, r.wallMillis, r.nodes,
+                                        megabytes(r.allocatedBytes), megabytes(r.peakHeapBytes)));
+                continue;
+            }
+
+            List<String> reasons = new ArrayList<>();
+            if (r.status != b.status) {
+                // giving up where the baseline finished is the worst slowdown
+                if (r.status == SolveStatus.UNKNOWN || b.status != SolveStatus.UNKNOWN) {
+                    reasons.add("status was " + b.status);
+                }
+            } else if (r.status == SolveStatus.UNKNOWN) {
+                if (r.nodesPerSecond() < b.nodesPerSecond() * (1 - thresholds.time)) {
+                    reasons.add("nodes/s");
+                }
+            } else {
+                if (worse(b.wallMillis, r.wallMillis, thresholds.time) &&
+                    r.wallMillis - b.wallMillis >= thresholds.minMillis) {
+                    reasons.add("time");
+                }
+                if (worse(b.nodes, r.nodes, thresholds.nodes)) {
+                    reasons.add("nodes");
+                }
+            }
+            if (worse(b.allocatedBytes, r.allocatedBytes, thresholds.allocation) &&
+                r.allocatedBytes - b.allocatedBytes >= thresholds.minBytes) {
+                reasons.add("allocation");
+            }
+            if (worse(b.peakHeapBytes, r.peakHeapBytes, thresholds.heap) &&
+                r.peakHeapBytes - b.peakHeapBytes >= thresholds.minBytes) {
+                reasons.add("heap");
+            }
+
+            out.write(String.format("%-12s %-10s %-10s %18s %18s %18s %18s%s%n",
+                                    r.puzzle, r.solver, r.status,
+                                    change(b.wallMillis, r.wallMillis, r.wallMillis),
+                                    change(b.nodes, r.nodes, r.nodes),
+                                    change(b.allocatedBytes, r.allocatedBytes,
+                                           megabytes(r.allocatedBytes)),
+                                    change(b.peakHeapBytes, r.peakHeapBytes,
+                                           megabytes(r.peakHeapBytes)),
+                                    reasons.isEmpty() ? "" : "  REGRESSION: " +
+                                                             String.join(", ", reasons)));
+            if (!reasons.isEmpty()) {
+                regressions++;
+            }
+        }
+        return regressions;
+    }
+
+    private static boolean worse(long before, long after, double threshold) {
+        // a metric the JVM couldn't measure is never compared
+        return before >= 0 && after >= 0 && after > before * (1 + threshold);
+    }
+
+    private static String change(long before, long after, Object shown) {
+        String value = shown instanceof Double
+                           ? String.format("%.1f", (Double) shown)
+                           : String.valueOf(shown);
+        if (before <= 0 || after < 0) {
+            return value;
+        }
+        return String.format("%s %+.0f%%", value, (after - before) * 100.0 / before);
+    }
+
+    private static double megabytes(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    /**
+     * Usage: [options]
+     *   --corpus file          puzzles to run (default benchmarks/corpus.txt)
+     *   --puzzles a,b          only the named puzzles
+     *   --solvers a,b          only these solvers (tetris, polyomino, board,
+     *                            component, strip, portfolio)
+     *   --threads n            executor threads for the concurrent solvers
+     *   --warmup n             unmeasured runs first (default 1)
+     *   --runs n               measured runs, the median is kept (default 3)
+     *   --timeout seconds      per run (default 30)
+     *   --output file          write the results as JSON
+     *   --baseline file        compare against earlier results; exits with
+     *                            status 1 if anything regressed
+     *   --time-threshold f     allowed slowdown, as a fraction (default 0.10)
+     *   --nodes-threshold f    allowed extra nodes (default 0.05)
+     *   --alloc-threshold f    allowed extra allocation (default 0.10)
+     *   --heap-threshold f     allowed extra peak heap (default 0.25)
+     *   --min-millis n         ignore slowdowns smaller than this (default 20)
+     *   --min-bytes n          ignore memory growth smaller than this
+     *                            (default 1 MB)
+     */
+    public static void main(String[] args) throws Exception {
+        String corpusFile = "benchmarks/corpus.txt";
+        List<String> puzzleNames = null;
+        List<SolverKind> solvers = Arrays.asList(SolverKind.values());
+        Integer threads = null;
+        int warmup = 1;
+        int runs = 3;
+        long timeoutMillis = 30 * 1000L;
+        String outputFile = null;
+        String baselineFile = null;
+        Thresholds thresholds = new Thresholds();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--corpus")) {
+                corpusFile = args[++i];
+            } else if (args[i].equals("--puzzles")) {
+                puzzleNames = Arrays.asList(args[++i].split(","));
+            } else if (args[i].equals("--solvers")) {
+                solvers = new ArrayList<>();
+                for (String name : args[++i].split(",")) {
+                    solvers.add(SolverKind.forName(name));
+                }
+            } else if (args[i].equals("--threads")) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--warmup")) {
+                warmup = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--runs")) {
+                runs = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--timeout")) {
+                timeoutMillis = (long) (Double.parseDouble(args[++i]) * 1000);
+            } else if (args[i].equals("--output")) {
+                outputFile = args[++i];
+            } else if (args[i].equals("--baseline")) {
+                baselineFile = args[++i];
+            } else if (args[i].equals("--time-threshold")) {
+                thresholds.time = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--nodes-threshold")) {
+                thresholds.nodes = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--alloc-threshold")) {
+                thresholds.allocation = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--heap-threshold")) {
+                thresholds.heap = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--min-millis")) {
+                thresholds.minMillis = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--min-bytes")) {
+                thresholds.minBytes = Long.parseLong(args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        List<Puzzle> corpus;
+        try (Reader reader = new FileReader(corpusFile)) {
+            corpus = readCorpus(reader);
+        }
+        if (puzzleNames != null) {
+            List<Puzzle> selected = new ArrayList<>();
+            for (Puzzle p : corpus) {
+                if (puzzleNames.contains(p.name)) {
+                    selected.add(p);
+                }
+            }
+            corpus = selected;
+        }
+
+        Benchmark benchmark = new Benchmark(corpus, solvers);
+        if (threads != null) {
+            benchmark.setThreads(threads);
+        }
+        benchmark.setRuns(warmup, runs);
+        benchmark.setTimeout(timeoutMillis);
+
+        List<Result> results = benchmark.run();
+        for (Result r : results) {
+            System.out.println(String.format("%-12s %-10s %-10s %8d ms %12d nodes %10.1f MB allocated %8.1f MB peak heap",
+                                             r.puzzle, r.solver, r.status, r.wallMillis, r.nodes,
+                                             megabytes(r.allocatedBytes),
+                                             megabytes(r.peakHeapBytes)));
+        }
+
+        if (outputFile != null) {
+            try (Writer out = new BufferedWriter(new FileWriter(outputFile))) {
+                writeJson(results, out);
+            }
+            System.out.println("Results saved to " + outputFile);
+        }
+
+        if (baselineFile != null) {
+            List<Result> baseline;
+            try (Reader reader = new FileReader(baselineFile)) {
+                baseline = readJson(reader);
+            }
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+            out.write("\nCompared to " + baselineFile + ":\n");
+            int regressions = compare(baseline, results, thresholds, out);
+            out.write(regressions + " regression(s)\n");
+            out.flush();
+            if (regressions > 0) {
+                System.exit(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.budimana.tetris;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+
+/**
+ * Board state kept outside the Java heap, for boards too large for one
+ *   Tetronimo object per cell
+ *
+ * Each cell is packed into CELL_BYTES of a direct ByteBuffer:
+ *   byte 0 - flags: wall to the right, wall below, occupied
+ *   byte 1 - type of the piece covering the cell, -1 if blocked
+ *   bytes 2-5 - id of the piece covering the cell, -1 if none
+ * Cells are indexed in reading order: y * width + x
+ * The buffers are split into chunks of CHUNK_CELLS cells so a board can
+ *   have more cells than one buffer can address; heap use stays the same
+ *   whatever the size of the board
+ *
+ * Direct buffers count against -XX:MaxDirectMemorySize, which defaults to
+ *   the maximum heap size
+ */
+public class Board {
+
+    public static final int CELL_BYTES = 6;
+    static final int CHUNK_BITS = 24;
+    static final int CHUNK_CELLS = 1 << CHUNK_BITS;
+
+    private static final byte WALL_RIGHT = 1;
+    private static final byte WALL_DOWN = 2;
+    private static final byte OCCUPIED = 4;
+
+    private static final int TYPE = 1;
+    private static final int PIECE = 2;
+
+    public final int width;
+    public final int height;
+    public final int size;
+
+    private final ByteBuffer[] chunks;
+
+    public Board(int width, int height) {
+        if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bad board size: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.size = width * height;
+
+        int numChunks = (int) (((long) size + CHUNK_CELLS - 1) >>> CHUNK_BITS);
+        this.chunks = new ByteBuffer[numChunks];
+        for (int i = 0; i < numChunks; i++) {
+            int cells = Math.min(CHUNK_CELLS, size - i * CHUNK_CELLS);
+            chunks[i] = ByteBuffer.allocateDirect(cells * CELL_BYTES);
+        }
+        for (int cell = 0; cell < size; cell++) {
+            chunk(cell).putInt(offset(cell) + PIECE, -1);
+        }
+    }
+
+    /**
+     * Reads a restrictions file (see TetrisSolver) straight into a board,
+     *   without creating a Tetronimo per cell
+     */
+    public static Board read(String restrictionsFilename, int width, int height) throws IOException {
+        Board board = new Board(width, height);
+        try (BufferedReader br = new BufferedReader(new FileReader(restrictionsFilename))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int space = line.indexOf(' ');
+                int comma1 = line.indexOf(',');
+                int comma2 = line.indexOf(',', space);
+                int x1 = Integer.parseInt(line.substring(0, comma1));
+                int y1 = Integer.parseInt(line.substring(comma1 + 1, space));
+                int x2 = Integer.parseInt(line.substring(space + 1, comma2));
+                int y2 = Integer.parseInt(line.substring(comma2 + 1));
+                board.addWall(x1, y1, x2, y2);
+            }
+        }
+        return board;
+    }
+
+    public static Board fromWalls(Walls walls) {
+        Board board = new Board(walls.width, walls.height);
+        for (int y = 0; y < walls.height; y++) {
+            for (int x = 0; x < walls.width; x++) {
+                if (x + 1 < walls.width && walls.hasWallRight(x, y)) {
+                    board.addWall(x, y, x + 1, y);
+                }
+                if (y + 1 < walls.height && walls.hasWallDown(x, y)) {
+                    board.addWall(x, y, x, y + 1);
+                }
+            }
+        }
+        return board;
+    }
+
+    private ByteBuffer chunk(int cell) {
+        return chunks[cell >>> CHUNK_BITS];
+    }
+
+    private static int offset(int cell) {
+        return (cell & (CHUNK_CELLS - 1)) * CELL_BYTES;
+    }
+
+    private byte flags(int cell) {
+        return chunk(cell).get(offset(cell));
+    }
+
+    private void setFlag(int cell, byte flag, boolean value) {
+        ByteBuffer chunk = chunk(cell);
+        int offset = offset(cell);
+        byte flags = chunk.get(offset);
+        chunk.put(offset, (byte) (value ? flags | flag : flags & ~flag));
+    }
+
+    /**
+     * Adds a wall between two adjacent cells
+     */
+    public void addWall(int x1, int y1, int x2, int y2) {
+        if (Math.abs(x1 - x2) + Math.abs(y1 - y2) != 1 ||
+            Math.min(x1, x2) < 0 || Math.max(x1, x2) >= width ||
+            Math.min(y1, y2) < 0 || Math.max(y1, y2) >= height) {
+            throw new IllegalArgumentException("Not adjacent cells of the board: " +
+                                               x1 + "," + y1 + " " + x2 + "," + y2);
+        }
+        int cell = Math.min(y1, y2) * width + Math.min(x1, x2);
+        setFlag(cell, x1 != x2 ? WALL_RIGHT : WALL_DOWN, true);
+    }
+
+    public boolean hasWallRight(int cell) {
+        return (flags(cell) & WALL_RIGHT) != 0;
+    }
+
+    public boolean hasWallDown(int cell) {
+        return (flags(cell) & WALL_DOWN) != 0;
+    }
+
+    public boolean isOccupied(int cell) {
+        return (flags(cell) & OCCUPIED) != 0;
+    }
+
+    public byte getType(int cell) {
+        return chunk(cell).get(offset(cell) + TYPE);
+    }
+
+    public int getPiece(int cell) {
+        return chunk(cell).getInt(offset(cell) + PIECE);
+    }
+
+    /**
+     * Covers the cell with the given piece
+     */
+    public void place(int cell, int piece, int type) {
+        assert !isOccupied(cell);
+        ByteBuffer chunk = chunk(cell);
+        int offset = offset(cell);
+        chunk.put(offset, (byte) (chunk.get(offset) | OCCUPIED));
+        chunk.put(offset + TYPE, (byte) type);
+        chunk.putInt(offset + PIECE, piece);
+    }
+
+    /**
+     * Uncovers the cell; the walls stay
+     */
+    public void clear(int cell) {
+        ByteBuffer chunk = chunk(cell);
+        int offset = offset(cell);
+        chunk.put(offset, (byte) (chunk.get(offset) & ~OCCUPIED));
+        chunk.put(offset + TYPE, (byte) 0);
+        chunk.putInt(offset + PIECE, -1);
+    }
+
+    /**
+     * Takes the cell out of the puzzle, like PolyominoSolver.block
+     */
+    public void block(int cell) {
+        place(cell, -1, -1);
+    }
+
+    /**
+     * Copies the pieces into a Solution, which is on the heap
+     */
+    public Solution toSolution(int numPieces) {
+        int[] pieceIds = new int[size];
+        byte[] pieceTypes = new byte[numPieces];
+        for (int cell = 0; cell < size; cell++) {
+            int piece = getPiece(cell);
+            pieceIds[cell] = piece;
+            if (piece >= 0) {
+                pieceTypes[piece] = getType(cell);
+            }
+        }
+        return new Solution(width, height, pieceIds, pieceTypes);
+    }
+}
@@ -0,0 +1,452 @@
+package com.budimana.tetris;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+
+/**
+ * PolyominoSolver's search over an off-heap Board, for boards with too
+ *   many cells for a Tetronimo matrix or a PlacementTable
+ *
+ * Instead of a precomputed list of placements per cell, each orientation
+ *   of each type is a Template of offsets from the anchor, and the walls
+ *   are read from the board when a template is tried; the search stack
+ *   (anchor and next template per placed piece) is a direct buffer too,
+ *   so the heap only holds the templates
+ * Templates are tried in the order PlacementTable lists placements, so
+ *   both solvers explore the same nodes
+ */
+public class BoardSolver implements SolverEngine {
+
+    // how often the cancellation and deadline are checked
+    private static final long POLL_INTERVAL = 1 << 10;
+
+    // rows of walls the enclosed cell check looks at at once
+    private static final int BAND_ROWS = 64;
+
+    // main only prints solutions of boards up to this size
+    private static final long MAX_PRINTED_CELLS = 100 * 100;
+
+    private final Board board;
+    private final PieceCatalogue catalogue;
+    private final int width;
+    private final int height;
+    private final int size;
+    private final Template[] templates;
+
+    // search stack, anchor and next template for each placed piece
+    private final IntBuffer stack;
+    private int depth = 0;
+
+    private long nodesExplored = 0;
+    private long backtracks = 0;
+    private long deadline = Long.MAX_VALUE;
+    private CancellationToken cancellationToken;
+
+    /**
+     * One orientation of a type, relative to its anchor
+     */
+    static class Template {
+        final int type;
+        final int[] offsets;    // cell offsets from the anchor, reading order
+        final int minDx;
+        final int maxDx;
+        final int maxDy;
+        final int[] openRight;  // indices of cells whose right neighbour is in the piece
+        final int[] openDown;   // indices of cells whose lower neighbour is in the piece
+        final int[] borderDx;   // cells outside the piece sharing an edge
+        final int[] borderDy;
+
+        Template(int type, Polyomino.Orientation o, int width) {
+            this.type = type;
+            int n = o.size();
+            this.offsets = new int[n];
+            int minX = 0;
+            int maxX = 0;
+            int maxY = 0;
+            List<Integer> right = new ArrayList<>();
+            List<Integer> down = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                offsets[i] = o.dy[i] * width + o.dx[i];
+                minX = Math.min(minX, o.dx[i]);
+                maxX = Math.max(maxX, o.dx[i]);
+                maxY = Math.max(maxY, o.dy[i]);
+                if (indexOf(o, o.dx[i] + 1, o.dy[i]) >= 0) {
+                    right.add(i);
+                }
+                if (indexOf(o, o.dx[i], o.dy[i] + 1) >= 0) {
+                    down.add(i);
+                }
+            }
+            this.minDx = minX;
+            this.maxDx = maxX;
+            this.maxDy = maxY;
+            this.openRight = toArray(right);
+            this.openDown = toArray(down);
+
+            List<Integer> borderX = new ArrayList<>();
+            List<Integer> borderY = new ArrayList<>();
+            int[][] steps = { {-1, 0}, {1, 0}, {0, -1}, {0, 1} };
+            for (int i = 0; i < n; i++) {
+                for (int[] step : steps) {
+                    int bx = o.dx[i] + step[0];
+                    int by = o.dy[i] + step[1];
+                    boolean seen = indexOf(o, bx, by) >= 0;
+                    for (int j = 0; j < borderX.size() && !seen; j++) {
+                        seen = borderX.get(j) == bx && borderY.get(j) == by;
+                    }
+                    if (!seen) {
+                        borderX.add(bx);
+                        borderY.add(by);
+                    }
+                }
+            }
+            this.borderDx = toArray(borderX);
+            this.borderDy = toArray(borderY);
+        }
+
+        private static int indexOf(Polyomino.Orientation o, int dx, int dy) {
+            for (int i = 0; i < o.size(); i++) {
+                if (o.dx[i] == dx && o.dy[i] == dy) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static int[] toArray(List<Integer> list) {
+            int[] array = new int[list.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = list.get(i);
+            }
+            return array;
+        }
+    }
+
+    /**
+     * Searches a fresh Board made from the puzzle's walls
+     */
+    public BoardSolver(CompiledPuzzle puzzle) {
+        this(puzzle.createBoard(), puzzle.catalogue);
+    }
+
+    public BoardSolver(Board board, PieceCatalogue catalogue) {
+        this.board = board;
+        this.catalogue = catalogue;
+        this.width = board.width;
+        this.height = board.height;
+        this.size = board.size;
+
+        List<Template> all = new ArrayList<>();
+        for (int type = 0; type < catalogue.size(); type++) {
+            for (Polyomino.Orientation o : catalogue.get(type).getOrientations()) {
+                all.add(new Template(type, o, width));
+            }
+        }
+        this.templates = all.toArray(new Template[all.size()]);
+
+        long maxPieces = size / catalogue.getMinSize() + 1;
+        if (2 * 4 * (maxPieces + 1) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Board too large: " + width + "x" + height);
+        }
+        this.stack = ByteBuffer.allocateDirect((int) (2 * 4 * (maxPieces + 1))).asIntBuffer();
+    }
+
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    public long getNodesExplored() {
+        return nodesExplored;
+    }
+
+    public long getBacktracks() {
+        return backtracks;
+    }
+
+    /**
+     * Runs on the caller's thread, see SolverEngine
+     */
+    @Override
+    public SolveStatus solve(ExecutorService executor) {
+        return solve();
+    }
+
+    /**
+     * Depth-first search over placements, as in PolyominoSolver
+     * On SOLVED the board holds the solution (see getSolution)
+     */
+    public SolveStatus solve() {
+        if (!areaFits() || (catalogue.getMinSize() > 1 && hasClosedRoom())) {
+            return SolveStatus.UNSOLVABLE;
+        }
+
+        depth = 0;
+        setAnchor(0, nextEmpty(0));
+        setNextChoice(0, 0);
+
+        while (true) {
+            int anchor = getAnchor(depth);
+            if (anchor == size) {
+                return SolveStatus.SOLVED;
+            }
+
+            if ((++nodesExplored & (POLL_INTERVAL - 1)) == 0 && shouldStop()) {
+                return SolveStatus.UNKNOWN;
+            }
+
+            // find the next template at this anchor that fits
+            int choice = getNextChoice(depth);
+            while (choice < templates.length && !fits(templates[choice], anchor)) {
+                choice++;
+            }
+
+            if (choice < templates.length) {
+                setNextChoice(depth, choice + 1);
+                place(templates[choice], anchor);
+
+                depth++;
+                setAnchor(depth, nextEmpty(anchor + 1));
+                setNextChoice(depth, 0);
+            } else {
+                // nothing left at this anchor, undo the previous piece
+                if (depth == 0) {
+                    return SolveStatus.UNSOLVABLE;
+                }
+                depth--;
+                unplace(templates[getNextChoice(depth) - 1], getAnchor(depth));
+                backtracks++;
+            }
+        }
+    }
+
+    private int getAnchor(int d) {
+        return stack.get(2 * d);
+    }
+
+    private void setAnchor(int d, int cell) {
+        stack.put(2 * d, cell);
+    }
+
+    private int getNextChoice(int d) {
+        return stack.get(2 * d + 1);
+    }
+
+    private void setNextChoice(int d, int choice) {
+        stack.put(2 * d + 1, choice);
+    }
+
+    /**
+     * Cheap check that the board's area can be a sum of piece sizes
+     */
+    private boolean areaFits() {
+        int gcd = 0;
+        for (Polyomino p : catalogue.getTypes()) {
+            gcd = gcd(gcd, p.size());
+        }
+        int free = 0;
+        for (int cell = 0; cell < size; cell++) {
+            if (!board.isOccupied(cell)) {
+                free++;
+            }
+        }
+        return free % gcd == 0;
+    }
+
+    /**
+     * Whether the walls close off an empty cell on its own, or (when every
+     *   piece is bigger than two cells) two cells walled on three sides
+     *   that open into each other, see RowChecks
+     * The search would only find out when it got there, which on a large
+     *   board can take forever
+     */
+    private boolean hasClosedRoom() {
+        boolean pairs = catalogue.getMinSize() > 2;
+        RowChecks checks = RowChecks.get();
+        long[] enclosed = null;
+        long[] deadEnds = null;
+        for (int y0 = 0; y0 < height; y0 += BAND_ROWS) {
+            // include the row above the band, for the walls above its first row
+            int first = Math.max(0, y0 - 1);
+            WallRows band = WallRows.fromBoard(board, first, Math.min(height, y0 + BAND_ROWS) - first);
+            if (enclosed == null) {
+                enclosed = new long[band.wordsPerRow];
+                deadEnds = new long[band.wordsPerRow];
+            }
+
+            for (int y = y0 - first; y < band.height; y++) {
+                checks.openSides(band, y, enclosed, deadEnds);
+                for (int i = 0; i < enclosed.length; i++) {
+                    for (long bits = enclosed[i]; bits != 0; bits &= bits - 1) {
+                        int cell = (first + y) * width + (i << 6) + Long.numberOfTrailingZeros(bits);
+                        if (!board.isOccupied(cell)) {
+                            return true;
+                        }
+                    }
+                    for (long bits = pairs ? deadEnds[i] : 0; bits != 0; bits &= bits - 1) {
+                        int cell = (first + y) * width + (i << 6) + Long.numberOfTrailingZeros(bits);
+                        if (!board.isOccupied(cell) && openSides(openNeighbour(cell)) == 1) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sides of the cell with no wall or edge
+     */
+    private int openSides(int cell) {
+        int x = cell % width;
+        int open = 0;
+        if (x + 1 < width && !board.hasWallRight(cell)) {
+            open++;
+        }
+        if (x > 0 && !board.hasWallRight(cell - 1)) {
+            open++;
+        }
+        if (cell + width < size && !board.hasWallDown(cell)) {
+            open++;
+        }
+        if (cell >= width && !board.hasWallDown(cell - width)) {
+            open++;
+        }
+        return open;
+    }
+
+    /**
+     * The neighbour on the only open side of a cell walled on three sides
+     */
+    private int openNeighbour(int cell) {
+        int x = cell % width;
+        if (x + 1 < width && !board.hasWallRight(cell)) {
+            return cell + 1;
+        }
+        if (x > 0 && !board.hasWallRight(cell - 1)) {
+            return cell - 1;
+        }
+        if (cell + width < size && !board.hasWallDown(cell)) {
+            return cell + width;
+        }
+        return cell - width;
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    private boolean shouldStop() {
+        return (cancellationToken != null && cancellationToken.isCancelled()) ||
+               (deadline != Long.MAX_VALUE && System.currentTimeMillis() >= deadline);
+    }
+
+    /**
+     * The template stays on the board, doesn't cross a wall, only covers
+     *   empty cells and doesn't share an edge with a piece of the same type
+     */
+    private boolean fits(Template t, int anchor) {
+        int x = anchor % width;
+        int y = anchor / width;
+        if (x + t.minDx < 0 || x + t.maxDx >= width || y + t.maxDy >= height) {
+            return false;
+        }
+        for (int offset : t.offsets) {
+            if (board.isOccupied(anchor + offset)) {
+                return false;
+            }
+        }
+        for (int i : t.openRight) {
+            if (board.hasWallRight(anchor + t.offsets[i])) {
+                return false;
+            }
+        }
+        for (int i : t.openDown) {
+            if (board.hasWallDown(anchor + t.offsets[i])) {
+                return false;
+            }
+        }
+        for (int i = 0; i < t.borderDx.length; i++) {
+            int bx = x + t.borderDx[i];
+            int by = y + t.borderDy[i];
+            if (bx < 0 || bx >= width || by < 0 || by >= height) {
+                continue;
+            }
+            int cell = by * width + bx;
+            if (board.isOccupied(cell) && board.getType(cell) == t.type) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void place(Template t, int anchor) {
+        for (int offset : t.offsets) {
+            board.place(anchor + offset, depth, t.type);
+        }
+    }
+
+    private void unplace(Template t, int anchor) {
+        for (int offset : t.offsets) {
+            board.clear(anchor + offset);
+        }
+    }
+
+    /**
+     * First empty cell at or after the given cell, or size if there is none
+     */
+    private int nextEmpty(int from) {
+        int cell = from;
+        while (cell < size && board.isOccupied(cell)) {
+            cell++;
+        }
+        return cell;
+    }
+
+    /**
+     * Returns the solution found by the last successful solve
+     * Copies the whole board onto the heap, see Board.toSolution
+     */
+    public Solution getSolution() {
+        return board.toSolution(depth);
+    }
+
+    /**
+     * Usage: width height restrictionsFile [tetrominoes|pentominoes|mixed]
+     */
+    public static void main(String[] args) throws Exception {
+        assert args != null && args.length >= 3;
+        int width = Integer.parseInt(args[0]);
+        int height = Integer.parseInt(args[1]);
+        PieceCatalogue catalogue = PieceCatalogue.forName(args.length > 3
+                                                              ? args[3]
+                                                              : "tetrominoes");
+
+        Board board = Board.read(args[2], width, height);
+
+        long startTime = System.currentTimeMillis();
+        BoardSolver solver = new BoardSolver(board, catalogue);
+        SolveStatus status = solver.solve();
+        long endTime = System.currentTimeMillis();
+
+        System.out.println("status: " + status +
+                           ", nodes: " + solver.getNodesExplored());
+        System.out.println("Time taken: " + (endTime - startTime) / 1000.0);
+        if (status == SolveStatus.SOLVED && (long) width * height <= MAX_PRINTED_CELLS) {
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+            new SolutionRenderer().render(solver.getSolution(), out);
+            out.flush();
+        }
+    }
+}
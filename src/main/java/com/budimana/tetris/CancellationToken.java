@@ -0,0 +1,33 @@
+package com.budimana.tetris;
+
+
+/**
+ * Lets another thread ask a running search to give up
+ * The solver only polls the token every so often, so cancellation is
+ *   cooperative and takes effect within a few thousand nodes
+ */
+public class CancellationToken {
+
+    private final CancellationToken parent;
+    private volatile boolean cancelled = false;
+
+    public CancellationToken() {
+        this(null);
+    }
+
+    /**
+     * A token that is also cancelled when the parent is, so a group of
+     *   searches can be stopped together or one at a time
+     */
+    public CancellationToken(CancellationToken parent) {
+        this.parent = parent;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled || (parent != null && parent.isCancelled());
+    }
+}
@@ -0,0 +1,139 @@
+package com.budimana.tetris;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Snapshot of the search position so a long search can be resumed
+ *
+ * The position is the option index chosen at each tetronimo on the current
+ *   DFS path; since findSolution generates options deterministically from
+ *   the state, replaying those indices rebuilds the exact same state
+ * The puzzle hash guards against resuming on a different puzzle
+ *
+ * File format (one entry per line):
+ *   hash <puzzle hash in hex>
+ *   nodes <nodes explored so far>
+ *   path <comma separated option indices>
+ */
+public class Checkpoint {
+
+    public final long puzzleHash;
+    public final long nodesExplored;
+    public final int[] path;
+
+    public Checkpoint(long puzzleHash, long nodesExplored, int[] path) {
+        this.puzzleHash = puzzleHash;
+        this.nodesExplored = nodesExplored;
+        this.path = path;
+    }
+
+    /**
+     * Writes the checkpoint next to the target and renames it into place
+     *   so a crash never leaves a half written checkpoint behind
+     */
+    public void write(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (BufferedWriter w = new BufferedWriter(new FileWriter(tmp))) {
+            w.write("hash " + Long.toHexString(puzzleHash));
+            w.newLine();
+            w.write("nodes " + nodesExplored);
+            w.newLine();
+
+            StringBuilder sb = new StringBuilder("path ");
+            for (int i = 0; i < path.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(path[i]);
+            }
+            w.write(sb.toString());
+            w.newLine();
+        }
+
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // fall back for filesystems without atomic rename
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public static Checkpoint read(File file) throws IOException {
+        Long hash = null;
+        long nodes = 0;
+        int[] path = null;
+
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] entry = line.split(" ", 2);
+                String value = entry.length > 1 ? entry[1].trim() : "";
+                if (entry[0].equals("hash")) {
+                    hash = Long.parseUnsignedLong(value, 16);
+                } else if (entry[0].equals("nodes")) {
+                    nodes = Long.parseLong(value);
+                } else if (entry[0].equals("path")) {
+                    path = value.isEmpty()
+                               ? new int[0]
+                               : Arrays.stream(value.split(","))
+                                       .mapToInt(Integer::parseInt)
+                                       .toArray();
+                }
+            }
+        }
+
+        if (hash == null || path == null) {
+            throw new IOException("Malformed checkpoint: " + file);
+        }
+        return new Checkpoint(hash, nodes, path);
+    }
+
+    /**
+     * Hash of the dimensions and restrictions of a puzzle
+     * Stable across runs (FNV-1a over the cells in reading order)
+     */
+    public static long puzzleHash(Tetronimo[][] matrix,
+                                  Map<Tetronimo, List<Tetronimo>> restrictions) {
+        long hash = 0xcbf29ce484222325L;
+        hash = mix(hash, matrix.length);
+        hash = mix(hash, matrix[0].length);
+
+        for (int y = 0; y < matrix[0].length; y++) {
+            for (int x = 0; x < matrix.length; x++) {
+                Tetronimo t = matrix[x][y];
+                for (Tetronimo adj : new Tetronimo[] { t.getRight(matrix),
+                                                       t.getDown(matrix) }) {
+                    if (t.isRestricted(adj, restrictions)) {
+                        hash = mix(hash, x);
+                        hash = mix(hash, y);
+                        hash = mix(hash, adj.x);
+                        hash = mix(hash, adj.y);
+                    }
+                }
+            }
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, int value) {
+        for (int i = 0; i < 4; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
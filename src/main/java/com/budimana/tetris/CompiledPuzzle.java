@@ -0,0 +1,328 @@
+package com.budimana.tetris;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A puzzle with everything the solvers look up but never change worked
+ *   out once: the walls, what lies next to each cell, which options a
+ *   cell allows on its own, the TetrisSolver restrictions and the
+ *   PlacementTables
+ *
+ * Immutable, so one instance is shared by every solve of the puzzle and
+ *   by solvers running at the same time on other threads; the search
+ *   state of each attempt (a TetrisSolver matrix, a Board) is created
+ *   fresh from it, see createMatrix and createBoard
+ * compile keeps the last few puzzles, so solving the same walls again
+ *   costs nothing up front
+ *
+ * Cells are indexed in reading order: y * width + x
+ */
+public final class CompiledPuzzle {
+
+    // sides, in the order of the neighbour table
+    public static final int LEFT = 0;
+    public static final int UP = 1;
+    public static final int RIGHT = 2;
+    public static final int DOWN = 3;
+
+    private static final byte WALL_RIGHT = 1;
+    private static final byte WALL_DOWN = 2;
+
+    static final int CACHE_SIZE = 16;
+
+    private static final Map<Key, CompiledPuzzle> cache =
+        new LinkedHashMap<Key, CompiledPuzzle>(CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CompiledPuzzle> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+
+    public final int width;
+    public final int height;
+    public final int size;
+    public final PieceCatalogue catalogue;
+
+    private final Walls walls;
+
+    // walls to the right of and below each cell
+    private final byte[] wallBits;
+
+    // 4 per cell, by side: the neighbour's cell, or -1 past the edge or
+    //   across a wall
+    private final int[] neighbours;
+
+    // bit per OptionKind ordinal, the options the walls around a cell
+    //   allow before any piece is placed
+    private final byte[] optionMasks;
+
+    // built on first use, placements cost far more than the rest
+    private volatile PlacementTable placementTable;
+    private volatile PlacementTable[] regionTables;
+    private volatile Map<Tetronimo, List<Tetronimo>> restrictions;
+
+    private CompiledPuzzle(Walls walls, PieceCatalogue catalogue) {
+        this.width = walls.width;
+        this.height = walls.height;
+        this.size = width * height;
+        this.catalogue = catalogue;
+        this.walls = walls;
+
+        this.wallBits = new byte[size];
+        this.neighbours = new int[4 * size];
+        this.optionMasks = new byte[size];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int cell = y * width + x;
+                wallBits[cell] = (byte) ((walls.hasWallRight(x, y) ? WALL_RIGHT : 0) |
+                                         (walls.hasWallDown(x, y) ? WALL_DOWN : 0));
+
+                neighbours[4 * cell + LEFT] = x > 0 && !walls.hasWallRight(x - 1, y) ? cell - 1 : -1;
+                neighbours[4 * cell + UP] = y > 0 && !walls.hasWallDown(x, y - 1) ? cell - width : -1;
+                neighbours[4 * cell + RIGHT] = x < width - 1 && !walls.hasWallRight(x, y) ? cell + 1 : -1;
+                neighbours[4 * cell + DOWN] = y < height - 1 && !walls.hasWallDown(x, y) ? cell + width : -1;
+
+                int mask = 1 << OptionKind.NEW.ordinal();
+                boolean left = neighbours[4 * cell + LEFT] >= 0;
+                boolean up = neighbours[4 * cell + UP] >= 0;
+                if (left) {
+                    mask |= 1 << OptionKind.LEFT.ordinal();
+                }
+                if (up) {
+                    mask |= 1 << OptionKind.UP.ordinal();
+                }
+                if (left && up) {
+                    mask |= 1 << OptionKind.MERGE.ordinal();
+                }
+                optionMasks[cell] = (byte) mask;
+            }
+        }
+    }
+
+    /**
+     * The compiled puzzle for the given walls, from the cache if the same
+     *   walls and catalogue were compiled recently
+     * The walls are copied, later changes to them don't affect the result
+     */
+    public static CompiledPuzzle compile(Walls walls, PieceCatalogue catalogue) {
+        Key key = new Key(walls.copy(), catalogue);
+        synchronized (cache) {
+            CompiledPuzzle puzzle = cache.get(key);
+            if (puzzle != null) {
+                return puzzle;
+            }
+        }
+
+        // compiled outside the lock; a puzzle compiled twice at the same
+        //   time keeps whichever got in first
+        CompiledPuzzle compiled = new CompiledPuzzle(key.walls, catalogue);
+        synchronized (cache) {
+            CompiledPuzzle puzzle = cache.get(key);
+            if (puzzle != null) {
+                return puzzle;
+            }
+            cache.put(key, compiled);
+            return compiled;
+        }
+    }
+
+    /**
+     * Reads a restrictions file as TetrisSolver does and compiles it
+     */
+    public static CompiledPuzzle read(String restrictionsFilename,
+                                      int width,
+                                      int height,
+                                      PieceCatalogue catalogue) throws IOException {
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(width, height);
+        Map<Tetronimo, List<Tetronimo>> restrictions =
+            TetrisSolver.parseRestrictions(restrictionsFilename, matrix);
+        return compile(Walls.fromRestrictions(matrix, restrictions), catalogue);
+    }
+
+    static void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * A copy of the walls, free to change
+     */
+    public Walls getWalls() {
+        return walls.copy();
+    }
+
+    /**
+     * The walls themselves, for solvers in this package that only read
+     *   them
+     */
+    Walls sharedWalls() {
+        return walls;
+    }
+
+    public boolean hasWallRight(int cell) {
+        return (wallBits[cell] & WALL_RIGHT) != 0;
+    }
+
+    public boolean hasWallDown(int cell) {
+        return (wallBits[cell] & WALL_DOWN) != 0;
+    }
+
+    /**
+     * The cell on the given side (LEFT, UP, RIGHT or DOWN) that may be in
+     *   the same piece, -1 if it is past the edge or across a wall
+     */
+    public int getNeighbour(int cell, int side) {
+        return neighbours[4 * cell + side];
+    }
+
+    /**
+     * Whether the walls around the cell allow the option at all; an
+     *   allowed option can still fail on the pieces placed so far
+     */
+    public boolean allows(int cell, OptionKind kind) {
+        return (optionMasks[cell] & (1 << kind.ordinal())) != 0;
+    }
+
+    /**
+     * Every placement of the catalogue on the board, shared by all the
+     *   solvers of this puzzle
+     */
+    public PlacementTable getPlacementTable() {
+        PlacementTable table = placementTable;
+        if (table == null) {
+            synchronized (this) {
+                table = placementTable;
+                if (table == null) {
+                    table = new PlacementTable(walls, catalogue);
+                    placementTable = table;
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * A PlacementTable per region the walls cut the board into, see
+     *   ComponentSolver.createRegionTables
+     */
+    PlacementTable[] getRegionTables() {
+        PlacementTable[] tables = regionTables;
+        if (tables == null) {
+            synchronized (this) {
+                tables = regionTables;
+                if (tables == null) {
+                    tables = ComponentSolver.createRegionTables(walls, catalogue);
+                    regionTables = tables;
+                }
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * A fresh TetrisSolver matrix for one search
+     */
+    public Tetronimo[][] createMatrix() {
+        return TetrisSolver.createMatrix(width, height);
+    }
+
+    /**
+     * The walls as TetrisSolver restrictions, in both directions as
+     *   TetrisSolver.parseRestrictions gives them; tetronimos are equal by
+     *   position, so the one read-only map serves every matrix of this size
+     */
+    public Map<Tetronimo, List<Tetronimo>> getRestrictions() {
+        Map<Tetronimo, List<Tetronimo>> map = restrictions;
+        if (map == null) {
+            synchronized (this) {
+                map = restrictions;
+                if (map == null) {
+                    map = Collections.unmodifiableMap(createRestrictions(createMatrix()));
+                    restrictions = map;
+                }
+            }
+        }
+        return map;
+    }
+
+    private Map<Tetronimo, List<Tetronimo>> createRestrictions(Tetronimo[][] matrix) {
+        Map<Tetronimo, List<Tetronimo>> restrictions = new HashMap<>();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int cell = y * width + x;
+                if (x < width - 1 && hasWallRight(cell)) {
+                    addRestriction(restrictions, matrix[x][y], matrix[x + 1][y]);
+                    addRestriction(restrictions, matrix[x + 1][y], matrix[x][y]);
+                }
+                if (y < height - 1 && hasWallDown(cell)) {
+                    addRestriction(restrictions, matrix[x][y], matrix[x][y + 1]);
+                    addRestriction(restrictions, matrix[x][y + 1], matrix[x][y]);
+                }
+            }
+        }
+        return restrictions;
+    }
+
+    private static void addRestriction(Map<Tetronimo, List<Tetronimo>> restrictions,
+                                       Tetronimo t1,
+                                       Tetronimo t2) {
+        List<Tetronimo> list = restrictions.get(t1);
+        if (list == null) {
+            list = new ArrayList<>();
+            restrictions.put(t1, list);
+        }
+        list.add(t2);
+    }
+
+    /**
+     * A fresh Board for one BoardSolver search
+     */
+    public Board createBoard() {
+        return Board.fromWalls(walls);
+    }
+
+    /**
+     * Walls and catalogue, compared by value: catalogues are compared by
+     *   their shapes since PieceCatalogue.tetrominoes() makes a new one
+     *   each call
+     */
+    private static final class Key {
+        final Walls walls;
+        final String shapes;
+
+        Key(Walls walls, PieceCatalogue catalogue) {
+            this.walls = walls;
+            StringBuilder sb = new StringBuilder();
+            for (Polyomino p : catalogue.getTypes()) {
+                sb.append(p.name);
+                for (Polyomino.Orientation o : p.getOrientations()) {
+                    sb.append(' ').append(o.width).append(':').append(Long.toHexString(o.mask));
+                }
+                sb.append(';');
+            }
+            this.shapes = sb.toString();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return walls.equals(other.walls) && shapes.equals(other.shapes);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * walls.hashCode() + shapes.hashCode();
+        }
+    }
+}
@@ -0,0 +1,416 @@
+package com.budimana.tetris;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Splits a board into the regions the walls cut it into and solves the
+ *   regions concurrently, each with its own PolyominoSolver
+ *
+ * No piece can cross a wall, so a region is tiled independently of the
+ *   others, and a region without a tiling means the board has none
+ *   (the solve fails as soon as any region fails)
+ * The same-type rule does still apply across walls though, so after
+ *   stitching the regions together the pieces along the cuts are checked;
+ *   if two regions happen to put the same type on either side of a wall,
+ *   the whole board is searched again in one piece
+ */
+public class ComponentSolver implements SolverEngine {
+
+    private final Walls walls;
+    private final PieceCatalogue catalogue;
+    private final CompiledPuzzle puzzle;  // null unless built from one
+
+    // region of each cell, in reading order
+    private final int[] components;
+    private final int componentCount;
+
+    // PlacementTable of each region, from the puzzle or built on the
+    //   first solve
+    private PlacementTable[] regionTables;
+
+    private long deadline = Long.MAX_VALUE;
+    private CancellationToken cancellationToken;
+    private Solution solution;
+    private boolean usedFallback = false;
+    private final AtomicLong nodesExplored = new AtomicLong();
+
+    /**
+     * The whole board fallback uses the puzzle's shared PlacementTable
+     */
+    public ComponentSolver(CompiledPuzzle puzzle) {
+        this(puzzle.sharedWalls(), puzzle.catalogue, puzzle);
+    }
+
+    public ComponentSolver(Walls walls, PieceCatalogue catalogue) {
+        this(walls, catalogue, null);
+    }
+
+    private ComponentSolver(Walls walls, PieceCatalogue catalogue, CompiledPuzzle puzzle) {
+        this.walls = walls;
+        this.catalogue = catalogue;
+        this.puzzle = puzzle;
+        this.components = findComponents(walls);
+        this.componentCount = countComponents(components);
+    }
+
+    private static int countComponents(int[] components) {
+        int count = 0;
+        for (int c : components) {
+            count = Math.max(count, c + 1);
+        }
+        return count;
+    }
+
+    /**
+     * Labels each cell with its region, numbered in reading order of
+     *   the region's first cell
+     */
+    public static int[] findComponents(Walls walls) {
+        int width = walls.width;
+        int size = width * walls.height;
+        int[] components = new int[size];
+        Arrays.fill(components, -1);
+
+        int[] stack = new int[size];
+        int count = 0;
+        for (int start = 0; start < size; start++) {
+            if (components[start] >= 0) {
+                continue;
+            }
+
+            // flood fill through the open edges
+            int top = 0;
+            stack[top++] = start;
+            components[start] = count;
+            while (top > 0) {
+                int cell = stack[--top];
+                int x = cell % width;
+                int y = cell / width;
+                if (x > 0 && !walls.hasWallRight(x - 1, y)) {
+                    top = visit(components, stack, top, cell - 1, count);
+                }
+                if (x < width - 1 && !walls.hasWallRight(x, y)) {
+                    top = visit(components, stack, top, cell + 1, count);
+                }
+                if (y > 0 && !walls.hasWallDown(x, y - 1)) {
+                    top = visit(components, stack, top, cell - width, count);
+                }
+                if (y < walls.height - 1 && !walls.hasWallDown(x, y)) {
+                    top = visit(components, stack, top, cell + width, count);
+                }
+            }
+            count++;
+        }
+        return components;
+    }
+
+    private static int visit(int[] components, int[] stack, int top, int cell, int component) {
+        if (components[cell] < 0) {
+            components[cell] = component;
+            stack[top++] = cell;
+        }
+        return top;
+    }
+
+    /**
+     * Bounding box of each region, as {minX, minY, maxX, maxY}
+     */
+    private static int[][] regionBounds(int[] components, int count, int width) {
+        int[][] bounds = new int[count][];
+        for (int cell = 0; cell < components.length; cell++) {
+            int x = cell % width;
+            int y = cell / width;
+            int[] b = bounds[components[cell]];
+            if (b == null) {
+                bounds[components[cell]] = new int[] { x, y, x, y };
+            } else {
+                b[0] = Math.min(b[0], x);
+                b[1] = Math.min(b[1], y);
+                b[2] = Math.max(b[2], x);
+                b[3] = Math.max(b[3], y);
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * A PlacementTable per region, on the region's bounding box with the
+     *   walls inside it; the cells of other regions in the box are
+     *   blocked by each search instead
+     * The regions only depend on the walls, so the tables are kept across
+     *   solves (on the CompiledPuzzle when there is one)
+     */
+    static PlacementTable[] createRegionTables(Walls walls, PieceCatalogue catalogue) {
+        int[] components = findComponents(walls);
+        int[][] bounds = regionBounds(components, countComponents(components), walls.width);
+        PlacementTable[] tables = new PlacementTable[bounds.length];
+        for (int c = 0; c < bounds.length; c++) {
+            int minX = bounds[c][0];
+            int minY = bounds[c][1];
+            int width = bounds[c][2] - minX + 1;
+            int height = bounds[c][3] - minY + 1;
+
+            Walls regionWalls = new Walls(width, height);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    if (x + 1 < width && walls.hasWallRight(minX + x, minY + y)) {
+                        regionWalls.add(x, y, x + 1, y);
+                    }
+                    if (y + 1 < height && walls.hasWallDown(minX + x, minY + y)) {
+                        regionWalls.add(x, y, x, y + 1);
+                    }
+                }
+            }
+            tables[c] = new PlacementTable(regionWalls, catalogue);
+        }
+        return tables;
+    }
+
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    public int getComponent(int x, int y) {
+        return components[y * walls.width + x];
+    }
+
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    /**
+     * True if the stitched regions clashed and the board was solved whole
+     */
+    public boolean usedFallback() {
+        return usedFallback;
+    }
+
+    public Solution getSolution() {
+        return solution;
+    }
+
+    /**
+     * Nodes explored by all the region searches, and the fallback if any
+     */
+    public long getNodesExplored() {
+        return nodesExplored.get();
+    }
+
+    /**
+     * Solves the regions on the given executor
+     */
+    public SolveStatus solve(ExecutorService executor) throws InterruptedException {
+        solution = null;
+        usedFallback = false;
+        nodesExplored.set(0);
+        if (shouldStop()) {
+            return SolveStatus.UNKNOWN;
+        }
+
+        // stop the remaining regions as soon as one fails
+        CancellationToken regionsToken = new CancellationToken(cancellationToken);
+        CompletionService<Region> completion = new ExecutorCompletionService<>(executor);
+        List<Future<Region>> futures = new ArrayList<>(componentCount);
+        for (Region region : createRegions()) {
+            futures.add(completion.submit(() -> region.solve(regionsToken)));
+        }
+
+        List<Region> solved = new ArrayList<>(componentCount);
+        try {
+            for (int i = 0; i < componentCount; i++) {
+                Region region = completion.take().get();
+                if (region.status == SolveStatus.UNSOLVABLE) {
+                    return SolveStatus.UNSOLVABLE;
+                }
+                if (region.status == SolveStatus.SOLVED) {
+                    solved.add(region);
+                } else if (!regionsToken.isCancelled()) {
+                    // ran out of time rather than stopped by a failed region
+                    return SolveStatus.UNKNOWN;
+                }
+            }
+            if (solved.size() < componentCount || shouldStop()) {
+                return SolveStatus.UNKNOWN;
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Solving a region failed", e.getCause());
+        } finally {
+            regionsToken.cancel();
+            for (Future<Region> f : futures) {
+                f.cancel(false);
+            }
+        }
+
+        solution = stitch(solved);
+        if (solution.isValid(walls, catalogue)) {
+            return SolveStatus.SOLVED;
+        }
+
+        // regions clash across a wall, fall back to the whole board
+        usedFallback = true;
+        solution = null;
+        PolyominoSolver whole = new PolyominoSolver(puzzle != null
+                                                        ? puzzle.getPlacementTable()
+                                                        : new PlacementTable(walls, catalogue));
+        whole.setDeadline(deadline);
+        whole.setCancellationToken(cancellationToken);
+        SolveStatus status = whole.solve();
+        nodesExplored.addAndGet(whole.getNodesExplored());
+        if (status == SolveStatus.SOLVED) {
+            solution = whole.getSolution();
+        }
+        return status;
+    }
+
+    private boolean shouldStop() {
+        return (cancellationToken != null && cancellationToken.isCancelled()) ||
+               (deadline != Long.MAX_VALUE && System.currentTimeMillis() >= deadline);
+    }
+
+    /**
+     * A region cut out of the board: its bounding box, with the cells of
+     *   other regions blocked
+     */
+    private class Region {
+        final int component;
+        final int minX;
+        final int minY;
+        final PlacementTable table;
+
+        SolveStatus status;
+        Solution solution;
+
+        Region(int component, int[] bounds, PlacementTable table) {
+            this.component = component;
+            this.minX = bounds[0];
+            this.minY = bounds[1];
+            this.table = table;
+        }
+
+        Region solve(CancellationToken regionsToken) {
+            int width = table.width;
+            int height = table.height;
+
+            PolyominoSolver solver = new PolyominoSolver(table);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    if (getComponent(minX + x, minY + y) != component) {
+                        solver.block(y * width + x);
+                    }
+                }
+            }
+            solver.setDeadline(deadline);
+            solver.setCancellationToken(regionsToken);
+
+            status = solver.solve();
+            nodesExplored.addAndGet(solver.getNodesExplored());
+            if (status == SolveStatus.SOLVED) {
+                solution = solver.getSolution();
+            } else if (status == SolveStatus.UNSOLVABLE) {
+                regionsToken.cancel();  // fail fast
+            }
+            return this;
+        }
+    }
+
+    private List<Region> createRegions() {
+        if (regionTables == null) {
+            regionTables = puzzle != null
+                               ? puzzle.getRegionTables()
+                               : createRegionTables(walls, catalogue);
+        }
+        int[][] bounds = regionBounds(components, componentCount, walls.width);
+        List<Region> regions = new ArrayList<>(componentCount);
+        for (int c = 0; c < componentCount; c++) {
+            regions.add(new Region(c, bounds[c], regionTables[c]));
+        }
+        return regions;
+    }
+
+    /**
+     * Copies each region's pieces into one solution for the whole board
+     */
+    private Solution stitch(List<Region> regions) {
+        int[] pieceIds = new int[walls.width * walls.height];
+        int pieceCount = 0;
+        for (Region r : regions) {
+            pieceCount += r.solution.getPieceCount();
+        }
+        byte[] pieceTypes = new byte[pieceCount];
+
+        int offset = 0;
+        for (Region r : regions) {
+            Solution s = r.solution;
+            for (int y = 0; y < s.height; y++) {
+                for (int x = 0; x < s.width; x++) {
+                    int id = s.getPieceId(x, y);
+                    if (id >= 0) {
+                        pieceIds[(r.minY + y) * walls.width + r.minX + x] = offset + id;
+                    }
+                }
+            }
+            for (int id = 0; id < s.getPieceCount(); id++) {
+                pieceTypes[offset + id] = (byte) s.getPieceType(id);
+            }
+            offset += s.getPieceCount();
+        }
+        return new Solution(walls.width, walls.height, pieceIds, pieceTypes);
+    }
+
+    /**
+     * Usage: width height restrictionsFile [tetrominoes|pentominoes|mixed]
+     */
+    public static void main(String[] args) throws Exception {
+        assert args != null && args.length >= 3;
+        int width = Integer.parseInt(args[0]);
+        int height = Integer.parseInt(args[1]);
+        PieceCatalogue catalogue = PieceCatalogue.forName(args.length > 3
+                                                              ? args[3]
+                                                              : "tetrominoes");
+
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(width, height);
+        Map<Tetronimo, List<Tetronimo>> restrictions =
+            TetrisSolver.parseRestrictions(args[2], matrix);
+        Walls walls = Walls.fromRestrictions(matrix, restrictions);
+
+        long startTime = System.currentTimeMillis();
+        ComponentSolver solver = new ComponentSolver(walls, catalogue);
+        System.out.println("Regions: " + solver.getComponentCount());
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        SolveStatus status;
+        try {
+            status = solver.solve(executor);
+        } finally {
+            executor.shutdownNow();
+        }
+        long endTime = System.currentTimeMillis();
+
+        System.out.println("status: " + status +
+                           (solver.usedFallback() ? " (regions clashed, solved whole)" : ""));
+        System.out.println("Time taken: " + (endTime - startTime) / 1000.0);
+        if (status == SolveStatus.SOLVED) {
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+            new SolutionRenderer().render(solver.getSolution(), out);
+            out.flush();
+        }
+    }
+}
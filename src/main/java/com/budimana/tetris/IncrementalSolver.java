@@ -0,0 +1,339 @@
+package com.budimana.tetris;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Keeps a solution up to date while the walls change one edit at a time
+ *
+ * Removing a wall never breaks a solution; adding one breaks the piece it
+ *   runs through. Those pieces are cleared along with the pieces around
+ *   them, and only that region is solved again (with PolyominoSolver, on
+ *   the region's bounding box) while the rest of the board stays fixed
+ * If the region can't be tiled it grows by 1, 2, 4, ... layers of
+ *   neighbouring pieces until it is the whole board, where the answer is
+ *   final
+ */
+public class IncrementalSolver {
+
+    /**
+     * A wall added or removed between two adjacent cells
+     */
+    public static class Edit {
+        public final int x1;
+        public final int y1;
+        public final int x2;
+        public final int y2;
+        public final boolean added;
+
+        public Edit(int x1, int y1, int x2, int y2, boolean added) {
+            if (Math.abs(x1 - x2) + Math.abs(y1 - y2) != 1) {
+                throw new IllegalArgumentException("Not adjacent cells: " +
+                                                   x1 + "," + y1 + " " + x2 + "," + y2);
+            }
+            this.x1 = x1;
+            this.y1 = y1;
+            this.x2 = x2;
+            this.y2 = y2;
+            this.added = added;
+        }
+
+        public static Edit add(int x1, int y1, int x2, int y2) {
+            return new Edit(x1, y1, x2, y2, true);
+        }
+
+        public static Edit remove(int x1, int y1, int x2, int y2) {
+            return new Edit(x1, y1, x2, y2, false);
+        }
+    }
+
+    private final Walls walls;
+    private final PieceCatalogue catalogue;
+    private Solution solution;  // null if the puzzle has none
+
+    private long deadline = Long.MAX_VALUE;
+    private long nodesExplored = 0;
+    private int lastRegionCells = 0;
+    private int lastAttempts = 0;
+
+    /**
+     * Starts from a solution of the given walls, or null if they have none
+     * The walls are copied, edits don't change the caller's
+     */
+    public IncrementalSolver(Walls walls, PieceCatalogue catalogue, Solution solution) {
+        assert solution == null || solution.isValid(walls, catalogue);
+        this.walls = walls.copy();
+        this.catalogue = catalogue;
+        this.solution = solution;
+    }
+
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    public Walls getWalls() {
+        return walls;
+    }
+
+    /**
+     * The solution after the last edit, or null if there is none
+     */
+    public Solution getSolution() {
+        return solution;
+    }
+
+    public long getNodesExplored() {
+        return nodesExplored;
+    }
+
+    /**
+     * Cells re-solved by the last apply, 0 if the solution still held
+     */
+    public int getLastRegionCells() {
+        return lastRegionCells;
+    }
+
+    /**
+     * Regions tried by the last apply
+     */
+    public int getLastAttempts() {
+        return lastAttempts;
+    }
+
+    public SolveStatus apply(Edit... delta) {
+        return apply(Arrays.asList(delta));
+    }
+
+    /**
+     * Applies the edits to the walls and repairs the solution
+     * On UNKNOWN (the deadline passed) the edits are undone, so the walls
+     *   and the solution are both as they were before
+     */
+    public SolveStatus apply(List<Edit> delta) {
+        boolean[] wasOpen = new boolean[delta.size()];
+        for (int i = 0; i < delta.size(); i++) {
+            Edit e = delta.get(i);
+            wasOpen[i] = walls.isOpen(e.x1, e.y1, e.x2, e.y2);
+            if (e.added) {
+                walls.add(e.x1, e.y1, e.x2, e.y2);
+            } else {
+                walls.remove(e.x1, e.y1, e.x2, e.y2);
+            }
+        }
+        lastRegionCells = 0;
+        lastAttempts = 0;
+
+        SolveStatus status = repair(delta);
+        if (status == SolveStatus.UNKNOWN) {
+            for (int i = delta.size() - 1; i >= 0; i--) {
+                Edit e = delta.get(i);
+                if (wasOpen[i]) {
+                    walls.remove(e.x1, e.y1, e.x2, e.y2);
+                } else {
+                    walls.add(e.x1, e.y1, e.x2, e.y2);
+                }
+            }
+        }
+        return status;
+    }
+
+    private SolveStatus repair(List<Edit> delta) {
+
+        if (solution == null) {
+            // only removed walls could have made it solvable
+            return solveRegion(null);
+        }
+
+        // pieces a new wall runs through
+        boolean[] invalid = new boolean[solution.getPieceCount()];
+        boolean anyInvalid = false;
+        for (Edit e : delta) {
+            int id = solution.getPieceId(e.x1, e.y1);
+            if (e.added && !walls.isOpen(e.x1, e.y1, e.x2, e.y2) &&
+                id >= 0 && id == solution.getPieceId(e.x2, e.y2)) {
+                invalid[id] = true;
+                anyInvalid = true;
+            }
+        }
+        if (!anyInvalid) {
+            return SolveStatus.SOLVED;
+        }
+
+        int previousCells = 0;
+        for (int layers = 1; ; layers *= 2) {
+            SolveStatus status = solveRegion(grow(invalid, layers));
+            if (status != SolveStatus.UNSOLVABLE || solution == null) {
+                return status;
+            }
+            if (lastRegionCells == previousCells) {
+                break;  // the region stopped growing
+            }
+            previousCells = lastRegionCells;
+        }
+        return solveRegion(null);
+    }
+
+    /**
+     * Clears the pieces marked in cleared and tiles that region again
+     * A null array means the whole board
+     */
+    private SolveStatus solveRegion(boolean[] cleared) {
+        int width = walls.width;
+        int height = walls.height;
+
+        // bounding box of the cleared cells, plus a cell of fixed pieces
+        //   around it for the same-type rule
+        int minX = width;
+        int minY = height;
+        int maxX = -1;
+        int maxY = -1;
+        int regionCells = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (isCleared(cleared, x, y)) {
+                    minX = Math.min(minX, x);
+                    minY = Math.min(minY, y);
+                    maxX = Math.max(maxX, x);
+                    maxY = Math.max(maxY, y);
+                    regionCells++;
+                }
+            }
+        }
+        minX = Math.max(0, minX - 1);
+        minY = Math.max(0, minY - 1);
+        maxX = Math.min(width - 1, maxX + 1);
+        maxY = Math.min(height - 1, maxY + 1);
+        int boxWidth = maxX - minX + 1;
+        int boxHeight = maxY - minY + 1;
+
+        Walls boxWalls = new Walls(boxWidth, boxHeight);
+        for (int y = 0; y < boxHeight; y++) {
+            for (int x = 0; x < boxWidth; x++) {
+                if (x + 1 < boxWidth && walls.hasWallRight(minX + x, minY + y)) {
+                    boxWalls.add(x, y, x + 1, y);
+                }
+                if (y + 1 < boxHeight && walls.hasWallDown(minX + x, minY + y)) {
+                    boxWalls.add(x, y, x, y + 1);
+                }
+            }
+        }
+
+        PolyominoSolver solver = new PolyominoSolver(new PlacementTable(boxWalls, catalogue));
+        for (int y = 0; y < boxHeight; y++) {
+            for (int x = 0; x < boxWidth; x++) {
+                if (!isCleared(cleared, minX + x, minY + y)) {
+                    int id = solution.getPieceId(minX + x, minY + y);
+                    if (id < 0) {
+                        solver.block(y * boxWidth + x);
+                    } else {
+                        solver.fix(y * boxWidth + x, solution.getPieceType(id));
+                    }
+                }
+            }
+        }
+        solver.setDeadline(deadline);
+
+        lastAttempts++;
+        lastRegionCells = regionCells;
+        SolveStatus status = solver.solve();
+        nodesExplored += solver.getNodesExplored();
+
+        if (status == SolveStatus.SOLVED) {
+            solution = stitch(cleared, solver.getSolution(), minX, minY);
+        } else if (status == SolveStatus.UNSOLVABLE && regionCells == width * height) {
+            solution = null;
+        }
+        return status;
+    }
+
+    private boolean isCleared(boolean[] cleared, int x, int y) {
+        if (cleared == null) {
+            return true;
+        }
+        int id = solution.getPieceId(x, y);
+        return id >= 0 && cleared[id];
+    }
+
+    /**
+     * The pieces within the given number of steps (across shared edges)
+     *   of an invalid piece
+     */
+    private boolean[] grow(boolean[] invalid, int layers) {
+        int width = walls.width;
+        int height = walls.height;
+        boolean[] region = invalid.clone();
+        for (int layer = 0; layer < layers; layer++) {
+            boolean[] next = region.clone();
+            boolean changed = false;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int id = solution.getPieceId(x, y);
+                    if (id < 0 || !region[id]) {
+                        continue;
+                    }
+                    int[][] neighbours = { {x - 1, y}, {x + 1, y}, {x, y - 1}, {x, y + 1} };
+                    for (int[] n : neighbours) {
+                        if (n[0] >= 0 && n[0] < width && n[1] >= 0 && n[1] < height) {
+                            int adj = solution.getPieceId(n[0], n[1]);
+                            if (adj >= 0 && !next[adj]) {
+                                next[adj] = true;
+                                changed = true;
+                            }
+                        }
+                    }
+                }
+            }
+            region = next;
+            if (!changed) {
+                break;
+            }
+        }
+        return region;
+    }
+
+    /**
+     * Keeps the pieces outside the region and adds the region's new ones,
+     *   numbering the pieces again from 0
+     */
+    private Solution stitch(boolean[] cleared, Solution box, int minX, int minY) {
+        int width = walls.width;
+        int height = walls.height;
+        int[] pieceIds = new int[width * height];
+        List<Integer> types = new ArrayList<>();
+
+        int[] keptIds = new int[solution == null ? 0 : solution.getPieceCount()];
+        Arrays.fill(keptIds, -1);
+        int[] boxIds = new int[box.getPieceCount()];
+        Arrays.fill(boxIds, -1);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int id;
+                if (isCleared(cleared, x, y)) {
+                    int old = box.getPieceId(x - minX, y - minY);
+                    if (boxIds[old] < 0) {
+                        boxIds[old] = types.size();
+                        types.add(box.getPieceType(old));
+                    }
+                    id = boxIds[old];
+                } else {
+                    int old = solution.getPieceId(x, y);
+                    if (old >= 0 && keptIds[old] < 0) {
+                        keptIds[old] = types.size();
+                        types.add(solution.getPieceType(old));
+                    }
+                    id = old < 0 ? -1 : keptIds[old];
+                }
+                pieceIds[y * width + x] = id;
+            }
+        }
+
+        byte[] pieceTypes = new byte[types.size()];
+        for (int i = 0; i < pieceTypes.length; i++) {
+            pieceTypes[i] = (byte) (int) types.get(i);
+        }
+        return new Solution(width, height, pieceIds, pieceTypes);
+    }
+}
@@ -0,0 +1,687 @@
+package com.budimana.tetris;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+
+
+/**
+ * Anytime solver: keeps a tiling that may break the rules and repairs it
+ *   until it has no violations left or the time runs out
+ *
+ * Violations are counted the same way as Solution.countViolations:
+ *   uncovered cells, walls running through a piece, and edges shared by
+ *   two pieces of the same type (pieces are always catalogue shapes, and
+ *   never overlap)
+ *
+ * High-level view of algorithm (min-conflicts with a random walk)
+ *   1 - Start from a greedy tiling, or from a given solution
+ *   2 - Pick a random cell that is part of a violation
+ *   3 - Of all the placements covering that cell, put down the one that
+ *       leaves the fewest violations, pushing aside the pieces it
+ *       overlaps (ties are broken at random, and with probability noise
+ *       a random placement is put down instead)
+ *   4 - Repeat until there are no violations, the deadline passes or the
+ *       move limit is reached
+ *
+ * It can't prove a puzzle unsolvable, so solve() only ever returns SOLVED
+ *   or UNKNOWN; either way getBestSolution() is the best tiling seen,
+ *   which can be handed to PolyominoSolver.setHint as a warm start
+ * State is a few ints per cell, so it also runs on boards too large for
+ *   a PlacementTable
+ */
+public class LocalSearchSolver implements SolverEngine {
+
+    // how often the cancellation and deadline are checked
+    private static final long POLL_INTERVAL = 1 << 10;
+
+    private static final int NEW_PIECE = Integer.MAX_VALUE;
+
+    // walls read from the puzzle's per-cell bits instead of through the
+    //   Walls bitsets on every edge of every candidate
+    private final CompiledPuzzle puzzle;
+    private final PieceCatalogue catalogue;
+    private final int width;
+    private final int height;
+    private final int size;
+    private final Random random;
+
+    // every orientation of every type, flattened
+    private final int[] orientationType;
+    private final int[][] orientationDx;
+    private final int[][] orientationDy;
+
+    // current tiling, pieces are indices into the piece arrays
+    private final int[] cellPiece;
+    private final int[] pieceType;
+    private final int[] pieceOrientation;
+    private final int[] pieceAnchor;
+    private final int[] freePieces;
+    private int freeCount;
+    private int violations;
+
+    // cells that are part of a violation, as an indexed set
+    private final int[] conflicts;
+    private final int[] conflictIndex;
+    private int conflictCount = 0;
+
+    // best tiling seen
+    private Solution best;
+    private int bestViolations = Integer.MAX_VALUE;
+    private long bestMoves = 0;
+
+    // scratch space for a candidate placement
+    private final int[] candidateCells;
+    private final int[] removed;
+    private int removedCount;
+    private final int[] removedOrientation;
+    private final int[] removedAnchor;
+
+    // mark[cell] is stamp for the candidate's cells and stamp + 1 for the
+    //   other cells of the pieces it removes
+    private final int[] mark;
+    private int stamp = 0;
+
+    private Solution start;
+    private double noise = 0.02;
+    private long maxMoves = Long.MAX_VALUE;
+    private long moves = 0;
+    private long deadline = Long.MAX_VALUE;
+    private CancellationToken cancellationToken;
+
+    public LocalSearchSolver(Walls walls, PieceCatalogue catalogue, long seed) {
+        this(CompiledPuzzle.compile(walls, catalogue), seed);
+    }
+
+    public LocalSearchSolver(CompiledPuzzle puzzle, long seed) {
+        this.puzzle = puzzle;
+        this.catalogue = puzzle.catalogue;
+        this.width = puzzle.width;
+        this.height = puzzle.height;
+        this.size = puzzle.size;
+        this.random = new Random(seed);
+
+        List<Polyomino.Orientation> all = new ArrayList<>();
+        List<Integer> types = new ArrayList<>();
+        for (int type = 0; type < catalogue.size(); type++) {
+            for (Polyomino.Orientation o : catalogue.get(type).getOrientations()) {
+                all.add(o);
+                types.add(type);
+            }
+        }
+        this.orientationType = new int[all.size()];
+        this.orientationDx = new int[all.size()][];
+        this.orientationDy = new int[all.size()][];
+        for (int i = 0; i < all.size(); i++) {
+            orientationType[i] = types.get(i);
+            orientationDx[i] = all.get(i).dx;
+            orientationDy[i] = all.get(i).dy;
+        }
+
+        int maxPieces = size / catalogue.getMinSize() + 1;
+        this.cellPiece = new int[size];
+        this.pieceType = new int[maxPieces];
+        this.pieceOrientation = new int[maxPieces];
+        this.pieceAnchor = new int[maxPieces];
+        this.freePieces = new int[maxPieces];
+        this.conflicts = new int[size];
+        this.conflictIndex = new int[size];
+        this.candidateCells = new int[catalogue.getMaxSize()];
+        this.removed = new int[catalogue.getMaxSize()];
+        this.removedOrientation = new int[catalogue.getMaxSize()];
+        this.removedAnchor = new int[catalogue.getMaxSize()];
+        this.mark = new int[size];
+    }
+
+    /**
+     * Starts from the given tiling instead of a greedy one, e.g. the best
+     *   solution of an earlier run; pieces that aren't a catalogue shape
+     *   of their type are left out
+     */
+    public void setStart(Solution start) {
+        assert start.width == width && start.height == height;
+        this.start = start;
+    }
+
+    /**
+     * Probability of putting down a random placement instead of the best
+     */
+    public void setNoise(double noise) {
+        this.noise = noise;
+    }
+
+    public void setMaxMoves(long maxMoves) {
+        this.maxMoves = maxMoves;
+    }
+
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    public long getMoves() {
+        return moves;
+    }
+
+    /**
+     * Moves, a local search has no nodes
+     */
+    @Override
+    public long getNodesExplored() {
+        return moves;
+    }
+
+    /**
+     * Best tiling saved by the last solve, uncovered cells have id -1
+     * A better tiling is saved once it has been size moves since the last
+     *   save, and the final one if it is better, so a short-lived best
+     *   between saves can be missed
+     */
+    public Solution getBestSolution() {
+        return best;
+    }
+
+    /**
+     * Violations of getBestSolution(), as counted by
+     *   Solution.countViolations
+     */
+    public int getBestViolations() {
+        return bestViolations;
+    }
+
+    /**
+     * getBestSolution() if it has no violations, otherwise null
+     */
+    @Override
+    public Solution getSolution() {
+        return bestViolations == 0 ? best : null;
+    }
+
+    /**
+     * Runs on the caller's thread, see SolverEngine
+     * Never returns UNSOLVABLE
+     */
+    @Override
+    public SolveStatus solve(ExecutorService executor) {
+        return solve();
+    }
+
+    /**
+     * Repairs the tiling until there are no violations (SOLVED) or it has
+     *   to stop (UNKNOWN)
+     */
+    public SolveStatus solve() {
+        initialize();
+        saveBest();
+
+        while (violations > 0 && moves < maxMoves) {
+            if ((++moves & (POLL_INTERVAL - 1)) == 0 && shouldStop()) {
+                break;
+            }
+            move(conflicts[random.nextInt(conflictCount)]);
+
+            // copying the board costs as much as size moves, so the best
+            //   is only saved once that many moves have paid for it
+            if (violations < bestViolations && moves - bestMoves >= size) {
+                saveBest();
+            }
+        }
+        if (violations < bestViolations) {
+            saveBest();
+        }
+        return bestViolations == 0 ? SolveStatus.SOLVED : SolveStatus.UNKNOWN;
+    }
+
+    private boolean shouldStop() {
+        return (cancellationToken != null && cancellationToken.isCancelled()) ||
+               (deadline != Long.MAX_VALUE && System.currentTimeMillis() >= deadline);
+    }
+
+    private void initialize() {
+        Arrays.fill(cellPiece, -1);
+        Arrays.fill(conflictIndex, -1);
+        conflictCount = 0;
+        freeCount = freePieces.length;
+        for (int i = 0; i < freeCount; i++) {
+            freePieces[i] = freeCount - 1 - i;
+        }
+        moves = 0;
+        best = null;
+        bestViolations = Integer.MAX_VALUE;
+
+        if (start != null) {
+            placeStart();
+        } else {
+            placeGreedy();
+        }
+
+        violations = 0;
+        for (int cell = 0; cell < size; cell++) {
+            violations += cellCost(cell);
+            if (cell % width + 1 < width) {
+                violations += edgeCost(cell, cell + 1);
+            }
+            if (cell + width < size) {
+                violations += edgeCost(cell, cell + width);
+            }
+            updateConflict(cell);
+        }
+    }
+
+    /**
+     * Fills the board in reading order with the first placement (in a
+     *   random order) that adds no violations, leaving a cell uncovered
+     *   if there is none
+     */
+    private void placeGreedy() {
+        int[] order = new int[orientationType.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        for (int cell = 0; cell < size; cell++) {
+            if (cellPiece[cell] >= 0) {
+                continue;
+            }
+            shuffle(order);
+            for (int o : order) {
+                if (candidate(o, cell) && removedCount == 0 && delta(o) <= -orientationDx[o].length) {
+                    place(o, cell);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void shuffle(int[] order) {
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+    }
+
+    private void placeStart() {
+        List<List<int[]>> pieceCells = new ArrayList<>();
+        for (int i = 0; i < start.getPieceCount(); i++) {
+            pieceCells.add(new ArrayList<>());
+        }
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int id = start.getPieceId(x, y);
+                if (id >= 0) {
+                    pieceCells.get(id).add(new int[] { x, y });
+                }
+            }
+        }
+
+        for (int id = 0; id < pieceCells.size(); id++) {
+            List<int[]> cells = pieceCells.get(id);
+            if (cells.isEmpty()) {
+                continue;
+            }
+            // the first cell in reading order is the anchor of its orientation
+            int[] anchor = cells.get(0);
+            for (int o = 0; o < orientationType.length; o++) {
+                if (orientationType[o] == start.getPieceType(id) && matches(o, anchor, cells)) {
+                    place(o, anchor[1] * width + anchor[0]);
+                    break;
+                }
+            }
+        }
+    }
+
+    private boolean matches(int o, int[] anchor, List<int[]> cells) {
+        int[] dx = orientationDx[o];
+        int[] dy = orientationDy[o];
+        if (dx.length != cells.size()) {
+            return false;
+        }
+        for (int i = 0; i < dx.length; i++) {
+            int[] cell = cells.get(i);
+            if (cell[0] != anchor[0] + dx[i] || cell[1] != anchor[1] + dy[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Puts down the placement covering the cell that leaves the fewest
+     *   violations, or with probability noise a random one
+     */
+    private void move(int cell) {
+        int x = cell % width;
+        int y = cell / width;
+        boolean walk = random.nextDouble() < noise;
+
+        int bestOrientation = -1;
+        int bestAnchor = -1;
+        int bestDelta = Integer.MAX_VALUE;
+        int ties = 0;
+        for (int o = 0; o < orientationType.length; o++) {
+            int[] dx = orientationDx[o];
+            int[] dy = orientationDy[o];
+            for (int i = 0; i < dx.length; i++) {
+                int anchorX = x - dx[i];
+                int anchorY = y - dy[i];
+                if (anchorX < 0 || anchorY < 0 || !candidate(o, anchorY * width + anchorX)) {
+                    continue;
+                }
+                int d = walk ? 0 : delta(o);
+                if (d < bestDelta) {
+                    bestDelta = d;
+                    ties = 0;
+                }
+                // reservoir sampling among the placements tied for best
+                if (d == bestDelta && random.nextInt(++ties) == 0) {
+                    bestOrientation = o;
+                    bestAnchor = anchorY * width + anchorX;
+                }
+            }
+        }
+
+        if (bestOrientation >= 0) {
+            candidate(bestOrientation, bestAnchor);
+            violations += delta(bestOrientation);
+            int count = removedCount;
+            for (int i = 0; i < count; i++) {
+                removedOrientation[i] = pieceOrientation[removed[i]];
+                removedAnchor[i] = pieceAnchor[removed[i]];
+                unplace(removed[i]);
+            }
+            // place may reuse a removed piece's index
+            place(bestOrientation, bestAnchor);
+            for (int i = 0; i < count; i++) {
+                updateConflicts(removedOrientation[i], removedAnchor[i]);
+            }
+            updateConflicts(bestOrientation, bestAnchor);
+        }
+    }
+
+    /**
+     * Fills candidateCells with the cells of the placement and removed
+     *   with the pieces it overlaps, and marks both in mark; false if it
+     *   leaves the board
+     */
+    private boolean candidate(int o, int anchor) {
+        int[] dx = orientationDx[o];
+        int[] dy = orientationDy[o];
+        int x = anchor % width;
+        int y = anchor / width;
+        removedCount = 0;
+        for (int i = 0; i < dx.length; i++) {
+            int cx = x + dx[i];
+            int cy = y + dy[i];
+            if (cx < 0 || cx >= width || cy >= height) {
+                return false;
+            }
+            int cell = cy * width + cx;
+            candidateCells[i] = cell;
+            int piece = cellPiece[cell];
+            if (piece >= 0 && !isRemoved(piece)) {
+                removed[removedCount++] = piece;
+            }
+        }
+
+        if (stamp >= Integer.MAX_VALUE - 2) {
+            Arrays.fill(mark, 0);
+            stamp = 0;
+        }
+        stamp += 2;
+        for (int r = 0; r < removedCount; r++) {
+            int piece = removed[r];
+            int[] rdx = orientationDx[pieceOrientation[piece]];
+            int[] rdy = orientationDy[pieceOrientation[piece]];
+            int rAnchor = pieceAnchor[piece];
+            for (int i = 0; i < rdx.length; i++) {
+                mark[rAnchor + rdy[i] * width + rdx[i]] = stamp + 1;
+            }
+        }
+        for (int i = 0; i < dx.length; i++) {
+            mark[candidateCells[i]] = stamp;
+        }
+        return true;
+    }
+
+    private boolean isRemoved(int piece) {
+        for (int i = 0; i < removedCount; i++) {
+            if (removed[i] == piece) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Change in violations if the candidate placement were put down
+     * Only the cells of the candidate and the pieces it removes, and the
+     *   edges touching them, can change
+     */
+    private int delta(int o) {
+        int n = orientationDx[o].length;
+        int type = orientationType[o];
+        int d = 0;
+        for (int i = 0; i < n; i++) {
+            d += cellDelta(candidateCells[i], type);
+        }
+        for (int r = 0; r < removedCount; r++) {
+            int piece = removed[r];
+            int[] dx = orientationDx[pieceOrientation[piece]];
+            int[] dy = orientationDy[pieceOrientation[piece]];
+            int anchor = pieceAnchor[piece];
+            for (int i = 0; i < dx.length; i++) {
+                int cell = anchor + dy[i] * width + dx[i];
+                if (mark[cell] == stamp) {
+                    continue;
+                }
+                // a cell that isn't part of a violation only adds itself
+                //   as an uncovered cell, its edges stay free
+                d += conflictIndex[cell] < 0 ? 1 : cellDelta(cell, type);
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Change in the cost of an affected cell and of its edges; an edge
+     *   between two affected cells is counted by the lower one
+     */
+    private int cellDelta(int cell, int type) {
+        int d = (newPiece(cell) < 0 ? 1 : 0) - cellCost(cell);
+        int x = cell % width;
+        if (x > 0 && mark[cell - 1] < stamp) {
+            d += edgeDelta(cell, cell - 1, type);
+        }
+        if (x < width - 1) {
+            d += edgeDelta(cell, cell + 1, type);
+        }
+        if (cell >= width && mark[cell - width] < stamp) {
+            d += edgeDelta(cell, cell - width, type);
+        }
+        if (cell + width < size) {
+            d += edgeDelta(cell, cell + width, type);
+        }
+        return d;
+    }
+
+    /**
+     * The piece covering the cell once the candidate is put down,
+     *   NEW_PIECE for the candidate itself
+     */
+    private int newPiece(int cell) {
+        int m = mark[cell];
+        return m == stamp ? NEW_PIECE : m == stamp + 1 ? -1 : cellPiece[cell];
+    }
+
+    private int edgeDelta(int a, int b, int type) {
+        int pa = newPiece(a);
+        int pb = newPiece(b);
+        int cost = 0;
+        if (pa >= 0 && pb >= 0) {
+            if (pa == pb) {
+                cost = hasWall(a, b) ? 1 : 0;
+            } else {
+                int ta = pa == NEW_PIECE ? type : pieceType[pa];
+                int tb = pb == NEW_PIECE ? type : pieceType[pb];
+                cost = ta == tb ? 1 : 0;
+            }
+        }
+        return cost - edgeCost(a, b);
+    }
+
+    private int cellCost(int cell) {
+        return cellPiece[cell] < 0 ? 1 : 0;
+    }
+
+    private int edgeCost(int a, int b) {
+        int pa = cellPiece[a];
+        int pb = cellPiece[b];
+        if (pa < 0 || pb < 0) {
+            return 0;
+        }
+        if (pa == pb) {
+            return hasWall(a, b) ? 1 : 0;
+        }
+        return pieceType[pa] == pieceType[pb] ? 1 : 0;
+    }
+
+    private boolean hasWall(int a, int b) {
+        int low = Math.min(a, b);
+        return Math.abs(a - b) == width ? puzzle.hasWallDown(low) : puzzle.hasWallRight(low);
+    }
+
+    private void place(int o, int anchor) {
+        int piece = freePieces[--freeCount];
+        pieceType[piece] = orientationType[o];
+        pieceOrientation[piece] = o;
+        pieceAnchor[piece] = anchor;
+        int[] dx = orientationDx[o];
+        int[] dy = orientationDy[o];
+        for (int i = 0; i < dx.length; i++) {
+            cellPiece[anchor + dy[i] * width + dx[i]] = piece;
+        }
+    }
+
+    private void unplace(int piece) {
+        int[] dx = orientationDx[pieceOrientation[piece]];
+        int[] dy = orientationDy[pieceOrientation[piece]];
+        int anchor = pieceAnchor[piece];
+        for (int i = 0; i < dx.length; i++) {
+            cellPiece[anchor + dy[i] * width + dx[i]] = -1;
+        }
+        freePieces[freeCount++] = piece;
+    }
+
+    /**
+     * Updates the conflict set for the cells of a placement and their
+     *   neighbours, whose edges may have changed
+     */
+    private void updateConflicts(int o, int anchor) {
+        int[] dx = orientationDx[o];
+        int[] dy = orientationDy[o];
+        for (int i = 0; i < dx.length; i++) {
+            int cell = anchor + dy[i] * width + dx[i];
+            int x = cell % width;
+            updateConflict(cell);
+            if (x > 0) {
+                updateConflict(cell - 1);
+            }
+            if (x < width - 1) {
+                updateConflict(cell + 1);
+            }
+            if (cell >= width) {
+                updateConflict(cell - width);
+            }
+            if (cell + width < size) {
+                updateConflict(cell + width);
+            }
+        }
+    }
+
+    private void updateConflict(int cell) {
+        int x = cell % width;
+        boolean conflict = cellCost(cell) > 0 ||
+                           (x > 0 && edgeCost(cell, cell - 1) > 0) ||
+                           (x < width - 1 && edgeCost(cell, cell + 1) > 0) ||
+                           (cell >= width && edgeCost(cell, cell - width) > 0) ||
+                           (cell + width < size && edgeCost(cell, cell + width) > 0);
+        int index = conflictIndex[cell];
+        if (conflict && index < 0) {
+            conflictIndex[cell] = conflictCount;
+            conflicts[conflictCount++] = cell;
+        } else if (!conflict && index >= 0) {
+            int last = conflicts[--conflictCount];
+            conflicts[index] = last;
+            conflictIndex[last] = index;
+            conflictIndex[cell] = -1;
+        }
+    }
+
+    /**
+     * Snapshot of the current tiling, pieces numbered in reading order
+     */
+    private void saveBest() {
+        int[] pieceIds = new int[size];
+        int[] ids = new int[pieceType.length];
+        Arrays.fill(ids, -1);
+        byte[] types = new byte[pieceType.length];
+        int count = 0;
+        for (int cell = 0; cell < size; cell++) {
+            int piece = cellPiece[cell];
+            if (piece < 0) {
+                pieceIds[cell] = -1;
+                continue;
+            }
+            if (ids[piece] < 0) {
+                ids[piece] = count;
+                types[count++] = (byte) pieceType[piece];
+            }
+            pieceIds[cell] = ids[piece];
+        }
+        best = new Solution(width, height, pieceIds, Arrays.copyOf(types, count));
+        bestViolations = violations;
+        bestMoves = moves;
+    }
+
+    /**
+     * Usage: width height restrictionsFile [tetrominoes|pentominoes|mixed] [seconds]
+     */
+    public static void main(String[] args) throws Exception {
+        assert args != null && args.length >= 3;
+        int width = Integer.parseInt(args[0]);
+        int height = Integer.parseInt(args[1]);
+        PieceCatalogue catalogue = PieceCatalogue.forName(args.length > 3
+                                                              ? args[3]
+                                                              : "tetrominoes");
+        double seconds = args.length > 4 ? Double.parseDouble(args[4]) : 10;
+
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(width, height);
+        Map<Tetronimo, List<Tetronimo>> restrictions =
+            TetrisSolver.parseRestrictions(args[2], matrix);
+        Walls walls = Walls.fromRestrictions(matrix, restrictions);
+
+        long startTime = System.currentTimeMillis();
+        LocalSearchSolver solver = new LocalSearchSolver(walls, catalogue, startTime);
+        solver.setDeadline(startTime + (long) (seconds * 1000));
+        SolveStatus status = solver.solve();
+        long endTime = System.currentTimeMillis();
+
+        System.out.println("status: " + status +
+                           ", violations: " + solver.getBestViolations() +
+                           ", moves: " + solver.getMoves());
+        System.out.println("Time taken: " + (endTime - startTime) / 1000.0);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+        new SolutionRenderer().render(solver.getBestSolution(), out);
+        out.flush();
+    }
+}
@@ -0,0 +1,122 @@
+package com.budimana.tetris;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Bounded, lock-free set of 64-bit nogood hashes shared by the searches
+ *   working on one puzzle: what one search proves dead, the others skip
+ *
+ * Open addressing: a key lives in one of PROBE slots starting at its hash,
+ *   inserted with a CAS on an empty slot; nothing ever blocks
+ * When its slots are full a key evicts one by second chance (clock): the
+ *   lowest bit of each slot is a referenced bit, set by lookups that hit
+ *   and cleared as the hand passes; the first slot found unreferenced is
+ *   replaced
+ * Keys are hashes, so two nogoods could collide and one would wrongly
+ *   prune the other's branch; with 63 bits and PROBE compares per lookup
+ *   that is under one chance in 10^17 per lookup
+ *
+ * Use one store per puzzle: keys from different puzzles mean different
+ *   things
+ */
+public class NogoodStore {
+
+    static final int PROBE = 8;
+
+    private static final long EMPTY = 0;
+    private static final long REFERENCED = 1;
+
+    private final AtomicLongArray slots;
+    private final int mask;
+    private final AtomicLong hand = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * capacity is rounded up to a power of two, at least PROBE
+     */
+    public NogoodStore(int capacity) {
+        int size = Integer.highestOneBit(Math.max(PROBE, capacity) - 1) << 1;
+        this.slots = new AtomicLongArray(size);
+        this.mask = size - 1;
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * The key as stored: never EMPTY, low bit free for REFERENCED
+     */
+    private static long stored(long key) {
+        long k = key & ~REFERENCED;
+        return k == EMPTY ? 2 : k;
+    }
+
+    private int home(long k) {
+        return (int) (k ^ (k >>> 32)) & mask;
+    }
+
+    public boolean contains(long key) {
+        long k = stored(key);
+        int start = home(k);
+        for (int i = 0; i < PROBE; i++) {
+            int slot = (start + i) & mask;
+            long s = slots.get(slot);
+            if ((s & ~REFERENCED) == k) {
+                if ((s & REFERENCED) == 0) {
+                    slots.compareAndSet(slot, s, s | REFERENCED);
+                }
+                return true;
+            }
+            if (s == EMPTY) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the key, evicting another if its slots are full
+     */
+    public void add(long key) {
+        long k = stored(key);
+        int start = home(k);
+        for (int i = 0; i < PROBE; i++) {
+            int slot = (start + i) & mask;
+            long s = slots.get(slot);
+            while (s == EMPTY) {
+                if (slots.compareAndSet(slot, EMPTY, k)) {
+                    return;
+                }
+                s = slots.get(slot);
+            }
+            if ((s & ~REFERENCED) == k) {
+                return;
+            }
+        }
+
+        // second chance: the hand sweeps the key's slots from where it
+        //   last stopped, clearing referenced bits until one is clear
+        int offset = (int) (hand.getAndIncrement() & (PROBE - 1));
+        for (int i = 0; i < 2 * PROBE; i++) {
+            int slot = (start + ((offset + i) & (PROBE - 1))) & mask;
+            long s = slots.get(slot);
+            if ((s & REFERENCED) != 0) {
+                slots.compareAndSet(slot, s, s & ~REFERENCED);
+            } else if (slots.compareAndSet(slot, s, k)) {
+                if (s != EMPTY) {
+                    evictions.incrementAndGet();
+                }
+                return;
+            }
+        }
+        // lost every race, another search is busy here; dropping the key
+        //   only costs a repeated search
+    }
+}
@@ -0,0 +1,13 @@
+package com.budimana.tetris;
+
+
+/**
+ * The ways findSolution can associate a tetronimo with a piece
+ */
+public enum OptionKind {
+    NEW,    // start a new piece
+    LEFT,   // join the piece to the left
+    UP,     // join the piece above
+    MERGE,  // join and merge the left and above pieces
+    ;
+}
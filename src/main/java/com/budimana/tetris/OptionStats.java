@@ -0,0 +1,121 @@
+package com.budimana.tetris;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+
+
+/**
+ * Learned value ordering for findSolution (see TetrisSolver.setOptionStats)
+ *
+ * Each tetronimo falls in a context: which of its four sides are walled
+ *   off (a restriction or the edge of the matrix) and how many tetronimos
+ *   the pieces to the left and above have, if it can join them
+ * For each context and option the table keeps how often the option was
+ *   tried and how far it got: how many tetronimos deeper its subtree
+ *   went, or the whole matrix if it led to a solution
+ * Options are tried best average first; an option not tried yet in a
+ *   context counts as one try that went one tetronimo deep, so it still
+ *   comes before options that keep failing straight away
+ *
+ * File format (one context per line, contexts never seen are left out):
+ *   <context> <tries>,<depth> for each OptionKind in declaration order
+ */
+public class OptionStats {
+
+    private static final int OPTIONS = OptionKind.values().length;
+
+    // 4 walled off bits, then the left and above piece sizes (0 to 3)
+    static final int CONTEXTS = 16 * 4 * 4;
+
+    private final long[] tries = new long[CONTEXTS * OPTIONS];
+    private final long[] depths = new long[CONTEXTS * OPTIONS];
+
+    /**
+     * walls has a bit per walled off side (left, up, right, down); a size
+     *   is 0 when the tetronimo can't join that piece
+     */
+    public static int context(int walls, int leftSize, int upSize) {
+        assert walls >= 0 && walls < 16;
+        assert leftSize >= 0 && leftSize < Piece.NUM_TETRONIMOS_IN_PIECE;
+        assert upSize >= 0 && upSize < Piece.NUM_TETRONIMOS_IN_PIECE;
+        return (walls * 4 + leftSize) * 4 + upSize;
+    }
+
+    public void record(int context, OptionKind kind, long depth) {
+        int i = context * OPTIONS + kind.ordinal();
+        tries[i]++;
+        depths[i] += depth;
+    }
+
+    public long getTries(int context, OptionKind kind) {
+        return tries[context * OPTIONS + kind.ordinal()];
+    }
+
+    public double score(int context, OptionKind kind) {
+        int i = context * OPTIONS + kind.ordinal();
+        return (depths[i] + 1.0) / (tries[i] + 1);
+    }
+
+    /**
+     * Sorts the first numOptions options best first, keeping the given
+     *   order between equal scores
+     */
+    public void order(int context, OptionKind[] options, int numOptions) {
+        for (int i = 1; i < numOptions; i++) {
+            OptionKind kind = options[i];
+            double score = score(context, kind);
+            int j = i;
+            while (j > 0 && score(context, options[j - 1]) < score) {
+                options[j] = options[j - 1];
+                j--;
+            }
+            options[j] = kind;
+        }
+    }
+
+    public void write(File file) throws IOException {
+        try (BufferedWriter w = new BufferedWriter(new FileWriter(file))) {
+            for (int context = 0; context < CONTEXTS; context++) {
+                StringBuilder sb = new StringBuilder();
+                boolean seen = false;
+                for (int k = 0; k < OPTIONS; k++) {
+                    int i = context * OPTIONS + k;
+                    seen |= tries[i] > 0;
+                    sb.append(' ').append(tries[i]).append(',').append(depths[i]);
+                }
+                if (seen) {
+                    w.write(context + sb.toString());
+                    w.newLine();
+                }
+            }
+        }
+    }
+
+    public static OptionStats read(File file) throws IOException {
+        OptionStats stats = new OptionStats();
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] entry = line.trim().split(" ");
+                if (entry.length != OPTIONS + 1) {
+                    throw new IOException("Malformed option stats: " + line);
+                }
+                try {
+                    int context = Integer.parseInt(entry[0]);
+                    for (int k = 0; k < OPTIONS; k++) {
+                        String[] value = entry[k + 1].split(",");
+                        stats.tries[context * OPTIONS + k] = Long.parseLong(value[0]);
+                        stats.depths[context * OPTIONS + k] = Long.parseLong(value[1]);
+                    }
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    throw new IOException("Malformed option stats: " + line, e);
+                }
+            }
+        }
+        return stats;
+    }
+}
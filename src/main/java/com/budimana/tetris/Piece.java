@@ -1,22 +1,31 @@
 package com.budimana.tetris;
 
+import java.util.AbstractSet;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.TreeSet;
 
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
 /**
  * Represents a tetris piece, or at least part of one that is being formed
+ *
+ * The tetronimos are kept in a small array sorted like a TreeSet would
+ *   (by y, then x), so adding, removing and merging don't allocate
  */
 public class Piece {
 
     public static final int NUM_TETRONIMOS_IN_PIECE = 4;
 
     private PieceType type;
-    private final Set<Tetronimo> tetronimos = new TreeSet<Tetronimo>();
+    private final Tetronimo[] tetronimos = new Tetronimo[NUM_TETRONIMOS_IN_PIECE];
     private int tetronimoCount = 0;
+    private final Set<Tetronimo> tetronimoSet = new TetronimoSet();
+
+    // the TetrisSolver state list holding this piece, see PieceList
+    PieceList list;
+    int listIndex = -1;
 
     public Piece(Tetronimo... tetronimos) {
         if (tetronimos != null) {
@@ -32,10 +41,15 @@ public class Piece {
      */
     public void add(Tetronimo t) {
         assert !isComplete();
-        assert !tetronimos.contains(t);
+        assert indexOf(t) < 0;
 
-        tetronimos.add(t);
-        tetronimoCount++;
+        // insertion sort, at most 3 shifts
+        int i = tetronimoCount++;
+        while (i > 0 && tetronimos[i - 1].compareTo(t) > 0) {
+            tetronimos[i] = tetronimos[i - 1];
+            i--;
+        }
+        tetronimos[i] = t;
 
         // cannot add tetronimo that is currently a part of another piece
         assert t.piece == null;
@@ -47,10 +61,12 @@ public class Piece {
      * Reset the type as well as the tetronimo's piece pointer
      */
     public void remove(Tetronimo t) {
-        assert tetronimos.contains(t);
+        int i = indexOf(t);
+        assert i >= 0;
 
-        tetronimos.remove(t);
         tetronimoCount--;
+        System.arraycopy(tetronimos, i + 1, tetronimos, i, tetronimoCount - i);
+        tetronimos[tetronimoCount] = null;
         type = null;
 
         // don't remove a tetronimo that thinks it's a part of another piece
@@ -71,8 +87,29 @@ public class Piece {
         return type;
     }
 
+    private int indexOf(Tetronimo t) {
+        for (int i = 0; i < tetronimoCount; i++) {
+            if (tetronimos[i] == t) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Read-only view of the tetronimos, in sorted order
+     */
     public Set<Tetronimo> getTetronimos() {
-        return tetronimos;
+        return tetronimoSet;
+    }
+
+    /**
+     * The i-th tetronimo in sorted order, for loops on hot paths that
+     *   shouldn't create an iterator
+     */
+    public Tetronimo getTetronimo(int i) {
+        assert i < tetronimoCount;
+        return tetronimos[i];
     }
 
     public int getCount() {
@@ -89,8 +126,8 @@ public class Piece {
      */
     public Set<Tetronimo> getAdjacentTetronimos(Tetronimo[][] matrix) {
         Set<Tetronimo> adjTetronimos = new HashSet<>();
-        for (Tetronimo t : tetronimos) {
-            adjTetronimos.addAll(t.getAdjacentTetronimos(matrix));
+        for (int i = 0; i < tetronimoCount; i++) {
+            adjTetronimos.addAll(tetronimos[i].getAdjacentTetronimos(matrix));
         }
         return adjTetronimos;
     }
@@ -103,25 +140,17 @@ public class Piece {
         assert this.isComplete();
         assert p.isComplete();
         
-        Iterator<Tetronimo> it1 = this.getTetronimos().iterator();
-        Iterator<Tetronimo> it2 = p.getTetronimos().iterator();
-        Tetronimo t1 = it1.next();
-        Tetronimo t2 = it2.next();
-
         // check whether the deltaX and deltaY between corresponding
         //   tetronimos of the pieces are the same
-        int deltaX = t1.x - t2.x;
-        int deltaY = t1.y - t2.y;
-        while (it1.hasNext() && it2.hasNext()) {
-            t1 = it1.next();
-            t2 = it2.next();
+        int deltaX = tetronimos[0].x - p.tetronimos[0].x;
+        int deltaY = tetronimos[0].y - p.tetronimos[0].y;
+        for (int i = 1; i < NUM_TETRONIMOS_IN_PIECE; i++) {
+            Tetronimo t1 = tetronimos[i];
+            Tetronimo t2 = p.tetronimos[i];
             if (t1.x - t2.x != deltaX || t1.y - t2.y != deltaY) {
                 return false;
             }
         }
-
-        assert !it1.hasNext();
-        assert !it2.hasNext();
         return true;
     }
 
@@ -130,7 +159,9 @@ public class Piece {
      */
     public boolean canBeFinished(Tetronimo[][] matrix) {
         assert !isComplete();
-        for (Tetronimo t : tetronimos) {
+        for (int i = 0; i < tetronimoCount; i++) {
+            Tetronimo t = tetronimos[i];
+
             // only tetronimos to the right and below can be not associated yet
             Tetronimo right = t.getRight(matrix);
             Tetronimo down = t.getDown(matrix);
@@ -152,11 +183,44 @@ public class Piece {
             .append("tetronimoCount", tetronimoCount)
             .append("tetronimos {");
 
-        for (Tetronimo t : tetronimos) {
+        for (Tetronimo t : tetronimoSet) {
             b.append(t.toString(), ",");
         }
         b.append("}");
 
         return b.toString();
     }
+
+    private class TetronimoSet extends AbstractSet<Tetronimo> {
+
+        @Override
+        public int size() {
+            return tetronimoCount;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Tetronimo && indexOf((Tetronimo) o) >= 0;
+        }
+
+        @Override
+        public Iterator<Tetronimo> iterator() {
+            return new Iterator<Tetronimo>() {
+                private int next = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return next < tetronimoCount;
+                }
+
+                @Override
+                public Tetronimo next() {
+                    if (next >= tetronimoCount) {
+                        throw new NoSuchElementException();
+                    }
+                    return tetronimos[next++];
+                }
+            };
+        }
+    }
 }
@@ -0,0 +1,134 @@
+package com.budimana.tetris;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * The set of piece types a puzzle may be tiled with
+ * A piece's type is its index in the catalogue
+ */
+public class PieceCatalogue {
+
+    private final List<Polyomino> types;
+    private final int minSize;
+    private final int maxSize;
+
+    public PieceCatalogue(List<Polyomino> types) {
+        assert !types.isEmpty();
+        assert types.size() <= Byte.MAX_VALUE;
+        this.types = Collections.unmodifiableList(new ArrayList<>(types));
+
+        int min = Integer.MAX_VALUE;
+        int max = 0;
+        for (Polyomino p : types) {
+            min = Math.min(min, p.size());
+            max = Math.max(max, p.size());
+        }
+        this.minSize = min;
+        this.maxSize = max;
+    }
+
+    public static PieceCatalogue of(PieceCatalogue... catalogues) {
+        List<Polyomino> types = new ArrayList<>();
+        for (PieceCatalogue c : catalogues) {
+            types.addAll(c.types);
+        }
+        return new PieceCatalogue(types);
+    }
+
+    /**
+     * The seven tetris pieces, in the same order as PieceType so a type
+     *   index is also a PieceType ordinal
+     */
+    public static PieceCatalogue tetrominoes() {
+        List<Polyomino> types = new ArrayList<>();
+        for (PieceType type : PieceType.values()) {
+            Piece sample = type.getSamplePieces().iterator().next();
+            types.add(Polyomino.fromPiece(type.name(), sample));
+        }
+        return new PieceCatalogue(types);
+    }
+
+    /**
+     * The eighteen one-sided pentominoes (the twelve free pentominoes plus
+     *   the mirror images of the six chiral ones)
+     */
+    public static PieceCatalogue pentominoes() {
+        List<Polyomino> free = Arrays.asList(
+            new Polyomino("F", new int[][] { {1,0}, {2,0}, {0,1}, {1,1}, {1,2} }),
+            new Polyomino("I", new int[][] { {0,0}, {0,1}, {0,2}, {0,3}, {0,4} }),
+            new Polyomino("L", new int[][] { {0,0}, {0,1}, {0,2}, {0,3}, {1,3} }),
+            new Polyomino("N", new int[][] { {1,0}, {1,1}, {0,2}, {1,2}, {0,3} }),
+            new Polyomino("P", new int[][] { {0,0}, {1,0}, {0,1}, {1,1}, {0,2} }),
+            new Polyomino("T", new int[][] { {0,0}, {1,0}, {2,0}, {1,1}, {1,2} }),
+            new Polyomino("U", new int[][] { {0,0}, {2,0}, {0,1}, {1,1}, {2,1} }),
+            new Polyomino("V", new int[][] { {0,0}, {0,1}, {0,2}, {1,2}, {2,2} }),
+            new Polyomino("W", new int[][] { {0,0}, {0,1}, {1,1}, {1,2}, {2,2} }),
+            new Polyomino("X", new int[][] { {1,0}, {0,1}, {1,1}, {2,1}, {1,2} }),
+            new Polyomino("Y", new int[][] { {1,0}, {0,1}, {1,1}, {1,2}, {1,3} }),
+            new Polyomino("Z", new int[][] { {0,0}, {1,0}, {1,1}, {1,2}, {2,2} })
+        );
+
+        List<Polyomino> types = new ArrayList<>();
+        for (Polyomino p : free) {
+            types.add(p);
+            Polyomino mirror = p.mirror(p.name + "'");
+            if (mirror != null) {
+                types.add(mirror);
+            }
+        }
+        return new PieceCatalogue(types);
+    }
+
+    public Polyomino get(int type) {
+        return types.get(type);
+    }
+
+    public List<Polyomino> getTypes() {
+        return types;
+    }
+
+    public int size() {
+        return types.size();
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the type of the given cells ({x, y} pairs), or -1 if they
+     *   are not any of the catalogue's shapes
+     */
+    public int classify(int[][] cells) {
+        for (int i = 0; i < types.size(); i++) {
+            if (types.get(i).matches(cells)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Catalogue by name, as given on the command line
+     */
+    public static PieceCatalogue forName(String name) {
+        switch (name) {
+            case "tetrominoes":
+                return tetrominoes();
+            case "pentominoes":
+                return pentominoes();
+            case "mixed":
+                return of(tetrominoes(), pentominoes());
+            default:
+                throw new IllegalArgumentException("Unknown piece catalogue: " + name);
+        }
+    }
+}
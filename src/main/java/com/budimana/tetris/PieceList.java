@@ -0,0 +1,117 @@
+package com.budimana.tetris;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ * Array backed set of pieces, for the piece states of TetrisSolver
+ *
+ * Each piece remembers which list it is in and where, so contains, add
+ *   and remove are O(1) without hashing; removing swaps the last piece
+ *   into the hole, so the order of the pieces isn't kept
+ * A piece can only be in one list at a time
+ * Iterate with get(i) and size() on hot paths to avoid the iterator
+ */
+public class PieceList extends AbstractSet<Piece> {
+
+    private Piece[] pieces = new Piece[16];
+    private int size = 0;
+
+    public Piece get(int i) {
+        return pieces[i];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Piece && ((Piece) o).list == this;
+    }
+
+    @Override
+    public boolean add(Piece p) {
+        if (p.list == this) {
+            return false;
+        }
+        if (p.list != null) {
+            throw new IllegalStateException("Piece is already in another list");
+        }
+
+        if (size == pieces.length) {
+            pieces = Arrays.copyOf(pieces, size * 2);
+        }
+        p.list = this;
+        p.listIndex = size;
+        pieces[size++] = p;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!contains(o)) {
+            return false;
+        }
+        removeAt(((Piece) o).listIndex);
+        return true;
+    }
+
+    private void removeAt(int i) {
+        Piece p = pieces[i];
+        Piece last = pieces[--size];
+        pieces[i] = last;
+        last.listIndex = i;
+        pieces[size] = null;
+
+        p.list = null;
+        p.listIndex = -1;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            pieces[i].list = null;
+            pieces[i].listIndex = -1;
+            pieces[i] = null;
+        }
+        size = 0;
+    }
+
+    @Override
+    public Iterator<Piece> iterator() {
+        return new Iterator<Piece>() {
+            private int next = 0;
+            private boolean canRemove = false;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Piece next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                canRemove = true;
+                return pieces[next++];
+            }
+
+            @Override
+            public void remove() {
+                if (!canRemove) {
+                    throw new IllegalStateException();
+                }
+                canRemove = false;
+
+                // the last piece moves into the hole, visit it next
+                removeAt(--next);
+            }
+        };
+    }
+}
@@ -1,6 +1,8 @@
 package com.budimana.tetris;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 
@@ -62,6 +64,64 @@ public enum PieceType {
 
     private final Set<Piece> samplePieces;
 
+    // ways to complete each partial piece of 1-3 tetronimos, indexed by
+    //   the shape's cells in a 4x4 box anchored at its top left corner
+    // each completion is {type ordinal, dx, dy, dx, dy, ...}: the missing
+    //   tetronimos relative to that corner
+    private static final int[][][] COMPLETIONS = new int[1 << 16][][];
+
+    // the type of each complete shape, indexed the same way
+    private static final PieceType[] SHAPE_TYPES = new PieceType[1 << 16];
+    static {
+        List<List<int[]>> completions = new ArrayList<>(1 << 16);
+        for (int i = 0; i < 1 << 16; i++) {
+            completions.add(null);
+        }
+
+        for (PieceType type : values()) {
+            for (Piece samplePiece : type.samplePieces) {
+                int[] cells = shapeCells(samplePiece.getTetronimos());
+                SHAPE_TYPES[getShape(samplePiece)] = type;
+
+                // every proper subset of a rotation is a partial piece of this type
+                for (int subset = 1; subset < (1 << cells.length) - 1; subset++) {
+                    int minX = Integer.MAX_VALUE;
+                    int minY = Integer.MAX_VALUE;
+                    for (int i = 0; i < cells.length; i++) {
+                        if ((subset & 1 << i) != 0) {
+                            minX = Math.min(minX, cells[i] % 4);
+                            minY = Math.min(minY, cells[i] / 4);
+                        }
+                    }
+
+                    int shape = 0;
+                    int[] completion = new int[1 + 2 * (cells.length - Integer.bitCount(subset))];
+                    completion[0] = type.ordinal();
+                    int c = 1;
+                    for (int i = 0; i < cells.length; i++) {
+                        if ((subset & 1 << i) != 0) {
+                            shape |= 1 << (cells[i] - minY * 4 - minX);
+                        } else {
+                            completion[c++] = cells[i] % 4 - minX;
+                            completion[c++] = cells[i] / 4 - minY;
+                        }
+                    }
+
+                    if (completions.get(shape) == null) {
+                        completions.set(shape, new ArrayList<>());
+                    }
+                    completions.get(shape).add(completion);
+                }
+            }
+        }
+
+        int[][] none = new int[0][];
+        for (int shape = 0; shape < 1 << 16; shape++) {
+            List<int[]> list = completions.get(shape);
+            COMPLETIONS[shape] = list == null ? none : list.toArray(new int[list.size()][]);
+        }
+    }
+
     private PieceType(int expectedRotations, Piece samplePiece) {
         this.samplePieces = getAllRotations(samplePiece);
 
@@ -75,11 +135,99 @@ public enum PieceType {
     }
 
     /**
-     * Returns all rotations for the given piece
+     * Returns one piece per distinct rotation of this type
+     */
+    public Set<Piece> getSamplePieces() {
+        return samplePieces;
+    }
+
+    /**
+     * This type's bit in a mask of types
+     */
+    public int getMask() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * Returns the ways to complete a partial piece, see COMPLETIONS
+     * shape has a bit for each tetronimo at (y * 4 + x) relative to the
+     *   piece's top left corner, as given by getShape
+     */
+    public static int[][] getCompletions(int shape) {
+        return COMPLETIONS[shape];
+    }
+
+    /**
+     * Returns the shape of up to 4 tetronimos as a 4x4 bit mask anchored
+     *   at their top left corner, 0 if they don't fit in one
+     */
+    public static int getShape(Set<Tetronimo> tetronimos) {
+        int[] cells = shapeCells(tetronimos);
+        if (cells == null) {
+            return 0;
+        }
+        int shape = 0;
+        for (int cell : cells) {
+            shape |= 1 << cell;
+        }
+        return shape;
+    }
+
+    /**
+     * getShape of the piece's tetronimos, without creating an iterator
+     */
+    public static int getShape(Piece p) {
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        for (int i = 0; i < p.getCount(); i++) {
+            minX = Math.min(minX, p.getTetronimo(i).x);
+            minY = Math.min(minY, p.getTetronimo(i).y);
+        }
+
+        int shape = 0;
+        for (int i = 0; i < p.getCount(); i++) {
+            int dx = p.getTetronimo(i).x - minX;
+            int dy = p.getTetronimo(i).y - minY;
+            if (dx >= 4 || dy >= 4) {
+                return 0;
+            }
+            shape |= 1 << (dy * 4 + dx);
+        }
+        return shape;
+    }
+
+    /**
+     * Positions of the tetronimos in a 4x4 box (y * 4 + x) anchored at
+     *   their top left corner, null if they don't fit in one
+     */
+    private static int[] shapeCells(Set<Tetronimo> tetronimos) {
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        for (Tetronimo t : tetronimos) {
+            minX = Math.min(minX, t.x);
+            minY = Math.min(minY, t.y);
+        }
+
+        int[] cells = new int[tetronimos.size()];
+        int i = 0;
+        for (Tetronimo t : tetronimos) {
+            int dx = t.x - minX;
+            int dy = t.y - minY;
+            if (dx >= 4 || dy >= 4) {
+                return null;
+            }
+            cells[i++] = dy * 4 + dx;
+        }
+        return cells;
+    }
+
+    /**
+     * Returns all rotations for the given piece, the piece itself first
      * Assumes 90 degree rotations
      */
     private static Set<Piece> getAllRotations(Piece p) {
-        Set<Piece> rotations = new HashSet<>(4);
+        // pieces hash by identity, keep a fixed order across runs
+        Set<Piece> rotations = new LinkedHashSet<>(4);
         rotations.add(p);
 
         // initialize all the rotated pieces
@@ -125,23 +273,13 @@ public enum PieceType {
 
     /**
      * Returns the type of the piece
-     * Designed for simplicity
+     * A piece is a translation of one of the rotations of its type, so
+     *   its shape is enough to look the type up
      */
     public static PieceType classifyPiece(Piece p) {
         assert p.isComplete();
-
-        // checks if the piece is a translation of any of the rotations
-        //   of a given piece type
-        for (PieceType type : PieceType.values()) {
-            for (Piece samplePiece : type.samplePieces) {
-                if (p.isTranslationOf(samplePiece)) {
-                    return type;
-                }
-            }
-        }
-
-        // dead code
-        assert false;
-        return null;
+        PieceType type = SHAPE_TYPES[getShape(p)];
+        assert type != null;
+        return type;
     }
 }
@@ -0,0 +1,129 @@
+package com.budimana.tetris;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Every way a catalogue piece can be placed on a board, indexed by anchor
+ *
+ * A placement's anchor is its first cell in reading order; placements
+ *   that leave the board or cross one of the walls are never generated,
+ *   so the search only has to check occupancy and piece types
+ */
+public class PlacementTable {
+
+    public final int width;
+    public final int height;
+    public final PieceCatalogue catalogue;
+
+    private final Placement[][] byAnchor;
+
+    /**
+     * A piece of a given type at a given position
+     * Cells are indexed in reading order: y * width + x
+     */
+    public static class Placement {
+        public final int type;
+        public final int[] cells;   // reading order, cells[0] is the anchor
+        public final int[] border;  // cells outside the placement sharing an edge
+
+        Placement(int type, int[] cells, int[] border) {
+            this.type = type;
+            this.cells = cells;
+            this.border = border;
+        }
+    }
+
+    public PlacementTable(Walls walls, PieceCatalogue catalogue) {
+        this.width = walls.width;
+        this.height = walls.height;
+        this.catalogue = catalogue;
+        this.byAnchor = new Placement[width * height][];
+
+        List<Placement> placements = new ArrayList<>();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                placements.clear();
+                for (int type = 0; type < catalogue.size(); type++) {
+                    for (Polyomino.Orientation o : catalogue.get(type).getOrientations()) {
+                        Placement p = place(walls, type, o, x, y);
+                        if (p != null) {
+                            placements.add(p);
+                        }
+                    }
+                }
+                byAnchor[y * width + x] = placements.toArray(new Placement[placements.size()]);
+            }
+        }
+    }
+
+    /**
+     * Returns the placement of the orientation anchored at (x, y), or null
+     *   if it does not fit the board
+     */
+    private Placement place(Walls walls, int type, Polyomino.Orientation o, int x, int y) {
+        int n = o.size();
+        int[] cells = new int[n];
+        for (int i = 0; i < n; i++) {
+            int cx = x + o.dx[i];
+            int cy = y + o.dy[i];
+            if (cx < 0 || cx >= width || cy >= height) {
+                return null;
+            }
+            cells[i] = cy * width + cx;
+        }
+
+        // no wall may run through the piece
+        for (int i = 0; i < n; i++) {
+            int cx = cells[i] % width;
+            int cy = cells[i] / width;
+            if (contains(cells, cells[i] + 1) && cx + 1 < width &&
+                walls.hasWallRight(cx, cy)) {
+                return null;
+            }
+            if (contains(cells, cells[i] + width) && walls.hasWallDown(cx, cy)) {
+                return null;
+            }
+        }
+
+        // neighbours of the piece, for the same-type check
+        List<Integer> border = new ArrayList<>();
+        for (int cell : cells) {
+            int cx = cell % width;
+            int cy = cell / width;
+            int[] neighbours = {
+                cx > 0 ? cell - 1 : -1,
+                cx < width - 1 ? cell + 1 : -1,
+                cy > 0 ? cell - width : -1,
+                cy < height - 1 ? cell + width : -1,
+            };
+            for (int adj : neighbours) {
+                if (adj >= 0 && !contains(cells, adj) && !border.contains(adj)) {
+                    border.add(adj);
+                }
+            }
+        }
+        int[] borderCells = new int[border.size()];
+        for (int i = 0; i < borderCells.length; i++) {
+            borderCells[i] = border.get(i);
+        }
+        return new Placement(type, cells, borderCells);
+    }
+
+    private static boolean contains(int[] cells, int cell) {
+        for (int c : cells) {
+            if (c == cell) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Placements anchored at the given cell
+     */
+    public Placement[] getPlacements(int cell) {
+        return byAnchor[cell];
+    }
+}
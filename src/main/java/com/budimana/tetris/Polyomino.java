@@ -0,0 +1,180 @@
+package com.budimana.tetris;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * A piece shape of any size, with all of its fixed orientations
+ *
+ * Like PieceType, rotations are the same piece but reflections are not;
+ *   a chiral shape and its mirror image are two separate Polyominos
+ *
+ * Each orientation is kept as a list of cell offsets relative to its
+ *   anchor, the first cell in reading order, so that a placement search
+ *   that always fills the first empty cell can use the offsets directly
+ *   (every offset is then at or after the anchor in reading order)
+ */
+public class Polyomino {
+
+    public final String name;
+    private final List<Orientation> orientations;
+
+    /**
+     * One fixed orientation
+     * mask has bit (y * width + x) set for each cell of the bounding box
+     *   that is part of the shape
+     */
+    public static class Orientation {
+        public final int width;
+        public final int height;
+        public final long mask;
+        public final int[] dx;  // offsets from the anchor, in reading order
+        public final int[] dy;
+
+        private Orientation(int[][] cells) {
+            // normalize to a bounding box at (0,0), sorted in reading order
+            int minX = Integer.MAX_VALUE;
+            int minY = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE;
+            int maxY = Integer.MIN_VALUE;
+            for (int[] c : cells) {
+                minX = Math.min(minX, c[0]);
+                minY = Math.min(minY, c[1]);
+                maxX = Math.max(maxX, c[0]);
+                maxY = Math.max(maxY, c[1]);
+            }
+            this.width = maxX - minX + 1;
+            this.height = maxY - minY + 1;
+            assert width * height <= 64;
+
+            long m = 0;
+            for (int[] c : cells) {
+                m |= 1L << ((c[1] - minY) * width + (c[0] - minX));
+            }
+            this.mask = m;
+
+            // reading order of the bounding box is bit order
+            this.dx = new int[cells.length];
+            this.dy = new int[cells.length];
+            int anchorX = Long.numberOfTrailingZeros(m) % width;
+            int i = 0;
+            for (long bits = m; bits != 0; bits &= bits - 1) {
+                int bit = Long.numberOfTrailingZeros(bits);
+                dx[i] = bit % width - anchorX;
+                dy[i] = bit / width;
+                i++;
+            }
+        }
+
+        public int size() {
+            return dx.length;
+        }
+
+        int[][] cells() {
+            int[][] cells = new int[dx.length][];
+            for (int i = 0; i < dx.length; i++) {
+                cells[i] = new int[] { dx[i], dy[i] };
+            }
+            return cells;
+        }
+
+        boolean sameShape(Orientation o) {
+            return width == o.width && height == o.height && mask == o.mask;
+        }
+    }
+
+    /**
+     * cells are {x, y} pairs in any position
+     */
+    public Polyomino(String name, int[][] cells) {
+        this.name = name;
+
+        List<Orientation> rotations = new ArrayList<>(4);
+        int[][] rotated = cells;
+        for (int r = 0; r < 4; r++) {
+            Orientation o = new Orientation(rotated);
+            boolean duplicate = false;
+            for (Orientation existing : rotations) {
+                duplicate |= existing.sameShape(o);
+            }
+            if (!duplicate) {
+                rotations.add(o);
+            }
+            rotated = rotate(rotated);
+        }
+        this.orientations = Collections.unmodifiableList(rotations);
+    }
+
+    /**
+     * Builds the shape from a sample piece, e.g. of a PieceType
+     */
+    public static Polyomino fromPiece(String name, Piece piece) {
+        int[][] cells = new int[piece.getCount()][];
+        int i = 0;
+        for (Tetronimo t : piece.getTetronimos()) {
+            cells[i++] = new int[] { t.x, t.y };
+        }
+        return new Polyomino(name, cells);
+    }
+
+    public List<Orientation> getOrientations() {
+        return orientations;
+    }
+
+    public int size() {
+        return orientations.get(0).size();
+    }
+
+    /**
+     * Returns the mirror image, or null if the mirror image is just one
+     *   of the rotations (the shape is not chiral)
+     */
+    public Polyomino mirror(String mirrorName) {
+        int[][] cells = orientations.get(0).cells();
+        int[][] mirrored = new int[cells.length][];
+        for (int i = 0; i < cells.length; i++) {
+            mirrored[i] = new int[] { -cells[i][0], cells[i][1] };
+        }
+
+        Orientation m = new Orientation(mirrored);
+        for (Orientation o : orientations) {
+            if (o.sameShape(m)) {
+                return null;
+            }
+        }
+        return new Polyomino(mirrorName, mirrored);
+    }
+
+    /**
+     * Returns true if the cells ({x, y} pairs) are a translation of
+     *   one of the orientations
+     */
+    public boolean matches(int[][] cells) {
+        if (cells.length != size()) {
+            return false;
+        }
+        Orientation o = new Orientation(cells);
+        for (Orientation existing : orientations) {
+            if (existing.sameShape(o)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[][] rotate(int[][] cells) {
+        int[][] rotated = new int[cells.length][];
+        for (int i = 0; i < cells.length; i++) {
+            rotated[i] = new int[] { -cells[i][1], cells[i][0] };  // 90
+        }
+        return rotated;
+    }
+
+    @Override
+    public String toString() {
+        return name + Arrays.deepToString(orientations.get(0).cells());
+    }
+}
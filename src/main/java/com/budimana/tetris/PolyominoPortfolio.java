@@ -0,0 +1,160 @@
+package com.budimana.tetris;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Races PolyominoSolvers on the same puzzle, each trying placements in
+ *   its own order, and takes the first answer
+ *
+ * The searches share one NogoodStore: a frontier one of them proves dead
+ *   is skipped by all the others, so the ones still running don't repeat
+ *   work that another already finished
+ * A member varies
+ *   - the order seed (see PolyominoSolver.setOrderSeed), the first member
+ *     keeps table order
+ *   - backjumping with learning, on every other member
+ * Every member is a complete search, so the first one to finish decides
+ *   the puzzle either way; the others are then cancelled
+ */
+public class PolyominoPortfolio implements SolverEngine {
+
+    private static final int STORE_CAPACITY = 1 << 20;
+
+    private final PlacementTable table;
+    private final int searches;
+    private final NogoodStore store = new NogoodStore(STORE_CAPACITY);
+
+    private long deadline = Long.MAX_VALUE;
+    private CancellationToken cancellationToken;
+
+    private Solution solution;
+    private int winner = -1;
+    private final AtomicLong nodesExplored = new AtomicLong();
+    private final AtomicLong storeHits = new AtomicLong();
+
+    /**
+     * Every member searches the puzzle's shared PlacementTable
+     */
+    public PolyominoPortfolio(CompiledPuzzle puzzle, int searches) {
+        this(puzzle.getPlacementTable(), searches);
+    }
+
+    public PolyominoPortfolio(PlacementTable table, int searches) {
+        assert searches > 0;
+        this.table = table;
+        this.searches = searches;
+    }
+
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    public Solution getSolution() {
+        return solution;
+    }
+
+    /**
+     * Index of the member that answered first, or -1 if none did
+     */
+    public int getWinner() {
+        return winner;
+    }
+
+    /**
+     * Nodes explored by all the members together
+     */
+    public long getNodesExplored() {
+        return nodesExplored.get();
+    }
+
+    /**
+     * Frontiers the members found dead in the shared store
+     */
+    public long getStoreHits() {
+        return storeHits.get();
+    }
+
+    /**
+     * The dead frontiers found so far; they stay valid for later solves,
+     *   which start from what the earlier ones proved
+     */
+    public NogoodStore getNogoodStore() {
+        return store;
+    }
+
+    /**
+     * Runs every member on the executor and returns the first SOLVED or
+     *   UNSOLVABLE; UNKNOWN if all of them gave up
+     */
+    public SolveStatus solve(ExecutorService executor) throws InterruptedException {
+        solution = null;
+        winner = -1;
+        nodesExplored.set(0);
+        storeHits.set(0);
+
+        // cancelling the race stops every member, the caller's token too
+        CancellationToken race = new CancellationToken(cancellationToken);
+        CompletionService<Member> completion = new ExecutorCompletionService<>(executor);
+        List<Member> members = new ArrayList<>(searches);
+        for (int i = 0; i < searches; i++) {
+            Member member = new Member(i);
+            members.add(member);
+            completion.submit(() -> member.solve(race));
+        }
+
+        try {
+            for (int i = 0; i < searches; i++) {
+                Member member = completion.take().get();
+                if (member.status != SolveStatus.UNKNOWN) {
+                    winner = member.index;
+                    if (member.status == SolveStatus.SOLVED) {
+                        solution = member.solver.getSolution();
+                    }
+                    return member.status;
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A portfolio search failed", e.getCause());
+        } finally {
+            race.cancel();
+        }
+        return SolveStatus.UNKNOWN;
+    }
+
+    /**
+     * One member's search
+     */
+    private class Member {
+        final int index;
+        final PolyominoSolver solver;
+        SolveStatus status;
+
+        Member(int index) {
+            this.index = index;
+            this.solver = new PolyominoSolver(table);
+            solver.setOrderSeed(index);
+            solver.setBackjumping(index % 2 == 1, true);
+            solver.setNogoodStore(store);
+        }
+
+        Member solve(CancellationToken race) {
+            solver.setDeadline(deadline);
+            solver.setCancellationToken(race);
+            status = solver.solve();
+            nodesExplored.addAndGet(solver.getNodesExplored());
+            storeHits.addAndGet(solver.getStoreHits());
+            return this;
+        }
+    }
+}
@@ -0,0 +1,741 @@
+package com.budimana.tetris;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+
+/**
+ * Solves the puzzle from the README for any catalogue of piece shapes
+ *   (pentominoes, mixed sizes, ...), not just tetris pieces
+ *
+ * High-level view of algorithm
+ *   1 - Find the first empty cell in reading order
+ *   2 - Try every precomputed placement anchored at that cell that only
+ *       covers empty cells and does not touch a piece of the same type
+ *   3 - Recurse; if no placement fits, backtrack
+ *
+ * Unlike TetrisSolver, pieces are placed whole, so a placement never has
+ *   to be checked against the walls (the PlacementTable already left out
+ *   the ones crossing a wall) or classified after the fact
+ * The search keeps an explicit stack so very large boards don't overflow
+ *   the thread's stack
+ *
+ * Backjumping (see setBackjumping)
+ *   Every placement that can't go down is blamed on one piece already on
+ *     the board that it overlaps or shares an edge with (same type);
+ *     placements crossing a wall aren't in the PlacementTable, so walls
+ *     never need blaming
+ *   When no placement fits at an anchor, those pieces (and the ones
+ *     blamed by the branches below) are the conflict set: the anchor
+ *     can't be covered while they are all on the board, so the search
+ *     jumps straight back to the most recent of them instead of undoing
+ *     one piece at a time
+ *   Small conflict sets are also kept as nogoods: a placement that would
+ *     complete one is turned down without searching below it
+ *
+ * Dead frontiers (see setNogoodStore)
+ *   Every cell before the anchor is filled, so what can still happen
+ *     only depends on the anchor and the cells from a row above it to
+ *     the lowest cell a placed piece can reach; once a depth fails, that
+ *     frontier is dead however the search got there
+ *   Dead frontiers are hashed into a NogoodStore, which searches of the
+ *     same puzzle on other threads publish to and consult as well (see
+ *     PolyominoPortfolio)
+ */
+public class PolyominoSolver implements SolverEngine {
+
+    // how often the cancellation and deadline are checked
+    private static final long POLL_INTERVAL = 1 << 10;
+
+    private final PlacementTable table;
+    private final int size;
+
+    // board state
+    private final long[] occupied;
+    private final byte[] cellType;
+    private final int[] cellPiece;
+    private int blockedCells = 0;
+
+    // search stack, one entry per placed piece
+    private final int[] anchor;
+    private final int[] nextChoice;
+    private final PlacementTable.Placement[] placed;
+    private int depth = 0;
+    private SolveStatus status;
+
+    // per anchor, the placement to try first (see setHint), -1 for none
+    private int[] hintChoice;
+    private long orderSeed = 0;
+
+    // conflict set of each depth: depths of the pieces blamed for what
+    //   failed there so far, see setBackjumping
+    private boolean backjumping = false;
+    private int[][] conflicts;
+    private int[] conflictCount;
+    private final int maxSpan;
+
+    // learned nogoods, each under every placement in it
+    private static final int MAX_NOGOODS = 1 << 16;
+    private static final int MAX_NOGOOD_SIZE = 6;
+    private boolean learning = false;
+    private final Map<PlacementTable.Placement, List<PlacementTable.Placement[]>> nogoods =
+        new IdentityHashMap<>();
+    private int nogoodCount = 0;
+    private long nogoodPrunes = 0;
+
+    // dead frontiers shared with other searches, frontier key per depth
+    private NogoodStore store;
+    private long[] frontierKeys;
+    private long storeHits = 0;
+
+    // the dead end at a depth was (partly) found in the store, which
+    //   doesn't say which pieces are to blame, so backjumping falls back
+    //   to undoing the previous piece
+    private boolean[] conflictAll;
+
+    private long nodesExplored = 0;
+    private long backtracks = 0;
+    private long deadline = Long.MAX_VALUE;
+    private CancellationToken cancellationToken;
+
+    /**
+     * Searches the puzzle's shared PlacementTable
+     */
+    public PolyominoSolver(CompiledPuzzle puzzle) {
+        this(puzzle.getPlacementTable());
+    }
+
+    public PolyominoSolver(PlacementTable table) {
+        this.table = table;
+        this.size = table.width * table.height;
+        this.occupied = new long[(size + 63) >>> 6];
+        this.cellType = new byte[size];
+        this.cellPiece = new int[size];
+        Arrays.fill(cellPiece, -1);
+
+        int maxPieces = size / table.catalogue.getMinSize() + 1;
+        this.anchor = new int[maxPieces + 1];
+        this.nextChoice = new int[maxPieces + 1];
+        this.placed = new PlacementTable.Placement[maxPieces + 1];
+
+        int span = 1;
+        for (Polyomino p : table.catalogue.getTypes()) {
+            for (Polyomino.Orientation o : p.getOrientations()) {
+                span = Math.max(span, Math.max(o.width, o.height));
+            }
+        }
+        this.maxSpan = span;
+    }
+
+    /**
+     * Conflict-directed backjumping: a dead end jumps back to the last
+     *   piece that had a part in it, skipping the pieces in between, whose
+     *   other placements would fail the same way
+     * With learning, conflict sets of up to MAX_NOGOOD_SIZE pieces are
+     *   also kept (up to MAX_NOGOODS of them) and checked on later branches
+     * Off by default; the search stays complete either way, and never
+     *   explores more nodes than plain backtracking
+     */
+    public void setBackjumping(boolean backjumping, boolean learning) {
+        assert depth == 0;
+        this.backjumping = backjumping;
+        this.learning = backjumping && learning;
+        if (backjumping && conflicts == null) {
+            conflicts = new int[anchor.length][];
+            conflictCount = new int[anchor.length];
+            conflictAll = new boolean[anchor.length];
+        }
+    }
+
+    /**
+     * Publishes every dead frontier to the store and skips frontiers
+     *   found there; the store must only be shared by searches of this
+     *   same puzzle (walls, catalogue, blocked and fixed cells)
+     */
+    public void setNogoodStore(NogoodStore store) {
+        assert depth == 0;
+        this.store = store;
+        if (frontierKeys == null) {
+            frontierKeys = new long[anchor.length];
+        }
+    }
+
+    /**
+     * Frontiers found dead in the store
+     */
+    public long getStoreHits() {
+        return storeHits;
+    }
+
+    /**
+     * Nogoods learned so far
+     */
+    public int getNogoodCount() {
+        return nogoodCount;
+    }
+
+    /**
+     * Placements turned down because they would complete a nogood
+     */
+    public long getNogoodPrunes() {
+        return nogoodPrunes;
+    }
+
+    /**
+     * Takes the cell out of the puzzle: no piece may cover it, and it
+     *   has no type for the same-type rule
+     * Used to solve one region of a larger board
+     */
+    public void block(int cell) {
+        assert depth == 0 && (occupied[cell >>> 6] & (1L << cell)) == 0;
+        occupied[cell >>> 6] |= 1L << cell;
+        cellType[cell] = -1;
+        blockedCells++;
+    }
+
+    /**
+     * Fills the cell with part of a piece that's already decided: no piece
+     *   may cover it, but its type counts for the same-type rule
+     * Used to solve part of a board around pieces that stay put
+     */
+    public void fix(int cell, int type) {
+        assert depth == 0 && (occupied[cell >>> 6] & (1L << cell)) == 0;
+        occupied[cell >>> 6] |= 1L << cell;
+        cellType[cell] = (byte) type;
+        blockedCells++;
+    }
+
+    /**
+     * Tries the pieces of the given tiling first, e.g. the best tiling of
+     *   a LocalSearchSolver; it doesn't have to be valid or complete, a
+     *   placement is preferred at an anchor if the hint has a piece of
+     *   that shape and type there
+     * The search is still complete, only the order changes
+     */
+    public void setHint(Solution hint) {
+        assert hint.width == table.width && hint.height == table.height;
+        hintChoice = new int[size];
+        Arrays.fill(hintChoice, -1);
+        for (int cell = 0; cell < size; cell++) {
+            int id = hint.getPieceId(cell);
+            if (id < 0) {
+                continue;
+            }
+            PlacementTable.Placement[] options = table.getPlacements(cell);
+            for (int i = 0; i < options.length && hintChoice[cell] < 0; i++) {
+                if (options[i].type == hint.getPieceType(id) && coversPiece(options[i], hint, id)) {
+                    hintChoice[cell] = i;
+                }
+            }
+        }
+    }
+
+    private static boolean coversPiece(PlacementTable.Placement p, Solution hint, int id) {
+        for (int cell : p.cells) {
+            if (hint.getPieceId(cell) != id) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Starts each anchor's placements at a different point, picked by the
+     *   seed (0 keeps table order), so searches with different seeds
+     *   explore the tree in different orders; a hinted placement still
+     *   comes first
+     * The search is still complete, only the order changes
+     */
+    public void setOrderSeed(long orderSeed) {
+        assert depth == 0;
+        this.orderSeed = orderSeed;
+    }
+
+    /**
+     * Index into the anchor's placements of its k-th choice: the hinted
+     *   placement first, then the rest in table order (rotated by the
+     *   order seed)
+     */
+    private int option(int anchorCell, int k) {
+        int hint = hintChoice == null ? -1 : hintChoice[anchorCell];
+        if (hint < 0) {
+            if (orderSeed == 0) {
+                return k;
+            }
+            int count = table.getPlacements(anchorCell).length;
+            long mixed = (orderSeed + anchorCell) * 0x9E3779B97F4A7C15L;
+            return (int) ((k + (mixed >>> 33)) % count);
+        }
+        return k == 0 ? hint : (k <= hint ? k - 1 : k);
+    }
+
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    public long getNodesExplored() {
+        return nodesExplored;
+    }
+
+    public long getBacktracks() {
+        return backtracks;
+    }
+
+    /**
+     * Runs on the caller's thread, see SolverEngine
+     */
+    @Override
+    public SolveStatus solve(ExecutorService executor) {
+        return solve();
+    }
+
+    /**
+     * Depth-first search over placements
+     * On SOLVED the board holds the solution (see getSolution); the pieces
+     *   are taken off again when the next solve starts
+     */
+    public SolveStatus solve() {
+        while (depth > 0) {
+            depth--;
+            unplace();
+        }
+        status = search();
+        return status;
+    }
+
+    private SolveStatus search() {
+        if (!areaFits()) {
+            return SolveStatus.UNSOLVABLE;
+        }
+
+        anchor[0] = nextEmpty(0);
+        nextChoice[0] = 0;
+        if (backjumping) {
+            conflictCount[0] = 0;
+            conflictAll[0] = false;
+        }
+
+        while (true) {
+            if (anchor[depth] == size) {
+                return SolveStatus.SOLVED;
+            }
+
+            if ((++nodesExplored & (POLL_INTERVAL - 1)) == 0 && shouldStop()) {
+                return SolveStatus.UNKNOWN;
+            }
+
+            // find the next placement at this anchor that fits
+            PlacementTable.Placement[] options = table.getPlacements(anchor[depth]);
+            int choice = nextChoice[depth];
+            if (choice == 0 && store != null && isKnownDead()) {
+                choice = options.length;
+            }
+            while (choice < options.length && !fits(options[option(anchor[depth], choice)])) {
+                choice++;
+            }
+
+            if (choice < options.length) {
+                nextChoice[depth] = choice + 1;
+                place(options[option(anchor[depth], choice)]);
+
+                depth++;
+                anchor[depth] = nextEmpty(anchor[depth - 1] + 1);
+                nextChoice[depth] = 0;
+                if (backjumping) {
+                    conflictCount[depth] = 0;
+                    conflictAll[depth] = false;
+                }
+            } else if (backjumping) {
+                // nothing left at this anchor, undo back to the last piece
+                //   to blame for it
+                int target = backjump();
+                if (target < 0) {
+                    // leave the board empty, as plain backtracking does
+                    while (depth > 0) {
+                        depth--;
+                        unplace();
+                    }
+                    return SolveStatus.UNSOLVABLE;
+                }
+                backtracks++;
+            } else {
+                // nothing left at this anchor, undo the previous piece
+                if (store != null) {
+                    store.add(frontierKeys[depth]);
+                }
+                if (depth == 0) {
+                    return SolveStatus.UNSOLVABLE;
+                }
+                depth--;
+                unplace();
+                backtracks++;
+            }
+        }
+    }
+
+    /**
+     * Handles a dead end at the current depth: finishes its conflict set,
+     *   learns it, and undoes pieces back to the deepest one in it, which
+     *   inherits the rest of the set
+     * Returns the depth jumped back to, or -1 if no piece is to blame
+     *   (the anchor can't be covered at all)
+     */
+    private int backjump() {
+        int failed = depth;
+        int[] conflict = null;
+        int count = 0;
+        int target = -1;
+        if (conflictAll[failed]) {
+            target = failed - 1;
+        } else {
+            blameEarlierAnchors();
+            conflict = conflicts[failed];
+            count = conflictCount[failed];
+            for (int i = 0; i < count; i++) {
+                target = Math.max(target, conflict[i]);
+            }
+            if (learning && target >= 0 && count <= MAX_NOGOOD_SIZE && nogoodCount < MAX_NOGOODS) {
+                learn(conflict, count);
+            }
+        }
+
+        // every frontier jumped over is dead too: the pieces to blame are
+        //   all still down at each of them
+        if (store != null) {
+            for (int d = Math.max(target + 1, 0); d <= failed; d++) {
+                store.add(frontierKeys[d]);
+            }
+        }
+        if (target < 0) {
+            return -1;
+        }
+
+        while (depth > target) {
+            depth--;
+            unplace();
+        }
+        if (conflictAll[failed]) {
+            conflictAll[target] = true;
+        }
+        for (int i = 0; i < count; i++) {
+            if (conflict[i] != target) {
+                addConflict(target, conflict[i]);
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Looks up the current frontier in the store (keeping its key for
+     *   publishing if this depth fails)
+     */
+    private boolean isKnownDead() {
+        long key = frontierKey(anchor[depth]);
+        frontierKeys[depth] = key;
+        if (!store.contains(key)) {
+            return false;
+        }
+        storeHits++;
+        if (backjumping) {
+            conflictAll[depth] = true;
+        }
+        return true;
+    }
+
+    /**
+     * Hash of everything the rest of the search depends on: the anchor
+     *   and which cells are filled with what type, from a row above the
+     *   anchor to the lowest cell a piece placed before it can reach
+     *   (anything later is still empty, or blocked for good)
+     */
+    private long frontierKey(int a) {
+        int width = table.width;
+        int from = Math.max(0, a - width);
+        int to = Math.min(size, a + (maxSpan - 1) * width + maxSpan);
+        long h = a;
+        for (int cell = from; cell < to; cell++) {
+            if ((occupied[cell >>> 6] & (1L << cell)) != 0) {
+                h = (h ^ ((long) cell << 8 | (cellType[cell] & 0xff))) * 0x9e3779b97f4a7c15L;
+            }
+        }
+        // splitmix64 finalizer
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * Placements covering the anchor but anchored before it are never
+     *   tried (each overlaps a piece already down, as every cell before
+     *   the anchor is filled), but they are part of why the anchor can't
+     *   be covered, so their pieces go in the conflict set too
+     */
+    private void blameEarlierAnchors() {
+        int cell = anchor[depth];
+        int x = cell % table.width;
+        int y = cell / table.width;
+        for (int ay = Math.max(0, y - maxSpan + 1); ay <= y; ay++) {
+            for (int ax = Math.max(0, x - maxSpan + 1);
+                 ax < Math.min(table.width, x + maxSpan); ax++) {
+                int a = ay * table.width + ax;
+                if (a >= cell) {
+                    break;
+                }
+                for (PlacementTable.Placement p : table.getPlacements(a)) {
+                    if (covers(p, cell)) {
+                        blame(p);
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean covers(PlacementTable.Placement p, int cell) {
+        for (int c : p.cells) {
+            if (c == cell) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a piece to blame for the placement not fitting to the current
+     *   conflict set: the shallowest piece it overlaps or touches with the
+     *   same type, or none if a blocked or fixed cell is in the way (that
+     *   doesn't depend on any choice)
+     */
+    private void blame(PlacementTable.Placement p) {
+        int culprit = Integer.MAX_VALUE;
+        for (int cell : p.cells) {
+            if ((occupied[cell >>> 6] & (1L << cell)) != 0) {
+                if (cellPiece[cell] < 0) {
+                    return;
+                }
+                culprit = Math.min(culprit, cellPiece[cell]);
+            }
+        }
+        for (int cell : p.border) {
+            if ((occupied[cell >>> 6] & (1L << cell)) != 0 && cellType[cell] == p.type) {
+                if (cellPiece[cell] < 0) {
+                    return;
+                }
+                culprit = Math.min(culprit, cellPiece[cell]);
+            }
+        }
+        assert culprit != Integer.MAX_VALUE;
+        addConflict(depth, culprit);
+    }
+
+    private void addConflict(int d, int culprit) {
+        int[] conflict = conflicts[d];
+        int count = conflictCount[d];
+        for (int i = 0; i < count; i++) {
+            if (conflict[i] == culprit) {
+                return;
+            }
+        }
+        if (conflict == null) {
+            conflict = conflicts[d] = new int[4];
+        } else if (count == conflict.length) {
+            conflict = conflicts[d] = Arrays.copyOf(conflict, count * 2);
+        }
+        conflict[count] = culprit;
+        conflictCount[d] = count + 1;
+    }
+
+    /**
+     * Keeps the pieces of a conflict set as a nogood: they can't all be
+     *   on the board together in any solution
+     */
+    private void learn(int[] conflict, int count) {
+        PlacementTable.Placement[] nogood = new PlacementTable.Placement[count];
+        for (int i = 0; i < count; i++) {
+            nogood[i] = placed[conflict[i]];
+        }
+        for (PlacementTable.Placement p : nogood) {
+            List<PlacementTable.Placement[]> list = nogoods.get(p);
+            if (list == null) {
+                list = new ArrayList<>();
+                nogoods.put(p, list);
+            }
+            list.add(nogood);
+        }
+        nogoodCount++;
+    }
+
+    /**
+     * Whether putting the placement down would complete a nogood; if so
+     *   the rest of the nogood's pieces are to blame
+     */
+    private boolean completesNogood(PlacementTable.Placement p) {
+        List<PlacementTable.Placement[]> list = nogoods.get(p);
+        if (list == null) {
+            return false;
+        }
+        for (PlacementTable.Placement[] nogood : list) {
+            boolean complete = true;
+            for (int i = 0; i < nogood.length && complete; i++) {
+                complete = nogood[i] == p || isPlaced(nogood[i]);
+            }
+            if (complete) {
+                for (PlacementTable.Placement q : nogood) {
+                    if (q != p) {
+                        addConflict(depth, cellPiece[q.cells[0]]);
+                    }
+                }
+                nogoodPrunes++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isPlaced(PlacementTable.Placement p) {
+        int cell = p.cells[0];
+        if ((occupied[cell >>> 6] & (1L << cell)) == 0) {
+            return false;
+        }
+        int d = cellPiece[cell];
+        return d >= 0 && d < depth && placed[d] == p;
+    }
+
+    /**
+     * Cheap check that the board's area can be a sum of piece sizes
+     */
+    private boolean areaFits() {
+        int gcd = 0;
+        for (Polyomino p : table.catalogue.getTypes()) {
+            gcd = gcd(gcd, p.size());
+        }
+        return (size - blockedCells) % gcd == 0;
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    private boolean shouldStop() {
+        return (cancellationToken != null && cancellationToken.isCancelled()) ||
+               (deadline != Long.MAX_VALUE && System.currentTimeMillis() >= deadline);
+    }
+
+    /**
+     * The placement only covers empty cells and doesn't share an edge with
+     *   a piece of the same type
+     */
+    private boolean fits(PlacementTable.Placement p) {
+        for (int cell : p.cells) {
+            if ((occupied[cell >>> 6] & (1L << cell)) != 0) {
+                if (backjumping) {
+                    blame(p);
+                }
+                return false;
+            }
+        }
+        for (int cell : p.border) {
+            if ((occupied[cell >>> 6] & (1L << cell)) != 0 && cellType[cell] == p.type) {
+                if (backjumping) {
+                    blame(p);
+                }
+                return false;
+            }
+        }
+        return !learning || !completesNogood(p);
+    }
+
+    private void place(PlacementTable.Placement p) {
+        placed[depth] = p;
+        for (int cell : p.cells) {
+            occupied[cell >>> 6] |= 1L << cell;
+            cellType[cell] = (byte) p.type;
+            cellPiece[cell] = depth;
+        }
+    }
+
+    private void unplace() {
+        for (int cell : placed[depth].cells) {
+            occupied[cell >>> 6] &= ~(1L << cell);
+        }
+        placed[depth] = null;
+    }
+
+    /**
+     * First empty cell at or after the given cell, or size if there is none
+     */
+    private int nextEmpty(int from) {
+        if (from >= size) {
+            return size;
+        }
+        int word = from >>> 6;
+        long bits = ~occupied[word] & (-1L << from);
+        while (bits == 0) {
+            if (++word == occupied.length) {
+                return size;
+            }
+            bits = ~occupied[word];
+        }
+        return Math.min(size, (word << 6) + Long.numberOfTrailingZeros(bits));
+    }
+
+    /**
+     * Returns the solution found by the last solve if it was SOLVED,
+     *   otherwise null
+     * Piece ids are the order the pieces were placed in, which is the
+     *   reading order of their first cells; blocked and fixed cells have
+     *   id -1
+     */
+    public Solution getSolution() {
+        if (status != SolveStatus.SOLVED) {
+            return null;
+        }
+        int[] pieceIds = cellPiece.clone();
+        byte[] pieceTypes = new byte[depth];
+        for (int i = 0; i < depth; i++) {
+            pieceTypes[i] = (byte) placed[i].type;
+        }
+        return new Solution(table.width, table.height, pieceIds, pieceTypes);
+    }
+
+    /**
+     * Usage: width height restrictionsFile [tetrominoes|pentominoes|mixed]
+     */
+    public static void main(String[] args) throws Exception {
+        assert args != null && args.length >= 3;
+        int width = Integer.parseInt(args[0]);
+        int height = Integer.parseInt(args[1]);
+        PieceCatalogue catalogue = PieceCatalogue.forName(args.length > 3
+                                                              ? args[3]
+                                                              : "tetrominoes");
+
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(width, height);
+        Map<Tetronimo, List<Tetronimo>> restrictions =
+            TetrisSolver.parseRestrictions(args[2], matrix);
+        Walls walls = Walls.fromRestrictions(matrix, restrictions);
+
+        long startTime = System.currentTimeMillis();
+        PolyominoSolver solver = new PolyominoSolver(new PlacementTable(walls, catalogue));
+        SolveStatus status = solver.solve();
+        long endTime = System.currentTimeMillis();
+
+        System.out.println("status: " + status +
+                           ", nodes: " + solver.getNodesExplored());
+        System.out.println("Time taken: " + (endTime - startTime) / 1000.0);
+        if (status == SolveStatus.SOLVED) {
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+            new SolutionRenderer().render(solver.getSolution(), out);
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package com.budimana.tetris;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Races differently configured TetrisSolvers on the same puzzle and
+ *   takes the first answer
+ *
+ * A configuration varies
+ *   - the order findSolution tries its options in
+ *   - the scan direction, by solving a mirrored or transposed copy of the
+ *     board and mapping the solution back
+ *   - pseudo-random tie-breaking between options, by seed
+ * Every configuration is a complete search, so the first one to finish
+ *   decides the puzzle either way; the others are then cancelled
+ */
+public class PortfolioSolver implements SolverEngine {
+
+    /**
+     * How a configuration sees the board
+     * Reading order on the transformed board is a different scan order
+     *   on the original one (right to left, bottom up, column by column)
+     */
+    public enum Symmetry {
+        IDENTITY,
+        MIRROR_X,    // scan right to left
+        MIRROR_Y,    // scan bottom up
+        ROTATE_180,  // scan right to left, bottom up
+        TRANSPOSE,   // scan column by column
+        ;
+
+        int width(int width, int height) {
+            return this == TRANSPOSE ? height : width;
+        }
+
+        int height(int width, int height) {
+            return this == TRANSPOSE ? width : height;
+        }
+
+        /**
+         * Position of (x, y) on the transformed board, as {x, y}
+         */
+        int[] map(int x, int y, int width, int height) {
+            switch (this) {
+                case IDENTITY:
+                    return new int[] { x, y };
+                case MIRROR_X:
+                    return new int[] { width - 1 - x, y };
+                case MIRROR_Y:
+                    return new int[] { x, height - 1 - y };
+                case ROTATE_180:
+                    return new int[] { width - 1 - x, height - 1 - y };
+                case TRANSPOSE:
+                    return new int[] { y, x };
+                default:
+                    throw new IllegalArgumentException("Unknown symmetry: " + this);
+            }
+        }
+    }
+
+    /**
+     * One member of the portfolio
+     */
+    public static class Config {
+        public final OptionKind[] optionOrder;
+        public final Symmetry symmetry;
+        public final Long shuffleSeed;  // null to keep the option order
+
+        public Config(OptionKind[] optionOrder, Symmetry symmetry, Long shuffleSeed) {
+            this.optionOrder = optionOrder;
+            this.symmetry = symmetry;
+            this.shuffleSeed = shuffleSeed;
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(optionOrder) + " " + symmetry +
+                   (shuffleSeed != null ? " seed " + shuffleSeed : "");
+        }
+    }
+
+    public static final OptionKind[] NEW_FIRST = {
+        OptionKind.NEW, OptionKind.LEFT, OptionKind.UP, OptionKind.MERGE
+    };
+    public static final OptionKind[] JOIN_FIRST = {
+        OptionKind.MERGE, OptionKind.LEFT, OptionKind.UP, OptionKind.NEW
+    };
+
+    private final int width;
+    private final int height;
+    private final List<Config> configs;
+
+    // the puzzle as each symmetry in the configs sees it
+    private final Map<Symmetry, CompiledPuzzle> views = new EnumMap<>(Symmetry.class);
+
+    private long deadline = Long.MAX_VALUE;
+    private CancellationToken cancellationToken;
+
+    private Solution solution;
+    private Config winner;
+    private final AtomicLong nodesExplored = new AtomicLong();
+
+    /**
+     * Each symmetry's view of the walls is compiled once and shared by
+     *   every solve
+     */
+    public PortfolioSolver(CompiledPuzzle puzzle, List<Config> configs) {
+        this.width = puzzle.width;
+        this.height = puzzle.height;
+        this.configs = configs;
+        for (Config config : configs) {
+            if (!views.containsKey(config.symmetry)) {
+                views.put(config.symmetry, transform(puzzle, config.symmetry));
+            }
+        }
+    }
+
+    /**
+     * restrictions are given on a matrix of the given size, as returned by
+     *   TetrisSolver.parseRestrictions
+     */
+    public PortfolioSolver(int width,
+                           int height,
+                           Map<Tetronimo, List<Tetronimo>> restrictions,
+                           List<Config> configs) {
+        this(CompiledPuzzle.compile(Walls.fromRestrictions(TetrisSolver.createMatrix(width, height),
+                                                           restrictions),
+                                    PieceCatalogue.tetrominoes()),
+             configs);
+    }
+
+    /**
+     * The puzzle moved onto the board a symmetry sees, walls in both
+     *   directions since the scan reaches each boundary from the other
+     *   side after a mirror
+     */
+    private static CompiledPuzzle transform(CompiledPuzzle puzzle, Symmetry symmetry) {
+        if (symmetry == Symmetry.IDENTITY) {
+            return puzzle;
+        }
+        int width = puzzle.width;
+        int height = puzzle.height;
+        Walls walls = new Walls(symmetry.width(width, height), symmetry.height(width, height));
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int cell = y * width + x;
+                int[] p = symmetry.map(x, y, width, height);
+                if (x < width - 1 && puzzle.hasWallRight(cell)) {
+                    int[] q = symmetry.map(x + 1, y, width, height);
+                    walls.add(p[0], p[1], q[0], q[1]);
+                }
+                if (y < height - 1 && puzzle.hasWallDown(cell)) {
+                    int[] q = symmetry.map(x, y + 1, width, height);
+                    walls.add(p[0], p[1], q[0], q[1]);
+                }
+            }
+        }
+        return CompiledPuzzle.compile(walls, puzzle.catalogue);
+    }
+
+    /**
+     * A spread of configurations, the plain TetrisSolver search first
+     */
+    public static List<Config> defaultConfigs(int count) {
+        Config[] spread = {
+            new Config(NEW_FIRST, Symmetry.IDENTITY, null),
+            new Config(JOIN_FIRST, Symmetry.IDENTITY, null),
+            new Config(NEW_FIRST, Symmetry.ROTATE_180, null),
+            new Config(NEW_FIRST, Symmetry.TRANSPOSE, null),
+            new Config(JOIN_FIRST, Symmetry.MIRROR_X, null),
+            new Config(NEW_FIRST, Symmetry.MIRROR_Y, null),
+            new Config(JOIN_FIRST, Symmetry.TRANSPOSE, null),
+            new Config(NEW_FIRST, Symmetry.MIRROR_X, null),
+        };
+
+        List<Config> configs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (i < spread.length) {
+                configs.add(spread[i]);
+            } else {
+                // past the fixed spread, vary the tie-breaking
+                Symmetry symmetry = Symmetry.values()[i % Symmetry.values().length];
+                configs.add(new Config(NEW_FIRST, symmetry, (long) i));
+            }
+        }
+        return configs;
+    }
+
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    public Solution getSolution() {
+        return solution;
+    }
+
+    /**
+     * The configuration that answered first, or null if none did
+     */
+    public Config getWinner() {
+        return winner;
+    }
+
+    /**
+     * Nodes explored by all the configurations together
+     */
+    public long getNodesExplored() {
+        return nodesExplored.get();
+    }
+
+    /**
+     * Runs every configuration on the executor and returns the first
+     *   SOLVED or UNSOLVABLE; UNKNOWN if all of them gave up
+     */
+    public SolveStatus solve(ExecutorService executor) throws InterruptedException {
+        solution = null;
+        winner = null;
+        nodesExplored.set(0);
+
+        // cancelling the race stops every member, the caller's token too
+        CancellationToken race = new CancellationToken(cancellationToken);
+        CompletionService<Entry> completion = new ExecutorCompletionService<>(executor);
+        for (Config config : configs) {
+            Entry entry = new Entry(config);
+            completion.submit(() -> entry.solve(race));
+        }
+
+        try {
+            for (int i = 0; i < configs.size(); i++) {
+                Entry entry = completion.take().get();
+                if (entry.status != SolveStatus.UNKNOWN) {
+                    winner = entry.config;
+                    if (entry.status == SolveStatus.SOLVED) {
+                        solution = entry.getSolution();
+                    }
+                    return entry.status;
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A portfolio search failed", e.getCause());
+        } finally {
+            race.cancel();
+        }
+        return SolveStatus.UNKNOWN;
+    }
+
+    /**
+     * A configuration's own copy of the puzzle and its search
+     */
+    private class Entry {
+        final Config config;
+        final TetrisSolver solver;
+        SolveStatus status;
+
+        Entry(Config config) {
+            this.config = config;
+            this.solver = new TetrisSolver(views.get(config.symmetry));
+        }
+
+        Entry solve(CancellationToken race) {
+            solver.setOptionOrder(config.optionOrder);
+            if (config.shuffleSeed != null) {
+                solver.setShuffleSeed(config.shuffleSeed);
+            }
+            solver.setDeadline(deadline);
+            solver.setCancellationToken(race);
+            status = solver.solve();
+            nodesExplored.addAndGet(solver.getNodesExplored());
+            return this;
+        }
+
+        /**
+         * Maps the solved board back onto the original orientation
+         * Mirroring turns pieces into their reflections, so pieces are
+         *   classified again from their cells
+         */
+        Solution getSolution() {
+            Solution transformed = solver.getSolution();
+            PieceCatalogue catalogue = PieceCatalogue.tetrominoes();
+
+            int[] pieceIds = new int[width * height];
+            List<List<int[]>> pieceCells = new ArrayList<>();
+            int[] renumbered = new int[transformed.getPieceCount()];
+            Arrays.fill(renumbered, -1);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int[] p = config.symmetry.map(x, y, width, height);
+                    int id = transformed.getPieceId(p[0], p[1]);
+
+                    // number pieces in reading order of the original board
+                    if (renumbered[id] < 0) {
+                        renumbered[id] = pieceCells.size();
+                        pieceCells.add(new ArrayList<>());
+                    }
+                    pieceIds[y * width + x] = renumbered[id];
+                    pieceCells.get(renumbered[id]).add(new int[] { x, y });
+                }
+            }
+
+            byte[] pieceTypes = new byte[pieceCells.size()];
+            for (int i = 0; i < pieceTypes.length; i++) {
+                List<int[]> cells = pieceCells.get(i);
+                pieceTypes[i] = (byte) catalogue.classify(cells.toArray(new int[cells.size()][]));
+            }
+            return new Solution(width, height, pieceIds, pieceTypes);
+        }
+    }
+
+    /**
+     * Usage: width height restrictionsFile [--threads n] [--timeout seconds]
+     */
+    public static void main(String[] args) throws Exception {
+        assert args != null && args.length >= 3;
+        int width = Integer.parseInt(args[0]);
+        int height = Integer.parseInt(args[1]);
+        int threads = Runtime.getRuntime().availableProcessors();
+        Long timeoutSeconds = null;
+        for (int i = 3; i < args.length; i++) {
+            if (args[i].equals("--threads")) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--timeout")) {
+                timeoutSeconds = Long.parseLong(args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(width, height);
+        Map<Tetronimo, List<Tetronimo>> restrictions =
+            TetrisSolver.parseRestrictions(args[2], matrix);
+
+        long startTime = System.currentTimeMillis();
+        PortfolioSolver solver = new PortfolioSolver(width, height, restrictions,
+                                                     defaultConfigs(threads));
+        if (timeoutSeconds != null) {
+            solver.setDeadline(startTime + timeoutSeconds * 1000);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        SolveStatus status;
+        try {
+            status = solver.solve(executor);
+        } finally {
+            executor.shutdownNow();
+        }
+        long endTime = System.currentTimeMillis();
+
+        System.out.println("status: " + status + ", winner: " + solver.getWinner());
+        System.out.println("Time taken: " + (endTime - startTime) / 1000.0);
+        if (status == SolveStatus.SOLVED) {
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+            new SolutionRenderer().render(solver.getSolution(), out);
+            out.flush();
+        }
+    }
+}
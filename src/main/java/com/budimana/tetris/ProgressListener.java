@@ -0,0 +1,11 @@
+package com.budimana.tetris;
+
+
+/**
+ * Receives periodic snapshots of a running search
+ * Called on the solver's thread, so implementations should be quick
+ */
+public interface ProgressListener {
+
+    void onProgress(SearchProgress progress);
+}
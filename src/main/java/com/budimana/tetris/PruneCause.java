@@ -0,0 +1,15 @@
+package com.budimana.tetris;
+
+
+/**
+ * Reasons findSolution cuts off a branch
+ */
+public enum PruneCause {
+    RESTRICTION,    // a neighbouring piece is on the other side of a boundary
+    FULL_PIECE,     // a neighbouring piece is already complete
+    CANNOT_FINISH,  // an unfinished piece has no room left to grow
+    SAME_TYPE,      // two pieces of the same type share an edge
+    TYPE_DOMAIN,    // an unfinished piece has no room to become a type
+                    //   its complete neighbours allow
+    ;
+}
@@ -0,0 +1,544 @@
+package com.budimana.tetris;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+
+/**
+ * Generates random solvable puzzles in the restrictions file format
+ *
+ * A random tiling that follows the same-type rule is built first, then
+ *   each boundary between two of its pieces is written out as a
+ *   restriction with probability density; the tiling itself is always
+ *   a solution, and fewer restrictions make a harder puzzle
+ *
+ * The tiling is built a band of rows at a time with a randomized DFS, so
+ *   memory only depends on the width
+ * Each step tiles two bands but only keeps the pieces starting in the
+ *   first one: pieces may hang over into the next band, and the second
+ *   band shows the overhang can still be completed
+ * Within a band the DFS fills column by column: the frontier is then only
+ *   as long as the band is tall, so a dead end shows up a few pieces after
+ *   the mistake instead of a whole row later
+ * The same width, height, catalogue, density and seed always produce the
+ *   same file
+ */
+public class PuzzleGenerator {
+
+    private static final int BAND_HEIGHT = 4;
+    private static final int CHUNK_COLUMNS = 4;
+    private static final int CHUNK_NODES = 1 << 9;
+    private static final int CHUNK_RETRIES = 3;
+
+    private static final byte FREE = -1;
+    private static final byte FILLED = -2;  // in a Frontier, a cell whose type can't matter
+
+    private final int width;
+    private final int height;
+    private final Random random;
+    private final Shape[] shapes;
+    private final int maxPieceHeight;
+    private final int maxPieceWidth;
+    private double density = 0.5;
+
+    // rolling window of rows [top, top + rows): the row above the band,
+    //   the band, and room for overhanging pieces and their neighbours
+    private final int rows;
+    private int top;
+    private byte[] types;
+    private int[] pieces;
+    private int nextPiece = 0;
+    private long nodesLeft;
+
+    // pieces placed by the current step, by id - firstPiece
+    private int firstPiece;
+    private final Shape[] placedShape;
+    private final int[] placedX;
+    private final int[] placedY;
+    private final Set<Frontier> deadEnds = new HashSet<>();
+
+    // scratch space for leavesHole
+    private final int minPieceSize;
+    private final int[] holeStack;
+    private final int[] holeVisited;
+    private int holeStamp = 0;
+
+    /**
+     * One orientation of one piece type, as offsets from its first cell
+     *   in column order (leftmost column, topmost cell)
+     */
+    private static class Shape {
+        final int type;
+        final int[] dx;
+        final int[] dy;
+        final int minDy;  // top row, relative to the first cell
+
+        Shape(int type, Polyomino.Orientation o) {
+            this.type = type;
+            int first = 0;
+            for (int i = 1; i < o.size(); i++) {
+                if (o.dx[i] < o.dx[first] || (o.dx[i] == o.dx[first] && o.dy[i] < o.dy[first])) {
+                    first = i;
+                }
+            }
+            this.dx = new int[o.size()];
+            this.dy = new int[o.size()];
+            for (int i = 0; i < o.size(); i++) {
+                dx[i] = o.dx[i] - o.dx[first];
+                dy[i] = o.dy[i] - o.dy[first];
+            }
+            this.minDy = -o.dy[first];
+        }
+    }
+
+    public PuzzleGenerator(int width, int height, PieceCatalogue catalogue, long seed) {
+        if ((width * (long) height) % gcdOfSizes(catalogue) != 0) {
+            throw new IllegalArgumentException("A " + width + "x" + height +
+                                               " board can't be tiled by these pieces");
+        }
+        this.width = width;
+        this.height = height;
+        this.random = new Random(seed);
+
+        List<Shape> all = new ArrayList<>();
+        int tallest = 1;
+        int widest = 1;
+        for (int type = 0; type < catalogue.size(); type++) {
+            for (Polyomino.Orientation o : catalogue.get(type).getOrientations()) {
+                all.add(new Shape(type, o));
+                tallest = Math.max(tallest, o.height);
+                widest = Math.max(widest, o.width);
+            }
+        }
+        this.shapes = all.toArray(new Shape[all.size()]);
+        this.maxPieceHeight = tallest;
+        this.maxPieceWidth = widest;
+
+        this.rows = 1 + 3 * BAND_HEIGHT + maxPieceHeight;
+        this.types = new byte[rows * width];
+        this.pieces = new int[rows * width];
+
+        this.minPieceSize = catalogue.getMinSize();
+        this.holeStack = new int[4 * minPieceSize];
+        this.holeVisited = new int[rows * width];
+
+        int maxPlaced = rows * width / catalogue.getMinSize() + 1;
+        this.placedShape = new Shape[maxPlaced];
+        this.placedX = new int[maxPlaced];
+        this.placedY = new int[maxPlaced];
+    }
+
+    private static int gcdOfSizes(PieceCatalogue catalogue) {
+        int gcd = 0;
+        for (Polyomino p : catalogue.getTypes()) {
+            int a = gcd;
+            int b = p.size();
+            while (b != 0) {
+                int t = a % b;
+                a = b;
+                b = t;
+            }
+            gcd = a;
+        }
+        return gcd;
+    }
+
+    /**
+     * Fraction of the piece boundaries written out as restrictions
+     */
+    public void setDensity(double density) {
+        if (density < 0 || density > 1) {
+            throw new IllegalArgumentException("Density must be between 0 and 1: " + density);
+        }
+        this.density = density;
+    }
+
+    /**
+     * Writes the restrictions of a new puzzle, one boundary per line
+     * Returns the number of restrictions written
+     */
+    public long generate(Writer out) throws IOException {
+        Arrays.fill(types, FREE);
+        Arrays.fill(pieces, -1);
+        top = -1;
+        nextPiece = 0;
+
+        long written = 0;
+        int y0 = 0;
+        while (y0 < height) {
+            // the step before the last one already fills to the bottom, so
+            //   the last one starts from a state known to be completable
+            int remaining = height - y0;
+            int fillRows = remaining < 3 * BAND_HEIGHT ? remaining : 2 * BAND_HEIGHT;
+            int keepRows = remaining <= 2 * BAND_HEIGHT ? remaining : BAND_HEIGHT;
+            fillBand(y0, fillRows, keepRows);
+            written += writeBand(out, y0, keepRows);
+            shift(keepRows);
+            y0 += keepRows;
+        }
+        return written;
+    }
+
+    /**
+     * Tiles rows [y0, y0 + fillRows) and keeps the pieces whose top row is
+     *   in the first keepRows
+     *
+     * The rows are filled a chunk of columns at a time, the same way as
+     *   the bands: each chunk is tiled together with the next one, but only
+     *   the pieces starting in the chunk are kept
+     * A chunk that can't be tiled sends the search back a chunk, and one
+     *   that takes too long is retried with other random choices
+     */
+    private void fillBand(int y0, int fillRows, int keepRows) {
+        firstPiece = nextPiece;
+        deadEnds.clear();
+
+        int chunks = (width + CHUNK_COLUMNS - 1) / CHUNK_COLUMNS;
+        int[] chunkStart = new int[chunks + 1];  // pieces placed before each chunk
+        int[] failures = new int[chunks];
+        int retriesLeft = 100 + 16 * chunks;
+
+        int k = 0;
+        while (k < chunks) {
+            int keepEnd = Math.min(width, (k + 1) * CHUNK_COLUMNS) * fillRows;
+            int target = Math.min(width, (k + 2) * CHUNK_COLUMNS) * fillRows;
+            nodesLeft = CHUNK_NODES;
+            if (fill(y0, fillRows, k * CHUNK_COLUMNS * fillRows, target)) {
+                // pieces are placed in column order, so the ones starting
+                //   in the next chunk are at the end
+                int keep = nextPiece - firstPiece;
+                while (keep > chunkStart[k] &&
+                       placedX[keep - 1] * fillRows + placedY[keep - 1] - y0 >= keepEnd) {
+                    keep--;
+                }
+                undo(keep);
+
+                k++;
+                chunkStart[k] = keep;
+                deadEnds.clear();
+                continue;
+            }
+
+            if (--retriesLeft < 0) {
+                throw new IllegalStateException("Couldn't tile rows " + y0 + "-" +
+                                                (y0 + fillRows - 1));
+            }
+            boolean deadEnd = nodesLeft >= 0;
+            if ((deadEnd || ++failures[k] > CHUNK_RETRIES) && k > 0) {
+                failures[k] = 0;
+                k--;
+                undo(chunkStart[k]);
+                // dead ends were found with the wider target of chunk k
+                //   and may be fillable up to the target of chunk k - 1
+                deadEnds.clear();
+            }
+        }
+
+        for (int i = 0; i < nextPiece - firstPiece; i++) {
+            Shape s = placedShape[i];
+            if (placedY[i] + s.minDy >= y0 + keepRows) {
+                set(s, placedX[i], placedY[i], FREE, -1);
+            }
+        }
+    }
+
+    /**
+     * Takes out the pieces placed by this step after the first count
+     */
+    private void undo(int count) {
+        for (int i = nextPiece - firstPiece - 1; i >= count; i--) {
+            set(placedShape[i], placedX[i], placedY[i], FREE, -1);
+        }
+        nextPiece = firstPiece + count;
+    }
+
+    /**
+     * Randomized DFS: places pieces at the first free cell of the rows, in
+     *   column order, until every cell before target is covered
+     * Leaves the board as it was when it fails
+     * Positions that turned out to be dead ends are remembered so the
+     *   search never explores the same situation twice
+     */
+    private boolean fill(int y0, int bandRows, int p, int target) {
+        int parentX = (p - 1) / bandRows;
+        while (p < target && types[cellOf(p / bandRows, y0 + p % bandRows)] != FREE) {
+            p++;
+        }
+        if (p == target) {
+            return true;
+        }
+        if (--nodesLeft < 0) {
+            return false;
+        }
+
+        int x = p / bandRows;
+        int y = y0 + p % bandRows;
+
+        // checking once per column is enough to cut off repeated subtrees
+        Frontier frontier = x != parentX || p == 0 ? new Frontier(p, x) : null;
+        if (frontier != null && deadEnds.contains(frontier)) {
+            return false;
+        }
+
+        for (int i : shuffledShapes()) {
+            Shape s = shapes[i];
+            if (fits(s, x, y)) {
+                placedShape[nextPiece - firstPiece] = s;
+                placedX[nextPiece - firstPiece] = x;
+                placedY[nextPiece - firstPiece] = y;
+                set(s, x, y, (byte) s.type, nextPiece++);
+                if (!leavesHole(s, x, y) && fill(y0, bandRows, p + 1, target)) {
+                    return true;
+                }
+                set(s, x, y, FREE, -1);
+                nextPiece--;
+                if (nodesLeft < 0) {
+                    return false;
+                }
+            }
+        }
+        if (frontier != null) {
+            deadEnds.add(frontier);
+        }
+        return false;
+    }
+
+    /**
+     * Everything the rest of a fill depends on at position p
+     * Placed pieces start before p, in columns up to x, so they reach at
+     *   most maxPieceWidth - 1 columns further; later pieces start at
+     *   column x or after, so column x - 1 holds the only other types they
+     *   can touch
+     */
+    private final class Frontier {
+        private final int p;
+        private final byte[] cells;
+        private final int hash;
+
+        Frontier(int p, int x) {
+            this.p = p;
+            int from = Math.max(0, x - 1);
+            int to = Math.min(width, x + maxPieceWidth);
+            this.cells = new byte[(to - from) * rows];
+            int i = 0;
+            for (int row = 0; row < rows; row++) {
+                for (int col = from; col < to; col++) {
+                    int cell = row * width + col;
+                    cells[i++] = types[cell] == FREE || hasFreeNeighbour(cell)
+                                     ? types[cell]
+                                     : FILLED;
+                }
+            }
+            this.hash = 31 * p + Arrays.hashCode(cells);
+        }
+
+        private boolean hasFreeNeighbour(int cell) {
+            int col = cell % width;
+            return (cell >= width && types[cell - width] == FREE) ||
+                   (cell + width < types.length && types[cell + width] == FREE) ||
+                   (col > 0 && types[cell - 1] == FREE) ||
+                   (col < width - 1 && types[cell + 1] == FREE);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Frontier)) {
+                return false;
+            }
+            Frontier f = (Frontier) o;
+            return p == f.p && Arrays.equals(cells, f.cells);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private int[] shuffledShapes() {
+        int[] order = new int[shapes.length];
+        for (int i = 0; i < order.length; i++) {
+            int j = random.nextInt(i + 1);
+            order[i] = order[j];
+            order[j] = i;
+        }
+        return order;
+    }
+
+    /**
+     * The shape fits at (x, y), on free cells, without touching a piece
+     *   of the same type
+     */
+    private boolean fits(Shape s, int x, int y) {
+        for (int i = 0; i < s.dx.length; i++) {
+            int cx = x + s.dx[i];
+            int cy = y + s.dy[i];
+            // rows above the band are already full
+            if (cx >= width || cy <= top || cy >= height || types[cellOf(cx, cy)] != FREE) {
+                return false;
+            }
+        }
+        for (int i = 0; i < s.dx.length; i++) {
+            int cx = x + s.dx[i];
+            int cy = y + s.dy[i];
+            if ((cx > 0 && types[cellOf(cx - 1, cy)] == s.type) ||
+                (cx < width - 1 && types[cellOf(cx + 1, cy)] == s.type) ||
+                (cy > 0 && types[cellOf(cx, cy - 1)] == s.type) ||
+                (cy < height - 1 && types[cellOf(cx, cy + 1)] == s.type)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The piece just placed walls off a group of free cells too small for
+     *   any piece, the most common dead end, found long before the DFS
+     *   would reach it
+     */
+    private boolean leavesHole(Shape s, int x, int y) {
+        for (int i = 0; i < s.dx.length; i++) {
+            int cx = x + s.dx[i];
+            int cy = y + s.dy[i];
+            if ((cx > 0 && isSmallHole(cx - 1, cy)) ||
+                (cx < width - 1 && isSmallHole(cx + 1, cy)) ||
+                isSmallHole(cx, cy - 1) ||
+                isSmallHole(cx, cy + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Flood fills the free cells from (x, y), stopping once there are
+     *   enough for the smallest piece
+     */
+    private boolean isSmallHole(int x, int y) {
+        if (y <= top || y >= height || types[cellOf(x, y)] != FREE) {
+            return false;
+        }
+
+        holeStamp++;
+        int found = 0;
+        int pending = 0;
+        holeStack[pending++] = cellOf(x, y);
+        holeVisited[cellOf(x, y)] = holeStamp;
+        while (pending > 0) {
+            int cell = holeStack[--pending];
+            if (++found >= minPieceSize) {
+                return false;
+            }
+            int col = cell % width;
+            int row = top + cell / width;
+            if (col > 0) {
+                pending = visitHole(cell - 1, pending);
+            }
+            if (col < width - 1) {
+                pending = visitHole(cell + 1, pending);
+            }
+            if (row - 1 > top) {
+                pending = visitHole(cell - width, pending);
+            }
+            if (row + 1 < height && cell + width < types.length) {
+                pending = visitHole(cell + width, pending);
+            }
+        }
+        return true;
+    }
+
+    private int visitHole(int cell, int pending) {
+        if (types[cell] == FREE && holeVisited[cell] != holeStamp) {
+            holeVisited[cell] = holeStamp;
+            holeStack[pending++] = cell;
+        }
+        return pending;
+    }
+
+    private void set(Shape s, int x, int y, byte type, int id) {
+        for (int i = 0; i < s.dx.length; i++) {
+            int cell = cellOf(x + s.dx[i], y + s.dy[i]);
+            types[cell] = type;
+            pieces[cell] = id;
+        }
+    }
+
+    private int cellOf(int x, int y) {
+        return (y - top) * width + x;
+    }
+
+    /**
+     * Writes the boundaries that are now settled: those inside the band's
+     *   rows and those between the band and the row above it
+     */
+    private long writeBand(Writer out, int y0, int bandRows) throws IOException {
+        long written = 0;
+        for (int y = Math.max(0, y0 - 1); y < y0 + bandRows; y++) {
+            for (int x = 0; x < width; x++) {
+                int id = pieces[cellOf(x, y)];
+                if (y >= y0 && x + 1 < width && id != pieces[cellOf(x + 1, y)]) {
+                    written += writeRestriction(out, x, y, x + 1, y);
+                }
+                if (y + 1 < y0 + bandRows && id != pieces[cellOf(x, y + 1)]) {
+                    written += writeRestriction(out, x, y, x, y + 1);
+                }
+            }
+        }
+        return written;
+    }
+
+    private int writeRestriction(Writer out, int x1, int y1, int x2, int y2) throws IOException {
+        if (random.nextDouble() >= density) {
+            return 0;
+        }
+        out.write(x1 + "," + y1 + " " + x2 + "," + y2 + "\n");
+        return 1;
+    }
+
+    /**
+     * Moves the window down so the last kept row becomes the row above
+     *   the next band
+     */
+    private void shift(int bandRows) {
+        int cells = bandRows * width;
+        System.arraycopy(types, cells, types, 0, types.length - cells);
+        System.arraycopy(pieces, cells, pieces, 0, pieces.length - cells);
+        Arrays.fill(types, types.length - cells, types.length, FREE);
+        Arrays.fill(pieces, pieces.length - cells, pieces.length, -1);
+        top += bandRows;
+    }
+
+    /**
+     * Usage: width height density seed outputFile [tetrominoes|pentominoes|mixed]
+     */
+    public static void main(String[] args) throws Exception {
+        assert args != null && args.length >= 5;
+        int width = Integer.parseInt(args[0]);
+        int height = Integer.parseInt(args[1]);
+        double density = Double.parseDouble(args[2]);
+        long seed = Long.parseLong(args[3]);
+        PieceCatalogue catalogue = PieceCatalogue.forName(args.length > 5
+                                                              ? args[5]
+                                                              : "tetrominoes");
+
+        long startTime = System.currentTimeMillis();
+        PuzzleGenerator generator = new PuzzleGenerator(width, height, catalogue, seed);
+        generator.setDensity(density);
+        long written;
+        try (Writer out = new BufferedWriter(new FileWriter(args[4]), 1 << 16)) {
+            written = generator.generate(out);
+        }
+        long endTime = System.currentTimeMillis();
+
+        System.out.println("Restrictions: " + written);
+        System.out.println("Time taken: " + (endTime - startTime) / 1000.0);
+    }
+}
@@ -0,0 +1,94 @@
+package com.budimana.tetris;
+
+
+/**
+ * Checks on the walls a whole row at a time, 64 cells per long
+ *
+ * This is the scalar version, which runs on Java 8; on Java 17 and later
+ *   the multi-release jar adds VectorRowChecks, which does the same with
+ *   the incubating Vector API, several words at a time
+ * get() returns the vector version when the JVM was started with
+ *   --add-modules jdk.incubator.vector (and -Dtetris.vector=false isn't
+ *   set), the scalar one otherwise
+ */
+public class RowChecks {
+
+    private static final RowChecks INSTANCE = load();
+
+    private static RowChecks load() {
+        if ("false".equals(System.getProperty("tetris.vector"))) {
+            return new RowChecks();
+        }
+        try {
+            Class.forName("jdk.incubator.vector.LongVector");
+            return (RowChecks) Class.forName("com.budimana.tetris.VectorRowChecks")
+                                    .getDeclaredConstructor()
+                                    .newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new RowChecks();
+        }
+    }
+
+    public static RowChecks get() {
+        return INSTANCE;
+    }
+
+    public String getName() {
+        return "scalar";
+    }
+
+    /**
+     * Marks the cells of row y with no open side in enclosed and the cells
+     *   with exactly one open side (walled on three sides) in deadEnds
+     * Both arrays take wordsPerRow longs, laid out like a row of WallRows
+     */
+    public void openSides(WallRows walls, int y, long[] enclosed, long[] deadEnds) {
+        openSides(walls, y, 0, walls.wordsPerRow, enclosed, deadEnds);
+    }
+
+    /**
+     * openSides for the words [from, to) of the row, one word at a time
+     */
+    protected final void openSides(WallRows walls, int y, int from, int to,
+                                   long[] enclosed, long[] deadEnds) {
+        int base = y * walls.wordsPerRow;
+        for (int i = from; i < to; i++) {
+            long r = walls.right[base + i];
+            long carry = i == 0 ? 1 : walls.right[base + i - 1] >>> 63;
+
+            long openRight = ~r;
+            long openLeft = ~(r << 1 | carry);
+            long openDown = ~walls.down[base + i];
+            long openUp = y == 0 ? 0 : ~walls.down[base - walls.wordsPerRow + i];
+
+            long valid = walls.validBits(i);
+            enclosed[i] = ~(openRight | openLeft | openDown | openUp) & valid;
+            deadEnds[i] = exactlyOne(openRight, openLeft, openDown, openUp) & valid;
+        }
+    }
+
+    static long exactlyOne(long a, long b, long c, long d) {
+        long any = a | b | c | d;
+        long twoOrMore = (a & b) | (a & c) | (a & d) | (b & c) | (b & d) | (c & d);
+        return any & ~twoOrMore;
+    }
+
+    /**
+     * Returns the first cell (in reading order) that is walled in on all
+     *   four sides, or -1 if there is none
+     * No piece bigger than one cell can cover such a cell
+     */
+    public int findEnclosedCell(WallRows walls) {
+        long[] enclosed = new long[walls.wordsPerRow];
+        long[] deadEnds = new long[walls.wordsPerRow];
+        for (int y = 0; y < walls.height; y++) {
+            openSides(walls, y, enclosed, deadEnds);
+            for (int i = 0; i < enclosed.length; i++) {
+                if (enclosed[i] != 0) {
+                    return y * walls.width + (i << 6) + Long.numberOfTrailingZeros(enclosed[i]);
+                }
+            }
+        }
+        return -1;
+    }
+}
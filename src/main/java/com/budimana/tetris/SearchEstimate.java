@@ -0,0 +1,73 @@
+package com.budimana.tetris;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+
+/**
+ * How many nodes a search is likely to explore, from random probes
+ *   (see TetrisSolver.probe)
+ *
+ * The estimate is for a search that finds no solution; one that does
+ *   stops early, so for it the estimate is an upper bound
+ * Probe results are heavily skewed: a few probes that get deep dominate
+ *   the mean, so the interval is only trustworthy with many probes
+ */
+public class SearchEstimate {
+
+    // two-sided 95% interval of a normal distribution
+    private static final double Z_95 = 1.96;
+
+    public final int probes;
+    public final double nodes;
+    public final double low;   // 95% confidence interval of nodes
+    public final double high;
+
+    public SearchEstimate(double[] samples) {
+        assert samples.length > 0;
+        double sum = 0;
+        for (double sample : samples) {
+            sum += sample;
+        }
+        double mean = sum / samples.length;
+        double squares = 0;
+        for (double sample : samples) {
+            squares += (sample - mean) * (sample - mean);
+        }
+        double stdError = samples.length > 1
+                              ? Math.sqrt(squares / (samples.length - 1) / samples.length)
+                              : Double.POSITIVE_INFINITY;
+
+        this.probes = samples.length;
+        this.nodes = mean;
+        // every search explores at least the first tetronimo
+        this.low = Math.max(1, mean - Z_95 * stdError);
+        this.high = mean + Z_95 * stdError;
+    }
+
+    /**
+     * Time left for a search that has explored nodesExplored nodes at the
+     *   given rate to explore the estimated number
+     * -1 once the search has gone past the interval: the estimate was
+     *   wrong and there is nothing better to go on
+     */
+    public long etaMillis(long nodesExplored, double nodesPerSecond) {
+        if (nodesExplored > high) {
+            return -1;
+        }
+        if (nodesPerSecond <= 0) {
+            return Long.MAX_VALUE;
+        }
+        double millis = Math.max(0, nodes - nodesExplored) / nodesPerSecond * 1000;
+        return millis >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) millis;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+            .append("probes", probes)
+            .append("nodes", String.format("%.3g", nodes))
+            .append("low", String.format("%.3g", low))
+            .append("high", String.format("%.3g", high))
+            .toString();
+    }
+}
@@ -0,0 +1,60 @@
+package com.budimana.tetris;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+
+/**
+ * Snapshot of how far a search has gotten
+ * Depths are measured in tetronimos, in reading order
+ * With an estimate of the search's size (see TetrisSolver.setEstimate)
+ *   it also says how long the rest should take at the rate so far
+ */
+public class SearchProgress {
+
+    public final long nodesExplored;
+    public final int depth;
+    public final int maxDepth;
+    public final long backtracks;
+    public final long elapsedMillis;
+    public final double estimatedNodes;  // NaN without an estimate
+    public final long etaMillis;         // -1 if unknown, see SearchEstimate.etaMillis
+
+    public SearchProgress(long nodesExplored,
+                          int depth,
+                          int maxDepth,
+                          long backtracks,
+                          long elapsedMillis) {
+        this(nodesExplored, depth, maxDepth, backtracks, elapsedMillis, Double.NaN, -1);
+    }
+
+    public SearchProgress(long nodesExplored,
+                          int depth,
+                          int maxDepth,
+                          long backtracks,
+                          long elapsedMillis,
+                          double estimatedNodes,
+                          long etaMillis) {
+        this.nodesExplored = nodesExplored;
+        this.depth = depth;
+        this.maxDepth = maxDepth;
+        this.backtracks = backtracks;
+        this.elapsedMillis = elapsedMillis;
+        this.estimatedNodes = estimatedNodes;
+        this.etaMillis = etaMillis;
+    }
+
+    @Override
+    public String toString() {
+        ToStringBuilder builder = new ToStringBuilder(this)
+            .append("nodesExplored", nodesExplored)
+            .append("depth", depth)
+            .append("maxDepth", maxDepth)
+            .append("backtracks", backtracks)
+            .append("elapsedMillis", elapsedMillis);
+        if (!Double.isNaN(estimatedNodes)) {
+            builder.append("estimatedNodes", String.format("%.3g", estimatedNodes))
+                   .append("etaMillis", etaMillis);
+        }
+        return builder.toString();
+    }
+}
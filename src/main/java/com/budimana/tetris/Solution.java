@@ -0,0 +1,144 @@
+package com.budimana.tetris;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A solved board, independent of the engine that solved it
+ *
+ * Cells are indexed in reading order (y * width + x) and hold the id of
+ *   the piece covering them; each piece id has a type, which is an index
+ *   into the PieceCatalogue (for tetris pieces, the PieceType ordinal)
+ */
+public class Solution {
+
+    public final int width;
+    public final int height;
+
+    private final int[] pieceIds;
+    private final byte[] pieceTypes;
+
+    public Solution(int width, int height, int[] pieceIds, byte[] pieceTypes) {
+        assert pieceIds.length == width * height;
+        this.width = width;
+        this.height = height;
+        this.pieceIds = pieceIds;
+        this.pieceTypes = pieceTypes;
+    }
+
+    /**
+     * Snapshot of a matrix solved by TetrisSolver
+     * Pieces are numbered in the order they are first seen in reading order
+     */
+    public static Solution fromMatrix(Tetronimo[][] matrix) {
+        int width = matrix.length;
+        int height = matrix[0].length;
+        int[] pieceIds = new int[width * height];
+        Map<Piece, Integer> ids = new HashMap<>();
+        List<PieceType> types = new ArrayList<>();
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                Piece p = matrix[x][y].piece;
+                assert p != null && p.isComplete();
+                Integer id = ids.get(p);
+                if (id == null) {
+                    id = types.size();
+                    ids.put(p, id);
+                    types.add(p.getType());
+                }
+                pieceIds[y * width + x] = id;
+            }
+        }
+
+        byte[] pieceTypes = new byte[types.size()];
+        for (int i = 0; i < pieceTypes.length; i++) {
+            pieceTypes[i] = (byte) types.get(i).ordinal();
+        }
+        return new Solution(width, height, pieceIds, pieceTypes);
+    }
+
+    public int getPieceId(int x, int y) {
+        return pieceIds[y * width + x];
+    }
+
+    public int getPieceId(int cell) {
+        return pieceIds[cell];
+    }
+
+    public int getPieceType(int pieceId) {
+        return pieceTypes[pieceId];
+    }
+
+    public int getPieceCount() {
+        return pieceTypes.length;
+    }
+
+    /**
+     * Counts the ways this solution breaks the rules of the puzzle
+     *   uncovered cells, pieces that are not a catalogue shape of their type,
+     *   walls running through a piece, and edges shared by two pieces of
+     *   the same type
+     */
+    public int countViolations(Walls walls, PieceCatalogue catalogue) {
+        int violations = 0;
+
+        // collect the cells of each piece
+        List<List<int[]>> pieceCells = new ArrayList<>();
+        for (int i = 0; i < pieceTypes.length; i++) {
+            pieceCells.add(new ArrayList<>());
+        }
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int id = getPieceId(x, y);
+                if (id < 0 || id >= pieceTypes.length) {
+                    violations++;
+                } else {
+                    pieceCells.get(id).add(new int[] { x, y });
+                }
+            }
+        }
+
+        for (int id = 0; id < pieceTypes.length; id++) {
+            List<int[]> cells = pieceCells.get(id);
+            if (!cells.isEmpty() &&
+                !catalogue.get(pieceTypes[id]).matches(cells.toArray(new int[cells.size()][]))) {
+                violations++;
+            }
+        }
+
+        // walls and same-type neighbours
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (x + 1 < width) {
+                    violations += edgeViolations(walls.hasWallRight(x, y),
+                                                 getPieceId(x, y),
+                                                 getPieceId(x + 1, y));
+                }
+                if (y + 1 < height) {
+                    violations += edgeViolations(walls.hasWallDown(x, y),
+                                                 getPieceId(x, y),
+                                                 getPieceId(x, y + 1));
+                }
+            }
+        }
+        return violations;
+    }
+
+    private int edgeViolations(boolean wall, int id1, int id2) {
+        if (id1 < 0 || id2 < 0 || id1 >= pieceTypes.length || id2 >= pieceTypes.length) {
+            return 0;
+        }
+        if (id1 == id2) {
+            return wall ? 1 : 0;
+        }
+        return pieceTypes[id1] == pieceTypes[id2] ? 1 : 0;
+    }
+
+    public boolean isValid(Walls walls, PieceCatalogue catalogue) {
+        return countViolations(walls, catalogue) == 0;
+    }
+}
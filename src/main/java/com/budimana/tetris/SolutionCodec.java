@@ -0,0 +1,324 @@
+package com.budimana.tetris;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * Compact binary encoding of a Solution for other programs to read
+ *
+ * Layout (big endian, as ByteBuffer defaults to):
+ *   magic        4 bytes  'T' 'S' 'O' 'L'
+ *   version      1 byte
+ *   flags        1 byte   bits 0-1: cell encoding (see Encoding)
+ *                         bit 2: cells are run-length encoded
+ *   width        int
+ *   height       int
+ *   piece count  int
+ *   piece types  1 byte per piece (PieceType ordinal for tetris pieces)
+ *   cells        piece id per cell in reading order
+ *                  with run-length encoding, each row is a list of
+ *                  (varint run length, piece id) pairs
+ *
+ * Blocked and fixed cells have piece id -1; INT16 writes it as 0xffff, so
+ *   it holds ids up to 0xfffe
+ *
+ * Encoding and decoding work directly on the caller's ByteBuffer (heap,
+ *   direct or memory mapped) without intermediate arrays; a View reads
+ *   piece ids straight out of the buffer when the cells are fixed width
+ */
+public class SolutionCodec {
+
+    public static final int MAGIC = 0x54534f4c;  // "TSOL"
+    public static final byte VERSION = 1;
+    public static final int HEADER_SIZE = 4 + 1 + 1 + 4 + 4 + 4;
+
+    private static final int ENCODING_MASK = 0x3;
+    private static final int RUN_LENGTH_FLAG = 0x4;
+
+    /**
+     * How each piece id is written
+     */
+    public enum Encoding {
+        VARINT(0),  // LEB128, 1 byte for ids below 128
+        INT16(2),   // 0xffff is -1
+        INT32(4),
+        ;
+
+        final int width;  // bytes, 0 if variable
+
+        Encoding(int width) {
+            this.width = width;
+        }
+    }
+
+    private final Encoding encoding;
+    private final boolean runLength;
+
+    public SolutionCodec(Encoding encoding, boolean runLength) {
+        this.encoding = encoding;
+        this.runLength = runLength;
+    }
+
+    // INT16 value of piece id -1
+    private static final int INT16_NONE = 0xffff;
+
+    /**
+     * Smallest fixed width encoding that fits the solution
+     */
+    public static Encoding fixedWidthFor(Solution solution) {
+        return solution.getPieceCount() <= 0xffff ? Encoding.INT16 : Encoding.INT32;
+    }
+
+    /**
+     * Exact number of bytes encode will write
+     */
+    public int encodedSize(Solution solution) {
+        long size = HEADER_SIZE + solution.getPieceCount();
+        for (int y = 0; y < solution.height; y++) {
+            int x = 0;
+            while (x < solution.width) {
+                int id = solution.getPieceId(x, y);
+                int run = runLength ? runLength(solution, x, y) : 1;
+                if (runLength) {
+                    size += varintSize(run);
+                }
+                size += encoding == Encoding.VARINT ? varintSize(id) : encoding.width;
+                x += run;
+            }
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Solution too large to encode: " + size + " bytes");
+        }
+        return (int) size;
+    }
+
+    public ByteBuffer encode(Solution solution) {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedSize(solution));
+        encode(solution, buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Writes the solution at the buffer's position
+     */
+    public void encode(Solution solution, ByteBuffer buffer) {
+        int flags = encoding.ordinal() | (runLength ? RUN_LENGTH_FLAG : 0);
+        buffer.putInt(MAGIC)
+              .put(VERSION)
+              .put((byte) flags)
+              .putInt(solution.width)
+              .putInt(solution.height)
+              .putInt(solution.getPieceCount());
+        for (int id = 0; id < solution.getPieceCount(); id++) {
+            buffer.put((byte) solution.getPieceType(id));
+        }
+
+        for (int y = 0; y < solution.height; y++) {
+            int x = 0;
+            while (x < solution.width) {
+                int run = 1;
+                if (runLength) {
+                    run = runLength(solution, x, y);
+                    putVarint(buffer, run);
+                }
+                putId(buffer, encoding, solution.getPieceId(x, y));
+                x += run;
+            }
+        }
+    }
+
+    private static int runLength(Solution solution, int x, int y) {
+        int id = solution.getPieceId(x, y);
+        int end = x + 1;
+        while (end < solution.width && solution.getPieceId(end, y) == id) {
+            end++;
+        }
+        return end - x;
+    }
+
+    /**
+     * Reads a solution starting at the buffer's position
+     */
+    public static Solution decode(ByteBuffer buffer) {
+        Header header = readHeader(buffer);
+
+        byte[] pieceTypes = new byte[header.pieceCount];
+        buffer.get(pieceTypes);
+
+        int[] pieceIds = new int[header.width * header.height];
+        int cell = 0;
+        int rowEnd = header.width;
+        while (cell < pieceIds.length) {
+            int run = header.runLength ? getVarint(buffer) : 1;
+            if (run <= 0 || run > rowEnd - cell) {
+                throw new IllegalArgumentException("Run of " + run + " cells at cell " + cell +
+                                                   " doesn't fit its row");
+            }
+            int id = getId(buffer, header.encoding);
+            if (id < -1 || id >= header.pieceCount) {
+                throw new IllegalArgumentException("Piece id " + id + " at cell " + cell +
+                                                   " out of range");
+            }
+            for (int i = 0; i < run; i++) {
+                pieceIds[cell++] = id;
+            }
+            if (cell == rowEnd) {
+                rowEnd += header.width;
+            }
+        }
+        return new Solution(header.width, header.height, pieceIds, pieceTypes);
+    }
+
+    /**
+     * Read-only view onto an encoded solution with fixed width cells
+     * Nothing is copied; lookups read straight from the buffer
+     */
+    public static class View {
+        public final int width;
+        public final int height;
+        public final int pieceCount;
+
+        private final ByteBuffer buffer;
+        private final int typesOffset;
+        private final int cellsOffset;
+        private final Encoding encoding;
+
+        private View(ByteBuffer buffer, Header header, int typesOffset) {
+            this.buffer = buffer;
+            this.width = header.width;
+            this.height = header.height;
+            this.pieceCount = header.pieceCount;
+            this.encoding = header.encoding;
+            this.typesOffset = typesOffset;
+            this.cellsOffset = typesOffset + pieceCount;
+        }
+
+        public int getPieceId(int x, int y) {
+            int offset = cellsOffset + (y * width + x) * encoding.width;
+            return encoding == Encoding.INT16
+                       ? fromInt16(buffer.getShort(offset))
+                       : buffer.getInt(offset);
+        }
+
+        public int getPieceType(int pieceId) {
+            return buffer.get(typesOffset + pieceId);
+        }
+    }
+
+    /**
+     * Returns a view of the solution starting at the buffer's position
+     * Only works for fixed width, non run-length encoded cells
+     */
+    public static View view(ByteBuffer buffer) {
+        ByteBuffer b = buffer.duplicate();
+        Header header = readHeader(b);
+        if (header.runLength || header.encoding == Encoding.VARINT) {
+            throw new IllegalArgumentException("Only fixed width cells can be viewed in place");
+        }
+        long cellBytes = (long) header.width * header.height * header.encoding.width;
+        if (header.pieceCount + cellBytes > b.remaining()) {
+            throw new IllegalArgumentException("Buffer ends before the last cell");
+        }
+        return new View(buffer, header, b.position());
+    }
+
+    private static class Header {
+        int width;
+        int height;
+        int pieceCount;
+        Encoding encoding;
+        boolean runLength;
+    }
+
+    private static Header readHeader(ByteBuffer buffer) {
+        if (buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not an encoded solution");
+        }
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported version: " + version);
+        }
+
+        int flags = buffer.get();
+        if ((flags & ~(ENCODING_MASK | RUN_LENGTH_FLAG)) != 0 ||
+            (flags & ENCODING_MASK) >= Encoding.values().length) {
+            throw new IllegalArgumentException("Unknown flags: " + (flags & 0xff));
+        }
+        Header header = new Header();
+        header.encoding = Encoding.values()[flags & ENCODING_MASK];
+        header.runLength = (flags & RUN_LENGTH_FLAG) != 0;
+        header.width = buffer.getInt();
+        header.height = buffer.getInt();
+        header.pieceCount = buffer.getInt();
+
+        // checked before anything is allocated from them
+        if (header.width < 0 || header.height < 0 ||
+            (long) header.width * header.height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bad size: " + header.width + "x" + header.height);
+        }
+        if (header.pieceCount < 0 || header.pieceCount > buffer.remaining()) {
+            throw new IllegalArgumentException("Bad piece count: " + header.pieceCount);
+        }
+        return header;
+    }
+
+    private static void putId(ByteBuffer buffer, Encoding encoding, int id) {
+        switch (encoding) {
+            case VARINT:
+                putVarint(buffer, id);
+                break;
+            case INT16:
+                assert id >= -1 && id < INT16_NONE;
+                buffer.putShort((short) (id < 0 ? INT16_NONE : id));
+                break;
+            case INT32:
+                buffer.putInt(id);
+                break;
+        }
+    }
+
+    private static int getId(ByteBuffer buffer, Encoding encoding) {
+        switch (encoding) {
+            case VARINT:
+                return getVarint(buffer);
+            case INT16:
+                return fromInt16(buffer.getShort());
+            default:
+                return buffer.getInt();
+        }
+    }
+
+    private static int fromInt16(short value) {
+        int id = value & 0xffff;
+        return id == INT16_NONE ? -1 : id;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    private static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7f) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int getVarint(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}
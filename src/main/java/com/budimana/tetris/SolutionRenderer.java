@@ -0,0 +1,155 @@
+package com.budimana.tetris;
+
+import java.io.IOException;
+import java.io.Writer;
+
+
+/**
+ * Draws a solution with box-drawing characters (see the README)
+ *
+ * Builds one text row at a time in a reused StringBuilder and hands it to
+ *   the writer, so pass in a buffered writer
+ * Corners are looked up in a table indexed by the corner key: the four
+ *   pieces around a corner are numbered in order of first appearance
+ *   (top left, top right, bottom left, bottom right), two bits each
+ * Blocked and fixed cells (piece id -1, see Solution) are drawn like the
+ *   outside of the board: empty, with a border to the pieces around them
+ */
+public class SolutionRenderer {
+
+    private static final String[] CORNER_MARKERS = new String[256];
+    static {
+        // all same
+        CORNER_MARKERS[0] = " ";
+
+        // one different
+        CORNER_MARKERS[1 << 2] = "\u2514";
+        CORNER_MARKERS[1 << 4] = "\u2510";
+        CORNER_MARKERS[1 << 6] = "\u250C";
+        CORNER_MARKERS[(1 << 2) | (1 << 4) | (1 << 6)] = "\u2518";
+
+        // two pieces, two tetronimos each
+        CORNER_MARKERS[(1 << 4) | (1 << 6)] = "\u2500";
+        CORNER_MARKERS[(1 << 2) | (1 << 6)] = "\u2503";
+
+        // three pieces
+        CORNER_MARKERS[(1 << 4) | (2 << 6)] = "\u252C";
+        CORNER_MARKERS[(1 << 2) | (2 << 6)] = "\u251C";
+        CORNER_MARKERS[(1 << 2) | (2 << 4) | (1 << 6)] = "\u2524";
+        CORNER_MARKERS[(1 << 2) | (2 << 4) | (2 << 6)] = "\u2534";
+
+        // four pieces
+        CORNER_MARKERS[(1 << 2) | (2 << 4) | (3 << 6)] = "\u254B";
+
+        // diagonal cells alike, only with blocked cells: a piece never
+        //   meets itself across a corner
+        CORNER_MARKERS[(1 << 2) | (1 << 4)] = "\u254B";
+        CORNER_MARKERS[(1 << 2) | (2 << 4)] = "\u254B";
+    }
+
+    // stands in for the outside of the board, the same as the id of a
+    //   blocked cell
+    private static final int NONE = -1;
+
+    private final String lineSeparator = System.lineSeparator();
+    private final StringBuilder row = new StringBuilder();
+
+    public void render(Solution solution, Writer out) throws IOException {
+        int width = solution.width;
+        int height = solution.height;
+
+        // pieces are numbered in order of first appearance
+        int[] pieceNumbers = new int[solution.getPieceCount()];
+        for (int i = 0; i < pieceNumbers.length; i++) {
+            pieceNumbers[i] = NONE;
+        }
+        int pieceCounter = 0;
+
+        for (int j = 0; j <= height; j++) {
+
+            // dividers and corners
+            row.setLength(0);
+            for (int i = -1; i < width; i++) {
+                int p = i < 0 || j == height ? NONE : solution.getPieceId(i, j);
+                int upPiece = j == 0 || i < 0 ? NONE : solution.getPieceId(i, j - 1);
+
+                row.append(p == upPiece ? "  " : "\u2500\u2500");
+
+                int rightPiece = i == width - 1 || j == height
+                                     ? NONE
+                                     : solution.getPieceId(i + 1, j);
+                int diagonalPiece = i == width - 1 || j == 0
+                                        ? NONE
+                                        : solution.getPieceId(i + 1, j - 1);
+                row.append(' ')
+                   .append(getCornerMarker(upPiece, diagonalPiece, p, rightPiece))
+                   .append(' ');
+            }
+            row.append(lineSeparator);
+            out.append(row);
+
+            if (j == height) {
+                continue;
+            }
+
+            // piece numbers
+            row.setLength(0);
+            row.append("  ");
+            for (int i = 0; i < width; i++) {
+                int p = solution.getPieceId(i, j);
+                int leftPiece = i == 0 ? NONE : solution.getPieceId(i - 1, j);
+                row.append(p == leftPiece ? "   " : " \u2503 ");
+
+                if (p == NONE) {
+                    row.append("  ");
+                    continue;
+                }
+                if (pieceNumbers[p] == NONE) {
+                    pieceNumbers[p] = pieceCounter++;
+                }
+                int number = pieceNumbers[p];
+                if (number < 10) {
+                    row.append(' ');
+                }
+                row.append(number);
+            }
+            row.append(solution.getPieceId(width - 1, j) == NONE ? "   " : " \u2503 ")
+               .append(lineSeparator);
+            out.append(row);
+        }
+    }
+
+    private static String getCornerMarker(int topLeft,
+                                          int topRight,
+                                          int bottomLeft,
+                                          int bottomRight) {
+        // number each piece by first appearance, top left is always 0
+        int topRightNum = topRight == topLeft ? 0 : 1;
+        int pieces = topRightNum + 1;
+
+        int bottomLeftNum;
+        if (bottomLeft == topLeft) {
+            bottomLeftNum = 0;
+        } else if (bottomLeft == topRight) {
+            bottomLeftNum = topRightNum;
+        } else {
+            bottomLeftNum = pieces++;
+        }
+
+        int bottomRightNum;
+        if (bottomRight == topLeft) {
+            bottomRightNum = 0;
+        } else if (bottomRight == topRight) {
+            bottomRightNum = topRightNum;
+        } else if (bottomRight == bottomLeft) {
+            bottomRightNum = bottomLeftNum;
+        } else {
+            bottomRightNum = pieces;
+        }
+
+        int cornerKey = (topRightNum << 2) | (bottomLeftNum << 4) | (bottomRightNum << 6);
+        String markerValue = CORNER_MARKERS[cornerKey];
+        assert markerValue != null;
+        return markerValue;
+    }
+}
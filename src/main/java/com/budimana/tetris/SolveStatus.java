@@ -0,0 +1,12 @@
+package com.budimana.tetris;
+
+
+/**
+ * Outcome of a bounded search
+ */
+public enum SolveStatus {
+    SOLVED,
+    UNSOLVABLE,
+    UNKNOWN,  // gave up before the search finished (deadline or cancelled)
+    ;
+}
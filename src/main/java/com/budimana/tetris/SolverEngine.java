@@ -0,0 +1,37 @@
+package com.budimana.tetris;
+
+import java.util.concurrent.ExecutorService;
+
+
+/**
+ * What every complete solver offers, so callers (Benchmark, a service
+ *   answering many puzzles) can pick one without knowing which
+ *
+ * Engines are built from a CompiledPuzzle and share it; each engine
+ *   keeps its own search state and runs one solve at a time
+ */
+public interface SolverEngine {
+
+    void setDeadline(long deadline);
+
+    void setCancellationToken(CancellationToken cancellationToken);
+
+    /**
+     * Searches for a solution; engines that search on one thread run on
+     *   the caller's and ignore the executor
+     * Returns UNKNOWN if the search gave up before finishing
+     */
+    SolveStatus solve(ExecutorService executor) throws InterruptedException;
+
+    /**
+     * The solution found by the last solve, only meaningful after it
+     *   returned SOLVED
+     */
+    Solution getSolution();
+
+    /**
+     * The engine's own measure of the work done, such as nodes or
+     *   profiles; only comparable between runs of one engine
+     */
+    long getNodesExplored();
+}
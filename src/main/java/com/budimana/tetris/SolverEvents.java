@@ -0,0 +1,75 @@
+package com.budimana.tetris;
+
+
+/**
+ * Java Flight Recorder instrumentation for the solver
+ *
+ * The events are disabled by default; enable them in a recording with e.g.
+ *   -XX:StartFlightRecording:settings=profile,+com.budimana.tetris.Prune#enabled=true
+ *   or through JMC. While disabled the JIT reduces each call to a flag check
+ *
+ * This class only forwards the calls and does nothing itself, so it builds
+ *   and runs on Java 8; the events and JfrEvents, which emits them, are in
+ *   the Java 17 part of the multi-release jar (like VectorRowChecks, see
+ *   RowChecks) and are loaded when present
+ */
+public class SolverEvents {
+
+    private static final SolverEvents INSTANCE = load();
+
+    private static SolverEvents load() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (SolverEvents) Class.forName("com.budimana.tetris.JfrEvents")
+                                       .getDeclaredConstructor()
+                                       .newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new SolverEvents();
+        }
+    }
+
+    /**
+     * Returns a handle to pass to endSearch (null without JFR)
+     */
+    public static Object beginSearch(int width, int height, long puzzleHash) {
+        return INSTANCE.begin(width, height, puzzleHash);
+    }
+
+    public static void endSearch(Object handle,
+                                 SolveStatus status,
+                                 long nodesExplored,
+                                 long backtracks,
+                                 int maxDepth) {
+        if (handle != null) {
+            INSTANCE.end(handle, status, nodesExplored, backtracks, maxDepth);
+        }
+    }
+
+    public static void nodeSample(int depth,
+                                  int x,
+                                  int y,
+                                  int maxDepth,
+                                  long nodesExplored,
+                                  long backtracks) {
+        INSTANCE.sample(depth, x, y, maxDepth, nodesExplored, backtracks);
+    }
+
+    public static void prune(PruneCause cause, int depth) {
+        INSTANCE.pruned(cause, depth);
+    }
+
+    // no-ops, overridden by JfrEvents
+
+    Object begin(int width, int height, long puzzleHash) {
+        return null;
+    }
+
+    void end(Object handle, SolveStatus status, long nodesExplored, long backtracks, int maxDepth) {
+    }
+
+    void sample(int depth, int x, int y, int maxDepth, long nodesExplored, long backtracks) {
+    }
+
+    void pruned(PruneCause cause, int depth) {
+    }
+}
@@ -0,0 +1,223 @@
+package com.budimana.tetris;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+
+/**
+ * Aggregates the SolverStats of every TetrisSolver and publishes them
+ *   over JMX
+ *
+ * Only TetrisSolver registers: the counters (options, prune causes,
+ *   pieces in each state) are its own, and the other engines count
+ *   nodes in units that don't add up with its (see SolverEngine)
+ * Each solver counts into its own SolverStats, so the search never contends
+ *   on shared counters; the totals are only summed up when read
+ * A solver's counters start from zero at each solve (nodes too, when
+ *   resuming: only the nodes of the resumed run are added), so a solver
+ *   that searches again is counted once per search
+ */
+public class SolverMetrics implements SolverMetricsMBean {
+
+    public static final String OBJECT_NAME = "com.budimana.tetris:type=SolverMetrics";
+
+    private static SolverMetrics instance;
+
+    private final Set<TetrisSolver> activeSolvers = ConcurrentHashMap.newKeySet();
+
+    // totals of the solvers that have already finished
+    private long retiredNodes = 0;
+    private long retiredBacktracks = 0;
+    private final long[] retiredOptionSuccesses = new long[OptionKind.values().length];
+    private final long[] retiredPrunes = new long[PruneCause.values().length];
+    private long[] retiredDepthHistogram = new long[0];
+
+    // created with the first solver that registers, see getNodesPerSecond
+    private final long startTime = System.nanoTime();
+
+    /**
+     * Returns the shared instance, registering it with the platform
+     *   MBean server the first time
+     */
+    public static synchronized SolverMetrics getInstance() {
+        if (instance == null) {
+            instance = new SolverMetrics();
+            try {
+                ManagementFactory.getPlatformMBeanServer()
+                                 .registerMBean(instance, new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                // metrics are best effort, the solver works without them
+            }
+        }
+        return instance;
+    }
+
+    public void register(TetrisSolver solver) {
+        activeSolvers.add(solver);
+    }
+
+    /**
+     * Folds the solver's counters into the totals
+     */
+    public synchronized void unregister(TetrisSolver solver) {
+        if (!activeSolvers.remove(solver)) {
+            return;
+        }
+
+        SolverStats stats = solver.getStats();
+        retiredNodes += solver.getRunNodes();
+        retiredBacktracks += solver.getBacktracks();
+        add(retiredOptionSuccesses, stats.optionSuccesses);
+        add(retiredPrunes, stats.prunes);
+        if (retiredDepthHistogram.length < stats.depthHistogram.length) {
+            retiredDepthHistogram = Arrays.copyOf(retiredDepthHistogram,
+                                                  stats.depthHistogram.length);
+        }
+        add(retiredDepthHistogram, stats.depthHistogram);
+    }
+
+    private static void add(long[] total, long[] counts) {
+        for (int i = 0; i < counts.length; i++) {
+            total[i] += counts[i];
+        }
+    }
+
+    @Override
+    public int getActiveSolvers() {
+        return activeSolvers.size();
+    }
+
+    @Override
+    public synchronized long getTotalNodes() {
+        long total = retiredNodes;
+        for (TetrisSolver solver : activeSolvers) {
+            total += solver.getRunNodes();
+        }
+        return total;
+    }
+
+    /**
+     * Average rate since the metrics were created, when the first solver
+     *   registered; reading it changes nothing, so any number of clients
+     *   can poll it
+     */
+    @Override
+    public double getNodesPerSecond() {
+        return getTotalNodes() * 1e9 / Math.max(1, System.nanoTime() - startTime);
+    }
+
+    @Override
+    public synchronized long getBacktracks() {
+        long total = retiredBacktracks;
+        for (TetrisSolver solver : activeSolvers) {
+            total += solver.getBacktracks();
+        }
+        return total;
+    }
+
+    private synchronized long getOptionSuccesses(OptionKind kind) {
+        long total = retiredOptionSuccesses[kind.ordinal()];
+        for (TetrisSolver solver : activeSolvers) {
+            total += solver.getStats().getOptionSuccesses(kind);
+        }
+        return total;
+    }
+
+    @Override
+    public long getNewOptionSuccesses() {
+        return getOptionSuccesses(OptionKind.NEW);
+    }
+
+    @Override
+    public long getLeftOptionSuccesses() {
+        return getOptionSuccesses(OptionKind.LEFT);
+    }
+
+    @Override
+    public long getUpOptionSuccesses() {
+        return getOptionSuccesses(OptionKind.UP);
+    }
+
+    @Override
+    public long getMergeOptionSuccesses() {
+        return getOptionSuccesses(OptionKind.MERGE);
+    }
+
+    private synchronized long getPrunes(PruneCause cause) {
+        long total = retiredPrunes[cause.ordinal()];
+        for (TetrisSolver solver : activeSolvers) {
+            total += solver.getStats().getPrunes(cause);
+        }
+        return total;
+    }
+
+    @Override
+    public long getRestrictionPrunes() {
+        return getPrunes(PruneCause.RESTRICTION);
+    }
+
+    @Override
+    public long getFullPiecePrunes() {
+        return getPrunes(PruneCause.FULL_PIECE);
+    }
+
+    @Override
+    public long getCannotFinishPrunes() {
+        return getPrunes(PruneCause.CANNOT_FINISH);
+    }
+
+    @Override
+    public long getSameTypePrunes() {
+        return getPrunes(PruneCause.SAME_TYPE);
+    }
+
+    @Override
+    public long getTypeDomainPrunes() {
+        return getPrunes(PruneCause.TYPE_DOMAIN);
+    }
+
+    @Override
+    public synchronized long[] getDepthHistogram() {
+        long[] histogram = retiredDepthHistogram.clone();
+        for (TetrisSolver solver : activeSolvers) {
+            long[] counts = solver.getStats().depthHistogram;
+            if (histogram.length < counts.length) {
+                histogram = Arrays.copyOf(histogram, counts.length);
+            }
+            add(histogram, counts);
+        }
+        return histogram;
+    }
+
+    @Override
+    public int getUnfinishedPieces() {
+        int total = 0;
+        for (TetrisSolver solver : activeSolvers) {
+            total += solver.unfinishedPieces.size();
+        }
+        return total;
+    }
+
+    @Override
+    public int getUnverifiedPieces() {
+        int total = 0;
+        for (TetrisSolver solver : activeSolvers) {
+            total += solver.unverifiedPieces.size();
+        }
+        return total;
+    }
+
+    @Override
+    public int getVerifiedPieces() {
+        int total = 0;
+        for (TetrisSolver solver : activeSolvers) {
+            total += solver.countVerifiedPieces();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,45 @@
+package com.budimana.tetris;
+
+
+/**
+ * JMX view of the search statistics of all running TetrisSolvers
+ * Counters are totals over every solver since startup, and the rate is
+ *   their average since then; sizes only cover the solvers currently
+ *   running
+ */
+public interface SolverMetricsMBean {
+
+    int getActiveSolvers();
+
+    long getTotalNodes();
+
+    double getNodesPerSecond();
+
+    long getBacktracks();
+
+    long getNewOptionSuccesses();
+
+    long getLeftOptionSuccesses();
+
+    long getUpOptionSuccesses();
+
+    long getMergeOptionSuccesses();
+
+    long getRestrictionPrunes();
+
+    long getFullPiecePrunes();
+
+    long getCannotFinishPrunes();
+
+    long getSameTypePrunes();
+
+    long getTypeDomainPrunes();
+
+    long[] getDepthHistogram();
+
+    int getUnfinishedPieces();
+
+    int getUnverifiedPieces();
+
+    int getVerifiedPieces();
+}
@@ -0,0 +1,41 @@
+package com.budimana.tetris;
+
+import java.util.Arrays;
+
+
+/**
+ * Counters describing where a single solver spends its search
+ *
+ * Only ever written by the solver's own thread, so the counters are plain
+ *   fields with no synchronization; readers on other threads (JMX) may see
+ *   slightly stale values, which is fine for monitoring
+ */
+public class SolverStats {
+
+    // options that passed verification, indexed by OptionKind
+    public final long[] optionSuccesses = new long[OptionKind.values().length];
+
+    // branches cut off, indexed by PruneCause
+    public final long[] prunes = new long[PruneCause.values().length];
+
+    // nodes explored at each depth
+    public final long[] depthHistogram;
+
+    public SolverStats(int maxDepth) {
+        this.depthHistogram = new long[maxDepth];
+    }
+
+    public long getOptionSuccesses(OptionKind kind) {
+        return optionSuccesses[kind.ordinal()];
+    }
+
+    public long getPrunes(PruneCause cause) {
+        return prunes[cause.ordinal()];
+    }
+
+    public void clear() {
+        Arrays.fill(optionSuccesses, 0);
+        Arrays.fill(prunes, 0);
+        Arrays.fill(depthHistogram, 0);
+    }
+}
@@ -0,0 +1,435 @@
+package com.budimana.tetris;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Solves tall boards by cutting them into horizontal strips and joining
+ *   the strips through the profiles of their cuts
+ *
+ * Every piece belongs to the strip holding its anchor (its first cell in
+ *   reading order), so a piece may hang over into the strip below
+ * The profile of a cut is everything the strip below needs to know about
+ *   the strips above it:
+ *   - which cells below the cut are already covered by hanging pieces
+ *   - the type of every finished cell that touches a cell still to fill,
+ *     for the same-type rule
+ * Strips are at least as tall as the tallest piece, so a strip only ever
+ *   interacts with its two neighbours
+ *
+ * The join runs down the board: for each strip, every profile reachable
+ *   at its top cut is expanded into the profiles reachable at its bottom
+ *   cut, one task per top profile, and each bottom profile keeps a single
+ *   witness (the top profile and pieces it came from) to rebuild the
+ *   solution afterwards
+ */
+public class StripSolver implements SolverEngine {
+
+    // how often the cancellation and deadline are checked
+    private static final long POLL_INTERVAL = 1 << 10;
+
+    // profile entries besides piece types
+    private static final byte FREE = -1;
+    private static final byte FILLED = -2;  // covered, but nothing free next to it
+
+    private final PlacementTable table;
+    private final int width;
+    private final int height;
+    private final int maxPieceHeight;
+
+    // first row of each strip, plus height as the end of the last one
+    private final int[] cuts;
+
+    private long deadline = Long.MAX_VALUE;
+    private CancellationToken cancellationToken;
+
+    private Solution solution;
+    private long profilesExplored = 0;
+
+    /**
+     * The cells of one cut: maxPieceHeight rows starting with the row
+     *   above it, holding FREE, FILLED or a piece type per cell
+     */
+    static final class Profile {
+        final byte[] cells;
+        private final int hash;
+
+        Profile(byte[] cells) {
+            this.cells = cells;
+            this.hash = Arrays.hashCode(cells);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Profile && Arrays.equals(cells, ((Profile) o).cells);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * How a bottom profile was reached: the strip's top profile and pieces
+     */
+    private static final class Step {
+        final Profile top;
+        final PlacementTable.Placement[] pieces;
+
+        Step(Profile top, PlacementTable.Placement[] pieces) {
+            this.top = top;
+            this.pieces = pieces;
+        }
+    }
+
+    public StripSolver(PlacementTable table, int stripHeight) {
+        this.table = table;
+        this.width = table.width;
+        this.height = table.height;
+
+        this.maxPieceHeight = tallestPiece(table.catalogue);
+        if (stripHeight < maxPieceHeight) {
+            throw new IllegalArgumentException("Strips must be at least " + maxPieceHeight +
+                                               " rows tall, got " + stripHeight);
+        }
+
+        // the last strip takes whatever is left over
+        int strips = Math.max(1, height / stripHeight);
+        this.cuts = new int[strips + 1];
+        for (int s = 0; s < strips; s++) {
+            cuts[s] = s * stripHeight;
+        }
+        cuts[strips] = height;
+    }
+
+    /**
+     * Strips as tall as the tallest piece, over the puzzle's shared
+     *   PlacementTable
+     */
+    public StripSolver(CompiledPuzzle puzzle) {
+        this(puzzle.getPlacementTable());
+    }
+
+    public StripSolver(PlacementTable table) {
+        this(table, tallestPiece(table.catalogue));
+    }
+
+    private static int tallestPiece(PieceCatalogue catalogue) {
+        int tallest = 1;
+        for (Polyomino p : catalogue.getTypes()) {
+            for (Polyomino.Orientation o : p.getOrientations()) {
+                tallest = Math.max(tallest, o.height);
+            }
+        }
+        return tallest;
+    }
+
+    public int getStripCount() {
+        return cuts.length - 1;
+    }
+
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    /**
+     * Total number of distinct profiles reached at the cuts
+     */
+    public long getProfilesExplored() {
+        return profilesExplored;
+    }
+
+    /**
+     * Profiles, see getProfilesExplored
+     */
+    @Override
+    public long getNodesExplored() {
+        return profilesExplored;
+    }
+
+    public Solution getSolution() {
+        return solution;
+    }
+
+    /**
+     * Joins the strips top to bottom, expanding each strip's top profiles
+     *   concurrently on the given executor
+     */
+    public SolveStatus solve(ExecutorService executor) throws InterruptedException {
+        solution = null;
+        profilesExplored = 0;
+
+        List<Map<Profile, Step>> levels = new ArrayList<>(getStripCount());
+        Profile start = new Profile(newProfileCells());
+        Arrays.fill(start.cells, FREE);
+        List<Profile> tops = Arrays.asList(start);
+
+        for (int s = 0; s < getStripCount(); s++) {
+            Map<Profile, Step> bottoms = new ConcurrentHashMap<>();
+            List<Callable<Boolean>> tasks = new ArrayList<>(tops.size());
+            for (Profile top : tops) {
+                int strip = s;
+                tasks.add(() -> new StripSearch(strip, top, bottoms).run());
+            }
+
+            for (Future<Boolean> f : executor.invokeAll(tasks)) {
+                try {
+                    if (!f.get()) {
+                        return SolveStatus.UNKNOWN;
+                    }
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Expanding a strip failed", e.getCause());
+                }
+            }
+
+            if (bottoms.isEmpty()) {
+                return SolveStatus.UNSOLVABLE;
+            }
+            profilesExplored += bottoms.size();
+            levels.add(bottoms);
+            tops = new ArrayList<>(bottoms.keySet());
+        }
+
+        solution = rebuild(levels);
+        return SolveStatus.SOLVED;
+    }
+
+    /**
+     * Follows the witnesses back up from the bottom of the board
+     */
+    private Solution rebuild(List<Map<Profile, Step>> levels) {
+        List<PlacementTable.Placement[]> strips = new ArrayList<>(levels.size());
+        Profile profile = levels.get(levels.size() - 1).keySet().iterator().next();
+        for (int s = levels.size() - 1; s >= 0; s--) {
+            Step step = levels.get(s).get(profile);
+            strips.add(0, step.pieces);
+            profile = step.top;
+        }
+
+        int[] pieceIds = new int[width * height];
+        int pieceCount = 0;
+        for (PlacementTable.Placement[] pieces : strips) {
+            pieceCount += pieces.length;
+        }
+        byte[] pieceTypes = new byte[pieceCount];
+
+        int id = 0;
+        for (PlacementTable.Placement[] pieces : strips) {
+            for (PlacementTable.Placement p : pieces) {
+                for (int cell : p.cells) {
+                    pieceIds[cell] = id;
+                }
+                pieceTypes[id++] = (byte) p.type;
+            }
+        }
+        return new Solution(width, height, pieceIds, pieceTypes);
+    }
+
+    private byte[] newProfileCells() {
+        return new byte[maxPieceHeight * width];
+    }
+
+    private boolean shouldStop() {
+        return (cancellationToken != null && cancellationToken.isCancelled()) ||
+               (deadline != Long.MAX_VALUE && System.currentTimeMillis() >= deadline);
+    }
+
+    /**
+     * Every way to fill one strip from one top profile
+     *
+     * Only the strip's rows plus the rows around it are kept, starting
+     *   with the row above the strip, so a task's memory doesn't grow
+     *   with the board
+     */
+    private final class StripSearch {
+        private final int firstRow;  // strip rows are [firstRow, endRow)
+        private final int endRow;
+        private final int offset;    // global cell of the window's first cell
+        private final Profile top;
+        private final Map<Profile, Step> bottoms;
+
+        // FREE, FILLED or piece type per window cell
+        private final byte[] window;
+        private final List<PlacementTable.Placement> placed = new ArrayList<>();
+        private long nodesExplored = 0;
+        private boolean stopped = false;
+
+        StripSearch(int strip, Profile top, Map<Profile, Step> bottoms) {
+            this.firstRow = cuts[strip];
+            this.endRow = cuts[strip + 1];
+            this.offset = (firstRow - 1) * width;
+            this.top = top;
+            this.bottoms = bottoms;
+
+            // row above the strip through to the bottom of the overhang
+            int rows = endRow + maxPieceHeight - firstRow + 1;
+            this.window = new byte[rows * width];
+            Arrays.fill(window, FREE);
+            System.arraycopy(top.cells, 0, window, 0, top.cells.length);
+        }
+
+        /**
+         * Returns false if the search was stopped before it finished
+         */
+        boolean run() {
+            fill(firstRow * width);
+            return !stopped;
+        }
+
+        private void fill(int from) {
+            int anchor = nextFree(from);
+            if (anchor == endRow * width) {
+                bottoms.putIfAbsent(bottomProfile(),
+                                    new Step(top, placed.toArray(new PlacementTable.Placement[placed.size()])));
+                return;
+            }
+
+            if ((++nodesExplored & (POLL_INTERVAL - 1)) == 0 && shouldStop()) {
+                stopped = true;
+            }
+            if (stopped) {
+                return;
+            }
+
+            for (PlacementTable.Placement p : table.getPlacements(anchor)) {
+                if (fits(p)) {
+                    for (int cell : p.cells) {
+                        window[cell - offset] = (byte) p.type;
+                    }
+                    placed.add(p);
+                    fill(anchor + 1);
+                    placed.remove(placed.size() - 1);
+                    for (int cell : p.cells) {
+                        window[cell - offset] = FREE;
+                    }
+                }
+            }
+        }
+
+        private int nextFree(int from) {
+            int end = endRow * width;
+            while (from < end && window[from - offset] != FREE) {
+                from++;
+            }
+            return from;
+        }
+
+        private boolean fits(PlacementTable.Placement p) {
+            for (int cell : p.cells) {
+                if (window[cell - offset] != FREE) {
+                    return false;
+                }
+            }
+            for (int cell : p.border) {
+                if (window[cell - offset] == p.type) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * The profile of the cut below the strip; cells without a free
+         *   neighbour lose their type so that equivalent fillings collapse
+         *   into one profile
+         */
+        private Profile bottomProfile() {
+            byte[] cells = newProfileCells();
+            int base = (endRow - 1) * width;
+            for (int i = 0; i < cells.length; i++) {
+                int cell = base + i;
+                int y = cell / width;
+                if (y >= height) {
+                    cells[i] = FILLED;
+                    continue;
+                }
+
+                byte state = window[cell - offset];
+                if (state == FREE || hasFreeNeighbour(cell)) {
+                    cells[i] = state;
+                } else {
+                    cells[i] = FILLED;
+                }
+            }
+            return new Profile(cells);
+        }
+
+        private boolean hasFreeNeighbour(int cell) {
+            int x = cell % width;
+            int y = cell / width;
+            return (y > 0 && window[cell - width - offset] == FREE) ||
+                   (x > 0 && window[cell - 1 - offset] == FREE) ||
+                   (x < width - 1 && window[cell + 1 - offset] == FREE) ||
+                   (y + 1 < height && window[cell + width - offset] == FREE);
+        }
+    }
+
+    /**
+     * Usage: width height restrictionsFile [tetrominoes|pentominoes|mixed] [--strip rows] [--threads n]
+     */
+    public static void main(String[] args) throws Exception {
+        assert args != null && args.length >= 3;
+        int width = Integer.parseInt(args[0]);
+        int height = Integer.parseInt(args[1]);
+        String pieces = "tetrominoes";
+        Integer stripHeight = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 3; i < args.length; i++) {
+            if (args[i].equals("--strip")) {
+                stripHeight = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--threads")) {
+                threads = Integer.parseInt(args[++i]);
+            } else {
+                pieces = args[i];
+            }
+        }
+        PieceCatalogue catalogue = PieceCatalogue.forName(pieces);
+
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(width, height);
+        Map<Tetronimo, List<Tetronimo>> restrictions =
+            TetrisSolver.parseRestrictions(args[2], matrix);
+        Walls walls = Walls.fromRestrictions(matrix, restrictions);
+
+        long startTime = System.currentTimeMillis();
+        PlacementTable table = new PlacementTable(walls, catalogue);
+        StripSolver solver = stripHeight == null
+                                 ? new StripSolver(table)
+                                 : new StripSolver(table, stripHeight);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        SolveStatus status;
+        try {
+            status = solver.solve(executor);
+        } finally {
+            executor.shutdownNow();
+        }
+        long endTime = System.currentTimeMillis();
+
+        System.out.println("status: " + status +
+                           ", strips: " + solver.getStripCount() +
+                           ", profiles: " + solver.getProfilesExplored());
+        System.out.println("Time taken: " + (endTime - startTime) / 1000.0);
+        if (status == SolveStatus.SOLVED) {
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+            new SolutionRenderer().render(solver.getSolution(), out);
+            out.flush();
+        }
+    }
+}
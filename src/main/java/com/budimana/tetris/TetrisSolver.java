@@ -1,15 +1,24 @@
 package com.budimana.tetris;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
 
 
 /**
@@ -42,17 +51,33 @@ import java.util.Set;
  *     for the restriction that it cannot share an edge with a piece of the
  *     same type
  *
+ * Type domains
+ *   The same-type rule is also checked before pieces are complete: each
+ *     step looks at the unfinished pieces near the new tetronimo and the
+ *     ways their shapes can still be completed (see PieceType); a piece
+ *     with room to become only types its complete neighbours already have
+ *     fails the branch there
+ *
  * Backtracking
  *   When backtracking, we must esnure we revert the state of the matrix and
  *     all the pieces
  *   To accomplish this, any change in state is saved inside a Transition
  *     object that can be used to revert the state
+ *
+ * Checkpointing
+ *   The option index chosen at each tetronimo is recorded in decisionPath
+ *   Every so often the path is written out as a Checkpoint; resuming
+ *     replays the path, skipping options that were already exhausted
  */
-public class TetrisSolver {
+public class TetrisSolver implements SolverEngine {
 
     private final Tetronimo[][] matrix;
     private final Map<Tetronimo, List<Tetronimo>> restrictions;
 
+    // when built from one, its option masks skip the association checks
+    //   of neighbours across a wall
+    private final CompiledPuzzle puzzle;
+
     /**
      * A piece may only exist in one of these states
      *
@@ -66,31 +91,430 @@ public class TetrisSolver {
      *       V
      *  [verified] - ensured all adjacent pieces are also complete
      *               and are not of the same type
+     * Verified pieces are never looked at again, so they aren't kept in
+     *   a list: every complete piece not in unverifiedPieces is verified
+     */
+    public final PieceList unfinishedPieces;
+    public final PieceList unverifiedPieces;
+
+    // how often the slow path in pollNode runs
+    private static final long POLL_INTERVAL = 1 << 10;
+
+    // search position: option index chosen at each depth
+    private final int[] decisionPath;
+    private int[] resumePath = new int[0];
+    private int resumeDepth = 0;
+    private boolean resuming = false;  // resumeFrom was called since the last solve
+
+    private long nodesExplored = 0;
+    private long nextPoll = Long.MAX_VALUE;
+    private long backtracks = 0;
+    private int maxDepth = 0;
+
+    // bounds on the search, checked in pollNode
+    private long deadline = Long.MAX_VALUE;
+    private CancellationToken cancellationToken;
+    private boolean aborted = false;
+    private boolean solved = false;
+
+    // progress reporting, disabled unless a listener is given
+    private ProgressListener progressListener;
+    private long progressNodes;
+    private long lastProgressNodes;
+    private long startTime;
+    private long startNodes;
+    private SearchEstimate estimate;
+
+    // search statistics, cheap enough to always keep
+    private final SolverStats stats;
+    private PruneCause lastPruneCause;  // why verifyPieces last failed
+
+    // checkpointing, disabled unless a file is given
+    private File checkpointFile;
+    private long checkpointNodes;
+    private long checkpointMillis;
+    private long lastCheckpointNodes;
+    private long lastCheckpointTime;
+    private Long puzzleHash;
+
+    // order findSolution tries the options in, see setOptionOrder
+    private OptionKind[] optionOrder = OptionKind.values();
+    private boolean shuffleOptions = false;
+    private long shuffleSeed;
+
+    // learned order, see setOptionStats; deepest depth of the current
+    //   subtree while it's on
+    private OptionStats optionStats;
+    private int deepest;
+
+    // limited discrepancy search, see setLimitedDiscrepancy; discrepancies
+    //   is what's left of the current pass's budget
+    private boolean limitedDiscrepancy = false;
+    private int discrepancyLimit = 0;
+    private int discrepancies = Integer.MAX_VALUE;
+    private boolean discrepancyCutoff;
+    private final int discrepancyHorizon;
+
+    // reused by findSolution at each depth (created on first visit),
+    //   see getNewPiece
+    private final Transition[] transitions;
+    private final OptionKind[][] depthOptions;
+    private final Piece[] newPieces;
+    private final Piece[] onePiece = new Piece[1];
+    private final Piece[] twoPieces = new Piece[2];
+
+    /**
+     * Searches a fresh matrix with the puzzle's walls as restrictions
      */
-    public final Set<Piece> unfinishedPieces;
-    public final Set<Piece> unverifiedPieces;
-    public final Set<Piece> verifiedPieces;
+    public TetrisSolver(CompiledPuzzle puzzle) {
+        this(puzzle.createMatrix(), puzzle);
+    }
+
+    private TetrisSolver(Tetronimo[][] matrix, CompiledPuzzle puzzle) {
+        this(matrix, puzzle.getRestrictions(), puzzle);
+    }
 
     public TetrisSolver(Tetronimo[][] matrix, Map<Tetronimo, List<Tetronimo>> restrictions) {
+        this(matrix, restrictions, null);
+    }
+
+    private TetrisSolver(Tetronimo[][] matrix,
+                         Map<Tetronimo, List<Tetronimo>> restrictions,
+                         CompiledPuzzle puzzle) {
         this.matrix = matrix;
         this.restrictions = restrictions;
-        this.unfinishedPieces = new HashSet<>();
-        this.unverifiedPieces = new HashSet<>();
-        this.verifiedPieces = new HashSet<>();
+        this.puzzle = puzzle;
+        this.unfinishedPieces = new PieceList();
+        this.unverifiedPieces = new PieceList();
+        this.decisionPath = matrix == null
+                                ? new int[0]
+                                : new int[matrix.length * matrix[0].length];
+        this.stats = new SolverStats(decisionPath.length);
+        this.transitions = new Transition[decisionPath.length];
+        this.depthOptions = new OptionKind[decisionPath.length][];
+        this.newPieces = new Piece[decisionPath.length];
+        this.discrepancyHorizon = matrix == null
+                                      ? 0
+                                      : Piece.NUM_TETRONIMOS_IN_PIECE * matrix.length;
+    }
+
+    /**
+     * Periodically writes the search position to the given file
+     * A checkpoint is taken after everyNodes nodes or everyMillis ms,
+     *   whichever comes first
+     */
+    public void enableCheckpoints(File file, long everyNodes, long everyMillis) {
+        this.checkpointFile = file;
+        this.checkpointNodes = everyNodes;
+        this.checkpointMillis = everyMillis;
+        this.lastCheckpointNodes = nodesExplored;
+        this.lastCheckpointTime = System.currentTimeMillis();
+        enablePolling();
+    }
+
+    /**
+     * Gives up on the search once the wall clock passes the deadline
+     * (as given by System.currentTimeMillis)
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+        enablePolling();
+    }
+
+    /**
+     * Gives up on the search once the token is cancelled
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+        enablePolling();
+    }
+
+    /**
+     * Reports progress to the listener roughly every everyNodes nodes
+     */
+    public void setProgressListener(ProgressListener listener, long everyNodes) {
+        this.progressListener = listener;
+        this.progressNodes = everyNodes;
+        this.lastProgressNodes = nodesExplored;
+        enablePolling();
+    }
+
+    /**
+     * Adds an ETA to the progress reports, see SearchProgress
+     */
+    public void setEstimate(SearchEstimate estimate) {
+        this.estimate = estimate;
+    }
+
+    /**
+     * Tries the options of each tetronimo in the given order
+     * Every OptionKind must appear exactly once so the search stays complete
+     */
+    public void setOptionOrder(OptionKind... order) {
+        if (order.length != OptionKind.values().length ||
+            EnumSet.copyOf(Arrays.asList(order)).size() != order.length) {
+            throw new IllegalArgumentException("Not an order of all options: " +
+                                               Arrays.toString(order));
+        }
+        this.optionOrder = order.clone();
+    }
+
+    /**
+     * Breaks ties between the options in a pseudo-random order instead
+     * The order only depends on the seed and the tetronimo, so replaying
+     *   a checkpoint's decision path with the same seed still works
+     */
+    public void setShuffleSeed(long seed) {
+        this.shuffleOptions = true;
+        this.shuffleSeed = seed;
+    }
+
+    /**
+     * Tries each tetronimo's options in the order that did best so far in
+     *   the same context (see OptionStats), learning as the search goes
+     * The table can be shared by later searches; the order changes as it
+     *   learns, so a search using it can't be resumed from a checkpoint
+     */
+    public void setOptionStats(OptionStats optionStats) {
+        this.optionStats = optionStats;
+    }
+
+    /**
+     * Searches in passes of limited discrepancy search: pass k only
+     *   explores paths that go against the option order at most k times,
+     *   k = 0, 1, 2, ...
+     * Going against the order means trying an option after one that
+     *   seemed to work: one whose subtree reached a piece's height (in
+     *   rows) further down before failing, or was cut short by the pass;
+     *   an option that fails sooner is a dead end of its own piece, which
+     *   the order couldn't have known about, so moving past it is free
+     * A good option order (see setOptionOrder, setOptionStats) then finds
+     *   solutions near its preferred path long before plain DFS would get
+     *   out of a bad early subtree; the last pass is a complete search, so
+     *   UNSOLVABLE still means there is no solution
+     * Earlier passes are searched again by later ones, and a search in
+     *   passes can't be resumed from a checkpoint
+     */
+    public void setLimitedDiscrepancy(boolean limitedDiscrepancy) {
+        this.limitedDiscrepancy = limitedDiscrepancy;
     }
 
-    public void run() {
+    /**
+     * The discrepancies allowed in the last pass of limited discrepancy
+     *   search
+     */
+    public int getDiscrepancyLimit() {
+        return discrepancyLimit;
+    }
+
+    private void enablePolling() {
+        nextPoll = Math.min(nextPoll, nodesExplored + POLL_INTERVAL);
+    }
+
+    /**
+     * Continue the next search from the given checkpoint
+     */
+    public void resumeFrom(Checkpoint checkpoint) {
+        if (checkpoint.puzzleHash != getPuzzleHash()) {
+            throw new IllegalArgumentException("Checkpoint is for a different puzzle");
+        }
+        this.resumePath = checkpoint.path;
+        this.resumeDepth = checkpoint.path.length;
+        this.resuming = true;
+        this.nodesExplored = checkpoint.nodesExplored;
+        this.lastCheckpointNodes = nodesExplored;
+        this.lastProgressNodes = nodesExplored;
+        if (nextPoll != Long.MAX_VALUE) {
+            this.nextPoll = nodesExplored + POLL_INTERVAL;
+        }
+    }
+
+    /**
+     * Returns the current search position
+     */
+    public Checkpoint getCheckpoint(int depth) {
+        return new Checkpoint(getPuzzleHash(),
+                              nodesExplored,
+                              Arrays.copyOf(decisionPath, depth));
+    }
+
+    private long getPuzzleHash() {
+        if (puzzleHash == null) {
+            puzzleHash = Checkpoint.puzzleHash(matrix, restrictions);
+        }
+        return puzzleHash;
+    }
+
+    public long getNodesExplored() {
+        return nodesExplored;
+    }
+
+    public long getBacktracks() {
+        return backtracks;
+    }
+
+    /**
+     * Nodes explored by the current or last solve alone, without those of
+     *   the run a checkpoint was resumed from
+     */
+    long getRunNodes() {
+        return nodesExplored - startNodes;
+    }
+
+    public SolverStats getStats() {
+        return stats;
+    }
+
+    public SearchProgress getProgress(int depth) {
+        long elapsedMillis = System.currentTimeMillis() - startTime;
+        if (estimate == null) {
+            return new SearchProgress(nodesExplored, depth, maxDepth, backtracks, elapsedMillis);
+        }
+
+        // rate of this run only, a resumed search's nodes came earlier
+        double nodesPerSecond = (nodesExplored - startNodes) * 1000.0 / Math.max(1, elapsedMillis);
+        return new SearchProgress(nodesExplored,
+                                  depth,
+                                  maxDepth,
+                                  backtracks,
+                                  elapsedMillis,
+                                  estimate.nodes,
+                                  estimate.etaMillis(nodesExplored, nodesPerSecond));
+    }
+
+    /**
+     * Searches for a solution, honouring the deadline and cancellation token
+     * Returns UNKNOWN if the search gave up before finishing
+     */
+    public SolveStatus solve() {
+        if (optionStats != null && resuming) {
+            throw new IllegalStateException("Can't resume a search with a learned option order");
+        }
+        if (limitedDiscrepancy && resuming) {
+            throw new IllegalStateException("Can't resume a limited discrepancy search");
+        }
+
+        // a resumed search counts on from the checkpoint's nodes, any
+        //   other solve counts from zero
+        if (!resuming) {
+            resumeDepth = 0;
+            nodesExplored = 0;
+            lastCheckpointNodes = 0;
+            lastProgressNodes = 0;
+        }
+        resuming = false;
+        backtracks = 0;
+        maxDepth = 0;
+        stats.clear();
+        startTime = System.currentTimeMillis();
+        startNodes = nodesExplored;
+        aborted = false;
+        solved = false;
+
+        // always poll so flight recorder node samples can be taken
+        enablePolling();
+        Object searchEvent = SolverEvents.beginSearch(matrix.length,
+                                                      matrix[0].length,
+                                                      getPuzzleHash());
+
+        SolverMetrics metrics = SolverMetrics.getInstance();
+        metrics.register(this);
+        boolean solutionExists;
+        try {
+            if (limitedDiscrepancy) {
+                solutionExists = findSolutionInPasses();
+            } else {
+                solutionExists = findSolution(matrix[0][0]);
+            }
+        } finally {
+            metrics.unregister(this);
+        }
+
+        SolveStatus status;
+        if (aborted) {
+            status = SolveStatus.UNKNOWN;
+        } else {
+            status = solutionExists ? SolveStatus.SOLVED : SolveStatus.UNSOLVABLE;
+        }
+        solved = status == SolveStatus.SOLVED;
+        SolverEvents.endSearch(searchEvent, status, nodesExplored, backtracks, maxDepth);
+        return status;
+    }
+
+    /**
+     * Runs on the caller's thread, see SolverEngine
+     */
+    @Override
+    public SolveStatus solve(ExecutorService executor) {
+        return solve();
+    }
+
+    /**
+     * The matrix's pieces after a SOLVED search, otherwise null
+     */
+    @Override
+    public Solution getSolution() {
+        return solved ? Solution.fromMatrix(matrix) : null;
+    }
+
+    /**
+     * Verified pieces on the board: the complete ones that aren't waiting
+     *   in unverifiedPieces
+     * Counted from the matrix, for SolverMetrics; the search never needs it
+     */
+    int countVerifiedPieces() {
+        if (matrix == null) {
+            return 0;
+        }
+        int completeCells = 0;
+        for (Tetronimo[] column : matrix) {
+            for (Tetronimo t : column) {
+                Piece p = t.piece;
+                if (p != null && p.isComplete()) {
+                    completeCells++;
+                }
+            }
+        }
+        return completeCells / Piece.NUM_TETRONIMOS_IN_PIECE - unverifiedPieces.size();
+    }
+
+    public SolveStatus run() {
         long startTime = System.currentTimeMillis();
-        boolean solutionExists = findSolution(matrix[0][0]);
+        SolveStatus status = solve();
         long endTime = System.currentTimeMillis();
 
-        System.out.println("solutionExists: " + solutionExists);
+        if (status == SolveStatus.UNKNOWN) {
+            System.out.println("Search stopped before finishing");
+        } else {
+            System.out.println("solutionExists: " + (status == SolveStatus.SOLVED));
+        }
         System.out.println("Time taken: " + (endTime - startTime) / 1000.0);
 
-        if (!solutionExists) {
-            return;
+        if (status == SolveStatus.SOLVED) {
+            prettyPrint(matrix);
+        }
+        return status;
+    }
+
+    /**
+     * Limited discrepancy search, see setLimitedDiscrepancy
+     * Stops after the first pass that didn't run out of discrepancies
+     */
+    private boolean findSolutionInPasses() {
+        try {
+            for (discrepancyLimit = 0; ; discrepancyLimit++) {
+                discrepancies = discrepancyLimit;
+                discrepancyCutoff = false;
+                if (findSolution(matrix[0][0])) {
+                    return true;
+                }
+                if (aborted || !discrepancyCutoff) {
+                    return false;
+                }
+            }
+        } finally {
+            discrepancies = Integer.MAX_VALUE;
         }
-        prettyPrint(matrix);
     }
 
     /**
@@ -105,6 +529,22 @@ public class TetrisSolver {
         if (currTetronimo == null) {
             return unfinishedPieces.isEmpty();
         }
+
+        // cheap bookkeeping, anything heavier happens every POLL_INTERVAL
+        int depth = currTetronimo.y * matrix.length + currTetronimo.x;
+        if (depth > maxDepth) {
+            maxDepth = depth;
+        }
+        if (depth > deepest) {
+            deepest = depth;
+        }
+        stats.depthHistogram[depth]++;
+        if (++nodesExplored >= nextPoll) {
+            pollNode(depth);
+            if (aborted) {
+                return false;
+            }
+        }
         
         // get the next tetronimo
         Tetronimo nextTetronimo = currTetronimo.getNext(matrix);
@@ -113,59 +553,406 @@ public class TetrisSolver {
         // the current tetronimo that we can add to
         Tetronimo left = currTetronimo.getLeft(matrix);
         Tetronimo up = currTetronimo.getUp(matrix);
-        boolean leftIsValid = isValidAssociation(currTetronimo,
+        boolean leftIsValid = (puzzle == null || puzzle.allows(depth, OptionKind.LEFT)) &&
+                              isValidAssociation(currTetronimo,
                                                  left,
                                                  restrictions);
-        boolean upIsValid = isValidAssociation(currTetronimo,
+        boolean upIsValid = (puzzle == null || puzzle.allows(depth, OptionKind.UP)) &&
+                            isValidAssociation(currTetronimo,
                                                up,
                                                restrictions);
+        if (!leftIsValid && left != null) {
+            countPrune(associationPruneCause(left), depth);
+        }
+        if (!upIsValid && up != null) {
+            countPrune(associationPruneCause(up), depth);
+        }
 
         // initialize all options this tetronimo has to be part of a piece
-        List<Piece[]> options = new ArrayList<>(4);  // max 4 options
-
-        options.add(new Piece[] { new Piece() });  // associate with a new piece
-        if (leftIsValid) {  // associate with piece to the left
-            options.add(new Piece[] { left.piece });
+        OptionKind[] options = depthOptions[depth];
+        if (options == null) {
+            options = depthOptions[depth] = new OptionKind[4];  // max 4 options
         }
-        if (upIsValid) {  // associate with the piece above
-            options.add(new Piece[] { up.piece });
-        }
-        if (leftIsValid && upIsValid) {  // merge the left and top pieces
-            int mergeCount = left.piece.getCount() + up.piece.getCount();
-            if (mergeCount < Piece.NUM_TETRONIMOS_IN_PIECE) {
-                options.add(new Piece[] { left.piece, up.piece });
-            }
+        int numOptions = getOptions(left, leftIsValid, up, upIsValid, depth, options);
+        int context = 0;
+        if (optionStats != null) {
+            context = getContext(currTetronimo, left, leftIsValid, up, upIsValid);
+            optionStats.order(context, options, numOptions);
         }
 
+        // when resuming, options before the saved one were already exhausted
+        int firstOption = depth < resumeDepth ? resumePath[depth] : 0;
+
         // cycle through the options, check constraints, and recurse
-        for (Piece[] pieces : options) {
-            assert pieces != null && pieces.length > 0;
+        boolean plausibleFailed = false;
+        for (int i = firstOption; i < numOptions; i++) {
+            Piece[] pieces = getOptionPieces(options[i], left, up, depth);
+            decisionPath[depth] = i;
 
             // add to the specified piece
-            Transition transition = new Transition();
+            Transition transition = transitions[depth];
+            if (transition == null) {
+                transition = transitions[depth] = new Transition();
+            }
+            transition.clear();
             addToPiece(currTetronimo, pieces, transition);
 
             // see if we verified any pieces
             boolean passesConstraints = verifyPieces(transition);
 
+            // going past an option that only failed a piece's height or more
+            //   further down is a discrepancy, see setLimitedDiscrepancy
+            boolean discrepancy = passesConstraints && plausibleFailed;
+            if (discrepancy && discrepancies == 0) {
+                // out of discrepancies, leave the rest to a later pass
+                discrepancyCutoff = true;
+                revertTransition(transition);
+                break;
+            }
+
             // keep going if we're still on a valid branch
             if (passesConstraints) {
+                stats.optionSuccesses[options[i].ordinal()]++;
+                int deepestBefore = deepest;
+                deepest = depth;
+                boolean cutoffBefore = discrepancyCutoff;
+                discrepancyCutoff = false;
+                if (discrepancy) {
+                    discrepancies--;
+                }
                 boolean pieceWorks = findSolution(nextTetronimo);
+                if (discrepancy) {
+                    discrepancies++;
+                }
+                plausibleFailed |= discrepancyCutoff || deepest - depth >= discrepancyHorizon;
+                discrepancyCutoff |= cutoffBefore;
+                if (optionStats != null && !aborted) {
+                    optionStats.record(context,
+                                       options[i],
+                                       pieceWorks ? decisionPath.length : deepest - depth);
+                }
+                deepest = Math.max(deepest, deepestBefore);
 
                 // found a solution
                 if (pieceWorks) {
                     return true;
                 }
+            } else {
+                countPrune(lastPruneCause, depth);
+                if (optionStats != null) {
+                    optionStats.record(context, options[i], 0);
+                }
             }
 
             // didn't find solution, revert and try another branch
             revertTransition(transition);
+            backtracks++;
+
+            // unwind without trying anything else
+            if (aborted) {
+                return false;
+            }
+
+            // anything below this depth is now a fresh search
+            if (resumeDepth > depth) {
+                resumeDepth = depth;
+            }
         }
         
         // none of the possible piece options worked out
         return false;
     }
 
+    /**
+     * Estimates the size of the search tree from random probes, see probe
+     * Must be called between searches, on the empty matrix
+     */
+    public SearchEstimate estimate(int probes, long seed) {
+        Random random = new Random(seed);
+        double[] samples = new double[probes];
+        for (int i = 0; i < probes; i++) {
+            samples[i] = probe(random);
+        }
+        return new SearchEstimate(samples);
+    }
+
+    /**
+     * One of Knuth's random probes: walks down from the first tetronimo
+     *   taking a random option among those that pass the same checks as
+     *   in findSolution, until the end of the matrix or a dead end
+     * Returns 1 + d1 + d1 d2 + ..., where di is the number of options that
+     *   passed at the i-th tetronimo; its mean over many probes is the
+     *   number of nodes findSolution explores if it finds no solution
+     * The matrix is left as it was
+     */
+    public double probe(Random random) {
+        assert unfinishedPieces.isEmpty() && unverifiedPieces.isEmpty() && countVerifiedPieces() == 0;
+        double nodes = 0;
+        double levelNodes = 1;  // nodes at this depth, as far as the probe can tell
+        OptionKind[] options = new OptionKind[4];
+        OptionKind[] passed = new OptionKind[4];
+        int depth = 0;
+
+        Tetronimo currTetronimo = matrix[0][0];
+        while (currTetronimo != null) {
+            nodes += levelNodes;
+            Tetronimo left = currTetronimo.getLeft(matrix);
+            Tetronimo up = currTetronimo.getUp(matrix);
+            boolean leftIsValid = isValidAssociation(currTetronimo, left, restrictions);
+            boolean upIsValid = isValidAssociation(currTetronimo, up, restrictions);
+            int numOptions = getOptions(left, leftIsValid, up, upIsValid, depth, options);
+
+            Transition transition = transitions[depth];
+            if (transition == null) {
+                transition = transitions[depth] = new Transition();
+            }
+            int numPassed = 0;
+            for (int i = 0; i < numOptions; i++) {
+                transition.clear();
+                addToPiece(currTetronimo, getOptionPieces(options[i], left, up, depth), transition);
+                if (verifyPieces(transition)) {
+                    passed[numPassed++] = options[i];
+                }
+                revertTransition(transition);
+            }
+            if (numPassed == 0) {
+                break;
+            }
+
+            OptionKind choice = passed[random.nextInt(numPassed)];
+            transition.clear();
+            addToPiece(currTetronimo, getOptionPieces(choice, left, up, depth), transition);
+            verifyPieces(transition);
+            levelNodes *= numPassed;
+            depth++;
+            currTetronimo = currTetronimo.getNext(matrix);
+        }
+
+        // undo the probe's path
+        while (depth > 0) {
+            revertTransition(transitions[--depth]);
+        }
+        return nodes;
+    }
+
+    /**
+     * Fills options with the ways the tetronimo can be associated with a
+     *   piece, in the order they are tried; returns how many there are
+     */
+    private int getOptions(Tetronimo left,
+                           boolean leftIsValid,
+                           Tetronimo up,
+                           boolean upIsValid,
+                           int depth,
+                           OptionKind[] options) {
+        int numOptions = 0;
+        for (OptionKind kind : optionOrder) {
+            if (isOption(kind, left, leftIsValid, up, upIsValid, restrictions)) {
+                options[numOptions++] = kind;
+            }
+        }
+        if (shuffleOptions) {
+            shuffle(options, numOptions, depth);
+        }
+        return numOptions;
+    }
+
+    /**
+     * The tetronimo's context in OptionStats
+     */
+    private int getContext(Tetronimo t,
+                           Tetronimo left,
+                           boolean leftIsValid,
+                           Tetronimo up,
+                           boolean upIsValid) {
+        int walls = 0;
+        if (puzzle != null) {
+            int cell = t.y * puzzle.width + t.x;
+            for (int side = CompiledPuzzle.LEFT; side <= CompiledPuzzle.DOWN; side++) {
+                if (puzzle.getNeighbour(cell, side) < 0) {
+                    walls |= 1 << side;
+                }
+            }
+        } else {
+            walls = wallBit(t, left, 0) |
+                    wallBit(t, up, 1) |
+                    wallBit(t, t.getRight(matrix), 2) |
+                    wallBit(t, t.getDown(matrix), 3);
+        }
+        return OptionStats.context(walls,
+                                   leftIsValid ? left.piece.getCount() : 0,
+                                   upIsValid ? up.piece.getCount() : 0);
+    }
+
+    /**
+     * The given bit if the side is past the edge or across a wall
+     */
+    private int wallBit(Tetronimo t, Tetronimo side, int bit) {
+        return side == null || t.isRestricted(side, restrictions) ? 1 << bit : 0;
+    }
+
+    /**
+     * Whether a boundary runs between the two pieces, so merging them
+     *   would put it inside a piece
+     */
+    private static boolean isRestricted(Piece a,
+                                        Piece b,
+                                        Map<Tetronimo, List<Tetronimo>> restrictions) {
+        for (int i = 0; i < a.getCount(); i++) {
+            for (int j = 0; j < b.getCount(); j++) {
+                if (a.getTetronimo(i).isRestricted(b.getTetronimo(j), restrictions)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the tetronimo can be associated with a piece in this way
+     */
+    private static boolean isOption(OptionKind kind,
+                                    Tetronimo left,
+                                    boolean leftIsValid,
+                                    Tetronimo up,
+                                    boolean upIsValid,
+                                    Map<Tetronimo, List<Tetronimo>> restrictions) {
+        switch (kind) {
+            case NEW:  // associate with a new piece
+                return true;
+            case LEFT:  // associate with piece to the left
+                return leftIsValid;
+            case UP:  // associate with the piece above
+                return upIsValid;
+            case MERGE:  // merge the left and top pieces
+                return leftIsValid && upIsValid &&
+                       left.piece.getCount() + up.piece.getCount() < Piece.NUM_TETRONIMOS_IN_PIECE &&
+                       !isRestricted(left.piece, up.piece, restrictions);
+            default:
+                throw new IllegalArgumentException("Unknown option: " + kind);
+        }
+    }
+
+    /**
+     * Fisher-Yates shuffle driven by a hash of the seed and depth
+     */
+    private void shuffle(OptionKind[] options, int numOptions, int depth) {
+        long h = shuffleSeed + depth * 0x9e3779b97f4a7c15L;
+        for (int i = numOptions - 1; i > 0; i--) {
+            // splitmix64 step
+            h += 0x9e3779b97f4a7c15L;
+            long z = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            z ^= z >>> 31;
+
+            int j = (int) Long.remainderUnsigned(z, i + 1);
+            OptionKind tmp = options[i];
+            options[i] = options[j];
+            options[j] = tmp;
+        }
+    }
+
+    /**
+     * Returns the pieces to add the tetronimo to for the given option
+     * The returned array is reused, addToPiece doesn't keep it
+     */
+    private Piece[] getOptionPieces(OptionKind kind, Tetronimo left, Tetronimo up, int depth) {
+        switch (kind) {
+            case NEW:
+                onePiece[0] = getNewPiece(depth);
+                return onePiece;
+            case LEFT:
+                onePiece[0] = left.piece;
+                return onePiece;
+            case UP:
+                onePiece[0] = up.piece;
+                return onePiece;
+            case MERGE:
+                twoPieces[0] = left.piece;
+                twoPieces[1] = up.piece;
+                return twoPieces;
+            default:
+                throw new IllegalArgumentException("Unknown option: " + kind);
+        }
+    }
+
+    /**
+     * An empty piece for the NEW option at the given depth
+     * A piece started at some depth is empty again once the search
+     *   backtracks past it, so each depth keeps reusing the same one
+     */
+    private Piece getNewPiece(int depth) {
+        Piece p = newPieces[depth];
+        if (p == null || p.getCount() > 0 || p.list != null) {
+            p = new Piece();
+            newPieces[depth] = p;
+        }
+        return p;
+    }
+
+    /**
+     * Why isValidAssociation turned down a (non-null) candidate
+     */
+    private static PruneCause associationPruneCause(Tetronimo candidate) {
+        return candidate.piece.isComplete()
+                   ? PruneCause.FULL_PIECE
+                   : PruneCause.RESTRICTION;
+    }
+
+    private void countPrune(PruneCause cause, int depth) {
+        stats.prunes[cause.ordinal()]++;
+        SolverEvents.prune(cause, depth);
+    }
+
+    /**
+     * Slow path of the per-node bookkeeping
+     */
+    private void pollNode(int depth) {
+        nextPoll = nodesExplored + POLL_INTERVAL;
+
+        SolverEvents.nodeSample(depth,
+                                depth % matrix.length,
+                                depth / matrix.length,
+                                maxDepth,
+                                nodesExplored,
+                                backtracks);
+
+        if ((cancellationToken != null && cancellationToken.isCancelled()) ||
+            (deadline != Long.MAX_VALUE && System.currentTimeMillis() >= deadline)) {
+            aborted = true;
+
+            // save where we got to so the search can be picked up later
+            if (checkpointFile != null) {
+                writeCheckpoint(depth);
+            }
+            return;
+        }
+
+        if (progressListener != null &&
+            nodesExplored - lastProgressNodes >= progressNodes) {
+            progressListener.onProgress(getProgress(depth));
+            lastProgressNodes = nodesExplored;
+        }
+
+        if (checkpointFile != null) {
+            long now = System.currentTimeMillis();
+            if (nodesExplored - lastCheckpointNodes >= checkpointNodes ||
+                now - lastCheckpointTime >= checkpointMillis) {
+                writeCheckpoint(depth);
+                lastCheckpointNodes = nodesExplored;
+                lastCheckpointTime = now;
+            }
+        }
+    }
+
+    private void writeCheckpoint(int depth) {
+        try {
+            getCheckpoint(depth).write(checkpointFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     /**
      * Returns true if the current tetronimo can try to be added to the
      *   same piece as the candidate tetronimo
@@ -188,7 +975,8 @@ public class TetrisSolver {
 
         // check if any tetronimos in the candidate piece are
         //   restricted against the current tetronimo
-        for (Tetronimo t : piece.getTetronimos()) {
+        for (int i = 0; i < piece.getCount(); i++) {
+            Tetronimo t = piece.getTetronimo(i);
             if (currTetronimo.isRestricted(t, restrictions)) {
                 return false;
             }
@@ -204,34 +992,31 @@ public class TetrisSolver {
     public void addToPiece(Tetronimo t,
                            Piece[] pieces,
                            Transition transition) {
-        assert pieces != null && pieces.length > 0;
+        assert pieces != null && pieces.length > 0 && pieces.length <= 2;
 
         // add to the first piece
         Piece piece = pieces[0];
         piece.add(t);
         transition.tetronimo = t;
 
-        // optionally merge other pieces
-        for (int i = 1; i < pieces.length; i++) {
-            Piece mergePiece = pieces[i];
+        // optionally merge the other piece
+        if (pieces.length > 1) {
+            Piece mergePiece = pieces[1];
             assert unfinishedPieces.contains(mergePiece);
 
             // remove the piece
             unfinishedPieces.remove(mergePiece);
             transition.oldUnfinishedPieces.add(mergePiece);
 
-            // add the tetronimos to the base piece
-            // need to remove them via Piece.remove
-            // but also avoid concurrent modification with new list
-            List<Tetronimo> savedMergedPieces = new ArrayList<>(mergePiece.getCount());
-            for (Tetronimo newT : new ArrayList<>(mergePiece.getTetronimos())) {
+            // move the tetronimos to the base piece, last first so the
+            //   merge piece's array doesn't shift
+            transition.mergedPiece = mergePiece;
+            for (int i = mergePiece.getCount() - 1; i >= 0; i--) {
+                Tetronimo newT = mergePiece.getTetronimo(i);
                 mergePiece.remove(newT);
-                savedMergedPieces.add(newT);
+                transition.mergedTetronimos.add(newT);
                 piece.add(newT);
             }
-
-            // save merge transition
-            transition.mergedPieces.put(mergePiece, savedMergedPieces);
         }
 
         // update the state structures
@@ -261,28 +1046,46 @@ public class TetrisSolver {
     public boolean verifyPieces(Transition transition) {
 
         // check if unfinished pieces cannot be finished
-        for (Piece p : unfinishedPieces) {
-            if (!p.canBeFinished(matrix)) {
+        for (int i = 0; i < unfinishedPieces.size(); i++) {
+            if (!unfinishedPieces.get(i).canBeFinished(matrix)) {
+                lastPruneCause = PruneCause.CANNOT_FINISH;
                 return false;
             }
         }
 
+        // check the unfinished pieces whose possible types may have just
+        //   narrowed, see checkTypeDomains
+        if (transition.tetronimo != null && !checkTypeDomains(transition.tetronimo)) {
+            lastPruneCause = PruneCause.TYPE_DOMAIN;
+            return false;
+        }
+
         /**
          * 3 ending states for unverified pieces
          *  there exists some adjacent piece of same type -> fail verification
          *  adjacent pieces are complete and different type -> verified
          *  adjacent pieces are different type or unfinished -> stay unverified
          */
-        List<Piece> newVerifiedPieces = new ArrayList<>();
-        for (Piece p : unverifiedPieces) {
+        List<Piece> newVerifiedPieces = transition.newVerifiedPieces;
+        assert newVerifiedPieces.isEmpty();
+        for (int i = 0; i < unverifiedPieces.size(); i++) {
+            Piece p = unverifiedPieces.get(i);
             boolean verified = true;
-            for (Tetronimo adjT : p.getAdjacentTetronimos(matrix)) {
-                Piece adjPiece = adjT.piece;
-
-                if (adjPiece == null || !adjPiece.isComplete()) {
-                    verified = false;  // remain unverified
-                } else if (adjPiece.getType() == p.getType()) {
-                    return false;  // fail verification
+            for (int j = 0; j < p.getCount(); j++) {
+                for (int direction = 0; direction < 4; direction++) {
+                    Tetronimo adjT = getAdjacentTetronimo(p.getTetronimo(j), direction);
+                    if (adjT == null || adjT.piece == p) {
+                        continue;
+                    }
+                    Piece adjPiece = adjT.piece;
+
+                    if (adjPiece == null || !adjPiece.isComplete()) {
+                        verified = false;  // remain unverified
+                    } else if (adjPiece.getType() == p.getType()) {
+                        newVerifiedPieces.clear();  // nothing to revert yet
+                        lastPruneCause = PruneCause.SAME_TYPE;
+                        return false;  // fail verification
+                    }
                 }
             }
             
@@ -292,19 +1095,217 @@ public class TetrisSolver {
             }
         }
 
-        for (Piece p : newVerifiedPieces) {
-            // remove from unverified state
+        for (int i = 0; i < newVerifiedPieces.size(); i++) {
+            Piece p = newVerifiedPieces.get(i);
+
+            // remove from unverified state, which leaves it verified
             unverifiedPieces.remove(p);
             transition.oldUnverifiedPieces.add(p);
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns false if an unfinished piece near the tetronimo just placed
+     *   can no longer become any type
+     * Placing a tetronimo only narrows the pieces that could have grown
+     *   into its cell (those with a tetronimo within 3 steps) and, once its
+     *   piece is complete, the pieces touching it; every other unfinished
+     *   piece was checked when it last changed
+     */
+    private boolean checkTypeDomains(Tetronimo placed) {
+        Piece placedPiece = placed.piece;
+        int numChecked = 0;
+        if (!placedPiece.isComplete()) {
+            if (!hasTypeDomain(placedPiece)) {
+                return false;
+            }
+            checkedPieces[numChecked++] = placedPiece;
+        }
+
+        // tetronimos before the placed one, within 3 steps of it
+        for (int dy = -3; dy <= 0; dy++) {
+            int reach = 3 + dy;
+            for (int dx = -reach; dx <= (dy < 0 ? reach : -1); dx++) {
+                int x = placed.x + dx;
+                int y = placed.y + dy;
+                if (x < 0 || x >= matrix.length || y < 0) {
+                    continue;
+                }
+                Piece p = matrix[x][y].piece;
+                if (p != null && !p.isComplete() && !isChecked(p, numChecked)) {
+                    if (!hasTypeDomain(p)) {
+                        return false;
+                    }
+                    checkedPieces[numChecked++] = p;
+                }
+            }
+        }
+
+        if (placedPiece.isComplete()) {
+            for (int i = 0; i < placedPiece.getCount(); i++) {
+                Tetronimo t = placedPiece.getTetronimo(i);
+                for (int direction = 0; direction < 4; direction++) {
+                    Piece p = getAdjacentPiece(t, direction);
+                    if (p != null && !p.isComplete() && !isChecked(p, numChecked)) {
+                        if (!hasTypeDomain(p)) {
+                            return false;
+                        }
+                        checkedPieces[numChecked++] = p;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    // pieces checkTypeDomains already looked at: at most the placed piece,
+    //   12 nearby tetronimos and 16 neighbours of a complete piece
+    private final Piece[] checkedPieces = new Piece[1 + 12 + 16];
+
+    private boolean isChecked(Piece p, int numChecked) {
+        for (int i = 0; i < numChecked; i++) {
+            if (checkedPieces[i] == p) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasTypeDomain(Piece p) {
+        return getTypeDomain(p, true) != 0;
+    }
+
+    /**
+     * Returns the mask of PieceTypes (by ordinal) an unfinished piece can
+     *   still become
+     * A type is possible if one of the ways to complete the piece's shape
+     *   into it only needs free tetronimos (not restricted against the
+     *   piece) or whole unfinished pieces, and doesn't touch a complete
+     *   piece of that type
+     */
+    public int getTypeDomain(Piece p) {
+        return getTypeDomain(p, false);
+    }
+
+    private int getTypeDomain(Piece p, boolean anyType) {
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        for (int i = 0; i < p.getCount(); i++) {
+            Tetronimo t = p.getTetronimo(i);
+            minX = Math.min(minX, t.x);
+            minY = Math.min(minY, t.y);
+        }
+
+        int domain = 0;
+        for (int[] completion : PieceType.getCompletions(PieceType.getShape(p))) {
+            int typeMask = 1 << completion[0];
+            if ((domain & typeMask) == 0 && canComplete(p, minX, minY, completion)) {
+                domain |= typeMask;
+                if (anyType) {
+                    break;
+                }
+            }
+        }
+        return domain;
+    }
+
+    private static final PieceType[] PIECE_TYPES = PieceType.values();
+
+    private boolean canComplete(Piece p, int x0, int y0, int[] completion) {
+        int missing = (completion.length - 1) / 2;
+        for (int i = 1; i < completion.length; i += 2) {
+            int x = x0 + completion[i];
+            int y = y0 + completion[i + 1];
+            if (x < 0 || x >= matrix.length || y < 0 || y >= matrix[0].length) {
+                return false;
+            }
+
+            Tetronimo t = matrix[x][y];
+            if (t.piece == null) {
+                // same check as isValidAssociation when it joins
+                for (int j = 0; j < p.getCount(); j++) {
+                    Tetronimo own = p.getTetronimo(j);
+                    if (t.isRestricted(own, restrictions)) {
+                        return false;
+                    }
+                }
+            } else if (t.piece.isComplete() ||
+                       t.piece.getCount() > missing ||
+                       !coversPiece(t.piece, x0, y0, completion)) {
+                // only a whole unfinished piece can be merged in
+                return false;
+            }
+        }
 
-            // add to verified state
-            verifiedPieces.add(p);
-            transition.newVerifiedPieces.add(p);
+        PieceType type = PIECE_TYPES[completion[0]];
+        for (int i = 0; i < p.getCount(); i++) {
+            Tetronimo t = p.getTetronimo(i);
+            if (touchesType(t, type)) {
+                return false;
+            }
+        }
+        for (int i = 1; i < completion.length; i += 2) {
+            if (touchesType(matrix[x0 + completion[i]][y0 + completion[i + 1]], type)) {
+                return false;
+            }
         }
+        return true;
+    }
 
+    private static boolean coversPiece(Piece piece, int x0, int y0, int[] completion) {
+        for (int j = 0; j < piece.getCount(); j++) {
+            Tetronimo t = piece.getTetronimo(j);
+            boolean covered = false;
+            for (int i = 1; i < completion.length; i += 2) {
+                covered |= t.x == x0 + completion[i] && t.y == y0 + completion[i + 1];
+            }
+            if (!covered) {
+                return false;
+            }
+        }
         return true;
     }
 
+    /**
+     * Whether the tetronimo is next to a complete piece of the given type
+     */
+    private boolean touchesType(Tetronimo t, PieceType type) {
+        for (int direction = 0; direction < 4; direction++) {
+            Piece adjPiece = getAdjacentPiece(t, direction);
+            if (adjPiece != null && adjPiece.isComplete() && adjPiece.getType() == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Piece of the tetronimo to the left, right, above or below (0-3)
+     */
+    private Piece getAdjacentPiece(Tetronimo t, int direction) {
+        Tetronimo adj = getAdjacentTetronimo(t, direction);
+        return adj == null ? null : adj.piece;
+    }
+
+    /**
+     * Tetronimo to the left, right, above or below (0-3)
+     * Avoids building the sets of Tetronimo.getAdjacentTetronimos
+     */
+    private Tetronimo getAdjacentTetronimo(Tetronimo t, int direction) {
+        switch (direction) {
+            case 0:
+                return t.getLeft(matrix);
+            case 1:
+                return t.getRight(matrix);
+            case 2:
+                return t.getUp(matrix);
+            default:
+                return t.getDown(matrix);
+        }
+    }
+
     /**
      * Reverts the tetronimos and pieces based on the transition
      */
@@ -316,40 +1317,41 @@ public class TetrisSolver {
         // reset the tetronimo that was associated
         piece.remove(t.tetronimo);
 
-        // revert any merged pieces
-        for (Entry<Piece, List<Tetronimo>> entry : t.mergedPieces.entrySet()) {
-            Piece mergePiece = entry.getKey();
-            List<Tetronimo> tetronimos = entry.getValue();
-
-            for (Tetronimo mergedT : tetronimos) {
+        // revert the merged piece
+        if (t.mergedPiece != null) {
+            for (int i = 0; i < t.mergedTetronimos.size(); i++) {
+                Tetronimo mergedT = t.mergedTetronimos.get(i);
                 piece.remove(mergedT);
-                mergePiece.add(mergedT);
+                t.mergedPiece.add(mergedT);
             }
         }
 
+        // undo verifyPieces first: a piece completed by this transition
+        //   may have been verified by it as well
+        for (int i = 0; i < t.oldUnverifiedPieces.size(); i++) {
+            Piece p = t.oldUnverifiedPieces.get(i);
+            assert !unverifiedPieces.contains(p);
+            unverifiedPieces.add(p);
+        }
+
         // remove pieces from their new states
-        for (Piece p : t.newUnfinishedPieces) {
+        for (int i = 0; i < t.newUnfinishedPieces.size(); i++) {
+            Piece p = t.newUnfinishedPieces.get(i);
             assert unfinishedPieces.contains(p);
             unfinishedPieces.remove(p);
         }
-        for (Piece p : t.newUnverifiedPieces) {
+        for (int i = 0; i < t.newUnverifiedPieces.size(); i++) {
+            Piece p = t.newUnverifiedPieces.get(i);
             assert unverifiedPieces.contains(p);
             unverifiedPieces.remove(p);
         }
-        for (Piece p : t.newVerifiedPieces) {
-            assert verifiedPieces.contains(p);
-            verifiedPieces.remove(p);
-        }
 
         // add pieces to their previous states
-        for (Piece p : t.oldUnfinishedPieces) {
+        for (int i = 0; i < t.oldUnfinishedPieces.size(); i++) {
+            Piece p = t.oldUnfinishedPieces.get(i);
             assert !unfinishedPieces.contains(p);
             unfinishedPieces.add(p);
         }
-        for (Piece p : t.oldUnverifiedPieces) {
-            assert !unverifiedPieces.contains(p);
-            unverifiedPieces.add(p);
-        }
 
     }
 
@@ -366,12 +1368,72 @@ public class TetrisSolver {
         return matrix;
     }
 
+    /**
+     * Usage: width height restrictionsFile [options]
+     *
+     * Options:
+     *   --checkpoint file   periodically save the search position to file
+     *   --resume            continue from the position saved in the
+     *                         checkpoint file
+     *   --timeout seconds   give up after the given number of seconds
+     *   --progress nodes    print progress every given number of nodes,
+     *                         with an ETA from a quick estimate
+     *   --estimate probes   only estimate the size of the search from the
+     *                         given number of random probes and how long
+     *                         it would take, see SearchEstimate
+     *   --learn file        order the options by what worked before, see
+     *                         OptionStats; the table is read from file if
+     *                         it exists and saved back to it afterwards
+     *   --lds               limited discrepancy search, see
+     *                         setLimitedDiscrepancy
+     *   --output file       also save the solution to file in the compact
+     *                         binary format of SolutionCodec
+     */
     public static void main(String[] args) throws Exception {
-        assert args != null && args.length == 3;
+        assert args != null && args.length >= 3;
         int width = Integer.parseInt(args[0]);
         int height = Integer.parseInt(args[1]);
         String restrictionsFilename = args[2];
 
+        File checkpointFile = null;
+        boolean resume = false;
+        long timeoutMillis = 0;
+        long progressNodes = 0;
+        int estimateProbes = 0;
+        File learnFile = null;
+        boolean limitedDiscrepancy = false;
+        File outputFile = null;
+        for (int i = 3; i < args.length; i++) {
+            if (args[i].equals("--checkpoint")) {
+                checkpointFile = new File(args[++i]);
+            } else if (args[i].equals("--resume")) {
+                resume = true;
+            } else if (args[i].equals("--timeout")) {
+                timeoutMillis = (long) (Double.parseDouble(args[++i]) * 1000);
+            } else if (args[i].equals("--progress")) {
+                progressNodes = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--estimate")) {
+                estimateProbes = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--learn")) {
+                learnFile = new File(args[++i]);
+            } else if (args[i].equals("--lds")) {
+                limitedDiscrepancy = true;
+            } else if (args[i].equals("--output")) {
+                outputFile = new File(args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (resume && checkpointFile == null) {
+            throw new IllegalArgumentException("--resume requires --checkpoint");
+        }
+        if (resume && learnFile != null) {
+            throw new IllegalArgumentException("--resume can't be used with --learn");
+        }
+        if (resume && limitedDiscrepancy) {
+            throw new IllegalArgumentException("--resume can't be used with --lds");
+        }
+
         // create matrix
         System.out.println("Creating matrix. width: " + width +
                            ", height: " + height);
@@ -379,39 +1441,132 @@ public class TetrisSolver {
 
         // parse restrictions
         System.out.println("Parsing restrictions...");
-        Map<Tetronimo, List<Tetronimo>> restrictions = new HashMap<>();
-        BufferedReader br = new BufferedReader(new FileReader(restrictionsFilename));
-        String line;
+        Map<Tetronimo, List<Tetronimo>> restrictions =
+            parseRestrictions(restrictionsFilename, matrix);
         int numRestrictions = 0;
-        while ((line = br.readLine()) != null) {
-            String[] tetronimos = line.split(" ");
+        for (List<Tetronimo> restrictionList : restrictions.values()) {
+            numRestrictions += restrictionList.size();
+        }
+        System.out.println("Restrictions parsed. " +
+                           numRestrictions / 2 + " entries");
+
+        if (estimateProbes > 0) {
+            estimate(new TetrisSolver(matrix, restrictions), estimateProbes);
+            return;
+        }
 
-            // parse each tetronimo's coordinates
-            String[] coordinates1 = tetronimos[0].split(",");
-            String[] coordinates2 = tetronimos[1].split(",");
-            int x1 = Integer.parseInt(coordinates1[0]);
-            int y1 = Integer.parseInt(coordinates1[1]);
-            int x2 = Integer.parseInt(coordinates2[0]);
-            int y2 = Integer.parseInt(coordinates2[1]);
+        // create the solver and run
+        System.out.println("Solving the puzzle now...");
+        TetrisSolver solver = new TetrisSolver(matrix, restrictions);
+        if (checkpointFile != null) {
+            solver.enableCheckpoints(checkpointFile,
+                                     DEFAULT_CHECKPOINT_NODES,
+                                     DEFAULT_CHECKPOINT_MILLIS);
+            if (resume && checkpointFile.exists()) {
+                Checkpoint checkpoint = Checkpoint.read(checkpointFile);
+                System.out.println("Resuming at depth " + checkpoint.path.length +
+                                   ", nodes explored: " + checkpoint.nodesExplored);
+                solver.resumeFrom(checkpoint);
+            }
+        }
+        solver.setLimitedDiscrepancy(limitedDiscrepancy);
+        OptionStats optionStats = null;
+        if (learnFile != null) {
+            optionStats = learnFile.exists() ? OptionStats.read(learnFile) : new OptionStats();
+            solver.setOptionStats(optionStats);
+        }
+        if (timeoutMillis > 0) {
+            solver.setDeadline(System.currentTimeMillis() + timeoutMillis);
+        }
+        if (progressNodes > 0) {
+            solver.setEstimate(solver.estimate(DEFAULT_ESTIMATE_PROBES, System.nanoTime()));
+            solver.setProgressListener(progress -> System.out.println(progress),
+                                       progressNodes);
+        }
+        SolveStatus status = solver.run();
+        if (optionStats != null) {
+            optionStats.write(learnFile);
+        }
 
-            // get the corresponding tetronimos from the matrix
-            Tetronimo t1 = matrix[x1][y1];
-            Tetronimo t2 = matrix[x2][y2];
+        if (status == SolveStatus.SOLVED && outputFile != null) {
+            Solution solution = Solution.fromMatrix(matrix);
+            ByteBuffer encoded = new SolutionCodec(SolutionCodec.Encoding.VARINT, true).encode(solution);
+            try (FileChannel channel = FileChannel.open(outputFile.toPath(),
+                                                        StandardOpenOption.CREATE,
+                                                        StandardOpenOption.WRITE,
+                                                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (encoded.hasRemaining()) {
+                    channel.write(encoded);
+                }
+            }
+            System.out.println("Solution saved to " + outputFile);
+        }
+    }
 
-            assert t1.getAllAdjacentTetronimos(matrix).contains(t2);
+    private static final long DEFAULT_CHECKPOINT_NODES = 50000000L;
+    private static final long DEFAULT_CHECKPOINT_MILLIS = 60 * 1000L;
+    private static final int DEFAULT_ESTIMATE_PROBES = 1000;
+    private static final long ESTIMATE_SAMPLE_MILLIS = 2000L;
 
-            addToRestrictionList(t1, t2, restrictions);
-            addToRestrictionList(t2, t1, restrictions);
+    /**
+     * Prints an estimate of the search and how long it would take, the
+     *   speed measured by searching for a couple of seconds
+     */
+    private static void estimate(TetrisSolver solver, int probes) {
+        System.out.println("Probing the search tree...");
+        SearchEstimate estimate = solver.estimate(probes, System.nanoTime());
+        System.out.println(estimate);
 
-            numRestrictions++;
+        long startTime = System.currentTimeMillis();
+        solver.setDeadline(startTime + ESTIMATE_SAMPLE_MILLIS);
+        SolveStatus status = solver.solve();
+        long elapsedMillis = Math.max(1, System.currentTimeMillis() - startTime);
+        if (status != SolveStatus.UNKNOWN) {
+            System.out.println("Search finished while measuring its speed: " + status +
+                               ", nodes: " + solver.getNodesExplored());
+            return;
         }
-        System.out.println("Restrictions parsed. " +
-                           numRestrictions + " entries");
 
-        // create the solver and run
-        System.out.println("Solving the puzzle now...");
-        TetrisSolver solver = new TetrisSolver(matrix, restrictions);
-        solver.run();
+        double nodesPerSecond = solver.getNodesExplored() * 1000.0 / elapsedMillis;
+        System.out.println(String.format("nodes/s: %.0f, ETA: %.1f s (%.1f - %.1f s)",
+                                         nodesPerSecond,
+                                         estimate.nodes / nodesPerSecond,
+                                         estimate.low / nodesPerSecond,
+                                         estimate.high / nodesPerSecond));
+    }
+
+    /**
+     * Reads a restrictions file, one boundary per line (ex: '2,0 3,0')
+     * Each boundary is added in both directions
+     */
+    public static Map<Tetronimo, List<Tetronimo>> parseRestrictions(String restrictionsFilename,
+                                                                   Tetronimo[][] matrix)
+            throws IOException {
+        Map<Tetronimo, List<Tetronimo>> restrictions = new HashMap<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(restrictionsFilename))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] tetronimos = line.split(" ");
+
+                // parse each tetronimo's coordinates
+                String[] coordinates1 = tetronimos[0].split(",");
+                String[] coordinates2 = tetronimos[1].split(",");
+                int x1 = Integer.parseInt(coordinates1[0]);
+                int y1 = Integer.parseInt(coordinates1[1]);
+                int x2 = Integer.parseInt(coordinates2[0]);
+                int y2 = Integer.parseInt(coordinates2[1]);
+
+                // get the corresponding tetronimos from the matrix
+                Tetronimo t1 = matrix[x1][y1];
+                Tetronimo t2 = matrix[x2][y2];
+
+                assert t1.getAllAdjacentTetronimos(matrix).contains(t2);
+
+                addToRestrictionList(t1, t2, restrictions);
+                addToRestrictionList(t2, t1, restrictions);
+            }
+        }
+        return restrictions;
     }
 
     private static void addToRestrictionList(Tetronimo t1,
@@ -426,142 +1581,15 @@ public class TetrisSolver {
     }
 
     /**
-     * Not much effort in the code below
-     * Just used to format the solution
-     * Not required for correctness
+     * Draws the solved matrix to stdout, see SolutionRenderer
      */
-
     public void prettyPrint(Tetronimo[][] matrix) {
-
-        int pieceCounter = 0;
-        Map<Piece, Integer> pieceMap = new HashMap<>();
-        for (int j = 0; j <= matrix[0].length; j++) {
-
-            // print dividers if appropriate
-            for (int i = -1; i < matrix.length; i++) {
-                Piece p = i < 0 || j == matrix[0].length ? null : matrix[i][j].piece;
-                Piece upPiece = j == 0 || i < 0 ? null : matrix[i][j-1].piece;
-
-                if (p == upPiece) {
-                    System.out.print("  ");
-                } else {
-                    System.out.print("\u2500\u2500");
-                }
-
-                Piece rightPiece = i == matrix.length - 1 || j == matrix[0].length
-                                       ? null
-                                       : matrix[i+1][j].piece;
-                Piece diagonalPiece = i == matrix.length - 1 || j == 0
-                                          ? null
-                                          : matrix[i+1][j-1].piece;
-                String corner = getCornerMarker(upPiece,
-                                                diagonalPiece,
-                                                p,
-                                                rightPiece);
-                System.out.print(" " + corner + " ");
-            }
-            System.out.println();
-
-            // print tetronimos
-            if (j == matrix[0].length) {
-                continue;
-            }
-            for (int i = -1; i < matrix.length; i++) {
-                Piece p = i < 0 ? null : matrix[i][j].piece;
-                Piece leftPiece = i <= 0 ? null : matrix[i-1][j].piece;
-
-                // print divider if appropriate
-                if (p != null) {
-                    if (p == leftPiece) {
-                        System.out.print("   ");
-                    } else {
-                        System.out.print(" \u2503 ");
-                    }
-                }
-
-                // get piece number or create it
-                if (p != null) {
-                    Integer pieceNumber = pieceMap.get(p);
-                    if (pieceNumber == null) {
-                        pieceNumber = pieceCounter++;
-                        pieceMap.put(p, pieceNumber);
-                    }
-                    System.out.format("%2d", pieceNumber);
-                } else {
-                    System.out.print("  ");
-                }
-            }
-            System.out.println(" \u2503 ");
-        }
-    }
-
-    private static String getCornerMarker(Piece topLeft,
-                                          Piece topRight,
-                                          Piece bottomLeft,
-                                          Piece bottomRight) {
-        byte cornerKey = (byte) 0;
-        Map<Piece, Integer> pieceTracker = new HashMap<>(4);
-        int uniquePieceCounter = 0;
-
-        List<Piece> pieces = Arrays.asList(topLeft,
-                                           topRight,
-                                           bottomLeft,
-                                           bottomRight);
-        int i = 0;
-        for (Piece p : pieces) {
-            Integer pNum = pieceTracker.get(p);
-            if (pNum == null) {
-                pNum = uniquePieceCounter++;
-                pieceTracker.put(p, pNum);
-            }
-
-            // can only have 4 unique pices
-            assert pNum >= 0 && pNum < 4;
-
-            cornerKey |= (pNum << (i * 2));
-
-            i++;
-        }
-
-        String markerValue = cornerMarkers.get(cornerKey);
-        assert markerValue != null;
-        return markerValue;
-    }
-
-    private static final Map<Byte, String> cornerMarkers = new HashMap<>();
-    static {
-        // all same
-        cornerMarkers.put((byte) 0, " ");
-
-        // one different
-        cornerMarkers.put((byte) (1 << 2), "\u2514");
-        cornerMarkers.put((byte) (1 << 4), "\u2510");
-        cornerMarkers.put((byte) (1 << 6), "\u250C");
-        cornerMarkers.put((byte) ((1 << 2) |
-                                  (1 << 4) |
-                                  (1 << 6)), "\u2518");
-
-        // two pieces, two tetronimos each
-        cornerMarkers.put((byte) ((1 << 4) |
-                                  (1 << 6)), "\u2500");
-        cornerMarkers.put((byte) ((1 << 2) |
-                                  (1 << 6)), "\u2503");
-
-        // three pieces
-        cornerMarkers.put((byte) ((1 << 4) |
-                                  (2 << 6)), "\u252C");
-        cornerMarkers.put((byte) ((1 << 2) |
-                                  (2 << 6)), "\u251C");
-        cornerMarkers.put((byte) ((1 << 2) |
-                                  (2 << 4) |
-                                  (1 << 6)), "\u2524");
-        cornerMarkers.put((byte) ((1 << 2) |
-                                  (2 << 4) |
-                                  (2 << 6)), "\u2534");
-
-        // four pieces
-        cornerMarkers.put((byte) ((1 << 2) |
-                                  (2 << 4) |
-                                  (3 << 6)), "\u254B");
+        try {
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+            new SolutionRenderer().render(Solution.fromMatrix(matrix), out);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
@@ -92,7 +92,8 @@ public class Tetronimo implements Comparable {
             return false;
         }
 
-        for (Tetronimo restrictedT : restrictionList) {
+        for (int i = 0; i < restrictionList.size(); i++) {
+            Tetronimo restrictedT = restrictionList.get(i);
             if (restrictedT != null && restrictedT.equals(t)) {
                 return true;
             }
@@ -121,6 +122,25 @@ public class Tetronimo implements Comparable {
         return 0;
     }
 
+    /**
+     * Equal by position, as in compareTo, so restrictions built on one
+     *   matrix can be looked up with the tetronimos of another of the
+     *   same size (see CompiledPuzzle.getRestrictions)
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Tetronimo)) {
+            return false;
+        }
+        Tetronimo other = (Tetronimo) o;
+        return x == other.x && y == other.y;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * y + x;
+    }
+
     @Override
     public String toString() {
         return new ToStringBuilder(this)
@@ -1,25 +1,39 @@
 package com.budimana.tetris;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 
 /**
  * Saves a set of changes from one state to another so it can be reverted
  *   if we need to backtrack
+ *
+ * TetrisSolver keeps one per depth and clears it before reuse, so the
+ *   search doesn't allocate a transition per node
  */
 public class Transition {
 
     // made public for ease of use
-    // in practice though, very few of these will be used so
-    //   pre-initializing these data structures is wasteful
     public Tetronimo tetronimo;
-    public Map<Piece, List<Tetronimo>> mergedPieces = new HashMap<>();
-    public List<Piece> oldUnfinishedPieces = new ArrayList<>();
-    public List<Piece> oldUnverifiedPieces = new ArrayList<>();
-    public List<Piece> newUnfinishedPieces = new ArrayList<>();
-    public List<Piece> newUnverifiedPieces = new ArrayList<>();
-    public List<Piece> newVerifiedPieces = new ArrayList<>();
+
+    // the piece merged into the tetronimo's piece, and the tetronimos it had
+    public Piece mergedPiece;
+    public final List<Tetronimo> mergedTetronimos = new ArrayList<>(Piece.NUM_TETRONIMOS_IN_PIECE);
+
+    public final List<Piece> oldUnfinishedPieces = new ArrayList<>();
+    public final List<Piece> oldUnverifiedPieces = new ArrayList<>();
+    public final List<Piece> newUnfinishedPieces = new ArrayList<>();
+    public final List<Piece> newUnverifiedPieces = new ArrayList<>();
+    public final List<Piece> newVerifiedPieces = new ArrayList<>();
+
+    public void clear() {
+        tetronimo = null;
+        mergedPiece = null;
+        mergedTetronimos.clear();
+        oldUnfinishedPieces.clear();
+        oldUnverifiedPieces.clear();
+        newUnfinishedPieces.clear();
+        newUnverifiedPieces.clear();
+        newVerifiedPieces.clear();
+    }
 }
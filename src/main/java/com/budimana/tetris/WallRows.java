@@ -0,0 +1,96 @@
+package com.budimana.tetris;
+
+
+/**
+ * The walls of a puzzle as bit rows, for checks that look at a whole row
+ *   at a time (see RowChecks)
+ *
+ * Row y takes wordsPerRow longs starting at y * wordsPerRow, cell x is
+ *   bit x % 64 of word x / 64
+ * The edges of the board count as walls: the last cell of a row has a
+ *   wall to its right and the cells of the last row have one below
+ */
+public class WallRows {
+
+    public final int width;
+    public final int height;
+    public final int wordsPerRow;
+
+    // bit set if there is a wall between the cell and its right / lower neighbour
+    public final long[] right;
+    public final long[] down;
+
+    public WallRows(int width, int height) {
+        this(width, height, true);
+    }
+
+    private WallRows(int width, int height, boolean bottomEdge) {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.right = new long[wordsPerRow * height];
+        this.down = new long[wordsPerRow * height];
+
+        for (int y = 0; y < height; y++) {
+            set(right, width - 1, y);
+            if (bottomEdge && y == height - 1) {
+                for (int x = 0; x < width; x++) {
+                    set(down, x, y);
+                }
+            }
+        }
+    }
+
+    public static WallRows fromWalls(Walls walls) {
+        WallRows rows = new WallRows(walls.width, walls.height);
+        for (int y = 0; y < walls.height; y++) {
+            for (int x = 0; x < walls.width; x++) {
+                if (walls.hasWallRight(x, y)) {
+                    rows.set(rows.right, x, y);
+                }
+                if (walls.hasWallDown(x, y)) {
+                    rows.set(rows.down, x, y);
+                }
+            }
+        }
+        return rows;
+    }
+
+    public static WallRows fromBoard(Board board) {
+        return fromBoard(board, 0, board.height);
+    }
+
+    /**
+     * The walls of rows [y0, y0 + height) of the board, so a large board
+     *   can be checked a band at a time
+     * Row 0 has nothing above it, so only the rows below it see the walls
+     *   of the row above
+     */
+    public static WallRows fromBoard(Board board, int y0, int height) {
+        WallRows rows = new WallRows(board.width, height, y0 + height == board.height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < board.width; x++) {
+                int cell = (y0 + y) * board.width + x;
+                if (board.hasWallRight(cell)) {
+                    rows.set(rows.right, x, y);
+                }
+                if (board.hasWallDown(cell)) {
+                    rows.set(rows.down, x, y);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private void set(long[] bits, int x, int y) {
+        bits[y * wordsPerRow + (x >>> 6)] |= 1L << x;
+    }
+
+    /**
+     * Bits of the given word of a row that are cells of the board
+     */
+    public long validBits(int word) {
+        int cells = width - (word << 6);
+        return cells >= 64 ? -1L : (1L << cells) - 1;
+    }
+}
@@ -0,0 +1,118 @@
+package com.budimana.tetris;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * The given piece boundaries of a puzzle as bitmaps
+ * Cells are indexed in reading order: y * width + x
+ */
+public class Walls {
+
+    public final int width;
+    public final int height;
+
+    // bit set if there is a boundary between the cell and its right / lower neighbour
+    private final BitSet right;
+    private final BitSet down;
+
+    public Walls(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.right = new BitSet(width * height);
+        this.down = new BitSet(width * height);
+    }
+
+    /**
+     * Builds the walls from the solver's restriction map
+     * A restriction in either direction counts as a wall
+     */
+    public static Walls fromRestrictions(Tetronimo[][] matrix,
+                                         Map<Tetronimo, List<Tetronimo>> restrictions) {
+        int width = matrix.length;
+        int height = matrix[0].length;
+        Walls walls = new Walls(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                Tetronimo t = matrix[x][y];
+                Tetronimo r = t.getRight(matrix);
+                Tetronimo d = t.getDown(matrix);
+                if (r != null && (t.isRestricted(r, restrictions) || r.isRestricted(t, restrictions))) {
+                    walls.right.set(y * width + x);
+                }
+                if (d != null && (t.isRestricted(d, restrictions) || d.isRestricted(t, restrictions))) {
+                    walls.down.set(y * width + x);
+                }
+            }
+        }
+        return walls;
+    }
+
+    /**
+     * Adds a wall between two adjacent cells
+     */
+    public void add(int x1, int y1, int x2, int y2) {
+        set(x1, y1, x2, y2, true);
+    }
+
+    public void remove(int x1, int y1, int x2, int y2) {
+        set(x1, y1, x2, y2, false);
+    }
+
+    private void set(int x1, int y1, int x2, int y2, boolean value) {
+        assert Math.abs(x1 - x2) + Math.abs(y1 - y2) == 1;
+        int x = Math.min(x1, x2);
+        int y = Math.min(y1, y2);
+        if (x1 != x2) {
+            right.set(y * width + x, value);
+        } else {
+            down.set(y * width + x, value);
+        }
+    }
+
+    public boolean hasWallRight(int x, int y) {
+        return right.get(y * width + x);
+    }
+
+    public boolean hasWallDown(int x, int y) {
+        return down.get(y * width + x);
+    }
+
+    /**
+     * Returns true if the two adjacent cells may be part of the same piece
+     */
+    public boolean isOpen(int x1, int y1, int x2, int y2) {
+        assert Math.abs(x1 - x2) + Math.abs(y1 - y2) == 1;
+        int x = Math.min(x1, x2);
+        int y = Math.min(y1, y2);
+        return x1 != x2 ? !hasWallRight(x, y) : !hasWallDown(x, y);
+    }
+
+    public int count() {
+        return right.cardinality() + down.cardinality();
+    }
+
+    public Walls copy() {
+        Walls copy = new Walls(width, height);
+        copy.right.or(right);
+        copy.down.or(down);
+        return copy;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Walls)) {
+            return false;
+        }
+        Walls other = (Walls) o;
+        return width == other.width && height == other.height &&
+               right.equals(other.right) && down.equals(other.down);
+    }
+
+    @Override
+    public int hashCode() {
+        return ((width * 31 + height) * 31 + right.hashCode()) * 31 + down.hashCode();
+    }
+}
@@ -0,0 +1,71 @@
+package com.budimana.tetris;
+
+
+/**
+ * Emits the flight recorder events
+ * Only in the Java 17 part of the multi-release jar, and only created by
+ *   SolverEvents once it has checked the JFR API is there
+ */
+class JfrEvents extends SolverEvents {
+
+    @Override
+    Object begin(int width, int height, long puzzleHash) {
+        SearchStartEvent start = new SearchStartEvent();
+        if (start.shouldCommit()) {
+            start.width = width;
+            start.height = height;
+            start.puzzleHash = puzzleHash;
+            start.commit();
+        }
+
+        SearchEndEvent end = new SearchEndEvent();
+        end.begin();
+        return end;
+    }
+
+    @Override
+    void end(Object handle,
+             SolveStatus status,
+             long nodesExplored,
+             long backtracks,
+             int maxDepth) {
+        SearchEndEvent end = (SearchEndEvent) handle;
+        end.end();
+        if (end.shouldCommit()) {
+            end.status = status.name();
+            end.nodesExplored = nodesExplored;
+            end.backtracks = backtracks;
+            end.maxDepth = maxDepth;
+            end.commit();
+        }
+    }
+
+    @Override
+    void sample(int depth,
+                int x,
+                int y,
+                int maxDepth,
+                long nodesExplored,
+                long backtracks) {
+        NodeSampleEvent event = new NodeSampleEvent();
+        if (event.shouldCommit()) {
+            event.depth = depth;
+            event.x = x;
+            event.y = y;
+            event.maxDepth = maxDepth;
+            event.nodesExplored = nodesExplored;
+            event.backtracks = backtracks;
+            event.commit();
+        }
+    }
+
+    @Override
+    void pruned(PruneCause cause, int depth) {
+        PruneEvent event = new PruneEvent();
+        if (event.shouldCommit()) {
+            event.cause = cause.name();
+            event.depth = depth;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.budimana.tetris;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * Flight recorder event sampling where the search currently is
+ * Emitted every few thousand nodes, not on every node
+ */
+@Name("com.budimana.tetris.NodeSample")
+@Label("Node Sample")
+@Category("Tetris Solver")
+@Description("Periodic sample of the search position")
+@Enabled(false)
+@StackTrace(false)
+class NodeSampleEvent extends Event {
+
+    @Label("Depth")
+    int depth;
+
+    @Label("X")
+    int x;
+
+    @Label("Y")
+    int y;
+
+    @Label("Deepest Depth")
+    int maxDepth;
+
+    @Label("Nodes Explored")
+    long nodesExplored;
+
+    @Label("Backtracks")
+    long backtracks;
+}
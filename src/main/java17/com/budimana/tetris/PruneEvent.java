@@ -0,0 +1,29 @@
+package com.budimana.tetris;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * Flight recorder event for a branch the search cut off
+ * Very frequent, so only enable it for short recordings
+ */
+@Name("com.budimana.tetris.Prune")
+@Label("Prune")
+@Category("Tetris Solver")
+@Description("The search cut off a branch")
+@Enabled(false)
+@StackTrace(false)
+class PruneEvent extends Event {
+
+    @Label("Cause")
+    String cause;
+
+    @Label("Depth")
+    int depth;
+}
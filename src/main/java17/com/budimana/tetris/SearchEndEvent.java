@@ -0,0 +1,34 @@
+package com.budimana.tetris;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * Flight recorder event spanning a whole search, committed when it ends
+ */
+@Name("com.budimana.tetris.SearchEnd")
+@Label("Search End")
+@Category("Tetris Solver")
+@Description("A solver finished searching; the duration covers the whole search")
+@Enabled(false)
+@StackTrace(false)
+class SearchEndEvent extends Event {
+
+    @Label("Status")
+    String status;
+
+    @Label("Nodes Explored")
+    long nodesExplored;
+
+    @Label("Backtracks")
+    long backtracks;
+
+    @Label("Deepest Depth")
+    int maxDepth;
+}
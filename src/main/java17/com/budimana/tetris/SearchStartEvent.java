@@ -0,0 +1,31 @@
+package com.budimana.tetris;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * Flight recorder event emitted when a solver starts searching
+ */
+@Name("com.budimana.tetris.SearchStart")
+@Label("Search Start")
+@Category("Tetris Solver")
+@Description("A solver started searching for a solution")
+@Enabled(false)
+@StackTrace(false)
+class SearchStartEvent extends Event {
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    @Label("Puzzle Hash")
+    long puzzleHash;
+}
@@ -0,0 +1,63 @@
+package com.budimana.tetris;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+
+/**
+ * RowChecks with the Vector API, LANES words of a row at a time
+ *
+ * Only in the Java 17 part of the multi-release jar, and only used when
+ *   jdk.incubator.vector is available (see RowChecks.get)
+ * The first word of a row and the words past the last full vector are
+ *   left to the scalar loop
+ */
+class VectorRowChecks extends RowChecks {
+
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    @Override
+    public String getName() {
+        return "vector" + LANES * 64;
+    }
+
+    @Override
+    public void openSides(WallRows walls, int y, long[] enclosed, long[] deadEnds) {
+        int n = walls.wordsPerRow;
+        int base = y * n;
+        int up = base - n;
+
+        // the last word holds the padding past the board's width, leave it
+        //   to the scalar loop with the first one
+        int i = 1;
+        for (; i + LANES < n; i += LANES) {
+            LongVector r = LongVector.fromArray(SPECIES, walls.right, base + i);
+            LongVector previous = LongVector.fromArray(SPECIES, walls.right, base + i - 1);
+
+            LongVector openRight = r.not();
+            LongVector openLeft = r.lanewise(VectorOperators.LSHL, 1)
+                                   .or(previous.lanewise(VectorOperators.LSHR, 63))
+                                   .not();
+            LongVector openDown = LongVector.fromArray(SPECIES, walls.down, base + i).not();
+            LongVector openUp = y == 0
+                                    ? LongVector.zero(SPECIES)
+                                    : LongVector.fromArray(SPECIES, walls.down, up + i).not();
+
+            LongVector any = openRight.or(openLeft).or(openDown).or(openUp);
+            LongVector twoOrMore = openRight.and(openLeft)
+                                            .or(openRight.and(openDown))
+                                            .or(openRight.and(openUp))
+                                            .or(openLeft.and(openDown))
+                                            .or(openLeft.and(openUp))
+                                            .or(openDown.and(openUp));
+            any.not().intoArray(enclosed, i);
+            any.and(twoOrMore.not()).intoArray(deadEnds, i);
+        }
+
+        // first word, and whatever is left
+        openSides(walls, y, 0, 1, enclosed, deadEnds);
+        openSides(walls, y, i, n, enclosed, deadEnds);
+    }
+}
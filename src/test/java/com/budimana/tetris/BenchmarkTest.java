@@ -0,0 +1,118 @@
+package com.budimana.tetris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+
+public class BenchmarkTest {
+
+    private static Benchmark.Result result(String puzzle, SolveStatus status, long millis,
+                                           long nodes, long allocated) {
+        return new Benchmark.Result(puzzle, Benchmark.SolverKind.TETRIS, status,
+                                    millis, nodes, allocated, 64L << 20);
+    }
+
+    @Test
+    public void testReadCorpus() throws Exception {
+        List<Benchmark.Puzzle> corpus = Benchmark.readCorpus(new StringReader(
+            "# comment\n" +
+            "\n" +
+            "4x3 4 3 restrictions.4x3.txt\n" +
+            "gen 20 10 generate 0.75 9\n"));
+        assertEquals(2, corpus.size());
+        assertEquals("restrictions.4x3.txt", corpus.get(0).restrictionsFile);
+        assertEquals(null, corpus.get(1).restrictionsFile);
+        assertEquals(20, corpus.get(1).width);
+        assertEquals(10, corpus.get(1).height);
+        assertEquals(0.75, corpus.get(1).density, 0);
+        assertEquals(9, corpus.get(1).seed);
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        List<Benchmark.Puzzle> corpus = Arrays.asList(
+            new Benchmark.Puzzle("4x3", 4, 3, "restrictions.4x3.txt"),
+            new Benchmark.Puzzle("gen", 8, 8, 0.9, 1));
+        Benchmark benchmark = new Benchmark(corpus, Arrays.asList(Benchmark.SolverKind.values()));
+        benchmark.setThreads(2);
+        benchmark.setRuns(0, 1);
+
+        List<Benchmark.Result> results = benchmark.run();
+        assertEquals(2 * Benchmark.SolverKind.values().length, results.size());
+        for (Benchmark.Result r : results) {
+            assertEquals(r.key(), SolveStatus.SOLVED, r.status);
+            assertTrue(r.key(), r.nodes > 0);
+            assertTrue(r.key(), r.allocatedBytes != 0);
+            assertTrue(r.key(), r.peakHeapBytes > 0);
+        }
+    }
+
+    @Test
+    public void testJson() throws Exception {
+        List<Benchmark.Result> results = Arrays.asList(
+            result("10x26", SolveStatus.SOLVED, 1200, 345821, 6L << 30),
+            new Benchmark.Result("100x100", Benchmark.SolverKind.PORTFOLIO, SolveStatus.UNKNOWN,
+                                 30000, 1398784, -1, 33374056));
+
+        StringWriter out = new StringWriter();
+        Benchmark.writeJson(results, out);
+        List<Benchmark.Result> read = Benchmark.readJson(new StringReader(out.toString()));
+
+        assertEquals(2, read.size());
+        for (int i = 0; i < 2; i++) {
+            Benchmark.Result expected = results.get(i);
+            Benchmark.Result actual = read.get(i);
+            assertEquals(expected.puzzle, actual.puzzle);
+            assertEquals(expected.solver, actual.solver);
+            assertEquals(expected.status, actual.status);
+            assertEquals(expected.wallMillis, actual.wallMillis);
+            assertEquals(expected.nodes, actual.nodes);
+            assertEquals(expected.allocatedBytes, actual.allocatedBytes);
+            assertEquals(expected.peakHeapBytes, actual.peakHeapBytes);
+        }
+    }
+
+    @Test
+    public void testCompare() throws Exception {
+        List<Benchmark.Result> baseline = Arrays.asList(
+            result("same", SolveStatus.SOLVED, 1000, 500, 10L << 20),
+            result("slower", SolveStatus.SOLVED, 1000, 500, 10L << 20),
+            result("noise", SolveStatus.SOLVED, 10, 500, 10L << 20),
+            result("nodes", SolveStatus.SOLVED, 1000, 500, 10L << 20),
+            result("allocation", SolveStatus.SOLVED, 1000, 500, 10L << 20),
+            result("timeout", SolveStatus.SOLVED, 1000, 500, 10L << 20),
+            result("throughput", SolveStatus.UNKNOWN, 30000, 3000000, 10L << 20));
+        List<Benchmark.Result> results = Arrays.asList(
+            result("same", SolveStatus.SOLVED, 1050, 500, 10L << 20),
+            result("slower", SolveStatus.SOLVED, 1200, 500, 10L << 20),
+            result("noise", SolveStatus.SOLVED, 15, 500, 10L << 20),
+            result("nodes", SolveStatus.SOLVED, 1000, 600, 10L << 20),
+            result("allocation", SolveStatus.SOLVED, 1000, 500, 20L << 20),
+            result("timeout", SolveStatus.UNKNOWN, 30000, 9000000, 10L << 20),
+            result("throughput", SolveStatus.UNKNOWN, 30000, 2000000, 10L << 20),
+            result("new", SolveStatus.SOLVED, 5000, 500, 10L << 20));
+
+        StringWriter out = new StringWriter();
+        int regressions = Benchmark.compare(baseline, results, new Benchmark.Thresholds(), out);
+        assertEquals(5, regressions);
+
+        String report = out.toString();
+        for (String line : report.split("\n")) {
+            boolean regressed = line.contains("REGRESSION");
+            if (line.startsWith("same") || line.startsWith("noise") || line.startsWith("new")) {
+                assertTrue(line, !regressed);
+            } else if (!line.startsWith("puzzle")) {
+                assertTrue(line, regressed);
+            }
+        }
+        assertTrue(report.contains("REGRESSION: status was SOLVED"));
+        assertTrue(report.contains("REGRESSION: nodes/s"));
+    }
+}
@@ -0,0 +1,89 @@
+package com.budimana.tetris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+
+import org.junit.Test;
+
+
+public class BoardSolverTest {
+
+    @Test
+    public void testRestrictionsFile() throws Exception {
+        BoardSolver solver = new BoardSolver(Board.read("restrictions.10x26.txt", 10, 26),
+                                             PieceCatalogue.tetrominoes());
+        assertEquals(SolveStatus.SOLVED, solver.solve());
+
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(10, 26);
+        Walls walls = Walls.fromRestrictions(matrix,
+                                             TetrisSolver.parseRestrictions("restrictions.10x26.txt", matrix));
+        assertTrue(solver.getSolution().isValid(walls, PieceCatalogue.tetrominoes()));
+    }
+
+    /**
+     * Same search as PolyominoSolver, node for node
+     */
+    @Test
+    public void testSameAsPolyominoSolver() throws Exception {
+        File file = File.createTempFile("board", ".txt");
+        try {
+            for (int seed = 0; seed < 20; seed++) {
+                int width = 4 * (1 + seed % 3);
+                int height = 3 + seed % 4;
+                PuzzleGenerator generator = new PuzzleGenerator(width, height,
+                                                                PieceCatalogue.tetrominoes(), seed);
+                generator.setDensity(0.5);
+                try (Writer out = new FileWriter(file)) {
+                    generator.generate(out);
+                }
+
+                Tetronimo[][] matrix = TetrisSolver.createMatrix(width, height);
+                Walls walls = Walls.fromRestrictions(matrix,
+                                                     TetrisSolver.parseRestrictions(file.getPath(), matrix));
+                for (PieceCatalogue catalogue : new PieceCatalogue[] {
+                        PieceCatalogue.tetrominoes(), PieceCatalogue.forName("mixed") }) {
+                    PolyominoSolver expected = new PolyominoSolver(new PlacementTable(walls, catalogue));
+                    BoardSolver solver = new BoardSolver(Board.fromWalls(walls), catalogue);
+
+                    SolveStatus status = expected.solve();
+                    assertEquals(status, solver.solve());
+                    assertEquals(expected.getNodesExplored(), solver.getNodesExplored());
+                    if (status == SolveStatus.SOLVED) {
+                        assertTrue(solver.getSolution().isValid(walls, catalogue));
+                    }
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testUnsolvable() {
+        // walls leave a single cell on its own
+        Board board = new Board(4, 2);
+        board.addWall(0, 0, 0, 1);
+        board.addWall(1, 0, 2, 0);
+        board.addWall(0, 0, 1, 0);
+        assertEquals(SolveStatus.UNSOLVABLE,
+                     new BoardSolver(board, PieceCatalogue.tetrominoes()).solve());
+        assertEquals(SolveStatus.UNSOLVABLE,
+                     new BoardSolver(new Board(3, 2), PieceCatalogue.tetrominoes()).solve());
+    }
+
+    @Test
+    public void testClosedPair() {
+        // the last two cells of the bottom row only open into each other
+        Board board = new Board(8, 4);
+        board.addWall(5, 3, 6, 3);
+        board.addWall(6, 2, 6, 3);
+        board.addWall(7, 2, 7, 3);
+        BoardSolver solver = new BoardSolver(board, PieceCatalogue.tetrominoes());
+        assertEquals(SolveStatus.UNSOLVABLE, solver.solve());
+        assertEquals(0, solver.getNodesExplored());
+    }
+}
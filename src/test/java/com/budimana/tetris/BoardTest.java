@@ -0,0 +1,71 @@
+package com.budimana.tetris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+
+public class BoardTest {
+
+    @Test
+    public void testRead() throws Exception {
+        Board board = Board.read("restrictions.10x26.txt", 10, 26);
+
+        // same walls as the restriction map
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(10, 26);
+        Map<Tetronimo, List<Tetronimo>> restrictions =
+            TetrisSolver.parseRestrictions("restrictions.10x26.txt", matrix);
+        Walls walls = Walls.fromRestrictions(matrix, restrictions);
+        for (int y = 0; y < 26; y++) {
+            for (int x = 0; x < 10; x++) {
+                int cell = y * 10 + x;
+                assertEquals(x < 9 && walls.hasWallRight(x, y), board.hasWallRight(cell));
+                assertEquals(y < 25 && walls.hasWallDown(x, y), board.hasWallDown(cell));
+                assertFalse(board.isOccupied(cell));
+                assertEquals(-1, board.getPiece(cell));
+            }
+        }
+    }
+
+    @Test
+    public void testPlaceAndClear() {
+        Board board = new Board(3, 2);
+        board.addWall(1, 0, 0, 0);
+        board.addWall(2, 1, 2, 0);
+
+        board.place(4, 7, 5);
+        assertTrue(board.isOccupied(4));
+        assertEquals(7, board.getPiece(4));
+        assertEquals(5, board.getType(4));
+
+        board.block(5);
+        assertTrue(board.isOccupied(5));
+        assertEquals(-1, board.getPiece(5));
+        assertEquals(-1, board.getType(5));
+
+        // walls survive clearing the cells
+        board.clear(4);
+        board.clear(5);
+        assertFalse(board.isOccupied(4));
+        assertEquals(-1, board.getPiece(4));
+        assertTrue(board.hasWallRight(0));
+        assertTrue(board.hasWallDown(2));
+        assertFalse(board.hasWallRight(1));
+        assertFalse(board.hasWallDown(5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWallOffBoard() {
+        new Board(3, 2).addWall(2, 0, 3, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyCells() {
+        new Board(1 << 16, 1 << 16);
+    }
+}
@@ -0,0 +1,88 @@
+package com.budimana.tetris;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+
+public class CheckpointTest {
+
+    private static Map<Tetronimo, List<Tetronimo>> mergeRequiredRestrictions(Tetronimo[][] matrix) {
+        Map<Tetronimo, List<Tetronimo>> restrictions = new HashMap<>();
+        restrictions.put(matrix[0][0], Arrays.asList(matrix[1][0]));  // x | x   x | x
+        restrictions.put(matrix[2][0], Arrays.asList(matrix[3][0]));  //
+        restrictions.put(matrix[0][1], Arrays.asList(matrix[1][1]));  // x | x   x | x
+        restrictions.put(matrix[2][1], Arrays.asList(matrix[3][1]));  //
+        restrictions.put(matrix[1][2], Arrays.asList(matrix[2][2]));  // x   x | x   x
+        return restrictions;
+    }
+
+    @Test
+    public void testWriteRead() throws Exception {
+        File file = File.createTempFile("checkpoint", ".txt");
+        file.deleteOnExit();
+
+        Checkpoint checkpoint = new Checkpoint(0xdeadbeefcafeL, 1234, new int[] { 0, 2, 1, 3 });
+        checkpoint.write(file);
+
+        Checkpoint read = Checkpoint.read(file);
+        assertEquals(checkpoint.puzzleHash, read.puzzleHash);
+        assertEquals(checkpoint.nodesExplored, read.nodesExplored);
+        assertArrayEquals(checkpoint.path, read.path);
+        assertTrue(!new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void testPuzzleHash() {
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(4, 3);
+        long hash = Checkpoint.puzzleHash(matrix, mergeRequiredRestrictions(matrix));
+
+        // stable for the same puzzle
+        Tetronimo[][] sameMatrix = TetrisSolver.createMatrix(4, 3);
+        assertEquals(hash, Checkpoint.puzzleHash(sameMatrix, mergeRequiredRestrictions(sameMatrix)));
+
+        // different without restrictions
+        assertNotEquals(hash, Checkpoint.puzzleHash(matrix, new HashMap<>()));
+    }
+
+    @Test
+    public void testResume() {
+        // solve from scratch and save the final position
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(4, 3);
+        TetrisSolver ts = new TetrisSolver(matrix, mergeRequiredRestrictions(matrix));
+        assertTrue(ts.findSolution(matrix[0][0]));
+        Checkpoint solved = ts.getCheckpoint(12);
+
+        // resume from a partial path on a fresh solver
+        for (int depth = 0; depth <= solved.path.length; depth++) {
+            Tetronimo[][] resumedMatrix = TetrisSolver.createMatrix(4, 3);
+            TetrisSolver resumed = new TetrisSolver(resumedMatrix,
+                                                    mergeRequiredRestrictions(resumedMatrix));
+            resumed.resumeFrom(new Checkpoint(solved.puzzleHash,
+                                              0,
+                                              Arrays.copyOf(solved.path, depth)));
+            assertTrue(resumed.findSolution(resumedMatrix[0][0]));
+            assertArrayEquals(solved.path, resumed.getCheckpoint(12).path);
+
+            assertEquals(PieceType.L2, resumedMatrix[0][0].piece.getType());
+            assertEquals(PieceType.BOX, resumedMatrix[1][0].piece.getType());
+            assertEquals(PieceType.L1, resumedMatrix[3][0].piece.getType());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testResumeDifferentPuzzle() {
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(4, 3);
+        TetrisSolver ts = new TetrisSolver(matrix, mergeRequiredRestrictions(matrix));
+        ts.resumeFrom(new Checkpoint(Checkpoint.puzzleHash(matrix, new HashMap<>()), 0, new int[0]));
+    }
+}
@@ -0,0 +1,195 @@
+package com.budimana.tetris;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Test;
+
+
+public class CompiledPuzzleTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The 4x3 board that needs a merge
+     */
+    private static Walls mergeBoard() {
+        Walls walls = new Walls(4, 3);
+        walls.add(0, 0, 1, 0);  // x | x   x | x
+        walls.add(2, 0, 3, 0);  //
+        walls.add(0, 1, 1, 1);  // x | x   x | x
+        walls.add(2, 1, 3, 1);  //
+        walls.add(1, 2, 2, 2);  // x   x | x   x
+        return walls;
+    }
+
+    private static List<SolverEngine> engines(CompiledPuzzle puzzle) {
+        return Arrays.asList(new TetrisSolver(puzzle),
+                             new PolyominoSolver(puzzle),
+                             new BoardSolver(puzzle),
+                             new ComponentSolver(puzzle),
+                             new StripSolver(puzzle),
+                             new PortfolioSolver(puzzle, PortfolioSolver.defaultConfigs(2)));
+    }
+
+    @Test
+    public void testCompile_Cached() {
+        Walls walls = mergeBoard();
+        CompiledPuzzle puzzle = CompiledPuzzle.compile(walls, PieceCatalogue.tetrominoes());
+        assertSame(puzzle, CompiledPuzzle.compile(mergeBoard(), PieceCatalogue.tetrominoes()));
+        assertNotSame(puzzle, CompiledPuzzle.compile(mergeBoard(), PieceCatalogue.pentominoes()));
+
+        // the walls were copied, changing them compiles a new puzzle
+        walls.remove(1, 2, 2, 2);
+        assertTrue(puzzle.hasWallRight(2 * 4 + 1));
+        assertNotSame(puzzle, CompiledPuzzle.compile(walls, PieceCatalogue.tetrominoes()));
+        assertEquals(mergeBoard(), puzzle.getWalls());
+    }
+
+    @Test
+    public void testNeighboursAndOptions() {
+        CompiledPuzzle puzzle = CompiledPuzzle.compile(mergeBoard(), PieceCatalogue.tetrominoes());
+        assertEquals(12, puzzle.size);
+
+        // (1,0): wall to the left, edge above
+        int cell = 1;
+        assertEquals(-1, puzzle.getNeighbour(cell, CompiledPuzzle.LEFT));
+        assertEquals(-1, puzzle.getNeighbour(cell, CompiledPuzzle.UP));
+        assertEquals(2, puzzle.getNeighbour(cell, CompiledPuzzle.RIGHT));
+        assertEquals(5, puzzle.getNeighbour(cell, CompiledPuzzle.DOWN));
+        assertTrue(puzzle.allows(cell, OptionKind.NEW));
+        assertFalse(puzzle.allows(cell, OptionKind.LEFT));
+        assertFalse(puzzle.allows(cell, OptionKind.UP));
+        assertFalse(puzzle.allows(cell, OptionKind.MERGE));
+
+        // (2,2): wall to the left, open above
+        cell = 2 * 4 + 2;
+        assertEquals(-1, puzzle.getNeighbour(cell, CompiledPuzzle.LEFT));
+        assertEquals(6, puzzle.getNeighbour(cell, CompiledPuzzle.UP));
+        assertEquals(-1, puzzle.getNeighbour(cell, CompiledPuzzle.DOWN));
+        assertFalse(puzzle.allows(cell, OptionKind.LEFT));
+        assertTrue(puzzle.allows(cell, OptionKind.UP));
+
+        // (2,1): open to the left and above, unlike (1,1)
+        cell = 1 * 4 + 2;
+        assertTrue(puzzle.allows(cell, OptionKind.MERGE));
+        assertFalse(puzzle.allows(cell - 1, OptionKind.MERGE));
+    }
+
+    @Test
+    public void testPlacementTable_Shared() {
+        CompiledPuzzle puzzle = CompiledPuzzle.compile(mergeBoard(), PieceCatalogue.tetrominoes());
+        PlacementTable table = puzzle.getPlacementTable();
+        assertSame(table, puzzle.getPlacementTable());
+        assertSame(table, CompiledPuzzle.compile(mergeBoard(), PieceCatalogue.tetrominoes())
+                              .getPlacementTable());
+    }
+
+    @Test
+    public void testRestrictions_Shared() {
+        CompiledPuzzle puzzle = CompiledPuzzle.compile(mergeBoard(), PieceCatalogue.tetrominoes());
+        assertSame(puzzle.getRestrictions(), puzzle.getRestrictions());
+
+        // looked up with the tetronimos of any matrix of the puzzle
+        for (int i = 0; i < 2; i++) {
+            Tetronimo[][] matrix = puzzle.createMatrix();
+            assertEquals(mergeBoard(), Walls.fromRestrictions(matrix, puzzle.getRestrictions()));
+        }
+    }
+
+    @Test
+    public void testRegionTables_Shared() throws Exception {
+        Walls walls = new Walls(8, 4);
+        for (int y = 0; y < 4; y++) {
+            walls.add(3, y, 4, y);
+        }
+        CompiledPuzzle puzzle = CompiledPuzzle.compile(walls, PieceCatalogue.tetrominoes());
+        PlacementTable[] tables = puzzle.getRegionTables();
+        assertEquals(2, tables.length);
+        assertSame(tables, puzzle.getRegionTables());
+
+        for (int i = 0; i < 2; i++) {
+            ComponentSolver solver = new ComponentSolver(puzzle);
+            assertEquals(SolveStatus.SOLVED, solver.solve(executor));
+            assertTrue(solver.getSolution().isValid(walls, puzzle.catalogue));
+        }
+    }
+
+    @Test
+    public void testEngines_Solved() throws Exception {
+        CompiledPuzzle puzzle = CompiledPuzzle.compile(mergeBoard(), PieceCatalogue.tetrominoes());
+        // twice, the puzzle is shared and never changed by a solve
+        for (int i = 0; i < 2; i++) {
+            for (SolverEngine engine : engines(puzzle)) {
+                assertEquals(engine.getClass().getSimpleName(), SolveStatus.SOLVED, engine.solve(executor));
+                assertTrue(engine.getSolution().isValid(puzzle.getWalls(), puzzle.catalogue));
+            }
+        }
+    }
+
+    @Test
+    public void testEngines_Unsolvable() throws Exception {
+        CompiledPuzzle puzzle = CompiledPuzzle.compile(new Walls(3, 3), PieceCatalogue.tetrominoes());
+        for (SolverEngine engine : engines(puzzle)) {
+            assertEquals(engine.getClass().getSimpleName(), SolveStatus.UNSOLVABLE, engine.solve(executor));
+        }
+
+        TetrisSolver solver = new TetrisSolver(puzzle);
+        solver.solve(executor);
+        assertNull(solver.getSolution());
+    }
+
+    @Test
+    public void testTetrisSolver_SameSearch() throws Exception {
+        // the option masks only skip checks that would fail anyway
+        File file = File.createTempFile("compiled", ".txt");
+        CompiledPuzzle puzzle;
+        try {
+            PuzzleGenerator generator = new PuzzleGenerator(8, 8, PieceCatalogue.tetrominoes(), 3);
+            generator.setDensity(0.8);
+            try (Writer out = new FileWriter(file)) {
+                generator.generate(out);
+            }
+            puzzle = CompiledPuzzle.read(file.getPath(), 8, 8, PieceCatalogue.tetrominoes());
+        } finally {
+            file.delete();
+        }
+
+        TetrisSolver compiled = new TetrisSolver(puzzle);
+        Tetronimo[][] matrix = puzzle.createMatrix();
+        TetrisSolver direct = new TetrisSolver(matrix, puzzle.getRestrictions());
+        assertEquals(direct.solve(), compiled.solve(executor));
+        assertEquals(direct.getNodesExplored(), compiled.getNodesExplored());
+        assertArrayEquals(direct.getStats().depthHistogram, compiled.getStats().depthHistogram);
+        assertArrayEquals(direct.getStats().prunes, compiled.getStats().prunes);
+    }
+
+    @Test
+    public void testLocalSearchSolver() {
+        CompiledPuzzle puzzle = CompiledPuzzle.compile(mergeBoard(), PieceCatalogue.tetrominoes());
+        LocalSearchSolver solver = new LocalSearchSolver(puzzle, 1);
+        solver.setMaxMoves(100000);
+        assertEquals(SolveStatus.SOLVED, solver.solve(executor));
+        assertSame(solver.getBestSolution(), solver.getSolution());
+        assertEquals(solver.getMoves(), solver.getNodesExplored());
+    }
+}
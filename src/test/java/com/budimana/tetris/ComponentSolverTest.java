@@ -0,0 +1,108 @@
+package com.budimana.tetris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Test;
+
+
+public class ComponentSolverTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Two copies of the 4x3 board that needs a merge, side by side
+     */
+    private static Walls twoRooms() {
+        Walls walls = new Walls(8, 3);
+        for (int offset = 0; offset < 8; offset += 4) {
+            walls.add(offset + 0, 0, offset + 1, 0);
+            walls.add(offset + 2, 0, offset + 3, 0);
+            walls.add(offset + 0, 1, offset + 1, 1);
+            walls.add(offset + 2, 1, offset + 3, 1);
+            walls.add(offset + 1, 2, offset + 2, 2);
+        }
+        for (int y = 0; y < 3; y++) {
+            walls.add(3, y, 4, y);
+        }
+        return walls;
+    }
+
+    @Test
+    public void testFindComponents() {
+        Walls walls = new Walls(4, 3);
+        walls.add(1, 0, 2, 0);  // x   x | x   x
+        walls.add(1, 1, 2, 1);  //         -   -
+        walls.add(2, 1, 2, 2);  // x   x | x   x
+        walls.add(3, 1, 3, 2);  //
+                                // x   x   x   x
+        ComponentSolver cs = new ComponentSolver(walls, PieceCatalogue.tetrominoes());
+        assertEquals(2, cs.getComponentCount());
+        assertEquals(0, cs.getComponent(0, 0));
+        assertEquals(0, cs.getComponent(3, 2));
+        assertEquals(1, cs.getComponent(2, 0));
+        assertEquals(1, cs.getComponent(3, 1));
+
+        assertEquals(1, new ComponentSolver(new Walls(4, 3), PieceCatalogue.tetrominoes())
+                            .getComponentCount());
+    }
+
+    @Test
+    public void testSolveRegions() throws Exception {
+        Walls walls = twoRooms();
+
+        ComponentSolver cs = new ComponentSolver(walls, PieceCatalogue.tetrominoes());
+        assertEquals(2, cs.getComponentCount());
+        assertEquals(SolveStatus.SOLVED, cs.solve(executor));
+
+        Solution solution = cs.getSolution();
+        assertEquals(6, solution.getPieceCount());
+        assertTrue(solution.isValid(walls, PieceCatalogue.tetrominoes()));
+    }
+
+    @Test
+    public void testUnsolvableRegion() throws Exception {
+        // the right room only has 3 cells
+        Walls walls = new Walls(7, 1);
+        walls.add(3, 0, 4, 0);
+
+        ComponentSolver cs = new ComponentSolver(walls, PieceCatalogue.tetrominoes());
+        assertEquals(SolveStatus.UNSOLVABLE, cs.solve(executor));
+        assertFalse(cs.usedFallback());
+    }
+
+    @Test
+    public void testRegionsClash() throws Exception {
+        // each row can only be a line, but two lines can't touch
+        Walls walls = new Walls(4, 2);
+        for (int x = 0; x < 4; x++) {
+            walls.add(x, 0, x, 1);
+        }
+
+        ComponentSolver cs = new ComponentSolver(walls, PieceCatalogue.tetrominoes());
+        assertEquals(2, cs.getComponentCount());
+        assertEquals(SolveStatus.UNSOLVABLE, cs.solve(executor));
+        assertTrue(cs.usedFallback());
+    }
+
+    @Test
+    public void testCancelled() throws Exception {
+        Walls walls = twoRooms();
+
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        ComponentSolver cs = new ComponentSolver(walls, PieceCatalogue.tetrominoes());
+        cs.setCancellationToken(token);
+        assertEquals(SolveStatus.UNKNOWN, cs.solve(executor));
+    }
+}
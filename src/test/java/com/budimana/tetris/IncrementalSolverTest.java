@@ -0,0 +1,150 @@
+package com.budimana.tetris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class IncrementalSolverTest {
+
+    private static Walls readWalls(String file, int width, int height) throws Exception {
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(width, height);
+        return Walls.fromRestrictions(matrix, TetrisSolver.parseRestrictions(file, matrix));
+    }
+
+    private static Solution solve(Walls walls) {
+        PolyominoSolver solver = new PolyominoSolver(new PlacementTable(walls, PieceCatalogue.tetrominoes()));
+        return solver.solve() == SolveStatus.SOLVED ? solver.getSolution() : null;
+    }
+
+    @Test
+    public void testRepairLocally() throws Exception {
+        Walls walls = new Walls(8, 8);
+        Solution before = solve(walls);
+        IncrementalSolver solver = new IncrementalSolver(walls, PieceCatalogue.tetrominoes(), before);
+
+        // cut through the piece covering (3, 3)
+        int id = before.getPieceId(3, 3);
+        int[][] neighbours = { {4, 3}, {3, 4}, {2, 3}, {3, 2} };
+        int n = 0;
+        while (before.getPieceId(neighbours[n][0], neighbours[n][1]) != id) {
+            n++;
+        }
+        assertEquals(SolveStatus.SOLVED,
+                     solver.apply(IncrementalSolver.Edit.add(3, 3, neighbours[n][0], neighbours[n][1])));
+
+        Solution after = solver.getSolution();
+        assertTrue(after.isValid(solver.getWalls(), PieceCatalogue.tetrominoes()));
+        assertTrue(solver.getLastRegionCells() > 0);
+        assertTrue(solver.getLastRegionCells() < 8 * 8);
+
+        // the caller's walls didn't change
+        assertTrue(before.isValid(walls, PieceCatalogue.tetrominoes()));
+    }
+
+    @Test
+    public void testRemovedWallKeepsSolution() throws Exception {
+        Walls walls = readWalls("restrictions.10x26.txt", 10, 26);
+        Solution before = solve(walls);
+        IncrementalSolver solver = new IncrementalSolver(walls, PieceCatalogue.tetrominoes(), before);
+
+        // a wall between two different pieces doesn't break anything either
+        int x = 0;
+        while (before.getPieceId(x, 0) == before.getPieceId(x + 1, 0)) {
+            x++;
+        }
+        assertEquals(SolveStatus.SOLVED, solver.apply(IncrementalSolver.Edit.remove(0, 0, 1, 0),
+                                                      IncrementalSolver.Edit.add(x, 0, x + 1, 0)));
+        assertSame(before, solver.getSolution());
+        assertEquals(0, solver.getLastAttempts());
+    }
+
+    @Test
+    public void testUnsolvable() throws Exception {
+        Walls walls = new Walls(4, 3);
+        IncrementalSolver solver = new IncrementalSolver(walls, PieceCatalogue.tetrominoes(), solve(walls));
+
+        // wall in the top left cell
+        assertEquals(SolveStatus.UNSOLVABLE, solver.apply(IncrementalSolver.Edit.add(0, 0, 1, 0),
+                                                          IncrementalSolver.Edit.add(0, 0, 0, 1)));
+        assertNull(solver.getSolution());
+        assertEquals(12, solver.getLastRegionCells());
+
+        // and out again
+        assertEquals(SolveStatus.SOLVED, solver.apply(IncrementalSolver.Edit.remove(0, 0, 1, 0)));
+        assertTrue(solver.getSolution().isValid(solver.getWalls(), PieceCatalogue.tetrominoes()));
+    }
+
+    @Test
+    public void testDeadlineUndoesEdits() throws Exception {
+        Walls walls = new Walls(12, 12);
+        Solution before = solve(walls);
+        IncrementalSolver solver = new IncrementalSolver(walls, PieceCatalogue.tetrominoes(), before);
+
+        // walling in the last cell takes a long search to prove unsolvable
+        solver.setDeadline(0);
+        assertEquals(SolveStatus.UNKNOWN, solver.apply(IncrementalSolver.Edit.add(11, 11, 10, 11),
+                                                       IncrementalSolver.Edit.add(11, 11, 11, 10)));
+        assertEquals(walls, solver.getWalls());
+        assertSame(before, solver.getSolution());
+
+        // so the next edit repairs a solution that still fits the walls
+        solver.setDeadline(Long.MAX_VALUE);
+        int id = before.getPieceId(0, 0);
+        int x = before.getPieceId(1, 0) == id ? 1 : 0;
+        int y = x == 1 ? 0 : 1;
+        assertEquals(SolveStatus.SOLVED, solver.apply(IncrementalSolver.Edit.add(0, 0, x, y)));
+        assertTrue(solver.getSolution().isValid(solver.getWalls(), PieceCatalogue.tetrominoes()));
+    }
+
+    /**
+     * Random walls, each taken out again by the next edit, agree with
+     *   solving from scratch
+     */
+    @Test
+    public void testSameAsFullSolve() throws Exception {
+        File file = File.createTempFile("incremental", ".txt");
+        try {
+            PuzzleGenerator generator = new PuzzleGenerator(8, 8, PieceCatalogue.tetrominoes(), 3);
+            generator.setDensity(0.5);
+            try (Writer out = new FileWriter(file)) {
+                generator.generate(out);
+            }
+            Walls walls = readWalls(file.getPath(), 8, 8);
+            IncrementalSolver solver = new IncrementalSolver(walls, PieceCatalogue.tetrominoes(), solve(walls));
+
+            Random random = new Random(5);
+            IncrementalSolver.Edit edit = null;
+            for (int i = 0; i < 200; i++) {
+                if (i % 2 == 0) {
+                    int x = random.nextInt(7);
+                    int y = random.nextInt(7);
+                    boolean horizontal = random.nextBoolean();
+                    int x2 = horizontal ? x + 1 : x;
+                    int y2 = horizontal ? y : y + 1;
+                    edit = new IncrementalSolver.Edit(x, y, x2, y2, solver.getWalls().isOpen(x, y, x2, y2));
+                } else {
+                    edit = new IncrementalSolver.Edit(edit.x1, edit.y1, edit.x2, edit.y2, !edit.added);
+                }
+
+                SolveStatus status = solver.apply(edit);
+                Solution expected = solve(solver.getWalls());
+                assertEquals("edit " + i, expected == null ? SolveStatus.UNSOLVABLE : SolveStatus.SOLVED, status);
+                if (status == SolveStatus.SOLVED) {
+                    assertTrue("edit " + i, solver.getSolution().isValid(solver.getWalls(),
+                                                                          PieceCatalogue.tetrominoes()));
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.budimana.tetris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+
+import org.junit.Test;
+
+
+public class LocalSearchSolverTest {
+
+    private static Walls generate(int width, int height, double density, long seed) throws Exception {
+        File file = File.createTempFile("local", ".txt");
+        try {
+            PuzzleGenerator generator = new PuzzleGenerator(width, height, PieceCatalogue.tetrominoes(), seed);
+            generator.setDensity(density);
+            try (Writer out = new FileWriter(file)) {
+                generator.generate(out);
+            }
+            Tetronimo[][] matrix = TetrisSolver.createMatrix(width, height);
+            return Walls.fromRestrictions(matrix, TetrisSolver.parseRestrictions(file.getPath(), matrix));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSolvesOpenBoard() {
+        Walls walls = new Walls(8, 8);
+        LocalSearchSolver solver = new LocalSearchSolver(walls, PieceCatalogue.tetrominoes(), 1);
+        solver.setMaxMoves(1000000);
+        assertEquals(SolveStatus.SOLVED, solver.solve());
+        assertEquals(0, solver.getBestViolations());
+        assertTrue(solver.getBestSolution().isValid(walls, PieceCatalogue.tetrominoes()));
+    }
+
+    @Test
+    public void testSolvesPuzzle() throws Exception {
+        Walls walls = generate(12, 12, 0.8, 7);
+        LocalSearchSolver solver = new LocalSearchSolver(walls, PieceCatalogue.tetrominoes(), 1);
+        solver.setMaxMoves(1000000);
+        assertEquals(SolveStatus.SOLVED, solver.solve());
+        assertTrue(solver.getBestSolution().isValid(walls, PieceCatalogue.tetrominoes()));
+    }
+
+    /**
+     * Stopped early, the best tiling's count is the one Solution gives
+     */
+    @Test
+    public void testBestSoFar() throws Exception {
+        Walls walls = generate(40, 40, 0.3, 3);
+        LocalSearchSolver solver = new LocalSearchSolver(walls, PieceCatalogue.tetrominoes(), 1);
+        solver.setMaxMoves(50);
+        solver.solve();
+        Solution best = solver.getBestSolution();
+        assertEquals(best.countViolations(walls, PieceCatalogue.tetrominoes()), solver.getBestViolations());
+
+        // the area isn't a multiple of 4, so it can never be solved
+        Walls odd = new Walls(5, 5);
+        solver = new LocalSearchSolver(odd, PieceCatalogue.tetrominoes(), 1);
+        solver.setMaxMoves(10000);
+        assertEquals(SolveStatus.UNKNOWN, solver.solve());
+        assertTrue(solver.getBestViolations() > 0);
+        assertEquals(solver.getBestSolution().countViolations(odd, PieceCatalogue.tetrominoes()),
+                     solver.getBestViolations());
+    }
+
+    @Test
+    public void testStart() throws Exception {
+        Walls walls = generate(12, 12, 0.5, 5);
+        PolyominoSolver exact = new PolyominoSolver(new PlacementTable(walls, PieceCatalogue.tetrominoes()));
+        assertEquals(SolveStatus.SOLVED, exact.solve());
+
+        // a solution to start from needs no moves
+        LocalSearchSolver solver = new LocalSearchSolver(walls, PieceCatalogue.tetrominoes(), 1);
+        solver.setStart(exact.getSolution());
+        assertEquals(SolveStatus.SOLVED, solver.solve());
+        assertEquals(0, solver.getMoves());
+    }
+
+    /**
+     * The exact solver goes straight to a solution it is hinted
+     */
+    @Test
+    public void testWarmStart() throws Exception {
+        Walls walls = generate(16, 16, 0.5, 9);
+        LocalSearchSolver solver = new LocalSearchSolver(walls, PieceCatalogue.tetrominoes(), 1);
+        solver.setMaxMoves(1000000);
+        assertEquals(SolveStatus.SOLVED, solver.solve());
+        Solution hint = solver.getBestSolution();
+
+        PolyominoSolver exact = new PolyominoSolver(new PlacementTable(walls, PieceCatalogue.tetrominoes()));
+        exact.setHint(hint);
+        assertEquals(SolveStatus.SOLVED, exact.solve());
+        assertEquals(0, exact.getBacktracks());
+        assertEquals(hint.getPieceCount(), exact.getNodesExplored());
+        assertTrue(exact.getSolution().isValid(walls, PieceCatalogue.tetrominoes()));
+    }
+}
@@ -0,0 +1,76 @@
+package com.budimana.tetris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+
+public class NogoodStoreTest {
+
+    @Test
+    public void testAddAndContains() {
+        NogoodStore store = new NogoodStore(4000);
+        assertEquals(4096, store.capacity());
+        for (long key = 1; key <= 500; key++) {
+            store.add(key * 0x9e3779b97f4a7c15L);
+        }
+        for (long key = 1; key <= 500; key++) {
+            assertTrue(store.contains(key * 0x9e3779b97f4a7c15L));
+        }
+        assertFalse(store.contains(12345));
+
+        // 0 and keys differing only in the lowest bit are still keys
+        store.add(0);
+        assertTrue(store.contains(0));
+    }
+
+    @Test
+    public void testEviction() {
+        NogoodStore store = new NogoodStore(NogoodStore.PROBE);
+        for (long key = 1; key <= 100; key++) {
+            store.add(key << 1);
+        }
+        assertEquals(100 - NogoodStore.PROBE, store.getEvictions());
+        assertTrue(store.contains(100 << 1));
+
+        // a key that keeps being looked up survives the next evictions
+        long kept = 100 << 1;
+        for (long key = 101; key < 101 + NogoodStore.PROBE - 1; key++) {
+            assertTrue(store.contains(kept));
+            store.add(key << 1);
+        }
+        assertTrue(store.contains(kept));
+    }
+
+    @Test
+    public void testConcurrentAdds() throws Exception {
+        NogoodStore store = new NogoodStore(1 << 18);
+        int threads = 4;
+        int keys = 5000;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int first = t * keys;
+            Thread worker = new Thread(() -> {
+                for (long key = first; key < first + keys; key++) {
+                    store.add(key * 0x9e3779b97f4a7c15L);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // well under capacity, so nothing was evicted or dropped
+        assertEquals(0, store.getEvictions());
+        for (long key = 0; key < threads * keys; key++) {
+            assertTrue(store.contains(key * 0x9e3779b97f4a7c15L));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.budimana.tetris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.junit.Test;
+
+
+public class PieceListTest {
+
+    @Test
+    public void testAddRemove() {
+        PieceList list = new PieceList();
+        Piece p1 = new Piece();
+        Piece p2 = new Piece();
+        Piece p3 = new Piece();
+
+        assertTrue(list.add(p1));
+        assertTrue(list.add(p2));
+        assertTrue(list.add(p3));
+        assertFalse(list.add(p2));
+        assertEquals(3, list.size());
+
+        // the last piece fills the hole
+        assertTrue(list.remove(p1));
+        assertFalse(list.remove(p1));
+        assertEquals(2, list.size());
+        assertSame(p3, list.get(0));
+        assertSame(p2, list.get(1));
+        assertFalse(list.contains(p1));
+        assertTrue(list.contains(p2));
+        assertTrue(list.contains(p3));
+
+        // a removed piece can move to another list
+        PieceList other = new PieceList();
+        assertTrue(other.add(p1));
+        assertFalse(list.contains(p1));
+        assertTrue(other.contains(p1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAddToTwoLists() {
+        Piece p = new Piece();
+        new PieceList().add(p);
+        new PieceList().add(p);
+    }
+
+    @Test
+    public void testGrowAndIterate() {
+        PieceList list = new PieceList();
+        Set<Piece> expected = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            Piece p = new Piece();
+            list.add(p);
+            expected.add(p);
+        }
+        assertEquals(expected, list);
+
+        // remove every other piece through the iterator
+        int i = 0;
+        for (Iterator<Piece> it = list.iterator(); it.hasNext(); i++) {
+            Piece p = it.next();
+            if (i % 2 == 0) {
+                it.remove();
+                expected.remove(p);
+            }
+        }
+        assertEquals(50, list.size());
+        assertEquals(expected, list);
+
+        list.clear();
+        assertTrue(list.isEmpty());
+        for (Piece p : expected) {
+            assertFalse(list.contains(p));
+        }
+    }
+}
@@ -6,6 +6,8 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Set;
 
 import org.junit.Before;
@@ -274,6 +276,30 @@ public class PieceTest {
         assertFalse(p.canBeFinished(matrix));
     }
 
+    /**
+     * Tetronimos stay sorted by y, then x, whatever order they come in
+     */
+    @Test
+    public void testSortedOrder() {
+        Tetronimo a = new Tetronimo(1, 0);
+        Tetronimo b = new Tetronimo(0, 1);
+        Tetronimo c = new Tetronimo(1, 1);
+        Tetronimo d = new Tetronimo(2, 1);
+        Piece p = new Piece(d, b, a);
+        assertEquals(Arrays.asList(a, b, d), new ArrayList<>(p.getTetronimos()));
+
+        p.add(c);
+        assertEquals(Arrays.asList(a, b, c, d), new ArrayList<>(p.getTetronimos()));
+        for (int i = 0; i < p.getCount(); i++) {
+            assertTrue(p.getTetronimos().contains(p.getTetronimo(i)));
+        }
+
+        p.remove(b);
+        assertEquals(Arrays.asList(a, c, d), new ArrayList<>(p.getTetronimos()));
+        assertFalse(p.getTetronimos().contains(b));
+        assertEquals(3, p.getTetronimos().size());
+    }
+
     /**
      * Resets the tetronimos
      * Asserts correct Piece state along the way
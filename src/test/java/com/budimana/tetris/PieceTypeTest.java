@@ -2,6 +2,10 @@ package com.budimana.tetris;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.TreeSet;
+
 import org.junit.Test;
 
 
@@ -188,4 +192,51 @@ public class PieceTypeTest {
                              new Tetronimo(1, 1));
         assertEquals(PieceType.BOX, PieceType.classifyPiece(p0));
     }
+
+    private static int shapeOf(int[][] cells) {
+        Set<Tetronimo> tetronimos = new TreeSet<>();
+        for (int[] c : cells) {
+            tetronimos.add(new Tetronimo(c[0], c[1]));
+        }
+        return PieceType.getShape(tetronimos);
+    }
+
+    @Test
+    public void testGetCompletions() {
+        // every completion of a shape classifies as its type
+        int[][][] shapes = {
+            { { 0, 0 } },
+            { { 0, 0 }, { 1, 0 } },
+            { { 0, 0 }, { 1, 0 }, { 2, 0 } },  // x x x
+            { { 1, 0 }, { 0, 1 }, { 1, 1 } },  //   x
+        };                                     // x x
+        for (int[][] shape : shapes) {
+            Set<PieceType> types = EnumSet.noneOf(PieceType.class);
+            for (int[] completion : PieceType.getCompletions(shapeOf(shape))) {
+                Piece p = new Piece();
+                for (int[] c : shape) {
+                    p.add(new Tetronimo(c[0], c[1]));
+                }
+                for (int i = 1; i < completion.length; i += 2) {
+                    p.add(new Tetronimo(completion[i], completion[i + 1]));
+                }
+                assertEquals(PieceType.values()[completion[0]], PieceType.classifyPiece(p));
+                types.add(PieceType.classifyPiece(p));
+            }
+
+            if (shape.length < 3) {
+                assertEquals(EnumSet.allOf(PieceType.class), types);
+            }
+        }
+
+        Set<PieceType> lineTypes = EnumSet.noneOf(PieceType.class);
+        for (int[] completion : PieceType.getCompletions(shapeOf(shapes[2]))) {
+            lineTypes.add(PieceType.values()[completion[0]]);
+        }
+        assertEquals(EnumSet.of(PieceType.T, PieceType.L1, PieceType.L2, PieceType.I), lineTypes);
+
+        // not a partial piece
+        assertEquals(0, PieceType.getCompletions(shapeOf(new int[][] { { 0, 0 }, { 3, 3 } })).length);
+        assertEquals(0, PieceType.getCompletions(shapeOf(new int[][] { { 0, 0 }, { 0, 4 } })).length);
+    }
 }
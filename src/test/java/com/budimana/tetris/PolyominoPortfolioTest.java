@@ -0,0 +1,68 @@
+package com.budimana.tetris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Test;
+
+
+public class PolyominoPortfolioTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testSolve_10x26() throws Exception {
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(10, 26);
+        Walls walls = Walls.fromRestrictions(matrix,
+                                             TetrisSolver.parseRestrictions("restrictions.10x26.txt", matrix));
+        PolyominoPortfolio portfolio =
+            new PolyominoPortfolio(new PlacementTable(walls, PieceCatalogue.tetrominoes()), 4);
+        assertEquals(SolveStatus.SOLVED, portfolio.solve(executor));
+        assertTrue(portfolio.getWinner() >= 0 && portfolio.getWinner() < 4);
+        assertTrue(portfolio.getSolution().isValid(walls, PieceCatalogue.tetrominoes()));
+    }
+
+    @Test
+    public void testUnsolvable_SharesStore() throws Exception {
+        // the corner cell is walled in
+        Walls walls = new Walls(8, 4);
+        walls.add(7, 3, 6, 3);
+        walls.add(7, 3, 7, 2);
+        PolyominoPortfolio portfolio =
+            new PolyominoPortfolio(new PlacementTable(walls, PieceCatalogue.tetrominoes()), 3);
+        assertEquals(SolveStatus.UNSOLVABLE, portfolio.solve(executor));
+        assertNull(portfolio.getSolution());
+        assertTrue(portfolio.getStoreHits() > 0);
+
+        // what the race proved, a later search of the puzzle starts from
+        PolyominoSolver again = new PolyominoSolver(new PlacementTable(walls, PieceCatalogue.tetrominoes()));
+        again.setNogoodStore(portfolio.getNogoodStore());
+        assertEquals(SolveStatus.UNSOLVABLE, again.solve());
+        assertEquals(1, again.getNodesExplored());
+    }
+
+    @Test
+    public void testCancelled() throws Exception {
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(10, 26);
+        Walls walls = Walls.fromRestrictions(matrix,
+                                             TetrisSolver.parseRestrictions("restrictions.10x26.txt", matrix));
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        PolyominoPortfolio portfolio =
+            new PolyominoPortfolio(new PlacementTable(walls, PieceCatalogue.tetrominoes()), 2);
+        portfolio.setCancellationToken(token);
+        assertEquals(SolveStatus.UNKNOWN, portfolio.solve(executor));
+        assertEquals(-1, portfolio.getWinner());
+        assertNull(portfolio.getSolution());
+    }
+}
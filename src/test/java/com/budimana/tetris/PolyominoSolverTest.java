@@ -0,0 +1,326 @@
+package com.budimana.tetris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class PolyominoSolverTest {
+
+    private static PolyominoSolver solver(Walls walls, PieceCatalogue catalogue) {
+        return new PolyominoSolver(new PlacementTable(walls, catalogue));
+    }
+
+    @Test
+    public void testMergeRequired() {
+        Walls walls = new Walls(4, 3);
+        walls.add(0, 0, 1, 0);  // x | x   x | x
+        walls.add(2, 0, 3, 0);  //
+        walls.add(0, 1, 1, 1);  // x | x   x | x
+        walls.add(2, 1, 3, 1);  //
+        walls.add(1, 2, 2, 2);  // x   x | x   x
+
+        PolyominoSolver ps = solver(walls, PieceCatalogue.tetrominoes());
+        assertEquals(SolveStatus.SOLVED, ps.solve());
+
+        Solution solution = ps.getSolution();
+        assertTrue(solution.isValid(walls, PieceCatalogue.tetrominoes()));
+        assertEquals(PieceType.L2.ordinal(), solution.getPieceType(solution.getPieceId(0, 0)));
+        assertEquals(PieceType.BOX.ordinal(), solution.getPieceType(solution.getPieceId(1, 0)));
+        assertEquals(PieceType.L1.ordinal(), solution.getPieceType(solution.getPieceId(3, 0)));
+    }
+
+    @Test
+    public void testUnsolvable() {
+        // area isn't a multiple of 4
+        assertEquals(SolveStatus.UNSOLVABLE,
+                     solver(new Walls(3, 2), PieceCatalogue.tetrominoes()).solve());
+
+        // walls leave a single cell on its own
+        Walls walls = new Walls(4, 2);
+        walls.add(0, 0, 0, 1);  // x   x | x   x
+        walls.add(1, 0, 2, 0);  // -
+        walls.add(0, 0, 1, 0);  // x   x   x   x
+        assertEquals(SolveStatus.UNSOLVABLE,
+                     solver(walls, PieceCatalogue.tetrominoes()).solve());
+    }
+
+    @Test
+    public void testSameAsTetrisSolver() {
+        int[][] dimensions = { {2, 2}, {4, 1}, {3, 2}, {4, 3}, {4, 4}, {2, 6}, {5, 4}, {8, 1} };
+        for (int[] d : dimensions) {
+            Tetronimo[][] matrix = TetrisSolver.createMatrix(d[0], d[1]);
+            Map<Tetronimo, List<Tetronimo>> restrictions = new HashMap<>();
+            SolveStatus expected = new TetrisSolver(matrix, restrictions).solve();
+
+            Walls walls = Walls.fromRestrictions(matrix, restrictions);
+            PolyominoSolver ps = solver(walls, PieceCatalogue.tetrominoes());
+            assertEquals(Arrays.toString(d), expected, ps.solve());
+            if (expected == SolveStatus.SOLVED) {
+                assertTrue(ps.getSolution().isValid(walls, PieceCatalogue.tetrominoes()));
+            }
+        }
+    }
+
+    @Test
+    public void testRestrictionsFile() throws Exception {
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(10, 26);
+        Walls walls = Walls.fromRestrictions(matrix,
+                                             TetrisSolver.parseRestrictions("restrictions.10x26.txt", matrix));
+
+        PolyominoSolver ps = solver(walls, PieceCatalogue.tetrominoes());
+        assertEquals(SolveStatus.SOLVED, ps.solve());
+        assertTrue(ps.getSolution().isValid(walls, PieceCatalogue.tetrominoes()));
+    }
+
+    @Test
+    public void testPentominoes() {
+        PieceCatalogue catalogue = PieceCatalogue.pentominoes();
+        Walls walls = new Walls(10, 6);
+        PolyominoSolver ps = solver(walls, catalogue);
+        assertEquals(SolveStatus.SOLVED, ps.solve());
+
+        Solution solution = ps.getSolution();
+        assertEquals(12, solution.getPieceCount());
+        assertTrue(solution.isValid(walls, catalogue));
+    }
+
+    @Test
+    public void testMixedSizes() {
+        // 9 cells: needs one tetromino and one pentomino
+        PieceCatalogue catalogue = PieceCatalogue.of(PieceCatalogue.tetrominoes(),
+                                                     PieceCatalogue.pentominoes());
+        Walls walls = new Walls(9, 1);
+        PolyominoSolver ps = solver(walls, catalogue);
+        assertEquals(SolveStatus.SOLVED, ps.solve());
+
+        Solution solution = ps.getSolution();
+        assertEquals(2, solution.getPieceCount());
+        assertTrue(solution.isValid(walls, catalogue));
+    }
+
+    @Test
+    public void testCancelled() {
+        // unsolvable, but takes a while to find out
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        Walls walls = new Walls(11, 11);
+        walls.add(5, 5, 6, 5);
+        PolyominoSolver ps = solver(walls, PieceCatalogue.of(PieceCatalogue.tetrominoes(),
+                                                             PieceCatalogue.pentominoes()));
+        ps.setCancellationToken(token);
+        assertEquals(SolveStatus.UNKNOWN, ps.solve());
+    }
+
+    @Test
+    public void testSolveAgain() throws Exception {
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(10, 26);
+        Walls walls = Walls.fromRestrictions(matrix,
+                                             TetrisSolver.parseRestrictions("restrictions.10x26.txt", matrix));
+        PolyominoSolver ps = solver(walls, PieceCatalogue.tetrominoes());
+
+        // stopped part way, with pieces on the board
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        ps.setCancellationToken(token);
+        assertEquals(SolveStatus.UNKNOWN, ps.solve());
+        assertNull(ps.getSolution());
+
+        // starts again from an empty board, twice
+        ps.setCancellationToken(null);
+        for (int i = 0; i < 2; i++) {
+            long nodes = ps.getNodesExplored();
+            assertEquals(SolveStatus.SOLVED, ps.solve());
+            assertTrue(ps.getNodesExplored() - nodes > 1);
+            assertTrue(ps.getSolution().isValid(walls, PieceCatalogue.tetrominoes()));
+        }
+    }
+
+    @Test
+    public void testOrderSeed() throws Exception {
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(10, 26);
+        Walls walls = Walls.fromRestrictions(matrix,
+                                             TetrisSolver.parseRestrictions("restrictions.10x26.txt", matrix));
+        for (long seed = 1; seed <= 3; seed++) {
+            PolyominoSolver ps = solver(walls, PieceCatalogue.tetrominoes());
+            ps.setOrderSeed(seed);
+            assertEquals(SolveStatus.SOLVED, ps.solve());
+            assertTrue(ps.getSolution().isValid(walls, PieceCatalogue.tetrominoes()));
+        }
+
+        // still complete
+        Walls corner = new Walls(8, 4);
+        corner.add(7, 3, 6, 3);
+        corner.add(7, 3, 7, 2);
+        PolyominoSolver ps = solver(corner, PieceCatalogue.tetrominoes());
+        ps.setOrderSeed(7);
+        assertEquals(SolveStatus.UNSOLVABLE, ps.solve());
+    }
+
+    /**
+     * Backjumping, with and without learning, agrees with plain
+     *   backtracking and never needs more nodes
+     */
+    @Test
+    public void testBackjumping() throws Exception {
+        PieceCatalogue catalogue = PieceCatalogue.tetrominoes();
+        File file = File.createTempFile("backjump", ".txt");
+        try {
+            for (int seed = 0; seed < 8; seed++) {
+                PuzzleGenerator generator = new PuzzleGenerator(10, 10, catalogue, seed);
+                try (Writer out = new FileWriter(file)) {
+                    generator.generate(out);
+                }
+                Tetronimo[][] matrix = TetrisSolver.createMatrix(10, 10);
+                Walls walls = Walls.fromRestrictions(matrix,
+                                                     TetrisSolver.parseRestrictions(file.getPath(), matrix));
+                // a few extra walls make some of them unsolvable
+                Random random = new Random(seed);
+                for (int i = 0; i < seed % 2 * 3; i++) {
+                    int x = random.nextInt(9);
+                    int y = random.nextInt(10);
+                    walls.add(x, y, x + 1, y);
+                }
+
+                PolyominoSolver plain = solver(walls, catalogue);
+                SolveStatus expected = plain.solve();
+                for (boolean learning : new boolean[] { false, true }) {
+                    PolyominoSolver ps = solver(walls, catalogue);
+                    ps.setBackjumping(true, learning);
+                    assertEquals("seed " + seed, expected, ps.solve());
+                    assertTrue("seed " + seed, ps.getNodesExplored() <= plain.getNodesExplored());
+                    if (expected == SolveStatus.SOLVED) {
+                        assertTrue(ps.getSolution().isValid(walls, catalogue));
+                    }
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testBackjumping_Unsolvable() {
+        // the search ends at a dead end no piece is to blame for, with the
+        //   first piece still placed
+        Walls walls = new Walls(2, 4);
+        walls.add(1, 0, 1, 1);  // x   x
+        walls.add(0, 1, 0, 2);  //     -
+                                // x   x
+                                // -
+                                // x   x
+                                //
+                                // x   x
+        PolyominoSolver ps = solver(walls, PieceCatalogue.tetrominoes());
+        ps.setBackjumping(true, true);
+        assertEquals(SolveStatus.UNSOLVABLE, ps.solve());
+        assertNull(ps.getSolution());
+
+        // nothing is left on the board
+        for (int cell = 0; cell < 8; cell++) {
+            ps.block(cell);
+        }
+    }
+
+    @Test
+    public void testLearning() {
+        // unsolvable: the corner cell is walled in
+        Walls walls = new Walls(8, 4);
+        walls.add(7, 3, 6, 3);
+        walls.add(7, 3, 7, 2);
+        PolyominoSolver plain = solver(walls, PieceCatalogue.tetrominoes());
+        assertEquals(SolveStatus.UNSOLVABLE, plain.solve());
+
+        PolyominoSolver ps = solver(walls, PieceCatalogue.tetrominoes());
+        ps.setBackjumping(true, true);
+        assertEquals(SolveStatus.UNSOLVABLE, ps.solve());
+        assertTrue(ps.getNogoodCount() > 0);
+        assertTrue(ps.getNogoodPrunes() > 0);
+        assertTrue(ps.getNodesExplored() < plain.getNodesExplored());
+    }
+
+    @Test
+    public void testNogoodStore() {
+        // unsolvable: the corner cell is walled in
+        Walls walls = new Walls(8, 4);
+        walls.add(7, 3, 6, 3);
+        walls.add(7, 3, 7, 2);
+        PolyominoSolver plain = solver(walls, PieceCatalogue.tetrominoes());
+        assertEquals(SolveStatus.UNSOLVABLE, plain.solve());
+
+        for (boolean backjumping : new boolean[] { false, true }) {
+            NogoodStore store = new NogoodStore(1 << 12);
+            PolyominoSolver ps = solver(walls, PieceCatalogue.tetrominoes());
+            ps.setBackjumping(backjumping, false);
+            ps.setNogoodStore(store);
+            assertEquals(SolveStatus.UNSOLVABLE, ps.solve());
+            assertTrue(ps.getStoreHits() > 0);
+            assertTrue(ps.getNodesExplored() < plain.getNodesExplored());
+
+            // a second search of the same puzzle finds the start dead
+            PolyominoSolver again = solver(walls, PieceCatalogue.tetrominoes());
+            again.setBackjumping(backjumping, false);
+            again.setNogoodStore(store);
+            assertEquals(SolveStatus.UNSOLVABLE, again.solve());
+            assertEquals(1, again.getNodesExplored());
+        }
+    }
+
+    @Test
+    public void testSharedNogoodStore() throws Exception {
+        PieceCatalogue catalogue = PieceCatalogue.tetrominoes();
+        File file = File.createTempFile("shared", ".txt");
+        try {
+            for (int seed = 0; seed < 8; seed++) {
+                PuzzleGenerator generator = new PuzzleGenerator(10, 10, catalogue, seed);
+                try (Writer out = new FileWriter(file)) {
+                    generator.generate(out);
+                }
+                Tetronimo[][] matrix = TetrisSolver.createMatrix(10, 10);
+                Walls walls = Walls.fromRestrictions(matrix,
+                                                     TetrisSolver.parseRestrictions(file.getPath(), matrix));
+                Random random = new Random(seed);
+                for (int i = 0; i < seed % 2 * 3; i++) {
+                    int x = random.nextInt(9);
+                    int y = random.nextInt(10);
+                    walls.add(x, y, x + 1, y);
+                }
+                SolveStatus expected = solver(walls, catalogue).solve();
+
+                // one plain and one backjumping search publishing to the same store
+                NogoodStore store = new NogoodStore(1 << 16);
+                PolyominoSolver[] solvers = new PolyominoSolver[2];
+                SolveStatus[] statuses = new SolveStatus[2];
+                Thread[] threads = new Thread[2];
+                for (int t = 0; t < 2; t++) {
+                    int i = t;
+                    solvers[i] = solver(walls, catalogue);
+                    solvers[i].setBackjumping(i == 1, false);
+                    solvers[i].setNogoodStore(store);
+                    threads[i] = new Thread(() -> statuses[i] = solvers[i].solve());
+                    threads[i].start();
+                }
+                for (int t = 0; t < 2; t++) {
+                    threads[t].join();
+                    assertEquals("seed " + seed, expected, statuses[t]);
+                    if (expected == SolveStatus.SOLVED) {
+                        assertTrue(solvers[t].getSolution().isValid(walls, catalogue));
+                    }
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
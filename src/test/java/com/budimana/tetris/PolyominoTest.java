@@ -0,0 +1,89 @@
+package com.budimana.tetris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+
+public class PolyominoTest {
+
+    @Test
+    public void testTetrominoOrientations() {
+        PieceCatalogue catalogue = PieceCatalogue.tetrominoes();
+        assertEquals(PieceType.values().length, catalogue.size());
+
+        // same rotations as PieceType, in the same order
+        for (PieceType type : PieceType.values()) {
+            Polyomino p = catalogue.get(type.ordinal());
+            assertEquals(type.name(), p.name);
+            assertEquals(type.getSamplePieces().size(), p.getOrientations().size());
+            assertEquals(4, p.size());
+        }
+    }
+
+    @Test
+    public void testPentominoOrientations() {
+        PieceCatalogue catalogue = PieceCatalogue.pentominoes();
+        assertEquals(18, catalogue.size());
+
+        // reflections are separate types, so every fixed pentomino shows up once
+        int orientations = 0;
+        for (Polyomino p : catalogue.getTypes()) {
+            orientations += p.getOrientations().size();
+            assertEquals(5, p.size());
+        }
+        assertEquals(63, orientations);
+    }
+
+    @Test
+    public void testMirror() {
+        // x x x
+        //     x
+        Polyomino l1 = new Polyomino("L1", new int[][] { {0,0}, {1,0}, {2,0}, {2,1} });
+        Polyomino l2 = l1.mirror("L2");
+        assertNotNull(l2);
+
+        // x x x
+        // x
+        assertTrue(l2.matches(new int[][] { {5,5}, {6,5}, {7,5}, {5,6} }));
+        assertFalse(l1.matches(new int[][] { {5,5}, {6,5}, {7,5}, {5,6} }));
+
+        // symmetric pieces are their own mirror image
+        Polyomino t = new Polyomino("T", new int[][] { {0,0}, {1,0}, {2,0}, {1,1} });
+        assertNull(t.mirror("T'"));
+    }
+
+    @Test
+    public void testAnchorOffsets() {
+        //   x
+        // x x x
+        Polyomino t = new Polyomino("T", new int[][] { {1,0}, {0,1}, {1,1}, {2,1} });
+        Polyomino.Orientation o = t.getOrientations().get(0);
+
+        // the anchor is the first cell in reading order
+        assertEquals(0, o.dx[0]);
+        assertEquals(0, o.dy[0]);
+        assertEquals(-1, o.dx[1]);
+        assertEquals(1, o.dy[1]);
+        assertEquals(3, o.width);
+        assertEquals(2, o.height);
+        assertEquals(0b111010L, o.mask);
+    }
+
+    @Test
+    public void testClassify() {
+        PieceCatalogue catalogue = PieceCatalogue.tetrominoes();
+
+        // x x
+        //   x x
+        assertEquals(PieceType.N2.ordinal(),
+                     catalogue.classify(new int[][] { {3,1}, {4,1}, {4,2}, {5,2} }));
+
+        // not a tetris piece
+        assertEquals(-1, catalogue.classify(new int[][] { {0,0}, {1,1}, {2,2}, {3,3} }));
+    }
+}
@@ -0,0 +1,126 @@
+package com.budimana.tetris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Test;
+
+
+public class PortfolioSolverTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Only solvable by merging pieces (one-directional, like the other tests)
+     */
+    private static Map<Tetronimo, List<Tetronimo>> mergeRestrictions(Tetronimo[][] matrix) {
+        Map<Tetronimo, List<Tetronimo>> restrictions = new HashMap<>();
+        restrictions.put(matrix[0][0], Arrays.asList(matrix[1][0]));  // x | x   x | x
+        restrictions.put(matrix[2][0], Arrays.asList(matrix[3][0]));  //
+        restrictions.put(matrix[0][1], Arrays.asList(matrix[1][1]));  // x | x   x | x
+        restrictions.put(matrix[2][1], Arrays.asList(matrix[3][1]));  //
+        restrictions.put(matrix[1][2], Arrays.asList(matrix[2][2]));  // x   x | x   x
+        return restrictions;
+    }
+
+    @Test
+    public void testEverySymmetry() throws Exception {
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(4, 3);
+        Map<Tetronimo, List<Tetronimo>> restrictions = mergeRestrictions(matrix);
+        Walls walls = Walls.fromRestrictions(matrix, restrictions);
+
+        for (PortfolioSolver.Symmetry symmetry : PortfolioSolver.Symmetry.values()) {
+            for (OptionKind[] order : Arrays.asList(PortfolioSolver.NEW_FIRST,
+                                                    PortfolioSolver.JOIN_FIRST)) {
+                PortfolioSolver.Config config = new PortfolioSolver.Config(order, symmetry, null);
+                PortfolioSolver ps = new PortfolioSolver(4, 3, restrictions,
+                                                         Collections.singletonList(config));
+                assertEquals(config.toString(), SolveStatus.SOLVED, ps.solve(executor));
+                assertEquals(config, ps.getWinner());
+                assertTrue(config.toString(),
+                           ps.getSolution().isValid(walls, PieceCatalogue.tetrominoes()));
+
+                // mapped back onto the original board
+                Solution solution = ps.getSolution();
+                assertEquals(PieceType.L2.ordinal(), solution.getPieceType(solution.getPieceId(0, 0)));
+                assertEquals(PieceType.BOX.ordinal(), solution.getPieceType(solution.getPieceId(1, 0)));
+            }
+        }
+    }
+
+    @Test
+    public void testSymmetries_10x26() throws Exception {
+        // joining first merges pieces with a boundary between them unless it's checked
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(10, 26);
+        Map<Tetronimo, List<Tetronimo>> restrictions =
+            TetrisSolver.parseRestrictions("restrictions.10x26.txt", matrix);
+        Walls walls = Walls.fromRestrictions(matrix, restrictions);
+
+        // transposing is left out, it takes minutes on this board
+        for (PortfolioSolver.Symmetry symmetry : Arrays.asList(PortfolioSolver.Symmetry.IDENTITY,
+                                                               PortfolioSolver.Symmetry.MIRROR_X,
+                                                               PortfolioSolver.Symmetry.MIRROR_Y,
+                                                               PortfolioSolver.Symmetry.ROTATE_180)) {
+            for (OptionKind[] order : Arrays.asList(PortfolioSolver.NEW_FIRST,
+                                                    PortfolioSolver.JOIN_FIRST)) {
+                PortfolioSolver.Config config = new PortfolioSolver.Config(order, symmetry, null);
+                PortfolioSolver ps = new PortfolioSolver(10, 26, restrictions,
+                                                         Collections.singletonList(config));
+                assertEquals(config.toString(), SolveStatus.SOLVED, ps.solve(executor));
+                assertTrue(config.toString(),
+                           ps.getSolution().isValid(walls, PieceCatalogue.tetrominoes()));
+            }
+        }
+    }
+
+    @Test
+    public void testDefaultConfigs() throws Exception {
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(4, 3);
+        Map<Tetronimo, List<Tetronimo>> restrictions = mergeRestrictions(matrix);
+        Walls walls = Walls.fromRestrictions(matrix, restrictions);
+
+        List<PortfolioSolver.Config> configs = PortfolioSolver.defaultConfigs(10);
+        assertEquals(10, configs.size());
+        assertEquals(Long.valueOf(9), configs.get(9).shuffleSeed);
+
+        PortfolioSolver ps = new PortfolioSolver(4, 3, restrictions, configs);
+        assertEquals(SolveStatus.SOLVED, ps.solve(executor));
+        assertTrue(configs.contains(ps.getWinner()));
+        assertTrue(ps.getSolution().isValid(walls, PieceCatalogue.tetrominoes()));
+    }
+
+    @Test
+    public void testUnsolvable() throws Exception {
+        PortfolioSolver ps = new PortfolioSolver(3, 2, new HashMap<>(),
+                                                 PortfolioSolver.defaultConfigs(3));
+        assertEquals(SolveStatus.UNSOLVABLE, ps.solve(executor));
+        assertNull(ps.getSolution());
+    }
+
+    @Test
+    public void testCancelled() throws Exception {
+        // unsolvable, but takes a long time to find out
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        PortfolioSolver ps = new PortfolioSolver(7, 7, new HashMap<>(),
+                                                 PortfolioSolver.defaultConfigs(2));
+        ps.setCancellationToken(token);
+        assertEquals(SolveStatus.UNKNOWN, ps.solve(executor));
+        assertNull(ps.getWinner());
+    }
+}
@@ -0,0 +1,125 @@
+package com.budimana.tetris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+
+public class PuzzleGeneratorTest {
+
+    private static String generate(int width, int height, PieceCatalogue catalogue,
+                                   long seed, double density) throws Exception {
+        PuzzleGenerator generator = new PuzzleGenerator(width, height, catalogue, seed);
+        generator.setDensity(density);
+        StringWriter out = new StringWriter();
+        generator.generate(out);
+        return out.toString();
+    }
+
+    private static Walls parse(int width, int height, String restrictions) {
+        Walls walls = new Walls(width, height);
+        for (String line : restrictions.split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] cells = line.split(" ");
+            String[] c1 = cells[0].split(",");
+            String[] c2 = cells[1].split(",");
+            walls.add(Integer.parseInt(c1[0]), Integer.parseInt(c1[1]),
+                      Integer.parseInt(c2[0]), Integer.parseInt(c2[1]));
+        }
+        return walls;
+    }
+
+    private static String sha256(String s) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(s.getBytes("UTF-8"))) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * With every boundary written, the regions are the pieces of the
+     *   generated tiling
+     */
+    private static void assertTiling(int width, int height, PieceCatalogue catalogue, long seed)
+        throws Exception {
+        Walls walls = parse(width, height, generate(width, height, catalogue, seed, 1.0));
+
+        int[] pieceIds = ComponentSolver.findComponents(walls);
+        List<List<int[]>> pieceCells = new ArrayList<>();
+        for (int cell = 0; cell < pieceIds.length; cell++) {
+            if (pieceIds[cell] == pieceCells.size()) {
+                pieceCells.add(new ArrayList<>());
+            }
+            pieceCells.get(pieceIds[cell]).add(new int[] { cell % width, cell / width });
+        }
+
+        byte[] pieceTypes = new byte[pieceCells.size()];
+        for (int i = 0; i < pieceTypes.length; i++) {
+            List<int[]> cells = pieceCells.get(i);
+            int type = catalogue.classify(cells.toArray(new int[cells.size()][]));
+            assertTrue("Piece " + i + " isn't in the catalogue", type >= 0);
+            pieceTypes[i] = (byte) type;
+        }
+
+        Solution solution = new Solution(width, height, pieceIds, pieceTypes);
+        assertTrue(solution.isValid(walls, catalogue));
+    }
+
+    @Test
+    public void testTiling() throws Exception {
+        assertTiling(12, 20, PieceCatalogue.tetrominoes(), 1);
+        assertTiling(3, 40, PieceCatalogue.tetrominoes(), 2);
+        assertTiling(200, 9, PieceCatalogue.tetrominoes(), 3);
+        assertTiling(10, 12, PieceCatalogue.pentominoes(), 4);
+    }
+
+    @Test
+    public void testSolvable() throws Exception {
+        Walls walls = parse(8, 8, generate(8, 8, PieceCatalogue.tetrominoes(), 5, 0.6));
+
+        PolyominoSolver ps = new PolyominoSolver(new PlacementTable(walls,
+                                                                    PieceCatalogue.tetrominoes()));
+        assertEquals(SolveStatus.SOLVED, ps.solve());
+        assertTrue(ps.getSolution().isValid(walls, PieceCatalogue.tetrominoes()));
+    }
+
+    @Test
+    public void testSameSeed() throws Exception {
+        String first = generate(40, 30, PieceCatalogue.tetrominoes(), 42, 0.5);
+        assertEquals(first, generate(40, 30, PieceCatalogue.tetrominoes(), 42, 0.5));
+        assertTrue(!first.equals(generate(40, 30, PieceCatalogue.tetrominoes(), 43, 0.5)));
+    }
+
+    @Test
+    public void testSameSeed_Digest() throws Exception {
+        // pinned, so the output can't depend on identity hash codes or the JVM
+        assertEquals("2d691a8d87ef7147d299c9e681eb9adbcc3e5ac840fc1263babc99661a2d96f6",
+                     sha256(generate(40, 30, PieceCatalogue.tetrominoes(), 42, 0.5)));
+        assertEquals("d04d74029f18568741871a3b3570bb16e692edfec1f0fc9f91375f2531e3147e",
+                     sha256(generate(40, 30, PieceCatalogue.pentominoes(), 42, 0.5)));
+    }
+
+    @Test
+    public void testNoRestrictions() throws Exception {
+        assertEquals("", generate(16, 16, PieceCatalogue.tetrominoes(), 6, 0.0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadArea() {
+        new PuzzleGenerator(5, 5, PieceCatalogue.tetrominoes(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadDensity() {
+        new PuzzleGenerator(4, 4, PieceCatalogue.tetrominoes(), 0).setDensity(1.5);
+    }
+}
@@ -0,0 +1,111 @@
+package com.budimana.tetris;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class RowChecksTest {
+
+    /**
+     * Open sides counted one cell at a time
+     */
+    private static int openSides(Walls walls, int x, int y) {
+        int open = 0;
+        if (x > 0 && walls.isOpen(x - 1, y, x, y)) {
+            open++;
+        }
+        if (x < walls.width - 1 && walls.isOpen(x, y, x + 1, y)) {
+            open++;
+        }
+        if (y > 0 && walls.isOpen(x, y - 1, x, y)) {
+            open++;
+        }
+        if (y < walls.height - 1 && walls.isOpen(x, y, x, y + 1)) {
+            open++;
+        }
+        return open;
+    }
+
+    private static Walls randomWalls(int width, int height, Random random) {
+        Walls walls = new Walls(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (x + 1 < width && random.nextInt(3) > 0) {
+                    walls.add(x, y, x + 1, y);
+                }
+                if (y + 1 < height && random.nextInt(3) > 0) {
+                    walls.add(x, y, x, y + 1);
+                }
+            }
+        }
+        return walls;
+    }
+
+    @Test
+    public void testOpenSides() {
+        Random random = new Random(1);
+        RowChecks[] checks = { new RowChecks(), RowChecks.get() };
+        for (int width : new int[] { 1, 2, 63, 64, 65, 200, 513, 1100 }) {
+            Walls walls = randomWalls(width, 4, random);
+            WallRows rows = WallRows.fromWalls(walls);
+
+            for (int y = 0; y < walls.height; y++) {
+                long[] expectedEnclosed = new long[rows.wordsPerRow];
+                long[] expectedDeadEnds = new long[rows.wordsPerRow];
+                for (int x = 0; x < width; x++) {
+                    int open = openSides(walls, x, y);
+                    if (open == 0) {
+                        expectedEnclosed[x >>> 6] |= 1L << x;
+                    } else if (open == 1) {
+                        expectedDeadEnds[x >>> 6] |= 1L << x;
+                    }
+                }
+
+                for (RowChecks c : checks) {
+                    long[] enclosed = new long[rows.wordsPerRow];
+                    long[] deadEnds = new long[rows.wordsPerRow];
+                    c.openSides(rows, y, enclosed, deadEnds);
+                    String message = c.getName() + " " + width + "x" + y;
+                    assertArrayEquals(message, expectedEnclosed, enclosed);
+                    assertArrayEquals(message, expectedDeadEnds, deadEnds);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFindEnclosedCell() {
+        Walls walls = new Walls(130, 3);
+        assertEquals(-1, RowChecks.get().findEnclosedCell(WallRows.fromWalls(walls)));
+
+        // wall in (129, 1), on the right edge of the board
+        walls.add(128, 1, 129, 1);
+        walls.add(129, 0, 129, 1);
+        walls.add(129, 1, 129, 2);
+        assertEquals(130 + 129, RowChecks.get().findEnclosedCell(WallRows.fromWalls(walls)));
+    }
+
+    @Test
+    public void testBands() {
+        Walls walls = randomWalls(70, 9, new Random(2));
+        Board board = Board.fromWalls(walls);
+        WallRows whole = WallRows.fromBoard(board);
+
+        // a band starting a row early sees the same walls as the whole board
+        WallRows band = WallRows.fromBoard(board, 3, 4);
+        long[] enclosed = new long[2];
+        long[] deadEnds = new long[2];
+        long[] bandEnclosed = new long[2];
+        long[] bandDeadEnds = new long[2];
+        for (int y = 1; y < 4; y++) {
+            RowChecks.get().openSides(whole, 3 + y, enclosed, deadEnds);
+            RowChecks.get().openSides(band, y, bandEnclosed, bandDeadEnds);
+            assertArrayEquals(enclosed, bandEnclosed);
+            assertArrayEquals(deadEnds, bandDeadEnds);
+        }
+    }
+}
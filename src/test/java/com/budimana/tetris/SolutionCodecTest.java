@@ -0,0 +1,181 @@
+package com.budimana.tetris;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+
+public class SolutionCodecTest {
+
+    // L2 BOX L1
+    private static final Solution SOLUTION = new Solution(4, 3,
+                                                          new int[] { 0, 1, 1, 2,
+                                                                      0, 1, 1, 2,
+                                                                      0, 0, 2, 2 },
+                                                          new byte[] { (byte) PieceType.L2.ordinal(),
+                                                                       (byte) PieceType.BOX.ordinal(),
+                                                                       (byte) PieceType.L1.ordinal() });
+
+    private static void assertSameSolution(Solution expected, Solution actual) {
+        assertEquals(expected.width, actual.width);
+        assertEquals(expected.height, actual.height);
+        assertEquals(expected.getPieceCount(), actual.getPieceCount());
+        for (int id = 0; id < expected.getPieceCount(); id++) {
+            assertEquals(expected.getPieceType(id), actual.getPieceType(id));
+        }
+        for (int cell = 0; cell < expected.width * expected.height; cell++) {
+            assertEquals(expected.getPieceId(cell), actual.getPieceId(cell));
+        }
+    }
+
+    @Test
+    public void testRoundTrip() {
+        for (SolutionCodec.Encoding encoding : SolutionCodec.Encoding.values()) {
+            for (boolean runLength : new boolean[] { false, true }) {
+                SolutionCodec codec = new SolutionCodec(encoding, runLength);
+                ByteBuffer buffer = codec.encode(SOLUTION);
+                assertEquals(codec.encodedSize(SOLUTION), buffer.remaining());
+                assertSameSolution(SOLUTION, SolutionCodec.decode(buffer));
+                assertEquals(0, buffer.remaining());
+            }
+        }
+    }
+
+    @Test
+    public void testSizes() {
+        int header = SolutionCodec.HEADER_SIZE + 3;
+
+        // one byte per cell
+        assertEquals(header + 12,
+                     new SolutionCodec(SolutionCodec.Encoding.VARINT, false).encodedSize(SOLUTION));
+        assertEquals(header + 24,
+                     new SolutionCodec(SolutionCodec.Encoding.INT16, false).encodedSize(SOLUTION));
+
+        // runs: 0 1-1 2 | 0 1-1 2 | 0-0 2-2
+        assertEquals(header + 2 * 8,
+                     new SolutionCodec(SolutionCodec.Encoding.VARINT, true).encodedSize(SOLUTION));
+    }
+
+    @Test
+    public void testLargeIds() {
+        // 300 vertical I pieces, ids need more than one varint byte
+        int[] pieceIds = new int[300 * 4];
+        for (int i = 0; i < pieceIds.length; i++) {
+            pieceIds[i] = i % 300;
+        }
+        Solution solution = new Solution(300, 4, pieceIds, new byte[300]);
+
+        ByteBuffer buffer = new SolutionCodec(SolutionCodec.Encoding.VARINT, true).encode(solution);
+        assertSameSolution(solution, SolutionCodec.decode(buffer));
+    }
+
+    @Test
+    public void testBlockedCells() {
+        // an I piece next to a blocked column
+        Solution solution = new Solution(2, 4,
+                                         new int[] { 0, -1, 0, -1, 0, -1, 0, -1 },
+                                         new byte[] { (byte) PieceType.I.ordinal() });
+        for (SolutionCodec.Encoding encoding : SolutionCodec.Encoding.values()) {
+            for (boolean runLength : new boolean[] { false, true }) {
+                SolutionCodec codec = new SolutionCodec(encoding, runLength);
+                ByteBuffer buffer = codec.encode(solution);
+                assertEquals(codec.encodedSize(solution), buffer.remaining());
+                assertSameSolution(solution, SolutionCodec.decode(buffer));
+            }
+        }
+
+        SolutionCodec.View view = SolutionCodec.view(
+            new SolutionCodec(SolutionCodec.Encoding.INT16, false).encode(solution));
+        assertEquals(0, view.getPieceId(0, 3));
+        assertEquals(-1, view.getPieceId(1, 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecode_RunOverrunsRow() {
+        ByteBuffer buffer = new SolutionCodec(SolutionCodec.Encoding.VARINT, true).encode(SOLUTION);
+
+        // the first run (piece 0, 1 cell) made 5 cells long
+        buffer.put(SolutionCodec.HEADER_SIZE + 3, (byte) 5);
+        SolutionCodec.decode(buffer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecode_IdOutOfRange() {
+        ByteBuffer buffer = new SolutionCodec(SolutionCodec.Encoding.VARINT, false).encode(SOLUTION);
+        buffer.put(SolutionCodec.HEADER_SIZE + 3, (byte) 3);
+        SolutionCodec.decode(buffer);
+    }
+
+    @Test
+    public void testView() {
+        // encode into the middle of a direct buffer
+        SolutionCodec codec = new SolutionCodec(SolutionCodec.Encoding.INT16, false);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(100 + codec.encodedSize(SOLUTION));
+        buffer.position(100);
+        codec.encode(SOLUTION, buffer);
+        buffer.position(100);
+
+        SolutionCodec.View view = SolutionCodec.view(buffer);
+        assertEquals(4, view.width);
+        assertEquals(3, view.height);
+        assertEquals(3, view.pieceCount);
+        for (int y = 0; y < 3; y++) {
+            for (int x = 0; x < 4; x++) {
+                assertEquals(SOLUTION.getPieceId(x, y), view.getPieceId(x, y));
+            }
+        }
+        assertEquals(PieceType.BOX.ordinal(), view.getPieceType(view.getPieceId(1, 0)));
+
+        // the view doesn't move the buffer
+        assertEquals(100, buffer.position());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testViewRunLength() {
+        SolutionCodec.view(new SolutionCodec(SolutionCodec.Encoding.INT16, true).encode(SOLUTION));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecode_UnknownEncoding() {
+        ByteBuffer buffer = new SolutionCodec(SolutionCodec.Encoding.INT32, false).encode(SOLUTION);
+        buffer.put(5, (byte) 3);
+        SolutionCodec.decode(buffer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecode_NegativeWidth() {
+        ByteBuffer buffer = new SolutionCodec(SolutionCodec.Encoding.INT16, false).encode(SOLUTION);
+        buffer.putInt(6, -4);
+        SolutionCodec.decode(buffer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecode_SizeOverflows() {
+        // 65536 * 65536 wraps to 0 cells as an int
+        ByteBuffer buffer = new SolutionCodec(SolutionCodec.Encoding.INT16, false).encode(SOLUTION);
+        buffer.putInt(6, 1 << 16);
+        buffer.putInt(10, 1 << 16);
+        SolutionCodec.decode(buffer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecode_NegativePieceCount() {
+        ByteBuffer buffer = new SolutionCodec(SolutionCodec.Encoding.INT16, false).encode(SOLUTION);
+        buffer.putInt(14, -1);
+        SolutionCodec.decode(buffer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testView_Truncated() {
+        ByteBuffer buffer = new SolutionCodec(SolutionCodec.Encoding.INT16, false).encode(SOLUTION);
+        buffer.limit(buffer.limit() - 1);
+        SolutionCodec.view(buffer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadMagic() {
+        SolutionCodec.decode(ByteBuffer.allocate(32));
+    }
+}
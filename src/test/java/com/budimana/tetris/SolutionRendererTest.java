@@ -0,0 +1,104 @@
+package com.budimana.tetris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+
+public class SolutionRendererTest {
+
+    private static String lines(String... lines) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testRender() throws Exception {
+        // L2 BOX L1
+        Solution solution = new Solution(4, 3,
+                                         new int[] { 0, 1, 1, 2,
+                                                     0, 1, 1, 2,
+                                                     0, 0, 2, 2 },
+                                         new byte[] { (byte) PieceType.L2.ordinal(),
+                                                      (byte) PieceType.BOX.ordinal(),
+                                                      (byte) PieceType.L1.ordinal() });
+
+        StringWriter out = new StringWriter();
+        new SolutionRenderer().render(solution, out);
+
+        assertEquals(lines(
+            "   ┌ ── ┬ ── ─ ── ┬ ── ┐ ",
+            "   ┃  0 ┃  1    1 ┃  2 ┃ ",
+            "   ┃    ┃         ┃    ┃ ",
+            "   ┃  0 ┃  1    1 ┃  2 ┃ ",
+            "   ┃    └ ── ┬ ── ┘    ┃ ",
+            "   ┃  0    0 ┃  2    2 ┃ ",
+            "   └ ── ─ ── ┴ ── ─ ── ┘ "
+        ), out.toString());
+    }
+
+    @Test
+    public void testRender_BlockedCells() throws Exception {
+        // two I pieces either side of a blocked column
+        Solution solution = new Solution(3, 4,
+                                         new int[] { 0, -1, 1,
+                                                     0, -1, 1,
+                                                     0, -1, 1,
+                                                     0, -1, 1 },
+                                         new byte[] { (byte) PieceType.I.ordinal(),
+                                                      (byte) PieceType.I.ordinal() });
+
+        StringWriter out = new StringWriter();
+        new SolutionRenderer().render(solution, out);
+
+        assertEquals(lines(
+            "   ┌ ── ┐    ┌ ── ┐ ",
+            "   ┃  0 ┃    ┃  1 ┃ ",
+            "   ┃    ┃    ┃    ┃ ",
+            "   ┃  0 ┃    ┃  1 ┃ ",
+            "   ┃    ┃    ┃    ┃ ",
+            "   ┃  0 ┃    ┃  1 ┃ ",
+            "   ┃    ┃    ┃    ┃ ",
+            "   ┃  0 ┃    ┃  1 ┃ ",
+            "   └ ── ┘    └ ── ┘ "
+        ), out.toString());
+
+        // blocked cells meeting across a corner
+        solution = new Solution(2, 2, new int[] { -1, 0, 1, -1 }, new byte[2]);
+        out = new StringWriter();
+        new SolutionRenderer().render(solution, out);
+        assertTrue(out.toString().contains("╋"));
+    }
+
+    @Test
+    public void testRenumbering() throws Exception {
+        // ids out of order are numbered by first appearance
+        Solution solution = new Solution(4, 1,
+                                         new int[] { 1, 1, 1, 1 },
+                                         new byte[] { 0, (byte) PieceType.I.ordinal() });
+
+        StringWriter out = new StringWriter();
+        new SolutionRenderer().render(solution, out);
+        assertTrue(out.toString().contains(" ┃  0    0    0    0 ┃ "));
+    }
+
+    @Test
+    public void testTwoDigitNumbers() throws Exception {
+        // a row of 12 vertical I pieces
+        int[] pieceIds = new int[12 * 4];
+        for (int i = 0; i < pieceIds.length; i++) {
+            pieceIds[i] = i % 12;
+        }
+        Solution solution = new Solution(12, 4, pieceIds, new byte[12]);
+
+        StringWriter out = new StringWriter();
+        new SolutionRenderer().render(solution, out);
+        assertTrue(out.toString().contains(" ┃  9 ┃ 10 ┃ 11 ┃ "));
+    }
+}
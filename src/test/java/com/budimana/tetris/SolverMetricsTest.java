@@ -0,0 +1,87 @@
+package com.budimana.tetris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+
+public class SolverMetricsTest {
+
+    @Test
+    public void testRegistered() throws Exception {
+        SolverMetrics metrics = SolverMetrics.getInstance();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(SolverMetrics.OBJECT_NAME);
+        assertTrue(server.isRegistered(name));
+
+        long nodesBefore = (Long) server.getAttribute(name, "TotalNodes");
+
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(4, 4);
+        TetrisSolver ts = new TetrisSolver(matrix, new HashMap<>());
+        assertEquals(SolveStatus.SOLVED, ts.solve());
+
+        // finished solvers are folded into the totals
+        assertEquals(0, metrics.getUnfinishedPieces());
+        long nodesAfter = (Long) server.getAttribute(name, "TotalNodes");
+        assertTrue(nodesAfter - nodesBefore >= ts.getNodesExplored());
+        assertTrue(metrics.getNewOptionSuccesses() >= ts.getStats().getOptionSuccesses(OptionKind.NEW));
+        assertTrue(metrics.getDepthHistogram().length >= 16);
+
+        // reading the rate doesn't reset it
+        double rate = metrics.getNodesPerSecond();
+        assertTrue(rate > 0);
+        assertTrue(metrics.getNodesPerSecond() > 0);
+    }
+
+    @Test
+    public void testSolveAgain() {
+        SolverMetrics metrics = SolverMetrics.getInstance();
+
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(4, 2);
+        Map<Tetronimo, List<Tetronimo>> restrictions = new HashMap<>();
+        restrictions.put(matrix[0][0], Arrays.asList(matrix[0][1]));
+        restrictions.put(matrix[1][0], Arrays.asList(matrix[2][0]));
+        TetrisSolver ts = new TetrisSolver(matrix, restrictions);
+
+        // each search is counted once
+        long nodesBefore = metrics.getTotalNodes();
+        long backtracksBefore = metrics.getBacktracks();
+        assertEquals(SolveStatus.UNSOLVABLE, ts.solve());
+        assertEquals(SolveStatus.UNSOLVABLE, ts.solve());
+        assertEquals(2 * ts.getNodesExplored(), metrics.getTotalNodes() - nodesBefore);
+        assertEquals(2 * ts.getBacktracks(), metrics.getBacktracks() - backtracksBefore);
+
+        // a resumed search only adds the nodes of its own run
+        nodesBefore = metrics.getTotalNodes();
+        ts.resumeFrom(new Checkpoint(ts.getCheckpoint(0).puzzleHash, 1000, new int[0]));
+        assertEquals(SolveStatus.UNSOLVABLE, ts.solve());
+        assertEquals(ts.getNodesExplored() - 1000, metrics.getTotalNodes() - nodesBefore);
+    }
+
+    @Test
+    public void testActiveSolver() {
+        SolverMetrics metrics = SolverMetrics.getInstance();
+
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(2, 2);
+        TetrisSolver ts = new TetrisSolver(matrix, new HashMap<>());
+        ts.unfinishedPieces.add(new Piece(matrix[0][0]));
+
+        int activeBefore = metrics.getActiveSolvers();
+        metrics.register(ts);
+        assertEquals(activeBefore + 1, metrics.getActiveSolvers());
+        assertTrue(metrics.getUnfinishedPieces() >= 1);
+
+        metrics.unregister(ts);
+        assertEquals(activeBefore, metrics.getActiveSolvers());
+    }
+}
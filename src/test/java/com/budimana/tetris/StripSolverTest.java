@@ -0,0 +1,78 @@
+package com.budimana.tetris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Test;
+
+
+public class StripSolverTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testRestrictionsFile() throws Exception {
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(10, 26);
+        Walls walls = Walls.fromRestrictions(matrix,
+                                             TetrisSolver.parseRestrictions("restrictions.10x26.txt", matrix));
+
+        StripSolver ss = new StripSolver(new PlacementTable(walls, PieceCatalogue.tetrominoes()));
+        assertEquals(6, ss.getStripCount());
+        assertEquals(SolveStatus.SOLVED, ss.solve(executor));
+        assertTrue(ss.getSolution().isValid(walls, PieceCatalogue.tetrominoes()));
+    }
+
+    @Test
+    public void testSameAsPolyominoSolver() throws Exception {
+        // random walls on boards a few strips tall
+        Random random = new Random(34);
+        for (int i = 0; i < 40; i++) {
+            int width = 2 + random.nextInt(3);
+            int height = 8 + 2 * random.nextInt(4);
+            Walls walls = new Walls(width, height);
+            for (int n = random.nextInt(width * height / 2); n > 0; n--) {
+                int x = random.nextInt(width);
+                int y = random.nextInt(height);
+                if (random.nextBoolean() && x + 1 < width) {
+                    walls.add(x, y, x + 1, y);
+                } else if (y + 1 < height) {
+                    walls.add(x, y, x, y + 1);
+                }
+            }
+
+            PlacementTable table = new PlacementTable(walls, PieceCatalogue.tetrominoes());
+            SolveStatus expected = new PolyominoSolver(table).solve();
+            StripSolver ss = new StripSolver(table, 4 + random.nextInt(2));
+            assertEquals("board " + i, expected, ss.solve(executor));
+            if (expected == SolveStatus.SOLVED) {
+                assertTrue(ss.getSolution().isValid(walls, PieceCatalogue.tetrominoes()));
+            }
+        }
+    }
+
+    @Test
+    public void testPentominoes() throws Exception {
+        PieceCatalogue catalogue = PieceCatalogue.pentominoes();
+        Walls walls = new Walls(3, 10);
+        StripSolver ss = new StripSolver(new PlacementTable(walls, catalogue));
+        assertEquals(2, ss.getStripCount());
+        assertEquals(SolveStatus.SOLVED, ss.solve(executor));
+        assertTrue(ss.getSolution().isValid(walls, catalogue));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStripTooShort() {
+        // a vertical line could reach past the strip below
+        new StripSolver(new PlacementTable(new Walls(4, 8), PieceCatalogue.tetrominoes()), 3);
+    }
+}
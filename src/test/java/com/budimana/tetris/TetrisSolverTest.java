@@ -2,10 +2,12 @@ package com.budimana.tetris;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
-import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -94,14 +96,14 @@ public class TetrisSolverTest {
         assertEquals(1, ts.unfinishedPieces.size());
         assertTrue(ts.unfinishedPieces.contains(piece));
         assertTrue(ts.unverifiedPieces.isEmpty());
-        assertTrue(ts.verifiedPieces.isEmpty());
+        assertEquals(0, ts.countVerifiedPieces());
         
         // verify transition
         assertEquals(currTetronimo, transition.tetronimo);
         assertEquals(1, transition.newUnfinishedPieces.size());
         assertTrue(transition.newUnfinishedPieces.contains(piece));
 
-        assertTrue(transition.mergedPieces.isEmpty());
+        assertNull(transition.mergedPiece);
         assertTrue(transition.oldUnfinishedPieces.isEmpty());
         assertTrue(transition.oldUnverifiedPieces.isEmpty());
         assertTrue(transition.newUnverifiedPieces.isEmpty());
@@ -139,11 +141,11 @@ public class TetrisSolverTest {
         assertEquals(1, ts.unfinishedPieces.size());
         assertTrue(ts.unfinishedPieces.contains(piece));
         assertTrue(ts.unverifiedPieces.isEmpty());
-        assertTrue(ts.verifiedPieces.isEmpty());
+        assertEquals(0, ts.countVerifiedPieces());
         
         // verify transition
         assertEquals(currTetronimo, transition.tetronimo);
-        assertTrue(transition.mergedPieces.isEmpty());
+        assertNull(transition.mergedPiece);
         assertTrue(transition.oldUnfinishedPieces.isEmpty());
         assertTrue(transition.oldUnverifiedPieces.isEmpty());
         assertTrue(transition.newUnfinishedPieces.isEmpty());
@@ -188,7 +190,7 @@ public class TetrisSolverTest {
         assertEquals(1, ts.unverifiedPieces.size());
         assertTrue(ts.unverifiedPieces.contains(piece));
 
-        assertTrue(ts.verifiedPieces.isEmpty());
+        assertEquals(0, ts.countVerifiedPieces());
         
         // verify transition
         assertEquals(currTetronimo, transition.tetronimo);
@@ -199,7 +201,7 @@ public class TetrisSolverTest {
         assertEquals(1, transition.newUnverifiedPieces.size());
         assertTrue(transition.newUnverifiedPieces.contains(piece));
 
-        assertTrue(transition.mergedPieces.isEmpty());
+        assertNull(transition.mergedPiece);
         assertTrue(transition.oldUnverifiedPieces.isEmpty());
         assertTrue(transition.newUnfinishedPieces.isEmpty());
         assertTrue(transition.newVerifiedPieces.isEmpty());
@@ -243,13 +245,13 @@ public class TetrisSolverTest {
         assertEquals(1, ts.unfinishedPieces.size());
         assertTrue(ts.unfinishedPieces.contains(piece1));
         assertTrue(ts.unverifiedPieces.isEmpty());
-        assertTrue(ts.verifiedPieces.isEmpty());
+        assertEquals(0, ts.countVerifiedPieces());
         
         // verify transition
         assertEquals(currTetronimo, transition.tetronimo);
 
-        assertEquals(1, transition.mergedPieces.size());
-        assertNotNull(transition.mergedPieces.get(piece2));
+        assertEquals(piece2, transition.mergedPiece);
+        assertEquals(1, transition.mergedTetronimos.size());
 
         assertEquals(1, transition.oldUnfinishedPieces.size());
         assertTrue(transition.oldUnfinishedPieces.contains(piece2));
@@ -297,13 +299,13 @@ public class TetrisSolverTest {
         // verify state
         assertTrue(ts.unfinishedPieces.isEmpty());
         assertEquals(1, ts.unverifiedPieces.size());
-        assertTrue(ts.verifiedPieces.isEmpty());
+        assertEquals(0, ts.countVerifiedPieces());
         
         // verify transition
         assertEquals(currTetronimo, transition.tetronimo);
 
-        assertEquals(1, transition.mergedPieces.size());
-        assertNotNull(transition.mergedPieces.get(piece2));
+        assertEquals(piece2, transition.mergedPiece);
+        assertEquals(1, transition.mergedTetronimos.size());
 
         assertEquals(2, transition.oldUnfinishedPieces.size());
         assertTrue(transition.oldUnfinishedPieces.contains(piece1));
@@ -343,7 +345,7 @@ public class TetrisSolverTest {
         assertTrue(ts.unfinishedPieces.contains(isolated));
         assertTrue(ts.unfinishedPieces.contains(surrounding));
         assertTrue(ts.unverifiedPieces.isEmpty());
-        assertTrue(ts.verifiedPieces.isEmpty());
+        assertEquals(0, ts.countVerifiedPieces());
 
         // verify transition
         assertTrue(transition.oldUnfinishedPieces.isEmpty());
@@ -378,7 +380,7 @@ public class TetrisSolverTest {
         assertTrue(ts.unfinishedPieces.contains(piece1));
         assertTrue(ts.unfinishedPieces.contains(piece2));
         assertTrue(ts.unverifiedPieces.isEmpty());
-        assertTrue(ts.verifiedPieces.isEmpty());
+        assertEquals(0, ts.countVerifiedPieces());
 
         // verify transition
         assertTrue(transition.oldUnfinishedPieces.isEmpty());
@@ -429,8 +431,8 @@ public class TetrisSolverTest {
         assertTrue(ts.unverifiedPieces.contains(piece2));
         assertTrue(ts.unverifiedPieces.contains(piece3));
 
-        assertEquals(1, ts.verifiedPieces.size());
-        assertTrue(ts.verifiedPieces.contains(piece1));
+        assertEquals(1, ts.countVerifiedPieces());
+        assertFalse(ts.unverifiedPieces.contains(piece1));
 
         // verify transition
         assertTrue(transition.oldUnfinishedPieces.isEmpty());
@@ -472,7 +474,6 @@ public class TetrisSolverTest {
             matrix[0][3],  // x
             matrix[0][4]
         );
-        ts.verifiedPieces.add(piece1);
         ts.unverifiedPieces.add(piece2);
         ts.unverifiedPieces.add(piece3);
 
@@ -486,8 +487,8 @@ public class TetrisSolverTest {
         assertTrue(ts.unverifiedPieces.contains(piece2));
         assertTrue(ts.unverifiedPieces.contains(piece3));
 
-        assertEquals(1, ts.verifiedPieces.size());
-        assertTrue(ts.verifiedPieces.contains(piece1));
+        assertEquals(1, ts.countVerifiedPieces());
+        assertFalse(ts.unverifiedPieces.contains(piece1));
 
         // verify transition
         assertTrue(transition.oldUnfinishedPieces.isEmpty());
@@ -531,7 +532,7 @@ public class TetrisSolverTest {
         assertTrue(ts.unverifiedPieces.contains(piece1));
         assertTrue(ts.unverifiedPieces.contains(piece2));
 
-        assertTrue(ts.verifiedPieces.isEmpty());
+        assertEquals(0, ts.countVerifiedPieces());
 
         // verify transition
         assertTrue(transition.oldUnfinishedPieces.isEmpty());
@@ -576,8 +577,8 @@ public class TetrisSolverTest {
 
             Tetronimo currTetronimo = new Tetronimo(1, 1);
             transition.tetronimo = currTetronimo;
-            transition.mergedPieces.put(piece2,
-                                        new ArrayList<>(piece2.getTetronimos()));
+            transition.mergedPiece = piece2;
+            transition.mergedTetronimos.addAll(piece2.getTetronimos());
 
             piece2.remove(t2);
             piece1.add(t2);
@@ -626,7 +627,6 @@ public class TetrisSolverTest {
             transition.oldUnfinishedPieces.add(newUnverified);
             transition.newUnverifiedPieces.add(newUnverified);
 
-            ts.verifiedPieces.add(newVerified);
             transition.oldUnverifiedPieces.add(newVerified);
             transition.newVerifiedPieces.add(newVerified);
             
@@ -639,8 +639,6 @@ public class TetrisSolverTest {
 
             assertEquals(1, ts.unverifiedPieces.size());
             assertTrue(ts.unverifiedPieces.contains(newVerified));
-
-            assertTrue(ts.verifiedPieces.isEmpty());
         }
     }
 
@@ -738,4 +736,369 @@ public class TetrisSolverTest {
         assertEquals(PieceType.BOX, matrix[1][0].piece.getType());
         assertEquals(PieceType.L1, matrix[3][0].piece.getType());
     }
+
+    @Test
+    public void testSolve() {
+        // solvable
+        {
+            Tetronimo[][] matrix = TetrisSolver.createMatrix(2, 2);
+            TetrisSolver ts = new TetrisSolver(matrix, new HashMap<>());
+            assertEquals(SolveStatus.SOLVED, ts.solve());
+        }
+
+        // unsolvable
+        {
+            Tetronimo[][] matrix = TetrisSolver.createMatrix(3, 2);
+            TetrisSolver ts = new TetrisSolver(matrix, new HashMap<>());
+            assertEquals(SolveStatus.UNSOLVABLE, ts.solve());
+        }
+    }
+
+    @Test
+    public void testSolve_OptionOrder() {
+        OptionKind[][] orders = {
+            { OptionKind.MERGE, OptionKind.LEFT, OptionKind.UP, OptionKind.NEW },
+            { OptionKind.UP, OptionKind.NEW, OptionKind.MERGE, OptionKind.LEFT },
+        };
+        for (int i = 0; i < orders.length + 3; i++) {
+            Tetronimo[][] matrix = TetrisSolver.createMatrix(4, 3);
+            Map<Tetronimo, List<Tetronimo>> restrictions = new HashMap<>();
+            restrictions.put(matrix[0][0], Arrays.asList(matrix[1][0]));  // x | x   x | x
+            restrictions.put(matrix[2][0], Arrays.asList(matrix[3][0]));  //
+            restrictions.put(matrix[0][1], Arrays.asList(matrix[1][1]));  // x | x   x | x
+            restrictions.put(matrix[2][1], Arrays.asList(matrix[3][1]));  //
+            restrictions.put(matrix[1][2], Arrays.asList(matrix[2][2]));  // x   x | x   x
+            for (Tetronimo t : new ArrayList<>(restrictions.keySet())) {
+                restrictions.put(restrictions.get(t).get(0), Arrays.asList(t));
+            }
+
+            // any order finds the one solution
+            TetrisSolver ts = new TetrisSolver(matrix, restrictions);
+            if (i < orders.length) {
+                ts.setOptionOrder(orders[i]);
+            } else {
+                ts.setShuffleSeed(i);
+            }
+            assertEquals(SolveStatus.SOLVED, ts.solve());
+            assertEquals(PieceType.L2, matrix[0][0].piece.getType());
+            assertEquals(PieceType.BOX, matrix[1][0].piece.getType());
+            assertEquals(PieceType.L1, matrix[3][0].piece.getType());
+        }
+    }
+
+    @Test
+    public void testSolve_MergeAcrossBoundary() {
+        // x | x   the only piece that fits is a box, which would have the
+        //         boundary inside it
+        // x   x
+        for (OptionKind first : OptionKind.values()) {
+            Tetronimo[][] matrix = TetrisSolver.createMatrix(2, 2);
+            Map<Tetronimo, List<Tetronimo>> restrictions = new HashMap<>();
+            restrictions.put(matrix[0][0], Arrays.asList(matrix[1][0]));
+            restrictions.put(matrix[1][0], Arrays.asList(matrix[0][0]));
+
+            List<OptionKind> order = new ArrayList<>(Arrays.asList(OptionKind.values()));
+            order.remove(first);
+            order.add(0, first);
+            TetrisSolver ts = new TetrisSolver(matrix, restrictions);
+            ts.setOptionOrder(order.toArray(new OptionKind[order.size()]));
+            assertEquals(SolveStatus.UNSOLVABLE, ts.solve());
+        }
+    }
+
+    @Test
+    public void testSolve_LimitedDiscrepancy() throws Exception {
+        // same answers as plain search: 6x6 puzzles, some made
+        //   unsolvable by extra boundaries
+        File file = File.createTempFile("lds", ".txt");
+        try {
+            for (int seed = 0; seed < 6; seed++) {
+                PuzzleGenerator generator = new PuzzleGenerator(6, 6, PieceCatalogue.tetrominoes(), seed);
+                try (Writer out = new FileWriter(file)) {
+                    generator.generate(out);
+                }
+                SolveStatus expected = null;
+                for (boolean lds : new boolean[] { false, true }) {
+                    Tetronimo[][] matrix = TetrisSolver.createMatrix(6, 6);
+                    Map<Tetronimo, List<Tetronimo>> restrictions =
+                        TetrisSolver.parseRestrictions(file.getPath(), matrix);
+                    if (seed % 2 == 1) {
+                        addRestriction(restrictions, matrix[5][5], matrix[4][5]);
+                        addRestriction(restrictions, matrix[5][5], matrix[5][4]);
+                    }
+                    TetrisSolver ts = new TetrisSolver(matrix, restrictions);
+                    ts.setLimitedDiscrepancy(lds);
+                    SolveStatus status = ts.solve();
+                    if (expected == null) {
+                        expected = status;
+                    }
+                    assertEquals("seed " + seed, expected, status);
+                    if (status == SolveStatus.SOLVED) {
+                        assertEquals(0, Solution.fromMatrix(matrix)
+                                                .countViolations(Walls.fromRestrictions(matrix, restrictions),
+                                                                 PieceCatalogue.tetrominoes()));
+                    }
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void addRestriction(Map<Tetronimo, List<Tetronimo>> restrictions,
+                                       Tetronimo a,
+                                       Tetronimo b) {
+        restrictions.computeIfAbsent(a, t -> new ArrayList<>()).add(b);
+        restrictions.computeIfAbsent(b, t -> new ArrayList<>()).add(a);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetOptionOrder_Incomplete() {
+        // leaving out an option would make the search incomplete
+        new TetrisSolver(null, null).setOptionOrder(OptionKind.NEW, OptionKind.LEFT,
+                                                    OptionKind.UP, OptionKind.UP);
+    }
+
+    @Test
+    public void testSolve_Cancelled() {
+        // unsolvable, but takes a long time to find out
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(7, 7);
+        TetrisSolver ts = new TetrisSolver(matrix, new HashMap<>());
+
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        ts.setCancellationToken(token);
+        assertEquals(SolveStatus.UNKNOWN, ts.solve());
+
+        // state is reverted on the way out
+        assertTrue(ts.unfinishedPieces.isEmpty());
+        assertTrue(ts.unverifiedPieces.isEmpty());
+        assertEquals(0, ts.countVerifiedPieces());
+        assertNull(matrix[0][0].piece);
+    }
+
+    @Test
+    public void testSolve_Twice() {
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(4, 2);
+
+        Map<Tetronimo, List<Tetronimo>> restrictions = new HashMap<>();
+        restrictions.put(matrix[0][0], Arrays.asList(matrix[0][1]));  // x   x | x   x
+        restrictions.put(matrix[1][0], Arrays.asList(matrix[2][0]));  // -
+                                                                      // x   x   x   x
+        TetrisSolver ts = new TetrisSolver(matrix, restrictions);
+        assertEquals(SolveStatus.UNSOLVABLE, ts.solve());
+        long nodes = ts.getNodesExplored();
+        long backtracks = ts.getBacktracks();
+        int maxDepth = ts.getProgress(0).maxDepth;
+        assertTrue(backtracks > 0);
+
+        // the second search counts from zero, not on from the first
+        assertEquals(SolveStatus.UNSOLVABLE, ts.solve());
+        assertEquals(nodes, ts.getNodesExplored());
+        assertEquals(backtracks, ts.getBacktracks());
+        assertEquals(maxDepth, ts.getProgress(0).maxDepth);
+    }
+
+    @Test
+    public void testSolve_Deadline() {
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(7, 7);
+        TetrisSolver ts = new TetrisSolver(matrix, new HashMap<>());
+
+        ts.setDeadline(System.currentTimeMillis() - 1);
+        assertEquals(SolveStatus.UNKNOWN, ts.solve());
+    }
+
+    @Test
+    public void testSolve_Progress() {
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(7, 7);
+        TetrisSolver ts = new TetrisSolver(matrix, new HashMap<>());
+
+        // stop after a few reports
+        CancellationToken token = new CancellationToken();
+        List<SearchProgress> reports = new ArrayList<>();
+        ts.setCancellationToken(token);
+        ts.setProgressListener(progress -> {
+            reports.add(progress);
+            if (reports.size() == 3) {
+                token.cancel();
+            }
+        }, 1);
+        assertEquals(SolveStatus.UNKNOWN, ts.solve());
+
+        assertEquals(3, reports.size());
+        long lastNodes = 0;
+        for (SearchProgress progress : reports) {
+            assertTrue(progress.nodesExplored > lastNodes);
+            assertTrue(progress.depth <= progress.maxDepth);
+            assertTrue(progress.maxDepth < 49);
+            lastNodes = progress.nodesExplored;
+        }
+    }
+
+    @Test
+    public void testEstimate() {
+        // 15 cells, so the search is exhaustive
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(5, 3);
+        TetrisSolver ts = new TetrisSolver(matrix, new HashMap<>());
+        SearchEstimate estimate = ts.estimate(5000, 42);
+        assertEquals(5000, estimate.probes);
+
+        // the probes leave the matrix as it was
+        for (int x = 0; x < 5; x++) {
+            for (int y = 0; y < 3; y++) {
+                assertNull(matrix[x][y].piece);
+            }
+        }
+        assertEquals(SolveStatus.UNSOLVABLE, ts.solve());
+
+        long nodes = ts.getNodesExplored();
+        assertTrue(estimate.low <= nodes && nodes <= estimate.high);
+        assertTrue(Math.abs(estimate.nodes - nodes) < 0.1 * nodes);
+    }
+
+    @Test
+    public void testSolve_ProgressEta() {
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(7, 7);
+        TetrisSolver ts = new TetrisSolver(matrix, new HashMap<>());
+        SearchEstimate estimate = ts.estimate(100, 1);
+        ts.setEstimate(estimate);
+
+        CancellationToken token = new CancellationToken();
+        List<SearchProgress> reports = new ArrayList<>();
+        ts.setCancellationToken(token);
+        ts.setProgressListener(progress -> {
+            reports.add(progress);
+            token.cancel();
+        }, 1);
+        assertEquals(SolveStatus.UNKNOWN, ts.solve());
+
+        SearchProgress progress = reports.get(0);
+        assertEquals(estimate.nodes, progress.estimatedNodes, 0);
+        assertTrue(progress.etaMillis >= 0);
+    }
+
+    @Test
+    public void testSolve_OptionStats() throws Exception {
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(10, 26);
+        Map<Tetronimo, List<Tetronimo>> restrictions =
+            TetrisSolver.parseRestrictions("restrictions.10x26.txt", matrix);
+        TetrisSolver plain = new TetrisSolver(matrix, restrictions);
+        assertEquals(SolveStatus.SOLVED, plain.solve());
+
+        // same answer with the learned order, and fewer nodes once it has
+        //   learned from a previous run
+        OptionStats optionStats = new OptionStats();
+        long lastNodes = Long.MAX_VALUE;
+        for (int run = 0; run < 2; run++) {
+            matrix = TetrisSolver.createMatrix(10, 26);
+            restrictions = TetrisSolver.parseRestrictions("restrictions.10x26.txt", matrix);
+            TetrisSolver ts = new TetrisSolver(matrix, restrictions);
+            ts.setOptionStats(optionStats);
+            assertEquals(SolveStatus.SOLVED, ts.solve());
+            assertTrue(Solution.fromMatrix(matrix).isValid(Walls.fromRestrictions(matrix, restrictions),
+                                                           PieceCatalogue.tetrominoes()));
+            assertTrue(ts.getNodesExplored() < Math.min(lastNodes, plain.getNodesExplored()));
+            lastNodes = ts.getNodesExplored();
+        }
+
+        // saved and read back
+        File file = File.createTempFile("options", ".txt");
+        try {
+            optionStats.write(file);
+            OptionStats read = OptionStats.read(file);
+            for (int context = 0; context < OptionStats.CONTEXTS; context++) {
+                for (OptionKind kind : OptionKind.values()) {
+                    assertEquals(optionStats.getTries(context, kind), read.getTries(context, kind));
+                    assertEquals(optionStats.score(context, kind), read.score(context, kind), 0);
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSolve_Stats() {
+        // initialize the tetris solver
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(4, 3);
+
+        Map<Tetronimo, List<Tetronimo>> restrictions = new HashMap<>();
+        restrictions.put(matrix[0][0], Arrays.asList(matrix[1][0]));  // x | x   x | x
+        restrictions.put(matrix[2][0], Arrays.asList(matrix[3][0]));  //
+        restrictions.put(matrix[0][1], Arrays.asList(matrix[1][1]));  // x | x   x | x
+        restrictions.put(matrix[2][1], Arrays.asList(matrix[3][1]));  //
+        restrictions.put(matrix[1][2], Arrays.asList(matrix[2][2]));  // x   x | x   x
+
+        TetrisSolver ts = new TetrisSolver(matrix, restrictions);
+        assertEquals(SolveStatus.SOLVED, ts.solve());
+
+        SolverStats stats = ts.getStats();
+
+        // the solution needs a merge
+        assertTrue(stats.getOptionSuccesses(OptionKind.NEW) > 0);
+        assertTrue(stats.getOptionSuccesses(OptionKind.MERGE) > 0);
+
+        long prunes = 0;
+        for (PruneCause cause : PruneCause.values()) {
+            prunes += stats.getPrunes(cause);
+        }
+        assertTrue(prunes > 0);
+
+        // every node is counted at its depth
+        long histogramNodes = 0;
+        for (long count : stats.depthHistogram) {
+            histogramNodes += count;
+        }
+        assertEquals(ts.getNodesExplored(), histogramNodes);
+        assertEquals(1, stats.depthHistogram[0]);
+    }
+
+    @Test
+    public void testGetTypeDomain() {
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(4, 3);
+        TetrisSolver ts = new TetrisSolver(matrix, new HashMap<>());
+
+        Piece line = new Piece(matrix[0][0], matrix[1][0],  // x x x x
+                               matrix[2][0], matrix[3][0]); // o o o
+        Piece partial = new Piece(matrix[0][1], matrix[1][1], matrix[2][1]);
+        ts.unfinishedPieces.add(partial);
+
+        // can't be an I next to the I, but can still grow down
+        int domain = ts.getTypeDomain(partial);
+        assertEquals(0, domain & PieceType.I.getMask());
+        assertEquals(3, Integer.bitCount(domain));
+        assertTrue((domain & PieceType.T.getMask()) != 0);
+
+        // a restriction below the middle rules out the T
+        Map<Tetronimo, List<Tetronimo>> restrictions = new HashMap<>();
+        restrictions.put(matrix[1][2], Arrays.asList(matrix[1][1]));
+        ts = new TetrisSolver(matrix, restrictions);
+        assertEquals(0, ts.getTypeDomain(partial) & PieceType.T.getMask());
+    }
+
+    @Test
+    public void testVerifyPieces_TypeDomain() {
+        Tetronimo[][] matrix = TetrisSolver.createMatrix(4, 2);
+        TetrisSolver ts = new TetrisSolver(matrix, new HashMap<>());
+        Transition transition = new Transition();
+
+        Piece line = new Piece(matrix[0][0], matrix[1][0],  // x x x x
+                               matrix[2][0], matrix[3][0]); // o o o .
+        Piece partial = new Piece(matrix[0][1], matrix[1][1]);
+        ts.unfinishedPieces.add(partial);
+
+        // the piece still has room, but could only become a second I
+        ts.addToPiece(matrix[2][1], new Piece[] { partial }, transition);
+        assertTrue(partial.canBeFinished(matrix));
+        assertFalse(ts.verifyPieces(transition));
+
+        // the same shape on a board with room below is fine
+        matrix = TetrisSolver.createMatrix(4, 3);
+        ts = new TetrisSolver(matrix, new HashMap<>());
+        transition = new Transition();
+        partial = new Piece(matrix[0][1], matrix[1][1]);
+        ts.unfinishedPieces.add(partial);
+        ts.addToPiece(matrix[2][1], new Piece[] { partial }, transition);
+        assertTrue(ts.verifyPieces(transition));
+    }
 }
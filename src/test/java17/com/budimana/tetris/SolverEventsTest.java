@@ -0,0 +1,79 @@
+package com.budimana.tetris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+
+public class SolverEventsTest {
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+        Path file = Files.createTempFile("solver", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.start();
+            Tetronimo[][] matrix = TetrisSolver.createMatrix(4, 4);
+            new TetrisSolver(matrix, new HashMap<>()).solve();
+            recording.stop();
+            recording.dump(file);
+        }
+
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+            assertTrue(!event.getEventType().getName().startsWith("com.budimana.tetris"));
+        }
+        Files.delete(file);
+    }
+
+    @Test
+    public void testSearchEvents() throws Exception {
+        Path file = Files.createTempFile("solver", ".jfr");
+        TetrisSolver ts;
+        try (Recording recording = new Recording()) {
+            recording.enable("com.budimana.tetris.SearchStart");
+            recording.enable("com.budimana.tetris.SearchEnd");
+            recording.enable("com.budimana.tetris.Prune");
+            recording.start();
+
+            // unsolvable
+            Tetronimo[][] matrix = TetrisSolver.createMatrix(3, 2);
+            ts = new TetrisSolver(matrix, new HashMap<>());
+            ts.solve();
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        int starts = 0;
+        int ends = 0;
+        int prunes = 0;
+        for (RecordedEvent event : events) {
+            String name = event.getEventType().getName();
+            if (name.equals("com.budimana.tetris.SearchStart")) {
+                assertEquals(3, event.getInt("width"));
+                assertEquals(2, event.getInt("height"));
+                starts++;
+            } else if (name.equals("com.budimana.tetris.SearchEnd")) {
+                assertEquals("UNSOLVABLE", event.getString("status"));
+                assertEquals(ts.getNodesExplored(), event.getLong("nodesExplored"));
+                ends++;
+            } else if (name.equals("com.budimana.tetris.Prune")) {
+                prunes++;
+            }
+        }
+        assertEquals(1, starts);
+        assertEquals(1, ends);
+        assertTrue(prunes > 0);
+        Files.delete(file);
+    }
+}